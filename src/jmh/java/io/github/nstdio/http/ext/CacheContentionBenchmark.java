@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import io.github.nstdio.http.ext.Cache.CacheEntry;
+import io.github.nstdio.http.ext.InMemoryCache.InMemoryCacheEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Clock;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Compares single-lock {@link SynchronizedCache} ({@code concurrencyLevel = 1}) with {@link SegmentedCache} under
+ * contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MILLISECONDS)
+@Fork(value = 1, warmups = 1)
+@Warmup(time = 3, iterations = 2)
+@Measurement(iterations = 4, time = 5)
+@Threads(64)
+public class CacheContentionBenchmark {
+  @Param({"1", "16", "64"})
+  public int concurrencyLevel;
+
+  @Param({"4096"})
+  public int keys;
+
+  private Cache cache;
+  private HttpRequest[] requests;
+  private CacheEntry[] entries;
+
+  @Setup
+  public void setUp() {
+    cache = Cache.newInMemoryCacheBuilder()
+        .maxItems(keys * 2)
+        .concurrencyLevel(concurrencyLevel)
+        .build();
+
+    var clock = Clock.systemUTC();
+    var info = ImmutableResponseInfo.builder()
+        .statusCode(200)
+        .headers(Headers.EMPTY_HEADERS)
+        .version(HttpClient.Version.HTTP_1_1)
+        .build();
+
+    requests = new HttpRequest[keys];
+    entries = new CacheEntry[keys];
+    for (int i = 0; i < keys; i++) {
+      var request = HttpRequest.newBuilder(URI.create("https://example.com/resource/" + i)).build();
+      var metadata = CacheEntryMetadata.of(0, 0, info, request, clock);
+
+      requests[i] = request;
+      entries[i] = new InMemoryCacheEntry(new byte[64], metadata);
+      cache.put(request, entries[i]);
+    }
+  }
+
+  @Benchmark
+  public CacheEntry get() {
+    return cache.get(requests[ThreadLocalRandom.current().nextInt(keys)]);
+  }
+
+  @Benchmark
+  public CacheEntry getMostlyWithPut() {
+    var random = ThreadLocalRandom.current();
+    int i = random.nextInt(keys);
+
+    if (random.nextInt(10) == 0) {
+      cache.put(requests[i], entries[i]);
+      return null;
+    }
+
+    return cache.get(requests[i]);
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.PushPromiseHandler;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Measures the overhead the interceptors add to each request, with the network replaced by the delegate answering
+ * right away. Run with {@code -prof gc} and read {@code gc.alloc.rate.norm} to see the allocation per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Fork(value = 1, warmups = 1)
+@Warmup(time = 3, iterations = 2)
+@Measurement(iterations = 4, time = 5)
+public class PipelineBenchmark {
+  private HttpClient plain;
+  private HttpClient cached;
+  private HttpRequest request;
+
+  @Setup
+  public void setUp() throws IOException, InterruptedException {
+    plain = client(Cache.noop());
+    cached = client(Cache.newInMemoryCacheBuilder().build());
+    request = HttpRequest.newBuilder(URI.create("https://example.com/resource"))
+        .header("Accept", "application/json")
+        .build();
+
+    // make the cached client serve the request from the cache
+    cached.send(request, BodyHandlers.ofString());
+  }
+
+  private static HttpClient client(Cache cache) {
+    var delegate = (HttpClient.Builder) Proxy.newProxyInstance(PipelineBenchmark.class.getClassLoader(),
+        new Class<?>[]{HttpClient.Builder.class},
+        (proxy, method, args) -> method.getName().equals("build") ? new ImmediateHttpClient() : proxy);
+
+    return new ExtendedHttpClient.Builder(delegate)
+        .transparentEncoding(true)
+        .defaultHeader("X-Client", "http-client-ext")
+        .cache(cache)
+        .build();
+  }
+
+  @Benchmark
+  public String noCache() throws IOException, InterruptedException {
+    return plain.send(request, BodyHandlers.ofString()).body();
+  }
+
+  @Benchmark
+  public String cacheHit() throws IOException, InterruptedException {
+    return cached.send(request, BodyHandlers.ofString()).body();
+  }
+
+  /**
+   * The client responding to every request with the same cacheable response without any I/O.
+   */
+  private static class ImmediateHttpClient extends HttpClient {
+    private static final byte[] BODY = "{\"id\":1,\"name\":\"resource\"}".getBytes(StandardCharsets.UTF_8);
+    private static final HttpResponse.ResponseInfo INFO = ImmutableResponseInfo.builder()
+        .statusCode(200)
+        .version(Version.HTTP_1_1)
+        .headers(HttpHeaders.of(Map.of(
+            "Cache-Control", List.of("max-age=86400"),
+            "Content-Type", List.of("application/json")
+        ), (n, v) -> true))
+        .build();
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> responseBodyHandler) {
+      return sendAsync(request, responseBodyHandler).join();
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, BodyHandler<T> responseBodyHandler) {
+      var subscriber = responseBodyHandler.apply(INFO);
+      subscriber.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+      });
+      subscriber.onNext(List.of(ByteBuffer.wrap(BODY)));
+      subscriber.onComplete();
+
+      return subscriber.getBody()
+          .<HttpResponse<T>>thenApply(body -> StaticHttpResponse.<T>builder()
+              .statusCode(INFO.statusCode())
+              .request(request)
+              .headers(INFO.headers())
+              .uri(request.uri())
+              .version(INFO.version())
+              .body(body)
+              .build())
+          .toCompletableFuture();
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, BodyHandler<T> responseBodyHandler,
+                                                            PushPromiseHandler<T> pushPromiseHandler) {
+      return sendAsync(request, responseBodyHandler);
+    }
+
+    @Override
+    public Optional<CookieHandler> cookieHandler() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Optional<Duration> connectTimeout() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Redirect followRedirects() {
+      return Redirect.NEVER;
+    }
+
+    @Override
+    public Optional<ProxySelector> proxy() {
+      return Optional.empty();
+    }
+
+    @Override
+    public SSLContext sslContext() {
+      return null;
+    }
+
+    @Override
+    public SSLParameters sslParameters() {
+      return null;
+    }
+
+    @Override
+    public Optional<Authenticator> authenticator() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Version version() {
+      return Version.HTTP_1_1;
+    }
+
+    @Override
+    public Optional<Executor> executor() {
+      return Optional.empty();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import io.github.nstdio.http.ext.Cache.CacheEntry;
+import io.github.nstdio.http.ext.InMemoryCache.InMemoryCacheEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Measures the lookup of the response variant stored under the URI that has the given number of variants. Variants are
+ * requested round-robin, so every hit is the least recently used one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MILLISECONDS)
+@Fork(value = 1, warmups = 1)
+@Warmup(time = 3, iterations = 2)
+@Measurement(iterations = 4, time = 5)
+public class VaryLookupBenchmark {
+  @Param({"1", "10", "100"})
+  public int variants;
+
+  private InMemoryCache cache;
+  private HttpRequest[] requests;
+  private HttpRequest missing;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    cache = new InMemoryCache(variants * 2, -1);
+
+    var uri = URI.create("https://example.com/resource");
+    var clock = Clock.systemUTC();
+    var info = ImmutableResponseInfo.builder()
+        .statusCode(200)
+        .headers(HttpHeaders.of(Map.of("Vary", List.of("Accept-Language, Authorization")), Headers.ALLOW_ALL))
+        .version(HttpClient.Version.HTTP_1_1)
+        .build();
+
+    requests = new HttpRequest[variants];
+    for (int i = 0; i < variants; i++) {
+      var request = request(uri, i);
+      cache.put(request, new InMemoryCacheEntry(new byte[64], CacheEntryMetadata.of(0, 0, info, request, clock)));
+      requests[i] = request(uri, i);
+    }
+
+    missing = request(uri, variants);
+  }
+
+  private static HttpRequest request(URI uri, int i) {
+    return HttpRequest.newBuilder(uri)
+        .header("Accept-Language", "lang-" + i)
+        .header("Authorization", "Bearer token-" + i)
+        .build();
+  }
+
+  @Benchmark
+  public CacheEntry hit() {
+    var request = requests[next];
+    next = next + 1 == variants ? 0 : next + 1;
+
+    return cache.get(request);
+  }
+
+  @Benchmark
+  public CacheEntry miss() {
+    return cache.get(missing);
+  }
+}
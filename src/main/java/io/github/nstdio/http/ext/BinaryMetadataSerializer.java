@@ -73,6 +73,10 @@ class BinaryMetadataSerializer implements MetadataSerializer {
       this.metadata = metadata;
     }
 
+    CacheEntryMetadata metadata() {
+      return metadata;
+    }
+
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
       out.writeLong(metadata.requestTime());
@@ -49,6 +49,10 @@ class ByteArraySubscription<T> implements Subscription {
     return new ByteArraySubscription<>(subscriber, DirectExecutor.INSTANCE, () -> bytes, o -> List.of(ByteBuffer.wrap(o).asReadOnlyBuffer()));
   }
 
+  static ByteArraySubscription<List<ByteBuffer>> ofByteBufferList(Subscriber<List<ByteBuffer>> subscriber, Supplier<byte[]> bytes) {
+    return new ByteArraySubscription<>(subscriber, DirectExecutor.INSTANCE, bytes, o -> List.of(ByteBuffer.wrap(o).asReadOnlyBuffer()));
+  }
+
   static ByteArraySubscription<? super ByteBuffer> ofByteBuffer(Subscriber<? super ByteBuffer> subscriber, Supplier<byte[]> bytes, Executor executor) {
     return new ByteArraySubscription<>(subscriber, executor, bytes, ByteBuffer::wrap);
   }
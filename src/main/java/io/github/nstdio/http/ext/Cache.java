@@ -20,6 +20,8 @@ import javax.crypto.Cipher;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse.BodySubscriber;
 import java.nio.ByteBuffer;
@@ -29,6 +31,9 @@ import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Flow.Subscriber;
 import java.util.function.Consumer;
 
@@ -56,6 +61,15 @@ public interface Cache extends Closeable {
     return new DiskCacheBuilder();
   }
 
+  /**
+   * Creates a new {@code HybridCacheBuilder} instance.
+   *
+   * @return the new {@code HybridCacheBuilder}.
+   */
+  static HybridCacheBuilder newHybridCacheBuilder() {
+    return new HybridCacheBuilder();
+  }
+
   /**
    * Gets the {@code Cache} effectively does not do anything.
    *
@@ -102,6 +116,45 @@ public interface Cache extends Closeable {
    */
   void evictAll();
 
+  /**
+   * Evicts all cache entries with cache key starting with the key of {@code prefix}. The keys are compared as strings,
+   * so {@code https://example.com/v2} matches {@code https://example.com/v2/users} and {@code https://example.com/v20}
+   * as well. The cost is proportional to the number of evicted entries rather than the size of the cache.
+   *
+   * <p>The default implementation evicts all entries, since the keys are not known to the cache.
+   *
+   * @param prefix The URI prefix.
+   *
+   * @see CacheKeyStrategy
+   */
+  default void evictByPrefix(URI prefix) {
+    evictAll();
+  }
+
+  /**
+   * Evicts all cache entries of requests to {@code host} over HTTP or HTTPS on any port. The host is compared as it
+   * appears in the cache key, that is, in lower case when keys are {@link CacheKeyStrategy#normalized(String...)}.
+   *
+   * <p>The default implementation evicts all entries, since the keys are not known to the cache.
+   *
+   * @param host The host.
+   */
+  default void evictByHost(String host) {
+    evictAll();
+  }
+
+  /**
+   * Evicts all cache entries of responses tagged with any of {@code tags} by {@code Surrogate-Key} or
+   * {@code Cache-Tag} header.
+   *
+   * <p>The default implementation evicts all entries, since the tags are not known to the cache.
+   *
+   * @param tags The tags.
+   */
+  default void evictByTag(String... tags) {
+    evictAll();
+  }
+
   /**
    * Gets the statistics for this cache.
    *
@@ -121,6 +174,16 @@ public interface Cache extends Closeable {
    */
   <T> Writer<T> writer(CacheEntryMetadata metadata);
 
+  /**
+   * Writes the entries of this cache to the snapshot file set by {@link InMemoryCacheBuilder#snapshot(Path)}, so the
+   * cache built with the same file after restart starts with them. The snapshot is also written on {@link #close()}.
+   * Does nothing if the cache has no snapshot file.
+   *
+   * @throws IOException When the snapshot cannot be written.
+   */
+  default void snapshot() throws IOException {
+  }
+
   interface Writer<T> {
     /**
      * The body subscriber to collect response body.
@@ -159,6 +222,23 @@ public interface Cache extends Closeable {
     Cache build();
   }
 
+  /**
+   * The policy deciding which entries to evict when cache reaches its limits.
+   */
+  enum EvictionPolicy {
+    /**
+     * Evicts the least recently used entries.
+     */
+    LRU,
+    /**
+     * The Window TinyLFU policy. New entries are admitted to the main cache region only when they are accessed more
+     * often than the entries they would replace, so the frequently used entries are not flushed out by the scans over
+     * large number of one-off URIs. The frequencies are estimated by compact sketch and are periodically aged to adapt to
+     * changing access patterns.
+     */
+    W_TINY_LFU
+  }
+
   interface CacheStats {
     /**
      * The number the cache serves stored response.
@@ -173,18 +253,347 @@ public interface Cache extends Closeable {
      * @return The number the cache does not have stored response which resulted in network call.
      */
     long miss();
+
+    /**
+     * The number of entries removed from the cache for the {@code cause}. The entries replaced by the newer responses
+     * are not counted.
+     *
+     * @param cause The cause of removal.
+     *
+     * @return The number of removed entries.
+     */
+    default long evictions(EvictionCause cause) {
+      return 0;
+    }
+
+    /**
+     * The number of body bytes of stored responses served by the cache, as stored.
+     *
+     * @return The number of bytes served.
+     */
+    default long bytesServed() {
+      return 0;
+    }
+
+    /**
+     * The number of body bytes of responses stored by the cache, as stored.
+     *
+     * @return The number of bytes written.
+     */
+    default long bytesWritten() {
+      return 0;
+    }
+
+    /**
+     * The number the stored response is served after the server confirms it with {@code 304 Not Modified}. Such
+     * responses are also counted as {@link #hit()}.
+     *
+     * @return The number of successful revalidations.
+     */
+    default long revalidations() {
+      return 0;
+    }
+
+    /**
+     * The number the stale response is served in place of server error as allowed by {@code stale-if-error}. Such
+     * responses are also counted as {@link #hit()}.
+     *
+     * @return The number of stale responses served on error.
+     */
+    default long staleIfErrorHits() {
+      return 0;
+    }
+
+    /**
+     * The number of {@code 504 Gateway Timeout} responses given to the requests with {@code only-if-cached} directive
+     * when the cache has no fresh response.
+     *
+     * @return The number of forced-cache misses.
+     */
+    default long gatewayTimeouts() {
+      return 0;
+    }
+
+    /**
+     * The number of entries the cache holds now.
+     *
+     * @return The number of entries.
+     */
+    default long entryCount() {
+      return 0;
+    }
+
+    /**
+     * The number of bytes the entries take now as counted against the cache size.
+     *
+     * @return The number of bytes.
+     *
+     * @see ConstrainedCacheBuilder#weigher(Weigher)
+     */
+    default long bytes() {
+      return 0;
+    }
+
+    /**
+     * The time taken to look up the stored response.
+     *
+     * @return The lookup latency or empty {@code Optional} if not tracked.
+     */
+    default Optional<LatencyStats> lookupLatency() {
+      return Optional.empty();
+    }
+
+    /**
+     * The time taken to read response bodies from disk.
+     *
+     * @return The disk read latency or empty {@code Optional} if nothing was read from disk.
+     */
+    default Optional<LatencyStats> diskReadLatency() {
+      return Optional.empty();
+    }
+
+    /**
+     * The statistics of the off-heap storage of response bodies.
+     *
+     * @return The off-heap statistics or empty {@code Optional} if bodies are stored on heap.
+     *
+     * @see InMemoryCacheBuilder#offHeap(boolean)
+     */
+    default Optional<OffHeapStats> offHeap() {
+      return Optional.empty();
+    }
+
+    /**
+     * The statistics of the size adjusted to the heap occupancy.
+     *
+     * @return The capacity statistics or empty {@code Optional} if the size is fixed.
+     *
+     * @see InMemoryCacheBuilder#adaptiveSize(double)
+     */
+    default Optional<CapacityStats> capacity() {
+      return Optional.empty();
+    }
+
+    /**
+     * The statistics of each tier of the multi-tier cache in lookup order. The hits of a tier are the lookups it served
+     * and the misses are the lookups it passed to the next tier.
+     *
+     * @return The statistics of tiers or empty list for a single-tier cache.
+     *
+     * @see Cache#newHybridCacheBuilder()
+     */
+    default List<CacheStats> tiers() {
+      return List.of();
+    }
+
+    /**
+     * The statistics of each partition with its own limits by partition name. The hits of a partition are the lookups
+     * it served and the misses are the lookups of its requests it did not serve.
+     *
+     * @return The statistics of partitions or empty map if the cache is not partitioned.
+     *
+     * @see InMemoryCacheBuilder#partition(String, int, long)
+     */
+    default Map<String, CacheStats> partitions() {
+      return Map.of();
+    }
+  }
+
+  /**
+   * The cause the entry is removed from the cache for.
+   *
+   * @see CacheStats#evictions(EvictionCause)
+   */
+  enum EvictionCause {
+    /**
+     * Removed to make room within the size limit.
+     */
+    SIZE,
+    /**
+     * Removed to make room within the limit on the number of entries.
+     */
+    COUNT,
+    /**
+     * Removed after its freshness lifetime ended.
+     */
+    EXPIRED,
+    /**
+     * Removed by the {@code evict} methods, including invalidation by unsafe requests.
+     */
+    EXPLICIT
+  }
+
+  /**
+   * The statistics of the direct memory arena keeping response bodies off-heap. The memory is reserved in slabs and
+   * handed out in power of two blocks, so the difference between {@link #allocated()} and {@link #stored()} is lost to
+   * rounding, while the difference between {@link #reserved()} and {@link #allocated()} is kept for reuse.
+   */
+  interface OffHeapStats {
+    /**
+     * The maximum number of bytes the arena can reserve.
+     *
+     * @return The maximum number of bytes the arena can reserve or {@code -1} if unbounded.
+     */
+    long budget();
+
+    /**
+     * The number of bytes of direct memory reserved by the arena.
+     *
+     * @return The number of reserved bytes.
+     */
+    long reserved();
+
+    /**
+     * The number of bytes in blocks currently holding response bodies.
+     *
+     * @return The number of allocated bytes.
+     */
+    long allocated();
+
+    /**
+     * The number of response body bytes stored.
+     *
+     * @return The number of stored bytes.
+     */
+    long stored();
+
+    /**
+     * The share of allocated bytes not holding the body bytes due to block size rounding.
+     *
+     * @return The value between {@code 0} and {@code 1}.
+     */
+    default double fragmentation() {
+      long allocated = allocated();
+      return allocated == 0 ? 0 : (double) (allocated - stored()) / allocated;
+    }
+  }
+
+  /**
+   * The statistics of the cache size adjusted to the heap occupancy. The size is shrunk while the old generation stays
+   * occupied above the watermark after garbage collections, and grows back to {@link #ceiling()} once it is not.
+   */
+  interface CapacityStats {
+    /**
+     * The configured size.
+     *
+     * @return The maximum number of bytes the cache can take.
+     */
+    long ceiling();
+
+    /**
+     * The size the cache can take now.
+     *
+     * @return The current maximum number of bytes.
+     */
+    long current();
+
+    /**
+     * The number of times the size was shrunk.
+     *
+     * @return The number of shrinks.
+     */
+    long shrinks();
+
+    /**
+     * The number of times the size was grown back.
+     *
+     * @return The number of grows.
+     */
+    long grows();
   }
 
   /**
    * The builder for in memory cache.
    */
   class InMemoryCacheBuilder extends ConstrainedCacheBuilder<InMemoryCacheBuilder> {
+    boolean offHeap;
+    int compressionThreshold = -1;
+    Path snapshot;
+    double highWatermark;
+
     InMemoryCacheBuilder() {
     }
 
+    /**
+     * Sets whether response bodies should be stored in direct memory instead of the Java heap. Only the metadata and
+     * small handles then stay on heap, which keeps large caches from prolonging garbage collection pauses. The direct
+     * memory is reserved in slabs up to slightly more than {@link #size(long)} and is reused but never returned while
+     * the cache is reachable. Default is {@code false}.
+     *
+     * @param offHeap Whether to store response bodies off-heap.
+     *
+     * @return builder itself.
+     *
+     * @see CacheStats#offHeap()
+     */
+    public InMemoryCacheBuilder offHeap(boolean offHeap) {
+      this.offHeap = offHeap;
+      return this;
+    }
+
+    /**
+     * Sets the minimum length of response body to be compressed with deflate before it is stored. Bodies are
+     * decompressed on each cache hit, and the compressed length counts against {@link #size(long)}, so compressible
+     * responses like JSON or HTML take several times less memory. Bodies that do not get smaller are stored as is.
+     * Cannot be combined with {@link #offHeap(boolean)}. Default is {@code -1}, meaning no compression.
+     *
+     * @param compressionThreshold The minimum body length in bytes, negative to disable compression.
+     *
+     * @return builder itself.
+     */
+    public InMemoryCacheBuilder compressionThreshold(int compressionThreshold) {
+      this.compressionThreshold = compressionThreshold;
+      return this;
+    }
+
+    /**
+     * Sets the file keeping the cache entries between restarts. The entries along with their recency order are written
+     * to the file on {@link Cache#close()} and {@link Cache#snapshot()}, and loaded back when the cache is built. The
+     * entries that are neither fresh nor can be revalidated are not loaded. The file that cannot be read is ignored.
+     *
+     * @param snapshot The snapshot file.
+     *
+     * @return builder itself.
+     */
+    public InMemoryCacheBuilder snapshot(Path snapshot) {
+      this.snapshot = requireNonNull(snapshot);
+      return this;
+    }
+
+    /**
+     * Makes the cache shrink while the heap is under pressure instead of holding on to {@link #size(long)} bytes until
+     * the JVM runs out of memory. After each garbage collection that leaves the old generation occupied above
+     * {@code highWatermark} the size is halved down to the sixteenth of the configured one, and the eldest entries are
+     * evicted to fit. Once the occupancy drops below the four fifths of {@code highWatermark} the size grows back
+     * gradually. Requires {@link #size(long)} to be set.
+     *
+     * @param highWatermark The share of old generation occupancy, between {@code 0} exclusive and {@code 1} inclusive.
+     *
+     * @return builder itself.
+     *
+     * @see CacheStats#capacity()
+     */
+    public InMemoryCacheBuilder adaptiveSize(double highWatermark) {
+      checkArgument(highWatermark > 0 && highWatermark <= 1, "The watermark must be in (0, 1] range.");
+      this.highWatermark = highWatermark;
+      return this;
+    }
+
     @Override
     public Cache build() {
-      return build(new InMemoryCache(maxItems, size));
+      checkState(!offHeap || compressionThreshold < 0, "Off-heap storage does not support compression.");
+      checkState(highWatermark == 0 || size > 0, "Adaptive size requires the size to be set.");
+
+      var arena = offHeap ? new SlabArena(size) : null;
+      var pressure = highWatermark > 0 ? MemoryPressure.monitor(size, highWatermark) : null;
+      var cache = build((items, bytes) -> new InMemoryCache(items, bytes, evictionPolicy, keyStrategy, weigher, arena,
+          compressionThreshold, pressure));
+      if (snapshot == null) {
+        return cache;
+      }
+
+      Snapshot.load(snapshot, cache, maxStale);
+      return new SnapshotCache(cache, snapshot);
     }
   }
 
@@ -193,6 +602,7 @@ public interface Cache extends Closeable {
    */
   class DiskCacheBuilder extends ConstrainedCacheBuilder<DiskCacheBuilder> {
     Path dir;
+    Executor executor;
 
     DiskCacheBuilder() {
     }
@@ -209,6 +619,21 @@ public interface Cache extends Closeable {
       return this;
     }
 
+    /**
+     * Sets the executor writing metadata files and deleting the files of evicted entries. The files of entries evicted
+     * by a single cache operation are deleted by a single task submitted after the operation. The executor is expected
+     * to run tasks in submission order and is not shut down by the cache. Default is a single daemon thread shared
+     * by all segments.
+     *
+     * @param executor The executor for file operations.
+     *
+     * @return builder itself.
+     */
+    public DiskCacheBuilder executor(Executor executor) {
+      this.executor = requireNonNull(executor);
+      return this;
+    }
+
     /**
      * Creates a new {@code EncryptedDiskCacheBuilder} instance which will create {@link Cache} that stores all cache
      * files encrypted by provided keys.
@@ -230,7 +655,13 @@ public interface Cache extends Closeable {
       var streamFactory = newStreamFactory();
       var serializer = MetadataSerializer.findAvailable(streamFactory);
 
-      return build(new DiskCache(size, maxItems, serializer, streamFactory, dir));
+      var executor = this.executor != null ? this.executor : DiskCache.newExecutor();
+      var cache = partitioned((items, bytes) ->
+          new DiskCache(bytes, items, evictionPolicy, keyStrategy, weigher, serializer, streamFactory, dir,
+              executor));
+      DiskCache.restore(cache, serializer, streamFactory, dir);
+
+      return filtering(cache);
     }
   }
 
@@ -246,8 +677,17 @@ public interface Cache extends Closeable {
 
     EncryptedDiskCacheBuilder(DiskCacheBuilder b) {
       this.dir = b.dir;
+      this.executor = b.executor;
       this.size = b.size;
       this.maxItems = b.maxItems;
+      this.concurrencyLevel = b.concurrencyLevel;
+      this.concurrentReads = b.concurrentReads;
+      this.evictionPolicy = b.evictionPolicy;
+      this.keyStrategy = b.keyStrategy;
+      this.weigher = b.weigher;
+      this.maxStale = b.maxStale;
+      this.partitioner = b.partitioner;
+      this.partitions.putAll(b.partitions);
       this.responseFilter = b.responseFilter;
       this.requestFilter = b.requestFilter;
     }
@@ -351,4 +791,156 @@ public interface Cache extends Closeable {
       return new EncryptedStreamFactory(delegate, publicKey, privateKey, cipherAlgorithm, provider);
     }
   }
+
+  /**
+   * The builder for two-tier cache keeping the hot entries in memory in front of the larger persistent cache. Entries
+   * evicted from memory are moved to disk, and the ones frequently served from disk are moved back to memory. The
+   * {@link #maxItems(int)} and {@link #size(long)} limit the disk tier, while the memory tier is limited by
+   * {@link #memoryMaxItems(int)} and {@link #memorySize(long)}. The remaining options apply to both tiers.
+   */
+  class HybridCacheBuilder extends ConstrainedCacheBuilder<HybridCacheBuilder> {
+    DiskCacheBuilder disk = new DiskCacheBuilder();
+    int memoryMaxItems = 1 << 10;
+    long memorySize = 16 * 1024 * 1024;
+    long maxMemoryBodySize = 1024 * 1024;
+    long minDiskBodySize = 1024;
+    int promotionFrequency = 2;
+
+    HybridCacheBuilder() {
+    }
+
+    /**
+     * Sets the directory to store cache files of the disk tier.
+     *
+     * @param dir The directory to store cache files.
+     *
+     * @return builder itself.
+     */
+    public HybridCacheBuilder dir(Path dir) {
+      disk.dir(dir);
+      return this;
+    }
+
+    /**
+     * Sets the executor writing metadata files and deleting the files of evicted entries of the disk tier.
+     *
+     * @param executor The executor for file operations.
+     *
+     * @return builder itself.
+     *
+     * @see DiskCacheBuilder#executor(Executor)
+     */
+    public HybridCacheBuilder executor(Executor executor) {
+      disk.executor(executor);
+      return this;
+    }
+
+    /**
+     * Sets the builder providing the storage of the disk tier: the directory, the executor and, for the
+     * {@link DiskCacheBuilder#encrypted() encrypted} one, the keys to encrypt the files with. Replaces the directory and
+     * the executor set before. The limits and the remaining options of {@code disk} are not used, since they are set by
+     * this builder.
+     *
+     * @param disk The disk cache builder.
+     *
+     * @return builder itself.
+     */
+    public HybridCacheBuilder disk(DiskCacheBuilder disk) {
+      this.disk = requireNonNull(disk);
+      return this;
+    }
+
+    /**
+     * The maximum number of entries in the memory tier. Default is 1024.
+     *
+     * @param memoryMaxItems The maximum number of entries in memory. Should be positive.
+     *
+     * @return builder itself.
+     */
+    public HybridCacheBuilder memoryMaxItems(int memoryMaxItems) {
+      checkArgument(memoryMaxItems > 0, "memoryMaxItems should be positive");
+
+      this.memoryMaxItems = memoryMaxItems;
+      return this;
+    }
+
+    /**
+     * The amount of response body bytes allowed to be stored in the memory tier. Negative value means no memory
+     * restriction is made. Default is 16 MiB.
+     *
+     * @param memorySize The maximum size in bytes. Negative for no size restriction.
+     *
+     * @return builder itself.
+     */
+    public HybridCacheBuilder memorySize(long memorySize) {
+      this.memorySize = memorySize;
+      return this;
+    }
+
+    /**
+     * Sets the maximum response body size to be kept in memory. Larger bodies are stored on disk only. Default is 1
+     * MiB.
+     *
+     * @param maxMemoryBodySize The maximum body size in bytes.
+     *
+     * @return builder itself.
+     */
+    public HybridCacheBuilder maxMemoryBodySize(long maxMemoryBodySize) {
+      this.maxMemoryBodySize = maxMemoryBodySize;
+      return this;
+    }
+
+    /**
+     * Sets the minimum response body size to be stored on disk. Smaller bodies are kept in memory only and are
+     * discarded once evicted from it. Default is 1 KiB.
+     *
+     * @param minDiskBodySize The minimum body size in bytes.
+     *
+     * @return builder itself.
+     */
+    public HybridCacheBuilder minDiskBodySize(long minDiskBodySize) {
+      this.minDiskBodySize = minDiskBodySize;
+      return this;
+    }
+
+    /**
+     * Sets how many times the entry should be served from disk, as estimated over the recent requests, to be moved back
+     * to memory. Default is 2.
+     *
+     * @param promotionFrequency The number of disk hits. Should be positive and not greater than 15, the largest
+     *                           frequency the estimate counts up to.
+     *
+     * @return builder itself.
+     */
+    public HybridCacheBuilder promotionFrequency(int promotionFrequency) {
+      checkArgument(promotionFrequency > 0, "promotionFrequency should be positive");
+      checkArgument(promotionFrequency <= FrequencySketch.MAX_FREQUENCY, "promotionFrequency should not exceed 15");
+
+      this.promotionFrequency = promotionFrequency;
+      return this;
+    }
+
+    @Override
+    public Cache build() {
+      var dir = this.disk.dir;
+      checkState(dir != null, "dir cannot be null");
+
+      var streamFactory = this.disk.newStreamFactory();
+      var serializer = MetadataSerializer.findAvailable(streamFactory);
+
+      var executor = this.disk.executor != null ? this.disk.executor : DiskCache.newExecutor();
+      var disk = partitioned((items, bytes) ->
+          new DiskCache(bytes, items, evictionPolicy, keyStrategy, weigher, serializer, streamFactory, dir,
+              executor));
+      DiskCache.restore(disk, serializer, streamFactory, dir);
+
+      var cache = new HybridCache(overflowListener -> segmented(memoryMaxItems, memorySize, (items, bytes) -> {
+        var memory = new InMemoryCache(items, bytes, evictionPolicy, keyStrategy, weigher, null, -1, null);
+        memory.addOverflowListener(overflowListener);
+        return memory;
+      }), disk, keyStrategy, maxMemoryBodySize, minDiskBodySize, promotionFrequency, memoryMaxItems);
+
+      return filtering(cache);
+    }
+  }
 }
@@ -24,6 +24,7 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.github.nstdio.http.ext.Headers.HEADER_DATE;
 import static io.github.nstdio.http.ext.Headers.HEADER_ETAG;
@@ -37,8 +38,13 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 public final class CacheEntryMetadata {
   private final HttpRequest request;
   private final Clock clock;
+  /**
+   * The number of times the response is served from the cache since it is received or revalidated.
+   */
+  private final AtomicInteger hits = new AtomicInteger();
 
   private HttpHeaders varyHeaders;
+  private VaryKey varyKey;
   private CacheControl responseCacheControl;
 
   private Optional<Instant> date;
@@ -48,6 +54,7 @@ public final class CacheEntryMetadata {
 
   private long maxAge;
   private long ageHeaderValue;
+  private long staleAt;
 
   private ResponseInfo response;
   private long requestTimeMs;
@@ -75,6 +82,7 @@ public final class CacheEntryMetadata {
     var responseHeaders = response.headers();
 
     varyHeaders = Headers.varyHeaders(requestHeaders, responseHeaders);
+    varyKey = VaryKey.of(requestHeaders, responseHeaders);
 
     responseCacheControl = CacheControl.of(responseHeaders);
 
@@ -85,6 +93,23 @@ public final class CacheEntryMetadata {
 
     maxAge = calculateFreshnessLifetime() * 1000;
     ageHeaderValue = responseHeaders.firstValueAsLong("Age").orElse(0) * 1000;
+    staleAt = calculateStaleAt();
+  }
+
+  /**
+   * Calculates the time when the {@link #age(TimeUnit)} exceeds the freshness lifetime. The response with validators can
+   * be revalidated after that time and the response that was never fresh is stored for revalidation only, so neither of
+   * them expires and {@link Long#MAX_VALUE} is returned for them.
+   */
+  private long calculateStaleAt() {
+    if (maxAge <= 0 || lastModified.isPresent() || etag().isPresent()) {
+      return Long.MAX_VALUE;
+    }
+
+    long apparentAge = date.map(d -> Math.max(0, responseTimeMs - d.toEpochMilli())).orElse(0L);
+    long correctedInitialAge = Math.max(apparentAge, ageHeaderValue + responseTimeMs - requestTimeMs);
+
+    return responseTimeMs - correctedInitialAge + maxAge;
   }
 
   private long calculateFreshnessLifetime() {
@@ -159,6 +184,10 @@ public final class CacheEntryMetadata {
     return varyHeaders;
   }
 
+  VaryKey varyKey() {
+    return varyKey;
+  }
+
   boolean isFresh(CacheControl requestCacheControl) {
     long max;
     if ((max = maxAge) <= 0) {
@@ -210,6 +239,35 @@ public final class CacheEntryMetadata {
     return age(MILLISECONDS) - maxAge;
   }
 
+  /**
+   * The time in milliseconds after which the response can neither be served from cache nor revalidated, or
+   * {@link Long#MAX_VALUE} if there is no such time. The stale response without validators is served only for the
+   * longer of {@code stale-if-error} and {@code stale-while-revalidate} response directives, or to the request with
+   * {@code max-stale} unless the response has {@code must-revalidate}. Since {@code max-stale} is not bounded, it is
+   * honored only up to the {@code maxStale} ceiling. Without the ceiling such response expires once neither
+   * {@code stale-if-error} nor {@code stale-while-revalidate} applies, and requests with {@code max-stale} past that
+   * point miss.
+   *
+   * @param maxStale The longest staleness in milliseconds served to requests with {@code max-stale}, negative if not
+   *                 configured.
+   */
+  long expiresAt(long maxStale) {
+    if (staleAt == Long.MAX_VALUE) {
+      return Long.MAX_VALUE;
+    }
+
+    long staleFor = Math.max(0, Math.max(
+        responseCacheControl.staleIfError(MILLISECONDS),
+        responseCacheControl.staleWhileRevalidate(MILLISECONDS)
+    ));
+    if (maxStale > 0 && !responseCacheControl.mustRevalidate()) {
+      staleFor = Math.max(staleFor, maxStale);
+    }
+
+    long expiresAt = staleAt + staleFor;
+    return expiresAt < staleAt ? Long.MAX_VALUE : expiresAt;
+  }
+
   long requestTime() {
     return requestTimeMs;
   }
@@ -245,10 +303,20 @@ public final class CacheEntryMetadata {
     responseHeaders.map().forEach(headersBuilder::set);
 
     response = ImmutableResponseInfo.toBuilder(response).headers(headersBuilder.build()).build();
+    hits.set(0);
 
     initialize();
   }
 
+  /**
+   * Records the response is served from the cache.
+   *
+   * @return The number of hits since the response is received or revalidated.
+   */
+  int recordHit() {
+    return hits.incrementAndGet();
+  }
+
   boolean isApplicable() {
     return maxAge > 0 || etag().isPresent();
   }
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+/**
+ * The cache key derived by {@link CacheKeyStrategy}. Holds only the key string and its 64-bit hash computed once, so
+ * lookups do not rehash and compare the URI components.
+ */
+final class CacheKey {
+  private final String value;
+  private final long hash;
+
+  private CacheKey(String value) {
+    this.value = value;
+    this.hash = hash64(value);
+  }
+
+  static CacheKey of(String value) {
+    return new CacheKey(value);
+  }
+
+  private static long hash64(String s) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0, len = s.length(); i < len; i++) {
+      h = (h ^ s.charAt(i)) * 0x100000001b3L;
+    }
+
+    // final mixing to spread the low bits
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  long hash64() {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof CacheKey)) return false;
+    CacheKey other = (CacheKey) o;
+    return hash == other.hash && value.equals(other.value);
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (hash ^ (hash >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    return value;
+  }
+}
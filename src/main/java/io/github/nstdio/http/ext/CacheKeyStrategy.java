@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.net.URI;
+import java.util.Set;
+
+/**
+ * The strategy to derive the cache key from the request URI. Requests having equal keys share the cache entries, so
+ * the strategy might be used to collapse URIs that are not equal but identify the same resource.
+ */
+@FunctionalInterface
+public interface CacheKeyStrategy {
+  /**
+   * The strategy using URIs as is. This is the default one.
+   *
+   * @return The strategy using URIs as is.
+   */
+  static CacheKeyStrategy exact() {
+    return URI::toString;
+  }
+
+  /**
+   * The strategy that lower-cases scheme and host, drops the default port, the fragment and query parameters with
+   * given names, and sorts the remaining query parameters by name. The order of parameters with the same name is
+   * preserved.
+   *
+   * @param ignoredParameters The names of query parameters that do not affect the response, for example tracking
+   *                          parameters like {@code utm_source}.
+   *
+   * @return The normalizing strategy.
+   */
+  static CacheKeyStrategy normalized(String... ignoredParameters) {
+    return new NormalizingCacheKeyStrategy(Set.of(ignoredParameters));
+  }
+
+  /**
+   * Derives the key from {@code uri}.
+   *
+   * @param uri The request URI.
+   *
+   * @return The key.
+   */
+  String key(URI uri);
+}
@@ -25,13 +25,15 @@ import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 final class CachedHttpResponse<T> implements HttpResponse<T> {
   private final BodyHandler<T> bodyHandler;
   private final HttpRequest request;
   private final CacheEntry entry;
 
-  private T body;
+  private volatile CompletableFuture<T> body;
 
   CachedHttpResponse(BodyHandler<T> bodyHandler, HttpRequest request, CacheEntry entry) {
     this.bodyHandler = bodyHandler;
@@ -62,14 +64,33 @@ final class CachedHttpResponse<T> implements HttpResponse<T> {
 
   @Override
   public T body() {
-    if (body != null) {
-      return body;
+    var b = body;
+    if (b == null) {
+      body = b = subscribe();
     }
 
+    return b.join();
+  }
+
+  /**
+   * Subscribes the body handler to the entry, on {@code executor} if the entry is read from disk, so the blocking reads
+   * of entry are not made by the caller. The body is served by {@link #body()} afterwards.
+   *
+   * @return The future completed once the body is read.
+   */
+  CompletableFuture<T> readBody(Executor executor) {
+    var b = DiskCache.isDiskEntry(entry)
+        ? CompletableFuture.supplyAsync(this::subscribe, executor).thenCompose(f -> f)
+        : subscribe();
+    body = b;
+    return b;
+  }
+
+  private CompletableFuture<T> subscribe() {
     BodySubscriber<T> sub = bodyHandler.apply(entry.metadata().response());
     entry.subscribeTo(sub);
 
-    return body = sub.getBody().toCompletableFuture().join();
+    return sub.getBody().toCompletableFuture();
   }
 
   @Override
@@ -22,16 +22,29 @@ import java.util.List;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Flow;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 class CachingBodySubscriber<T, C> implements BodySubscriber<T> {
   private final BodySubscriber<T> originalSub;
   private final Consumer<C> finisher;
   private final BodySubscriber<C> cachingSub;
+  private Supplier<FillingBody> fillingFactory;
+  private FillingBody filling;
 
   CachingBodySubscriber(BodySubscriber<T> originalSub, BodySubscriber<C> sub, Consumer<C> finisher) {
+    this(originalSub, sub, finisher, null);
+  }
+
+  /**
+   * @param fillingFactory Creates the body to share the received parts with while they are stored once they start to
+   *                       arrive, returns {@code null} if there is no one to share them with.
+   */
+  CachingBodySubscriber(BodySubscriber<T> originalSub, BodySubscriber<C> sub, Consumer<C> finisher,
+                        Supplier<FillingBody> fillingFactory) {
     this.originalSub = originalSub;
     this.cachingSub = sub;
     this.finisher = finisher;
+    this.fillingFactory = fillingFactory;
   }
 
   @Override
@@ -51,19 +64,43 @@ class CachingBodySubscriber<T, C> implements BodySubscriber<T> {
 
   @Override
   public void onNext(List<ByteBuffer> item) {
+    var filling = filling();
+    if (filling != null) {
+      filling.append(Buffers.duplicate(item));
+    }
     cachingSub.onNext(item);
     originalSub.onNext(Buffers.duplicate(item));
   }
 
   @Override
   public void onError(Throwable throwable) {
+    var filling = filling();
+    if (filling != null) {
+      filling.fail(throwable);
+    }
     cachingSub.onError(throwable);
     originalSub.onError(throwable);
   }
 
   @Override
   public void onComplete() {
+    var filling = filling();
+    if (filling != null) {
+      filling.complete();
+    }
     cachingSub.onComplete();
     originalSub.onComplete();
   }
+
+  /**
+   * Gets the filling body, created by the first signal received after subscription.
+   */
+  private FillingBody filling() {
+    if (fillingFactory != null) {
+      filling = fillingFactory.get();
+      fillingFactory = null;
+    }
+
+    return filling;
+  }
 }
@@ -18,24 +18,33 @@ package io.github.nstdio.http.ext;
 
 import io.github.nstdio.http.ext.Cache.CacheEntry;
 import io.github.nstdio.http.ext.Cache.CacheStats;
+import io.github.nstdio.http.ext.ExtendedHttpClient.Sender;
+import io.github.nstdio.http.ext.RequestCoalescer.Flight;
 
 import java.net.URI;
 import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
 import java.net.http.HttpResponse.BodySubscriber;
 import java.time.Clock;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 import static io.github.nstdio.http.ext.Headers.HEADER_IF_MODIFIED_SINCE;
 import static io.github.nstdio.http.ext.Headers.HEADER_IF_NONE_MATCH;
-import static io.github.nstdio.http.ext.HttpRequests.toBuilder;
 import static io.github.nstdio.http.ext.Responses.gatewayTimeoutResponse;
 import static io.github.nstdio.http.ext.Responses.isSafeRequest;
 import static io.github.nstdio.http.ext.Responses.isSuccessful;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 class CachingInterceptor implements Interceptor {
@@ -43,18 +52,48 @@ class CachingInterceptor implements Interceptor {
 
   private final Cache cache;
   private final Clock clock;
+  private final RequestCoalescer coalescer;
+  private final RefreshAhead refreshAhead;
+  /**
+   * The metadata of entries being revalidated in background.
+   */
+  private final Set<CacheEntryMetadata> revalidating = ConcurrentHashMap.newKeySet();
+  /**
+   * Sends background revalidations through the stages after this interceptor.
+   */
+  private Sender<Void> sender;
+  /**
+   * Serves coalesced requests off the threads completing responses.
+   */
+  private Executor executor;
+  /**
+   * Invalidates the cache on successful response to the unsafe request.
+   */
+  private final FutureHandler<Object> invalidating = FutureHandler.of(r -> shouldInvalidate(r) ? invalidate(r) : r);
 
   CachingInterceptor(Cache cache, Clock clock) {
+    this(cache, clock, null, null);
+  }
+
+  /**
+   * @param coalescer    The tracker of requests filling the cache, {@code null} to send every request missing the
+   *                     cache.
+   * @param refreshAhead The policy of refreshing hot entries before they get stale, {@code null} to never refresh them
+   *                     ahead.
+   */
+  CachingInterceptor(Cache cache, Clock clock, RequestCoalescer coalescer, RefreshAhead refreshAhead) {
     this.cache = cache;
     this.clock = clock;
+    this.coalescer = coalescer;
+    this.refreshAhead = refreshAhead;
   }
 
   private static HttpRequest applyConditions(HttpRequest request, CacheEntryMetadata metadata) {
-    var builder = toBuilder(request);
-    metadata.date().ifPresent(date -> builder.setHeader(HEADER_IF_MODIFIED_SINCE, date));
-    metadata.etag().ifPresent(etag -> builder.setHeader(HEADER_IF_NONE_MATCH, etag));
+    var conditions = new HashMap<String, List<String>>(2);
+    metadata.date().ifPresent(date -> conditions.put(HEADER_IF_MODIFIED_SINCE, List.of(date)));
+    metadata.etag().ifPresent(etag -> conditions.put(HEADER_IF_NONE_MATCH, List.of(etag)));
 
-    return builder.build();
+    return HeaderOverlayRequest.setHeaders(request, conditions);
   }
 
   private static boolean isCacheable(HttpResponse.ResponseInfo info) {
@@ -86,6 +125,22 @@ class CachingInterceptor implements Interceptor {
     return !cc.noStore();
   }
 
+  /**
+   * Sets the sender passing background revalidations through the stages after this interceptor. Responses are not
+   * served stale while revalidating unless it is set.
+   */
+  void setSender(Sender<Void> sender) {
+    this.sender = sender;
+  }
+
+  /**
+   * Sets the executor serving coalesced requests once the response they wait for arrives. The request might be sent
+   * synchronously then, so the executor should allow blocking.
+   */
+  void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
   private static boolean hasConditions(HttpRequest request) {
     return Headers.hasConditions(request.headers());
   }
@@ -98,24 +153,113 @@ class CachingInterceptor implements Interceptor {
       final CacheEntry entry = cacheEntry(ctx);
 
       if (ctx.cacheControl().onlyIfCached()) {
-        return in.withResponse(forcedCacheResponse(ctx, entry));
+        return in.setResponse(forcedCacheResponse(ctx, entry));
       } else if (isFresh(ctx, entry)) {
-        return in.withResponse(createCachedResponse(ctx, entry));
+        if (refreshAhead != null) {
+          refreshIfDue(ctx, entry);
+        }
+        return in.setResponse(createCachedResponse(ctx, entry));
+      } else if (canServeWhileRevalidating(ctx, entry)) {
+        revalidateInBackground(ctx, entry, null);
+        return in.setResponse(createCachedResponse(ctx, entry));
+      } else if (coalescer != null && !ctx.cacheControl().noCache()) {
+        return coalesced(in, entry);
       } else {
-        return sendAndCache(in, entry);
+        return sendAndCache(in, entry, null);
       }
     } else {
-      FutureHandler<T> fn = FutureHandler.of(r -> shouldInvalidate(r) ? invalidate(r) : r);
+      return in.addHandler(invalidating());
+    }
+  }
 
-      return Chain.of(ctx, in.futureHandler().andThen(fn));
+  /**
+   * Whether the stale {@code entry} is within the {@code stale-while-revalidate} window of its response and the request
+   * does not ask for the fresher response.
+   */
+  private boolean canServeWhileRevalidating(RequestContext ctx, CacheEntry entry) {
+    if (entry == null || sender == null) {
+      return false;
+    }
+
+    CacheControl requestCc = ctx.cacheControl();
+    CacheControl responseCc = entry.metadata().responseCacheControl();
+    return !requestCc.noCache() && requestCc.maxAge() == -1 && requestCc.minFresh() == -1
+        && !responseCc.mustRevalidate()
+        && responseCc.staleWhileRevalidate(MILLISECONDS) > entry.metadata().staleFor();
+  }
+
+  /**
+   * Revalidates the frequently served entry in background once it passes the configured part of its freshness
+   * lifetime, unless there are too many refreshes in progress or sent to the host recently.
+   */
+  private void refreshIfDue(RequestContext ctx, CacheEntry entry) {
+    if (sender != null && refreshAhead.onHit(entry.metadata())
+        && !revalidating.contains(entry.metadata())
+        && refreshAhead.tryAcquire(ctx.request().uri().getHost(), clock.millis())) {
+      if (!revalidateInBackground(ctx, entry, refreshAhead::release)) {
+        refreshAhead.release();
+      }
     }
   }
 
+  /**
+   * Sends the request conditional on the {@code entry} through the stages after this interceptor unless the entry is
+   * already being revalidated, so the stages before it are not applied twice. The full response replaces the entry,
+   * while {@code 304 Not Modified} updates it.
+   *
+   * The revalidation that fails is given up silently, since the response is served from the cache anyway.
+   *
+   * @param onComplete The action to run once the revalidation completes or fails to be sent, if any.
+   *
+   * @return {@code false} if the entry is already being revalidated, {@code true} otherwise.
+   */
+  private boolean revalidateInBackground(RequestContext ctx, CacheEntry entry, Runnable onComplete) {
+    CacheEntryMetadata metadata = entry.metadata();
+    if (!revalidating.add(metadata)) {
+      return false;
+    }
+
+    var request = applyConditions(ctx.request(), metadata);
+    var newCtx = ctx.fork(request).setBodyHandler(BodyHandlers.discarding());
+    newCtx.initRequestTime(clock.millis());
+
+    var sendCtx = newCtx.fork(request).setBodyHandler(cacheAware(newCtx, null));
+    CompletableFuture<HttpResponse<Void>> future;
+    try {
+      future = sender.apply(sendCtx);
+    } catch (RuntimeException e) {
+      // the request is rejected before it is sent, for example by the default header supplier
+      revalidating.remove(metadata);
+      if (onComplete != null) {
+        onComplete.run();
+      }
+      return true;
+    }
+
+    future
+        .whenComplete((r, th) -> {
+          try {
+            if (r != null && r.statusCode() == 304) {
+              metadata.update(r.headers(), newCtx.requestTime(), newCtx.responseTime());
+              executeIfTrackable(TrackableCacheStats::trackRevalidation);
+            }
+          } finally {
+            revalidating.remove(metadata);
+            if (onComplete != null) {
+              onComplete.run();
+            }
+          }
+        });
+
+    return true;
+  }
+
   private <T> HttpResponse<T> forcedCacheResponse(RequestContext ctx, CacheEntry entry) {
     final var request = ctx.request();
     CacheEntry forcedEntry = entry == null ? getCacheEntry(request) : entry;
     final HttpResponse<T> response;
     if (forcedEntry == null || !forcedEntry.metadata().isFresh(ctx.cacheControl())) {
+      executeIfTrackable(TrackableCacheStats::trackGatewayTimeout);
       response = gatewayTimeoutResponse(request);
     } else {
       response = createCachedResponse(ctx, forcedEntry);
@@ -125,16 +269,58 @@ class CachingInterceptor implements Interceptor {
 
   }
 
-  private <T> Chain<T> sendAndCache(Chain<T> in, CacheEntry entry) {
+  /**
+   * Sends the request if there is no concurrent request for the same response, otherwise waits for that request to
+   * fill the cache and serves the response being stored as it arrives, or the stored response. The request is sent
+   * anyway if the response is not fresh enough for it once the wait is over.
+   */
+  private <T> Chain<T> coalesced(Chain<T> in, CacheEntry entry) {
+    HttpRequest request = in.request();
+    var vary = entry != null ? entry.metadata().varyKey().forRequest(request) : VaryKey.EMPTY;
+    // requests stored under the same key share the flight, even if their URIs differ
+    Flight flight = coalescer.join(Map.entry(KeyedCache.keyOf(cache, request.uri()), vary));
+    if (flight.isLeader()) {
+      return sendAndCache(in, entry, flight);
+    }
+
+    // the follower serves the response as the request is at this stage
+    RequestContext ctx = in.ctx().fork(request);
+    return sendAndCache(in, entry, null).setSenderDecorator(sender -> sendCtx -> follow(ctx, flight, sender, sendCtx));
+  }
+
+  private <T> CompletableFuture<HttpResponse<T>> follow(RequestContext ctx, Flight flight, Sender<T> sender,
+                                                         RequestContext sendCtx) {
+    // the entry is filled on the thread receiving the leader response, which should not serve the follower
+    return flight.filling().thenComposeAsync(filling -> {
+      // the flight is shared by all variants while nothing is stored
+      if (isFresh(ctx, filling) && isVariantOf(ctx, filling)) {
+        return completedFuture(createCachedResponse(ctx, filling));
+      }
+
+      return flight.landing().thenCompose(v -> {
+        CacheEntry landed = getCacheEntry(ctx.request());
+        if (isFresh(ctx, landed)) {
+          return completedFuture(createCachedResponse(ctx, landed));
+        }
+
+        // the flight may land on the thread completing the leader response or the timer thread, neither should send
+        return CompletableFuture.supplyAsync(() -> sender.apply(sendCtx), executor).thenCompose(r -> r);
+      });
+    }, executor);
+  }
+
+  /**
+   * Sends the request conditional on the {@code entry} if any and stores the response. The request and the body handler
+   * at this stage are forked, so the cached response is served and stored as they are before the next interceptors.
+   */
+  private <T> Chain<T> sendAndCache(Chain<T> in, CacheEntry entry, Flight flight) {
     var metadata = Optional.ofNullable(entry).map(CacheEntry::metadata);
-    var newCtx = metadata
-        .map(m -> applyConditions(in.ctx().request(), m))
-        .map(in.ctx()::withRequest)
-        .orElseGet(in::ctx);
+    var request = metadata.isPresent() ? applyConditions(in.request(), metadata.get()) : in.request();
+    var newCtx = in.ctx().fork(request);
 
-    newCtx.requestTime().compareAndSet(0, clock.millis());
+    newCtx.initRequestTime(clock.millis());
 
-    var bodyHandler = cacheAware(newCtx);
+    var bodyHandler = cacheAware(newCtx, flight);
     FutureHandler<T> handler = (r, th) -> {
       if (r != null) {
         return possiblyCached(newCtx, entry, r);
@@ -148,22 +334,57 @@ class CachingInterceptor implements Interceptor {
       throw Throwables.sneakyThrow(th);
     };
 
-    return Chain.of(newCtx.withBodyHandler(bodyHandler), in.futureHandler().andThen(handler));
+    in.ctx()
+        .setRequest(request)
+        .setBodyHandler(bodyHandler);
+    in.addHandler(handler);
+    if (flight != null) {
+      in.addHandler(landing(flight));
+    }
+
+    return in;
   }
 
-  private <T> BodyHandler<T> cacheAware(RequestContext ctx) {
+  @SuppressWarnings("unchecked")
+  private <T> FutureHandler<T> invalidating() {
+    return (FutureHandler<T>) invalidating;
+  }
+
+  /**
+   * Lands the {@code flight} once the response is received unless it is being stored, in which case the flight lands
+   * after the response is stored.
+   */
+  private static <T> FutureHandler<T> landing(Flight flight) {
+    return (r, th) -> {
+      if (th != null || !flight.isWriting()) {
+        flight.land();
+      }
+      if (r != null) {
+        return r;
+      }
+
+      throw Throwables.sneakyThrow(th);
+    };
+  }
+
+  private <T> BodyHandler<T> cacheAware(RequestContext ctx, Flight flight) {
     return info -> {
-      ctx.responseTime().compareAndSet(0, clock.millis());
+      ctx.initResponseTime(clock.millis());
       BodySubscriber<T> sub = ctx.<T>bodyHandler().apply(info);
 
       if (isCacheable(info)) {
-        var metadata = CacheEntryMetadata.of(ctx.requestTime().get(), ctx.responseTime().get(),
+        var metadata = CacheEntryMetadata.of(ctx.requestTime(), ctx.responseTime(),
             info, ctx.request(), clock);
 
         if (metadata.isApplicable()) {
           trackMiss();
           var writer = cache.writer(metadata);
-          sub = new CachingBodySubscriber<>(sub, writer.subscriber(), writer.finisher());
+          var finisher = landingAfter(writer.finisher(), flight);
+          if (flight != null) {
+            sub = new CachingBodySubscriber<>(sub, writer.subscriber(), finisher, () -> startFilling(flight, metadata));
+          } else {
+            sub = new CachingBodySubscriber<>(sub, writer.subscriber(), finisher);
+          }
         }
       }
 
@@ -171,6 +392,38 @@ class CachingInterceptor implements Interceptor {
     };
   }
 
+  /**
+   * Shares the leader response with the followers as it arrives, unless no one follows the flight by the time the body
+   * starts to arrive. The ones joining afterwards wait for the flight to land instead, so the body is not kept on heap
+   * while nobody reads it.
+   *
+   * @return The body to fill or {@code null} if there are no followers.
+   */
+  private FillingBody startFilling(Flight flight, CacheEntryMetadata metadata) {
+    if (!flight.isFollowed()) {
+      return null;
+    }
+
+    var filling = new FillingBody(executor);
+    flight.fill(filling.entry(metadata));
+    return filling;
+  }
+
+  private static <C> Consumer<C> landingAfter(Consumer<C> finisher, Flight flight) {
+    if (flight == null) {
+      return finisher;
+    }
+
+    flight.writing();
+    return body -> {
+      try {
+        finisher.accept(body);
+      } finally {
+        flight.land();
+      }
+    };
+  }
+
   private <T> HttpResponse<T> invalidate(HttpResponse<T> response) {
     HttpHeaders headers = response.headers();
     URI uri = response.uri();
@@ -183,6 +436,11 @@ class CachingInterceptor implements Interceptor {
           .forEach(cache::evictAll);
     }
 
+    var tags = Headers.tags(headers);
+    if (!tags.isEmpty()) {
+      cache.evictByTag(tags.toArray(new String[0]));
+    }
+
     cache.evictAll(response.request());
 
     return response;
@@ -202,14 +460,25 @@ class CachingInterceptor implements Interceptor {
   }
 
   private CacheEntry getCacheEntry(HttpRequest request) {
-    return cache.get(request);
+    long start = System.nanoTime();
+    CacheEntry entry = cache.get(request);
+    long elapsed = System.nanoTime() - start;
+    executeIfTrackable(stats -> stats.trackLookup(elapsed));
+
+    return entry;
   }
 
   private boolean isFresh(RequestContext ctx, CacheEntry entry) {
-    return Optional.ofNullable(entry)
-        .map(CacheEntry::metadata)
-        .filter(m -> m.isFresh(ctx.cacheControl()))
-        .isPresent();
+    return entry != null && entry.metadata().isFresh(ctx.cacheControl());
+  }
+
+  /**
+   * Whether {@code entry} is the response variant selected by the request, that is, the request has the same values of
+   * the headers nominated by {@code Vary} as the request that received the response.
+   */
+  private static boolean isVariantOf(RequestContext ctx, CacheEntry entry) {
+    VaryKey key = entry.metadata().varyKey();
+    return key.equals(key.forRequest(ctx.request()));
   }
 
   private <T> HttpResponse<T> possiblyCached(RequestContext ctx, CacheEntry entry, HttpResponse<T> r) {
@@ -217,7 +486,8 @@ class CachingInterceptor implements Interceptor {
     if (metadata != null) {
       switch (r.statusCode()) {
         case 304: {
-          metadata.update(r.headers(), ctx.requestTime().get(), ctx.responseTime().get());
+          metadata.update(r.headers(), ctx.requestTime(), ctx.responseTime());
+          executeIfTrackable(TrackableCacheStats::trackRevalidation);
           return createCachedResponse(ctx, entry);
         }
         case 500:
@@ -230,6 +500,7 @@ class CachingInterceptor implements Interceptor {
           );
 
           if (staleIfError > metadata.staleFor()) {
+            executeIfTrackable(TrackableCacheStats::trackStaleIfErrorHit);
             return createCachedResponse(ctx, entry);
           }
 
@@ -245,7 +516,10 @@ class CachingInterceptor implements Interceptor {
   }
 
   private <T> HttpResponse<T> createCachedResponse(RequestContext ctx, CacheEntry entry) {
-    trackHit();
+    executeIfTrackable(stats -> {
+      stats.trackHit();
+      stats.trackBytesServed(Math.max(0, entry.bodySize()));
+    });
     return new CachedHttpResponse<>(ctx.bodyHandler(), ctx.request(), entry);
   }
 
@@ -254,10 +528,6 @@ class CachingInterceptor implements Interceptor {
     executeIfTrackable(TrackableCacheStats::trackMiss);
   }
 
-  private void trackHit() {
-    executeIfTrackable(TrackableCacheStats::trackHit);
-  }
-
   private void executeIfTrackable(Consumer<TrackableCacheStats> action) {
     CacheStats stats = cache.stats();
     if (stats instanceof TrackableCacheStats) {
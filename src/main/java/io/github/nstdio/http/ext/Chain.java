@@ -16,45 +16,106 @@
 
 package io.github.nstdio.http.ext;
 
+import io.github.nstdio.http.ext.ExtendedHttpClient.Sender;
+
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.util.Optional;
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
 
 import static io.github.nstdio.http.ext.Throwables.sneakyThrow;
 
-class Chain<T> {
+/**
+ * The state of the request passing through the segment of interceptors. The chain is created once per segment and
+ * updated in place by each interceptor on the sending thread. The response handlers added by the interceptors are
+ * applied in order by the chain itself, so it is passed to the response future as is.
+ *
+ * @param <T> The response body type.
+ */
+final class Chain<T> implements FutureHandler<T> {
   private final RequestContext ctx;
-  private final FutureHandler<T> futureHandler;
-  private final Optional<HttpResponse<T>> response;
+  private FutureHandler<T>[] handlers;
+  private int handlerCount;
+  private HttpResponse<T> response;
+  private UnaryOperator<Sender<T>> senderDecorator;
 
-  private Chain(RequestContext ctx, FutureHandler<T> futureHandler, Optional<HttpResponse<T>> response) {
+  @SuppressWarnings("unchecked")
+  private Chain(RequestContext ctx, int capacity) {
     this.ctx = ctx;
-    this.futureHandler = futureHandler;
+    this.handlers = (FutureHandler<T>[]) new FutureHandler<?>[capacity];
+  }
+
+  static <T> Chain<T> of(RequestContext ctx) {
+    return new Chain<>(ctx, 2);
+  }
+
+  /**
+   * Creates the chain to pass through the segment of {@code capacity} interceptors, so each of them can add the handler
+   * without growing the chain.
+   */
+  static <T> Chain<T> of(RequestContext ctx, int capacity) {
+    return new Chain<>(ctx, capacity);
+  }
+
+  Chain<T> setResponse(HttpResponse<T> response) {
     this.response = response;
+    return this;
   }
 
-  public static <T> Chain<T> of(RequestContext ctx) {
-    return Chain.of(ctx, (r, th) -> {
-      if (r != null)
-        return r;
-      throw sneakyThrow(th);
-    });
+  Chain<T> setRequest(HttpRequest request) {
+    ctx.setRequest(request);
+    return this;
   }
 
-  public static <T> Chain<T> of(RequestContext ctx, FutureHandler<T> futureHandler) {
-    return new Chain<>(ctx, futureHandler, Optional.empty());
+  /**
+   * Adds the {@code handler} of the response applied after the handlers added before. The handler receives the
+   * exception thrown by the previous one instead of the response.
+   */
+  Chain<T> addHandler(FutureHandler<T> handler) {
+    if (handlerCount == handlers.length) {
+      handlers = Arrays.copyOf(handlers, Math.max(2, handlerCount * 2));
+    }
+    handlers[handlerCount++] = handler;
+    return this;
   }
 
-  public static <T> Chain<T> of(RequestContext ctx, FutureHandler<T> futureHandler, Optional<HttpResponse<T>> response) {
-    return new Chain<>(ctx, futureHandler, response);
+  /**
+   * Makes the request to be sent through the {@code decorator} of the client sender, which can postpone or skip
+   * sending.
+   */
+  Chain<T> setSenderDecorator(UnaryOperator<Sender<T>> decorator) {
+    this.senderDecorator = decorator;
+    return this;
   }
 
-  Chain<T> withResponse(HttpResponse<T> response) {
-    return of(ctx, futureHandler, Optional.of(response));
+  Sender<T> decorate(Sender<T> sender) {
+    return senderDecorator != null ? senderDecorator.apply(sender) : sender;
   }
 
-  Chain<T> withRequest(HttpRequest request) {
-    return of(ctx.withRequest(request), futureHandler, response);
+  @Override
+  public HttpResponse<T> apply(HttpResponse<T> r, Throwable th) {
+    if (handlerCount == 0) {
+      if (r != null)
+        return r;
+      throw sneakyThrow(th);
+    }
+
+    HttpResponse<T> result = r;
+    Throwable failure = th;
+    for (int i = 0, last = handlerCount - 1; i <= last; i++) {
+      try {
+        result = handlers[i].apply(result, failure);
+        failure = th;
+      } catch (Exception e) {
+        if (i == last) {
+          throw sneakyThrow(e);
+        }
+        result = null;
+        failure = e;
+      }
+    }
+
+    return result;
   }
 
   RequestContext ctx() {
@@ -62,10 +123,15 @@ class Chain<T> {
   }
 
   FutureHandler<T> futureHandler() {
-    return this.futureHandler;
+    return this;
   }
 
-  Optional<HttpResponse<T>> response() {
+  /**
+   * Gets the response served by the interceptor instead of sending the request.
+   *
+   * @return The response or {@code null} if the request should be sent.
+   */
+  HttpResponse<T> response() {
     return this.response;
   }
 
@@ -18,41 +18,51 @@ package io.github.nstdio.http.ext;
 
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
 import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 
 import static io.github.nstdio.http.ext.Headers.HEADER_CONTENT_ENCODING;
 import static io.github.nstdio.http.ext.Headers.HEADER_CONTENT_LENGTH;
-import static io.github.nstdio.http.ext.HttpRequests.toBuilder;
 import static java.util.function.Predicate.not;
 import static java.util.stream.Collectors.joining;
 
 class CompressionInterceptor implements Interceptor {
-  @Override
-  public <T> Chain<T> intercept(Chain<T> in) {
-    var handler = decompressingHandler(in.ctx().<T>bodyHandler());
-
-    FutureHandler<T> fn = FutureHandler.of(r -> {
-      List<String> directives = handler.directives(r.headers());
-      if (!directives.isEmpty()) {
-        return removeCompressionHeaders(r, directives);
-      }
+  /**
+   * The {@code Accept-Encoding} header listing the supported encodings, {@code null} if there are none.
+   */
+  private static final Map<String, List<String>> ACCEPT_ENCODING = acceptEncoding();
+  /**
+   * Reads the directives the response is decompressed from. The directives depend only on the response headers, so
+   * the handler removing them is shared by all requests.
+   */
+  private static final DecompressingBodyHandler<Void> DIRECTIVES = decompressingHandler(BodyHandlers.discarding());
+
+  private final FutureHandler<Object> decompressed = FutureHandler.of(r -> {
+    List<String> directives = DIRECTIVES.directives(r.headers());
+    if (!directives.isEmpty()) {
+      return removeCompressionHeaders(r, directives);
+    }
 
-      return r;
-    });
+    return r;
+  });
 
-    RequestContext ctx = in.ctx()
-        .withRequest(preProcessRequest(in.ctx().request()))
-        .withBodyHandler(handler);
+  @Override
+  public <T> Chain<T> intercept(Chain<T> in) {
+    in.ctx()
+        .setRequest(preProcessRequest(in.request()))
+        .setBodyHandler(decompressingHandler(in.ctx().<T>bodyHandler()));
 
-    FutureHandler<T> futureHandler = in.futureHandler().andThen(fn);
-    Optional<HttpResponse<T>> response = in.response();
+    return in.addHandler(decompressed());
+  }
 
-    return Chain.of(ctx, futureHandler, response);
+  @SuppressWarnings("unchecked")
+  private <T> FutureHandler<T> decompressed() {
+    return (FutureHandler<T>) decompressed;
   }
 
-  private HttpRequest preProcessRequest(HttpRequest request) {
+  private static Map<String, List<String>> acceptEncoding() {
     var supported = CompressionFactories.allSupported()
         .stream()
         .filter(not("identity"::equals))
@@ -60,16 +70,18 @@ class CompressionInterceptor implements Interceptor {
         .filter(not("x-compress"::equals))
         .collect(joining(","));
 
-    if (supported.isBlank()) {
+    return supported.isBlank() ? null : Map.of("Accept-Encoding", List.of(supported));
+  }
+
+  private HttpRequest preProcessRequest(HttpRequest request) {
+    if (ACCEPT_ENCODING == null) {
       return request;
     }
 
-    return toBuilder(request)
-        .setHeader("Accept-Encoding", supported)
-        .build();
+    return HeaderOverlayRequest.setHeaders(request, ACCEPT_ENCODING);
   }
 
-  private <T> DecompressingBodyHandler<T> decompressingHandler(HttpResponse.BodyHandler<T> bodyHandler) {
+  private static <T> DecompressingBodyHandler<T> decompressingHandler(HttpResponse.BodyHandler<T> bodyHandler) {
     return new DecompressingBodyHandler<>(bodyHandler, DecompressingBodyHandler.Options.LENIENT);
   }
 
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * The {@code Cache} that does not take the lock on {@link #get(HttpRequest)}. Lookups go through the read view of the
+ * underlying {@link SizeConstrainedCache} and hits are recorded in {@link ReadBuffer}. The recorded hits are replayed
+ * in batches to update recency whenever lock is taken by a write or when the buffer gets full.
+ */
+class ConcurrentCache implements Cache, EnumerableCache, KeyedCache, Trimmable {
+  private final SizeConstrainedCache delegate;
+  private final Lock lock = new ReentrantLock();
+  private final ReadBuffer<CacheKey> readBuffer = new ReadBuffer<>();
+
+  ConcurrentCache(SizeConstrainedCache delegate) {
+    this.delegate = delegate;
+    delegate.enableConcurrentReads();
+  }
+
+  @Override
+  public CacheKey key(URI uri) {
+    return delegate.key(uri);
+  }
+
+  @Override
+  public CacheEntry get(HttpRequest request) {
+    return get(key(request.uri()), request);
+  }
+
+  @Override
+  public CacheEntry get(CacheKey key, HttpRequest request) {
+    CacheEntry entry = delegate.peek(key, request);
+    if (entry != null && readBuffer.offer(key) == ReadBuffer.FULL) {
+      tryDrain();
+    }
+
+    return entry;
+  }
+
+  @Override
+  public boolean contains(CacheKey key, HttpRequest request) {
+    lock.lock();
+    try {
+      return delegate.contains(key, request);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(HttpRequest request, CacheEntry entry) {
+    put(key(request.uri()), request, entry);
+  }
+
+  @Override
+  public void put(CacheKey key, HttpRequest request, CacheEntry entry) {
+    lock.lock();
+    try {
+      drain();
+      delegate.put(key, request, entry);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void evict(HttpRequest request) {
+    evict(key(request.uri()), request);
+  }
+
+  @Override
+  public void evict(CacheKey key, HttpRequest request) {
+    lock.lock();
+    try {
+      drain();
+      delegate.evict(key, request);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void evictAll(HttpRequest request) {
+    evictAll(key(request.uri()), request);
+  }
+
+  @Override
+  public void evictAll(CacheKey key, HttpRequest request) {
+    lock.lock();
+    try {
+      drain();
+      delegate.evictAll(key, request);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void evictAll() {
+    lock.lock();
+    try {
+      drain();
+      delegate.evictAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void evictByPrefix(URI prefix) {
+    lock.lock();
+    try {
+      drain();
+      delegate.evictByPrefix(prefix);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void evictByHost(String host) {
+    lock.lock();
+    try {
+      drain();
+      delegate.evictByHost(host);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void evictByTag(String... tags) {
+    lock.lock();
+    try {
+      drain();
+      delegate.evictByTag(tags);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void trim() {
+    lock.lock();
+    try {
+      drain();
+      delegate.trim();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public List<CacheEntry> entries() {
+    lock.lock();
+    try {
+      drain();
+      return delegate.entries();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public CacheStats stats() {
+    return delegate.stats();
+  }
+
+  @Override
+  public <T> Writer<T> writer(CacheEntryMetadata metadata) {
+    Writer<T> writer = delegate.writer(metadata);
+    return new Writer<>() {
+      @Override
+      public HttpResponse.BodySubscriber<T> subscriber() {
+        return writer.subscriber();
+      }
+
+      @Override
+      public Consumer<T> finisher() {
+        return t -> {
+          lock.lock();
+          try {
+            drain();
+            writer.finisher().accept(t);
+          } finally {
+            lock.unlock();
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      delegate.close();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void tryDrain() {
+    if (lock.tryLock()) {
+      try {
+        drain();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private void drain() {
+    readBuffer.drainTo(delegate::touch);
+  }
+
+  SizeConstrainedCache delegate() {
+    return delegate;
+  }
+}
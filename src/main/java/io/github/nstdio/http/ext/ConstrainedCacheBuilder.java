@@ -18,15 +18,30 @@ package io.github.nstdio.http.ext;
 
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse.ResponseInfo;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 import static io.github.nstdio.http.ext.Preconditions.checkArgument;
+import static io.github.nstdio.http.ext.Preconditions.checkState;
 import static io.github.nstdio.http.ext.Predicates.alwaysTrue;
 
 abstract class ConstrainedCacheBuilder<B extends ConstrainedCacheBuilder<B>> implements Cache.CacheBuilder {
+  private static final int MAX_SEGMENTS = 1 << 16;
+
   int maxItems = 1 << 13;
   long size = -1;
+  int concurrencyLevel = 1;
+  boolean concurrentReads;
+  Cache.EvictionPolicy evictionPolicy = Cache.EvictionPolicy.LRU;
+  CacheKeyStrategy keyStrategy = CacheKeyStrategy.exact();
+  Weigher weigher = Weigher.retainedSize();
+  long maxStale = -1;
+  Function<HttpRequest, String> partitioner;
+  final Map<String, Quota> partitions = new LinkedHashMap<>();
   Predicate<HttpRequest> requestFilter;
   Predicate<ResponseInfo> responseFilter;
 
@@ -48,8 +63,8 @@ abstract class ConstrainedCacheBuilder<B extends ConstrainedCacheBuilder<B>> imp
   }
 
   /**
-   * The amount of bytes allowed to be stored. Negative value means no memory restriction is made. Note that only
-   * response body bytes are counted.
+   * The amount of bytes allowed to be stored. Negative value means no memory restriction is made. The bytes taken by
+   * each entry are calculated by {@link #weigher(Weigher)}.
    *
    * @param size The maximum size in bytes. Negative for no size restriction.
    *
@@ -60,6 +75,133 @@ abstract class ConstrainedCacheBuilder<B extends ConstrainedCacheBuilder<B>> imp
     return self();
   }
 
+  /**
+   * The number of independently locked segments the cache is split into. Requests are routed to a segment by the hash of
+   * the cache key, and each segment gets an equal share of {@link #maxItems(int)} and {@link #size(long)}. Hence, the
+   * global limits are kept approximately and a single response larger than the segment share of {@code size} will not be
+   * cached. The value is rounded up to the nearest power of two. Default is 1 (single lock for the whole cache).
+   *
+   * @param concurrencyLevel The number of segments. Should be positive.
+   *
+   * @return builder itself.
+   */
+  public B concurrencyLevel(int concurrencyLevel) {
+    checkArgument(concurrencyLevel > 0, "concurrencyLevel should be positive");
+
+    this.concurrencyLevel = concurrencyLevel;
+    return self();
+  }
+
+  /**
+   * Sets whether lookups should bypass the cache lock. When enabled cache hits are served from the lock-free hash table
+   * and recorded in striped buffers, the eviction order is then updated in batches by whichever thread takes the lock
+   * next. Hence, the eviction order becomes approximate under heavy read load. Default is {@code false}.
+   *
+   * @param concurrentReads Whether to serve lookups without taking lock.
+   *
+   * @return builder itself.
+   */
+  public B concurrentReads(boolean concurrentReads) {
+    this.concurrentReads = concurrentReads;
+    return self();
+  }
+
+  /**
+   * Sets the policy deciding which entries to evict when cache reaches its limits. Default is
+   * {@link Cache.EvictionPolicy#LRU}.
+   *
+   * @param evictionPolicy The eviction policy.
+   *
+   * @return builder itself.
+   */
+  public B evictionPolicy(Cache.EvictionPolicy evictionPolicy) {
+    this.evictionPolicy = Objects.requireNonNull(evictionPolicy);
+    return self();
+  }
+
+  /**
+   * Sets the strategy deriving the cache key from the request URI. Requests with equal keys share cache entries.
+   * Default is {@link CacheKeyStrategy#exact()}.
+   *
+   * @param keyStrategy The cache key strategy.
+   *
+   * @return builder itself.
+   *
+   * @see CacheKeyStrategy#normalized(String...)
+   */
+  public B keyStrategy(CacheKeyStrategy keyStrategy) {
+    this.keyStrategy = Objects.requireNonNull(keyStrategy);
+    return self();
+  }
+
+  /**
+   * Sets the strategy calculating how many bytes of {@link #size(long)} the entry takes. Default is
+   * {@link Weigher#retainedSize()} which counts the request and response headers along with the body, so the size
+   * bounds the actual memory or disk usage.
+   *
+   * @param weigher The weigher.
+   *
+   * @return builder itself.
+   *
+   * @see Weigher#bodySize()
+   */
+  public B weigher(Weigher weigher) {
+    this.weigher = Objects.requireNonNull(weigher);
+    return self();
+  }
+
+  /**
+   * Sets the longest staleness served to requests with {@code Cache-Control: max-stale}. The responses without
+   * validators are removed from the cache once they are stale for longer than this and their {@code stale-if-error} and
+   * {@code stale-while-revalidate} directives allow. By default, such responses are removed once these directives no
+   * longer allow serving them, so requests with {@code max-stale} past that point miss.
+   *
+   * @param maxStale The longest staleness. Should not be negative.
+   *
+   * @return builder itself.
+   */
+  public B maxStale(Duration maxStale) {
+    checkArgument(!maxStale.isNegative(), "maxStale should not be negative");
+
+    this.maxStale = maxStale.toMillis();
+    return self();
+  }
+
+  /**
+   * Sets the function naming the partition of the request, for example {@code r -> r.uri().getHost()}. The partitions
+   * configured by {@link #partition(String, int, long)} have their own limits and eviction order, so the entries of one
+   * partition are never evicted to make room for another's. The requests of other partitions, including the ones named
+   * {@code null}, share the pool limited by {@link #maxItems(int)} and {@link #size(long)}.
+   * The hybrid cache applies the partition limits to its disk tier.
+   *
+   * @param partitioner The function naming the partition of the request.
+   *
+   * @return builder itself.
+   */
+  public B partitionBy(Function<HttpRequest, String> partitioner) {
+    this.partitioner = Objects.requireNonNull(partitioner);
+    return self();
+  }
+
+  /**
+   * Sets the limits of the partition named {@code name} by {@link #partitionBy(Function)}. The limits are not part of
+   * the shared pool limits, so the whole cache can take up to the sum of them. The statistics of the partition are
+   * reported by {@link Cache.CacheStats#partitions()}.
+   *
+   * @param name     The name of partition.
+   * @param maxItems The maximum number of the partition entries. Should be positive.
+   * @param size     The maximum size of the partition in bytes. Negative for no size restriction.
+   *
+   * @return builder itself.
+   */
+  public B partition(String name, int maxItems, long size) {
+    Objects.requireNonNull(name);
+    checkArgument(maxItems > 0, "maxItems should be positive");
+
+    partitions.put(name, new Quota(maxItems, size));
+    return self();
+  }
+
   /**
    * Adds given predicate to predicated chain. The calls with requests that did not pass given predicate will not be
    * subjected to caching facility. Semantically request filter is equivalent to {@code Cache-Control: no-store} header
@@ -102,23 +244,90 @@ abstract class ConstrainedCacheBuilder<B extends ConstrainedCacheBuilder<B>> imp
     return self();
   }
 
-  Cache build(SizeConstrainedCache cache) {
-    Cache c;
+  Cache build(SegmentFactory factory) {
+    return filtering(partitioned(factory));
+  }
+
+  Cache partitioned(SegmentFactory factory) {
+    if (partitions.isEmpty()) {
+      return segmented(factory);
+    }
+    checkState(partitioner != null, "partitionBy should be set along with partition limits");
+
+    var caches = new LinkedHashMap<String, Cache>();
+    partitions.forEach((name, quota) -> caches.put(name, segmented(quota.maxItems, quota.size, factory)));
+
+    return new PartitionedCache(partitioner, caches, segmented(factory));
+  }
+
+  Cache segmented(SegmentFactory factory) {
+    return segmented(maxItems, size, factory);
+  }
 
+  Cache segmented(int maxItems, long size, SegmentFactory factory) {
+    int segments = segments();
+    if (segments == 1) {
+      return guarded(factory.create(maxItems, size));
+    }
+
+    int segmentItems = (maxItems + segments - 1) / segments;
+    long segmentSize = size > 0 ? Math.max(1, size / segments) : size;
+
+    var caches = new Cache[segments];
+    for (int i = 0; i < segments; i++) {
+      caches[i] = guarded(factory.create(segmentItems, segmentSize));
+    }
+
+    return new SegmentedCache(caches, keyStrategy);
+  }
+
+  private Cache guarded(SizeConstrainedCache cache) {
+    cache.setMaxStale(maxStale);
+    var guarded = concurrentReads ? new ConcurrentCache(cache) : new SynchronizedCache(cache);
+    var pressure = cache.memoryPressure();
+    if (pressure != null) {
+      pressure.register(guarded);
+    }
+
+    return guarded;
+  }
+
+  Cache filtering(Cache cache) {
     if (requestFilter != null || responseFilter != null) {
       Predicate<HttpRequest> req = requestFilter == null ? alwaysTrue() : requestFilter;
       Predicate<ResponseInfo> resp = responseFilter == null ? alwaysTrue() : responseFilter;
 
-      c = new FilteringCache(cache, req, resp);
-    } else {
-      c = cache;
+      return new FilteringCache(cache, req, resp);
     }
 
-    return new SynchronizedCache(c);
+    return cache;
+  }
+
+  private int segments() {
+    int n = Math.min(concurrencyLevel, MAX_SEGMENTS);
+    return n == 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
   }
 
   @SuppressWarnings("unchecked")
   private B self() {
     return (B) this;
   }
+
+  static final class Quota {
+    final int maxItems;
+    final long size;
+
+    Quota(int maxItems, long size) {
+      this.maxItems = maxItems;
+      this.size = size;
+    }
+  }
+
+  /**
+   * Creates the cache for a single segment with given share of the limits.
+   */
+  @FunctionalInterface
+  interface SegmentFactory {
+    SizeConstrainedCache create(int maxItems, long maxBytes);
+  }
 }
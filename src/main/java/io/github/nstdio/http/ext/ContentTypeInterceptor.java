@@ -23,7 +23,6 @@ import java.util.Map;
 import java.util.Optional;
 
 import static io.github.nstdio.http.ext.Headers.HEADER_CONTENT_TYPE;
-import static java.util.function.Predicate.not;
 
 class ContentTypeInterceptor implements Interceptor {
   private final Interceptor headersAdding;
@@ -42,6 +41,6 @@ class ContentTypeInterceptor implements Interceptor {
   }
 
   private static boolean isJsonPublisher(Optional<BodyPublisher> bodyPublisher) {
-    return bodyPublisher.filter(not(JsonPublisher.class::isInstance)).isEmpty();
+    return bodyPublisher.isEmpty() || bodyPublisher.get() instanceof JsonPublisher;
   }
 }
@@ -130,7 +130,8 @@ class DecompressingBodyHandler<T> implements BodyHandler<T> {
   }
 
   List<String> directives(HttpHeaders headers) {
-    return List.copyOf(computeDirectives(headers).keySet());
+    var directives = computeDirectives(headers);
+    return directives.isEmpty() ? List.of() : List.copyOf(directives.keySet());
   }
 
   static class Options {
@@ -16,11 +16,76 @@
 
 package io.github.nstdio.http.ext;
 
+import io.github.nstdio.http.ext.Cache.CacheStats;
+import io.github.nstdio.http.ext.Cache.CapacityStats;
+import io.github.nstdio.http.ext.Cache.EvictionCause;
+import io.github.nstdio.http.ext.Cache.OffHeapStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
 
+/**
+ * The statistics recorded with {@link LongAdder}s. The outcomes of requests are tracked by the caching interceptor on
+ * the outermost statistics, while the stored entries are tracked by each {@link SizeConstrainedCache} on its own. The
+ * statistics of the composite cache sum the latter over its {@code parts}.
+ */
 class DefaultCacheStats implements TrackableCacheStats {
+  private static final EvictionCause[] CAUSES = EvictionCause.values();
+
   private final LongAdder hit = new LongAdder();
   private final LongAdder miss = new LongAdder();
+  private final LongAdder bytesServed = new LongAdder();
+  private final LongAdder revalidations = new LongAdder();
+  private final LongAdder staleIfErrorHits = new LongAdder();
+  private final LongAdder gatewayTimeouts = new LongAdder();
+  private final LatencyHistogram lookups = new LatencyHistogram();
+
+  private final LongAdder[] evictions = new LongAdder[CAUSES.length];
+  private final LongAdder bytesWritten = new LongAdder();
+  private final LongAdder entryCount = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+  private final LatencyHistogram diskReads = new LatencyHistogram();
+
+  private final Optional<OffHeapStats> offHeap;
+  private final Optional<CapacityStats> capacity;
+  private final List<CacheStats> tiers;
+  private final Map<String, CacheStats> partitions;
+  private final List<CacheStats> parts;
+
+  DefaultCacheStats() {
+    this(null);
+  }
+
+  DefaultCacheStats(OffHeapStats offHeap) {
+    this(offHeap, List.of());
+  }
+
+  DefaultCacheStats(OffHeapStats offHeap, List<CacheStats> tiers) {
+    this(offHeap, tiers, Map.of());
+  }
+
+  DefaultCacheStats(OffHeapStats offHeap, List<CacheStats> tiers, Map<String, CacheStats> partitions) {
+    this(offHeap, null, tiers, partitions, List.of());
+  }
+
+  /**
+   * @param parts The statistics of caches storing the entries of the composite cache.
+   */
+  DefaultCacheStats(OffHeapStats offHeap, CapacityStats capacity, List<CacheStats> tiers,
+                    Map<String, CacheStats> partitions, List<CacheStats> parts) {
+    this.offHeap = Optional.ofNullable(offHeap);
+    this.capacity = Optional.ofNullable(capacity);
+    this.tiers = tiers;
+    this.partitions = partitions;
+    this.parts = parts;
+    for (int i = 0; i < evictions.length; i++) {
+      evictions[i] = new LongAdder();
+    }
+  }
 
   @Override
   public long hit() {
@@ -32,6 +97,98 @@ class DefaultCacheStats implements TrackableCacheStats {
     return miss.longValue();
   }
 
+  @Override
+  public long evictions(EvictionCause cause) {
+    return evictions[cause.ordinal()].sum() + sumOfParts(p -> p.evictions(cause));
+  }
+
+  @Override
+  public long bytesServed() {
+    return bytesServed.sum();
+  }
+
+  @Override
+  public long bytesWritten() {
+    return bytesWritten.sum() + sumOfParts(CacheStats::bytesWritten);
+  }
+
+  @Override
+  public long revalidations() {
+    return revalidations.sum();
+  }
+
+  @Override
+  public long staleIfErrorHits() {
+    return staleIfErrorHits.sum();
+  }
+
+  @Override
+  public long gatewayTimeouts() {
+    return gatewayTimeouts.sum();
+  }
+
+  @Override
+  public long entryCount() {
+    return entryCount.sum() + sumOfParts(CacheStats::entryCount);
+  }
+
+  @Override
+  public long bytes() {
+    return bytes.sum() + sumOfParts(CacheStats::bytes);
+  }
+
+  @Override
+  public Optional<LatencyStats> lookupLatency() {
+    return Optional.of(lookups);
+  }
+
+  @Override
+  public Optional<LatencyStats> diskReadLatency() {
+    var histograms = new ArrayList<LatencyHistogram>();
+    collectDiskReads(histograms);
+
+    LatencyHistogram sum = histograms.size() == 1 ? histograms.get(0) : LatencyHistogram.sum(histograms);
+    return sum.count() == 0 ? Optional.empty() : Optional.of(sum);
+  }
+
+  private void collectDiskReads(List<LatencyHistogram> histograms) {
+    histograms.add(diskReads);
+    for (CacheStats p : parts) {
+      if (p instanceof DefaultCacheStats) {
+        ((DefaultCacheStats) p).collectDiskReads(histograms);
+      }
+    }
+  }
+
+  private long sumOfParts(ToLongFunction<CacheStats> fn) {
+    long sum = 0;
+    for (CacheStats p : parts) {
+      sum += fn.applyAsLong(p);
+    }
+
+    return sum;
+  }
+
+  @Override
+  public Optional<OffHeapStats> offHeap() {
+    return offHeap;
+  }
+
+  @Override
+  public Optional<CapacityStats> capacity() {
+    return capacity;
+  }
+
+  @Override
+  public List<CacheStats> tiers() {
+    return tiers;
+  }
+
+  @Override
+  public Map<String, CacheStats> partitions() {
+    return partitions;
+  }
+
   @Override
   public void trackHit() {
     hit.increment();
@@ -41,4 +198,48 @@ class DefaultCacheStats implements TrackableCacheStats {
   public void trackMiss() {
     miss.increment();
   }
+
+  @Override
+  public void trackBytesServed(long n) {
+    bytesServed.add(n);
+  }
+
+  @Override
+  public void trackRevalidation() {
+    revalidations.increment();
+  }
+
+  @Override
+  public void trackStaleIfErrorHit() {
+    staleIfErrorHits.increment();
+  }
+
+  @Override
+  public void trackGatewayTimeout() {
+    gatewayTimeouts.increment();
+  }
+
+  @Override
+  public void trackLookup(long nanos) {
+    lookups.record(nanos);
+  }
+
+  void trackStored(long bodySize, long weight) {
+    bytesWritten.add(bodySize);
+    entryCount.increment();
+    bytes.add(weight);
+  }
+
+  void trackRemoved(long weight) {
+    entryCount.decrement();
+    bytes.add(-weight);
+  }
+
+  void trackEviction(EvictionCause cause) {
+    evictions[cause.ordinal()].increment();
+  }
+
+  void trackDiskRead(long nanos) {
+    diskReads.record(nanos);
+  }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The deflate codec for the bodies stored in memory. Uses the fastest compression level since bodies are compressed
+ * on the response path.
+ */
+final class Deflation {
+  private Deflation() {
+  }
+
+  /**
+   * Compresses the {@code input}.
+   *
+   * @param input The bytes to compress.
+   *
+   * @return The compressed bytes or {@code null} when they would not be smaller than the {@code input}.
+   */
+  static byte[] deflate(byte[] input) {
+    var deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(input);
+      deflater.finish();
+
+      byte[] out = new byte[Math.max(input.length / 4, 64)];
+      int len = 0;
+      while (!deflater.finished()) {
+        if (len == out.length) {
+          if (len >= input.length) {
+            return null;
+          }
+          out = Arrays.copyOf(out, Math.min(len * 2, input.length));
+        }
+        len += deflater.deflate(out, len, out.length - len);
+      }
+
+      return len < input.length ? Arrays.copyOf(out, len) : null;
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Decompresses the {@code input} created by {@link #deflate(byte[])}.
+   *
+   * @param input  The compressed bytes.
+   * @param length The length of the original bytes.
+   *
+   * @return The original bytes.
+   *
+   * @throws IllegalStateException When {@code input} is corrupted.
+   */
+  static byte[] inflate(byte[] input, int length) {
+    var inflater = new Inflater();
+    try {
+      inflater.setInput(input);
+
+      byte[] out = new byte[length];
+      int len = 0;
+      while (len < length && !inflater.finished()) {
+        int n = inflater.inflate(out, len, length - len);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        len += n;
+      }
+
+      if (len != length) {
+        throw new IllegalStateException("Compressed body is truncated");
+      }
+      return out;
+    } catch (DataFormatException e) {
+      throw new IllegalStateException("Compressed body is corrupted", e);
+    } finally {
+      inflater.end();
+    }
+  }
+}
@@ -25,10 +25,13 @@ import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Flow.Subscriber;
 import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -41,22 +44,55 @@ import static io.github.nstdio.http.ext.IOUtils.size;
 class DiskCache extends SizeConstrainedCache {
   private final MetadataSerializer metadataSerializer;
   private final StreamFactory streamFactory;
-  private final ExecutorService executor;
+  private final Executor executor;
   private final Path dir;
 
   DiskCache(long maxBytes, int maxItems, MetadataSerializer metadataSerializer, StreamFactory streamFactory, Path dir) {
-    super(maxItems, maxBytes, null);
-    addEvictionListener(this::deleteQuietly);
+    this(maxBytes, maxItems, EvictionPolicy.LRU, CacheKeyStrategy.exact(), Weigher.bodySize(), metadataSerializer,
+        streamFactory, dir, newExecutor());
+  }
+
+  /**
+   * @param executor The executor writing metadata and deleting files, shared by all segments of the cache.
+   */
+  DiskCache(long maxBytes, int maxItems, EvictionPolicy evictionPolicy, CacheKeyStrategy keyStrategy, Weigher weigher,
+            MetadataSerializer metadataSerializer, StreamFactory streamFactory, Path dir, Executor executor) {
+    super(maxItems, maxBytes, evictionPolicy, keyStrategy, weigher, null);
 
     this.metadataSerializer = metadataSerializer;
     this.streamFactory = streamFactory;
     this.dir = dir;
-    this.executor = Executors.newFixedThreadPool(1, r -> new Thread(r, "disk-cache-io"));
+    this.executor = executor;
 
-    restore();
+    setDeferredEvictionListener(DiskCache::deleteQuietly, executor);
   }
 
-  private void restore() {
+  /**
+   * Whether the body of {@code entry} is read from file, thus blocking the subscriber.
+   */
+  static boolean isDiskEntry(CacheEntry entry) {
+    return entry instanceof DiskCacheEntry;
+  }
+
+  /**
+   * Creates the executor running file operations in submission order on a single daemon thread, which terminates once
+   * idle, so the executor needs no shutdown.
+   */
+  static Executor newExecutor() {
+    var executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+      var t = new Thread(r, "disk-cache-io");
+      t.setDaemon(true);
+      return t;
+    });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Loads entries previously persisted in {@code dir} into {@code cache}. The {@code cache} is expected to be backed by
+   * {@code DiskCache} instance(s) created over the same {@code dir}.
+   */
+  static void restore(Cache cache, MetadataSerializer metadataSerializer, StreamFactory streamFactory, Path dir) {
     var fileNamePattern = Pattern.compile("[a-f0-9]{32}_m").asMatchPredicate();
     Predicate<Path> pathPredicate = p -> fileNamePattern.test(p.getFileName().toString());
 
@@ -74,15 +110,16 @@ class DiskCache extends SizeConstrainedCache {
             return metadata != null ? new DiskCacheEntry(entryPaths, streamFactory, metadata) : null;
           })
           .filter(Objects::nonNull)
-          .forEach(entry -> put(entry.metadata().request(), entry));
+          .forEach(entry -> cache.put(entry.metadata().request(), entry));
     } catch (IOException ignored) {
       // noop
     }
   }
 
   @Override
-  public void put(HttpRequest request, CacheEntry entry) {
-    super.put(request, entry);
+  public void put(CacheKey key, HttpRequest request, CacheEntry entry) {
+    ((DiskCacheEntry) entry).stats = stats();
+    super.put(key, request, entry);
 
     writeMetadata((DiskCacheEntry) entry);
   }
@@ -90,11 +127,19 @@ class DiskCache extends SizeConstrainedCache {
   @Override
   public void close() {
     super.close();
-    executor.shutdown();
+    awaitSubmitted();
+  }
+
+  /**
+   * Waits up to a second for the file operations submitted so far, given they are run in submission order.
+   */
+  private void awaitSubmitted() {
+    var done = new CountDownLatch(1);
     try {
+      executor.execute(done::countDown);
       //noinspection ResultOfMethodCallIgnored
-      executor.awaitTermination(1, TimeUnit.SECONDS);
-    } catch (InterruptedException ignored) {
+      done.await(1, TimeUnit.SECONDS);
+    } catch (RejectedExecutionException | InterruptedException ignored) {
     }
   }
 
@@ -104,11 +149,13 @@ class DiskCache extends SizeConstrainedCache {
     executor.execute(() -> metadataSerializer.write(metadata, metadataPath));
   }
 
-  private void deleteQuietly(CacheEntry entry) {
-    EntryPaths paths = ((DiskCacheEntry) entry).path();
+  private static void deleteQuietly(List<CacheEntry> entries) {
+    for (CacheEntry entry : entries) {
+      EntryPaths paths = ((DiskCacheEntry) entry).path();
 
-    executor.execute(() -> delete(paths.body()));
-    executor.execute(() -> delete(paths.metadata()));
+      delete(paths.body());
+      delete(paths.metadata());
+    }
   }
 
   private EntryPaths pathsFor() {
@@ -169,6 +216,10 @@ class DiskCache extends SizeConstrainedCache {
     private final CacheEntryMetadata metadata;
 
     private final long bodySize;
+    /**
+     * The statistics of the cache holding the entry.
+     */
+    private volatile DefaultCacheStats stats;
 
     private DiskCacheEntry(EntryPaths path, StreamFactory streamFactory, CacheEntryMetadata metadata) {
       this.path = path;
@@ -179,7 +230,9 @@ class DiskCache extends SizeConstrainedCache {
 
     @Override
     public void subscribeTo(Subscriber<List<ByteBuffer>> sub) {
-      Subscription subscription = new PathReadingSubscription(sub, streamFactory, path.body());
+      var s = stats;
+      Subscription subscription = new PathReadingSubscription(sub, streamFactory, path.body(),
+          s != null ? s::trackDiskRead : null);
       sub.onSubscribe(subscription);
     }
 
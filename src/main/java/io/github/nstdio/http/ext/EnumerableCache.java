@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import io.github.nstdio.http.ext.Cache.CacheEntry;
+
+import java.util.List;
+
+/**
+ * The cache able to list the entries it holds.
+ */
+interface EnumerableCache {
+  /**
+   * Lists the entries from the least to the most recently used. The order is kept within each segment or partition
+   * only.
+   *
+   * @return The entries.
+   */
+  List<CacheEntry> entries();
+
+  /**
+   * Lists the entries of {@code cache} if it can enumerate them.
+   */
+  static List<CacheEntry> entriesOf(Cache cache) {
+    return cache instanceof EnumerableCache ? ((EnumerableCache) cache).entries() : List.of();
+  }
+}
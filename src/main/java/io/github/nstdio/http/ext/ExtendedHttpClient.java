@@ -16,6 +16,8 @@
 
 package io.github.nstdio.http.ext;
 
+import io.github.nstdio.http.ext.RequestInterceptor.Position;
+
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLParameters;
 import java.io.IOException;
@@ -31,23 +33,53 @@ import java.net.http.HttpResponse.PushPromiseHandler;
 import java.net.http.WebSocket;
 import java.time.Clock;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
 import static java.util.concurrent.CompletableFuture.completedFuture;
 
 public class ExtendedHttpClient extends HttpClient {
-  private final CompressionInterceptor compressionInterceptor;
-  private final CachingInterceptor cachingInterceptor;
-  private final HeadersAddingInterceptor headersAddingInterceptor;
-  private final ContentTypeInterceptor contentTypeInterceptor;
+  /**
+   * The executor reading cached bodies from disk and serving coalesced requests when the delegate client has no
+   * executor. The threads are limited by the number of processors and terminate once idle.
+   */
+  private static final Lazy<Executor> BODY_EXECUTOR = new Lazy<>(() -> {
+    int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    var executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+      var t = new Thread(r, "cached-body-io");
+      t.setDaemon(true);
+      return t;
+    });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  });
+
+  /**
+   * The interceptors applied to each request in order, split into segments by the custom interceptors: the segment
+   * {@code i} is followed by the stage {@code i}, the last segment is followed by the delegate client.
+   */
+  private final Interceptor[][] segments;
+  private final InterceptorStage[] stages;
+  /**
+   * The index of the last non-empty segment, which is the one receiving responses from the delegate client.
+   */
+  private final int innermost;
+  private final Map<String, LatencyStats> latencies;
 
   private final HttpClient delegate;
   private final boolean allowInsecure;
@@ -57,6 +89,8 @@ public class ExtendedHttpClient extends HttpClient {
         null,
         cache instanceof NullCache ? null : new CachingInterceptor(cache, clock),
         null,
+        Map.of(),
+        false,
         delegate,
         true
     );
@@ -65,13 +99,44 @@ public class ExtendedHttpClient extends HttpClient {
   private ExtendedHttpClient(CompressionInterceptor compressionInterceptor,
                              CachingInterceptor cachingInterceptor,
                              HeadersAddingInterceptor headersAddingInterceptor,
+                             Map<Position, List<RequestInterceptor>> interceptors, boolean recordLatency,
                              HttpClient delegate, boolean allowInsecure) {
-    this.compressionInterceptor = compressionInterceptor;
-    this.cachingInterceptor = cachingInterceptor;
-    this.headersAddingInterceptor = headersAddingInterceptor;
-    this.contentTypeInterceptor = new ContentTypeInterceptor("application/json");
+    var pipeline = new PipelineBuilder(recordLatency);
+    pipeline.add(interceptors.get(Position.BEFORE_COMPRESSION));
+    pipeline.add("compression", compressionInterceptor);
+    pipeline.add(interceptors.get(Position.BEFORE_CACHING));
+    pipeline.add("caching", cachingInterceptor);
+    int cachingSegment = pipeline.segments.size();
+    int afterCaching = pipeline.segment.size();
+    pipeline.add("headers", headersAddingInterceptor);
+    pipeline.add("contentType", new ContentTypeInterceptor("application/json"));
+    pipeline.add(interceptors.get(Position.AFTER_CACHING));
+
+    this.segments = pipeline.segments();
+    this.stages = pipeline.stages.toArray(new InterceptorStage[0]);
+    int i = segments.length - 1;
+    while (segments[i].length == 0) i--;
+    this.innermost = i;
+    this.latencies = recordLatency ? Collections.unmodifiableMap(pipeline.latencies) : Map.of();
     this.delegate = delegate;
     this.allowInsecure = allowInsecure;
+
+    if (cachingInterceptor != null) {
+      cachingInterceptor.setSender(ctx -> execute(cachingSegment, afterCaching, ctx, asyncSender()));
+      cachingInterceptor.setExecutor(command -> bodyExecutor().execute(command));
+    }
+  }
+
+  /**
+   * The time spent by each stage of request processing on the thread sending the request, including the time the
+   * custom interceptors spend before and after passing the request on, but not the time of the next stages. The
+   * built-in stages are named {@code compression}, {@code caching}, {@code headers} and {@code contentType}, the custom
+   * interceptors are named by their class names. Empty unless enabled by {@link Builder#recordInterceptorLatency()}.
+   *
+   * @return The latencies by stage name in the order stages are invoked.
+   */
+  public Map<String, LatencyStats> interceptorLatencies() {
+    return latencies;
   }
 
   /**
@@ -154,13 +219,13 @@ public class ExtendedHttpClient extends HttpClient {
 
   @Override
   public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, BodyHandler<T> bodyHandler) {
-    return send0(request, bodyHandler, asyncSender());
+    return send0(request, bodyHandler, asyncSender()).thenCompose(this::withBody);
   }
 
   @Override
   public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, BodyHandler<T> bodyHandler,
                                                           PushPromiseHandler<T> pushPromiseHandler) {
-    return send0(request, bodyHandler, asyncSender(pushPromiseHandler));
+    return send0(request, bodyHandler, asyncSender(pushPromiseHandler)).thenCompose(this::withBody);
   }
 
   private <T> CompletableFuture<HttpResponse<T>> send0(HttpRequest request, BodyHandler<T> bodyHandler, Sender<T> sender) {
@@ -168,14 +233,53 @@ public class ExtendedHttpClient extends HttpClient {
       checkInsecureScheme(request);
     }
 
-    Chain<T> chain = buildAndExecute(RequestContext.of(request, bodyHandler));
+    return execute(0, 0, RequestContext.of(request, bodyHandler), sender);
+  }
+
+  /**
+   * Passes the request through the segment of interceptors starting at {@code from}, then through the next custom
+   * interceptor or the {@code sender}.
+   */
+  private <T> CompletableFuture<HttpResponse<T>> execute(int segment, int from, RequestContext ctx, Sender<T> sender) {
+    Sender<T> next = segment < stages.length
+        ? stages[segment].sender(c -> execute(segment + 1, 0, c, sender))
+        : sender;
+    if (segments[segment].length == from) {
+      return next.apply(ctx);
+    }
+
+    Chain<T> chain = buildAndExecute(segments[segment], from, ctx);
     FutureHandler<T> handler = chain.futureHandler();
 
-    var future = chain.response()
-        .map(CompletableFuture::completedFuture)
-        .orElseGet(() -> sender.apply(chain.ctx()));
+    var response = chain.response();
+    var future = response != null
+        ? completedFuture(response)
+        : chain.decorate(next).apply(chain.ctx());
 
-    return future.isDone() ? future.handle(handler) : future.handleAsync(handler);
+    // the outer segments are completed by the inner one off the delegate thread already
+    return future.isDone() || segment != innermost ? future.handle(handler) : future.handleAsync(handler);
+  }
+
+  /**
+   * Reads the body of the response served from the cache, on the executor if it is read from disk, so the response is
+   * completed with the body as the delegate completes it and the caller of {@link HttpResponse#body()} never reads the
+   * cache.
+   */
+  private <T> CompletableFuture<HttpResponse<T>> withBody(HttpResponse<T> response) {
+    HttpResponse<T> r = response;
+    while (r instanceof Responses.DelegatingHttpResponse) {
+      r = ((Responses.DelegatingHttpResponse<T>) r).delegate();
+    }
+
+    if (r instanceof CachedHttpResponse) {
+      return ((CachedHttpResponse<T>) r).readBody(bodyExecutor()).thenApply(body -> response);
+    }
+
+    return completedFuture(response);
+  }
+
+  private Executor bodyExecutor() {
+    return delegate.executor().orElseGet(BODY_EXECUTOR);
   }
 
   private void checkInsecureScheme(HttpRequest request) {
@@ -185,20 +289,15 @@ public class ExtendedHttpClient extends HttpClient {
     }
   }
 
-  private <T> Chain<T> buildAndExecute(RequestContext ctx) {
-    Chain<T> chain = Chain.of(ctx);
-    chain = possiblyApply(compressionInterceptor, chain);
-    chain = possiblyApply(cachingInterceptor, chain);
-    chain = possiblyApply(headersAddingInterceptor, chain);
-    chain = possiblyApply(contentTypeInterceptor, chain);
+  private <T> Chain<T> buildAndExecute(Interceptor[] interceptors, int from, RequestContext ctx) {
+    Chain<T> chain = Chain.of(ctx, interceptors.length - from);
+    for (int i = from; i < interceptors.length; i++) {
+      chain = interceptors[i].intercept(chain);
+    }
 
     return chain;
   }
 
-  private <T> Chain<T> possiblyApply(Interceptor i, Chain<T> c) {
-    return i != null ? i.intercept(c) : c;
-  }
-
   /**
    * The {@code future} DOES NOT represent ongoing computation it's always either completed or failed.
    */
@@ -211,6 +310,9 @@ public class ExtendedHttpClient extends HttpClient {
         throw (IOException) cause;
       } else if (cause instanceof InterruptedException) {
         throw (InterruptedException) cause;
+      } else if (cause instanceof IllegalArgumentException) {
+        // the request is invalid
+        throw (IllegalArgumentException) cause;
       }
 
       throw e;
@@ -241,13 +343,65 @@ public class ExtendedHttpClient extends HttpClient {
   interface Sender<T> extends Function<RequestContext, CompletableFuture<HttpResponse<T>>> {
   }
 
+  /**
+   * Splits the interceptors into segments by the custom ones and creates the latency of each stage if recorded.
+   */
+  private static final class PipelineBuilder {
+    private final List<Interceptor[]> segments = new ArrayList<>();
+    private final List<InterceptorStage> stages = new ArrayList<>();
+    private final Map<String, LatencyStats> latencies;
+    private List<Interceptor> segment = new ArrayList<>();
+
+    PipelineBuilder(boolean recordLatency) {
+      this.latencies = recordLatency ? new LinkedHashMap<>() : null;
+    }
+
+    void add(String name, Interceptor interceptor) {
+      if (interceptor != null) {
+        segment.add(latencies != null ? new TimedInterceptor(interceptor, latency(name)) : interceptor);
+      }
+    }
+
+    void add(List<RequestInterceptor> interceptors) {
+      if (interceptors == null) {
+        return;
+      }
+
+      for (RequestInterceptor i : interceptors) {
+        segments.add(segment.toArray(new Interceptor[0]));
+        segment = new ArrayList<>();
+        stages.add(new InterceptorStage(i, latencies != null ? latency(i.getClass().getName()) : null));
+      }
+    }
+
+    Interceptor[][] segments() {
+      segments.add(segment.toArray(new Interceptor[0]));
+      return segments.toArray(new Interceptor[0][]);
+    }
+
+    private LatencyHistogram latency(String name) {
+      String key = name;
+      for (int n = 2; latencies.containsKey(key); n++) {
+        key = name + "#" + n;
+      }
+
+      var latency = new LatencyHistogram();
+      latencies.put(key, latency);
+      return latency;
+    }
+  }
+
   public static class Builder implements HttpClient.Builder {
     private final HttpClient.Builder delegate;
     private boolean transparentEncoding;
     private boolean allowInsecure = true;
     private Cache cache = Cache.noop();
+    private Duration coalescingTimeout;
+    private RefreshAhead refreshAhead;
     private Map<String, String> headers = Map.of();
     private Map<String, Supplier<String>> resolvableHeaders = Map.of();
+    private final Map<Position, List<RequestInterceptor>> interceptors = new EnumMap<>(Position.class);
+    private boolean recordInterceptorLatency;
 
     Builder(HttpClient.Builder delegate) {
       this.delegate = delegate;
@@ -359,6 +513,101 @@ public class ExtendedHttpClient extends HttpClient {
       return this;
     }
 
+    /**
+     * Makes the concurrent requests missing the cache for the same response to be sent once. The first request is sent,
+     * while the others are served its response as it is received and stored in the cache. The request for which the
+     * stored response is not fresh enough, or the request that waits longer than {@code timeout} is sent on its own.
+     * Requests are matched by URI and, when the stale response is stored, by the headers it varies on. Requests with
+     * {@code no-cache} directive are never coalesced. Disabled by default.
+     *
+     * @param timeout The maximum time to wait for the concurrent request, should be positive.
+     *
+     * @return builder itself.
+     */
+    public Builder coalesceRequests(Duration timeout) {
+      Objects.requireNonNull(timeout);
+      Preconditions.checkArgument(!timeout.isNegative() && !timeout.isZero(), "timeout should be positive");
+      this.coalescingTimeout = timeout;
+      return this;
+    }
+
+    /**
+     * Makes the fresh cached responses served at least {@code minHits} times to be revalidated in background once they
+     * reach {@code lifetimeFraction} of their freshness lifetime, so the frequently requested responses do not get stale
+     * on the request path. The hits are counted since the response is received or last revalidated. At most 4
+     * refreshes are in progress at a time and at most 10 per second are sent to a single host, see
+     * {@link #refreshAhead(double, int, int, int)}. Disabled by default.
+     *
+     * @param lifetimeFraction The fraction of freshness lifetime, exclusively between {@code 0} and {@code 1}.
+     * @param minHits          The minimum number of hits, should be positive.
+     *
+     * @return builder itself.
+     */
+    public Builder refreshAhead(double lifetimeFraction, int minHits) {
+      return refreshAhead(lifetimeFraction, minHits, 4, 10);
+    }
+
+    /**
+     * Same as {@link #refreshAhead(double, int)}, but with the limits of refreshes.
+     *
+     * @param lifetimeFraction    The fraction of freshness lifetime, exclusively between {@code 0} and {@code 1}.
+     * @param minHits             The minimum number of hits, should be positive.
+     * @param maxConcurrent       The maximum number of refreshes in progress, should be positive.
+     * @param maxPerHostPerSecond The maximum number of refreshes sent to a single host per second, between {@code 1}
+     *                            and {@code 1000}.
+     *
+     * @return builder itself.
+     */
+    public Builder refreshAhead(double lifetimeFraction, int minHits, int maxConcurrent, int maxPerHostPerSecond) {
+      Preconditions.checkArgument(lifetimeFraction > 0 && lifetimeFraction < 1,
+          "lifetimeFraction should be between 0 and 1");
+      Preconditions.checkArgument(minHits > 0, "minHits should be positive");
+      Preconditions.checkArgument(maxConcurrent > 0, "maxConcurrent should be positive");
+      Preconditions.checkArgument(maxPerHostPerSecond > 0 && maxPerHostPerSecond <= 1000,
+          "maxPerHostPerSecond should be between 1 and 1000");
+      this.refreshAhead = new RefreshAhead(lifetimeFraction, minHits, maxConcurrent, maxPerHostPerSecond);
+      return this;
+    }
+
+    /**
+     * Adds the interceptor invoked after all built-in stages, same as
+     * {@code interceptor(Position.AFTER_CACHING, interceptor)}.
+     *
+     * @param interceptor The interceptor.
+     *
+     * @return builder itself.
+     */
+    public Builder interceptor(RequestInterceptor interceptor) {
+      return interceptor(Position.AFTER_CACHING, interceptor);
+    }
+
+    /**
+     * Adds the interceptor invoked at {@code position} relative to the built-in stages. The interceptors at the same
+     * position are invoked in the order they are added.
+     *
+     * @param position    The position of interceptor.
+     * @param interceptor The interceptor.
+     *
+     * @return builder itself.
+     */
+    public Builder interceptor(Position position, RequestInterceptor interceptor) {
+      Objects.requireNonNull(position);
+      Objects.requireNonNull(interceptor);
+      interceptors.computeIfAbsent(position, p -> new ArrayList<>()).add(interceptor);
+      return this;
+    }
+
+    /**
+     * Makes the client record the time spent by each stage of request processing, see
+     * {@link ExtendedHttpClient#interceptorLatencies()}. Disabled by default.
+     *
+     * @return builder itself.
+     */
+    public Builder recordInterceptorLatency() {
+      this.recordInterceptorLatency = true;
+      return this;
+    }
+
     /**
      * Sets the flag whether automatically decompress response or not. If set to {@code true} requests made by created
      * client will be enhanced with {@code Accept-Encoding} header and will decompress response body if appropriate
@@ -432,11 +681,21 @@ public class ExtendedHttpClient extends HttpClient {
 
       return new ExtendedHttpClient(
           transparentEncoding ? new CompressionInterceptor() : null,
-          cache instanceof NullCache ? null : new CachingInterceptor(cache, Clock.systemUTC()),
+          cache instanceof NullCache ? null : cachingInterceptor(),
           new HeadersAddingInterceptor(Map.copyOf(headers), Map.copyOf(resolvableHeaders)),
+          interceptors,
+          recordInterceptorLatency,
           client,
           allowInsecure
       );
     }
+
+    private CachingInterceptor cachingInterceptor() {
+      return new CachingInterceptor(cache, Clock.systemUTC(), coalescer(), refreshAhead);
+    }
+
+    private RequestCoalescer coalescer() {
+      return coalescingTimeout != null ? new RequestCoalescer(coalescingTimeout.toMillis()) : null;
+    }
   }
 }
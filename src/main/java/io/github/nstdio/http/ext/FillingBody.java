@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import io.github.nstdio.http.ext.Cache.CacheEntry;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The body of response being received and stored in the cache, readable before it is received completely. Each
+ * subscriber is served the parts already received at its own pace and then follows the parts as they arrive. The parts
+ * are kept until the body becomes unreachable, so the body is meant to be read only while the cache is filled. The
+ * subscribers are signalled about the arrived parts by the executor, so they are not served by the thread receiving
+ * the body.
+ */
+final class FillingBody {
+  private final List<List<ByteBuffer>> parts = new ArrayList<>();
+  private final List<FillingSubscription> subscriptions = new CopyOnWriteArrayList<>();
+  private final Executor executor;
+  private long length;
+  private boolean completed;
+  private Throwable error;
+
+  FillingBody() {
+    this(Runnable::run);
+  }
+
+  FillingBody(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Appends the part of body. The buffers should not be modified afterwards.
+   */
+  void append(List<ByteBuffer> part) {
+    synchronized (this) {
+      parts.add(part);
+      for (ByteBuffer b : part) {
+        length += b.remaining();
+      }
+    }
+    signalAll();
+  }
+
+  void complete() {
+    synchronized (this) {
+      completed = true;
+    }
+    signalAll();
+  }
+
+  void fail(Throwable th) {
+    synchronized (this) {
+      error = th;
+    }
+    signalAll();
+  }
+
+  /**
+   * The number of bytes received so far.
+   */
+  synchronized long length() {
+    return length;
+  }
+
+  void subscribeTo(Subscriber<List<ByteBuffer>> subscriber) {
+    var subscription = new FillingSubscription(subscriber);
+    subscriptions.add(subscription);
+    subscriber.onSubscribe(subscription);
+  }
+
+  /**
+   * Creates the cache entry serving this body.
+   */
+  CacheEntry entry(CacheEntryMetadata metadata) {
+    return new CacheEntry() {
+      @Override
+      public void subscribeTo(Subscriber<List<ByteBuffer>> sub) {
+        FillingBody.this.subscribeTo(sub);
+      }
+
+      /**
+       * The number of bytes received so far.
+       */
+      @Override
+      public long bodySize() {
+        return length();
+      }
+
+      @Override
+      public CacheEntryMetadata metadata() {
+        return metadata;
+      }
+    };
+  }
+
+  private void signalAll() {
+    for (FillingSubscription s : subscriptions) {
+      executor.execute(s::drain);
+    }
+  }
+
+  private static List<ByteBuffer> duplicate(List<ByteBuffer> part) {
+    var dup = new ArrayList<ByteBuffer>(part.size());
+    for (ByteBuffer b : part) {
+      dup.add(b.duplicate());
+    }
+
+    return dup;
+  }
+
+  private final class FillingSubscription implements Subscription {
+    private final Subscriber<List<ByteBuffer>> subscriber;
+    private final AtomicLong demand = new AtomicLong();
+    /**
+     * The number of drain requests made while draining, so only one thread emits at a time.
+     */
+    private final AtomicInteger wip = new AtomicInteger();
+    private int next;
+    private volatile boolean done;
+    private volatile Throwable invalidRequest;
+
+    FillingSubscription(Subscriber<List<ByteBuffer>> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest = new IllegalArgumentException("n <= 0");
+      } else {
+        demand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      terminate();
+    }
+
+    void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+
+      do {
+        while (!done) {
+          if (invalidRequest != null) {
+            terminate();
+            subscriber.onError(invalidRequest);
+            break;
+          }
+
+          List<ByteBuffer> part = null;
+          Throwable th;
+          boolean end;
+          synchronized (FillingBody.this) {
+            if (next < parts.size() && demand.get() > 0) {
+              part = parts.get(next++);
+            }
+            th = error;
+            end = completed && next == parts.size();
+          }
+
+          if (part != null) {
+            demand.decrementAndGet();
+            subscriber.onNext(duplicate(part));
+          } else if (th != null) {
+            terminate();
+            subscriber.onError(th);
+          } else if (end) {
+            terminate();
+            subscriber.onComplete();
+          } else {
+            break;
+          }
+        }
+      } while (wip.decrementAndGet() != 0);
+    }
+
+    private void terminate() {
+      done = true;
+      subscriptions.remove(this);
+    }
+  }
+}
@@ -17,13 +17,15 @@
 package io.github.nstdio.http.ext;
 
 import java.io.IOException;
+import java.net.URI;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse.ResponseInfo;
+import java.util.List;
 import java.util.function.Predicate;
 
 import static io.github.nstdio.http.ext.NullCache.blackhole;
 
-class FilteringCache implements Cache {
+class FilteringCache implements Cache, EnumerableCache, KeyedCache {
   private final Cache delegate;
   private final Predicate<HttpRequest> requestFilter;
   private final Predicate<ResponseInfo> responseFilter;
@@ -60,6 +62,42 @@ class FilteringCache implements Cache {
       delegate.evictAll(request);
   }
 
+  @Override
+  public CacheKey key(URI uri) {
+    return KeyedCache.keyOf(delegate, uri);
+  }
+
+  @Override
+  public CacheEntry get(CacheKey key, HttpRequest request) {
+    if (matches(request))
+      return KeyedCache.get(delegate, key, request);
+
+    return null;
+  }
+
+  @Override
+  public boolean contains(CacheKey key, HttpRequest request) {
+    return matches(request) && KeyedCache.contains(delegate, key, request);
+  }
+
+  @Override
+  public void put(CacheKey key, HttpRequest request, CacheEntry entry) {
+    if (matches(request))
+      KeyedCache.put(delegate, key, request, entry);
+  }
+
+  @Override
+  public void evict(CacheKey key, HttpRequest request) {
+    if (matches(request))
+      KeyedCache.evict(delegate, key, request);
+  }
+
+  @Override
+  public void evictAll(CacheKey key, HttpRequest request) {
+    if (matches(request))
+      KeyedCache.evictAll(delegate, key, request);
+  }
+
   private boolean matches(HttpRequest k) {
     return requestFilter.test(k);
   }
@@ -69,6 +107,26 @@ class FilteringCache implements Cache {
     delegate.evictAll();
   }
 
+  @Override
+  public void evictByPrefix(URI prefix) {
+    delegate.evictByPrefix(prefix);
+  }
+
+  @Override
+  public void evictByHost(String host) {
+    delegate.evictByHost(host);
+  }
+
+  @Override
+  public void evictByTag(String... tags) {
+    delegate.evictByTag(tags);
+  }
+
+  @Override
+  public List<CacheEntry> entries() {
+    return EnumerableCache.entriesOf(delegate);
+  }
+
   @Override
   public CacheStats stats() {
     return delegate.stats();
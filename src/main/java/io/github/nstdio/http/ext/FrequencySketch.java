@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+/**
+ * The count-min sketch estimating the access frequency of keys with four 4-bit counters per key. To keep the history
+ * fresh all counters are halved once the number of increments reaches the sample size (ten times the maximum cache
+ * size).
+ */
+class FrequencySketch {
+  /**
+   * The largest estimated frequency, the counters saturate at it.
+   */
+  static final int MAX_FREQUENCY = 15;
+
+  private static final long[] SEED = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+  };
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final long ONE_MASK = 0x1111111111111111L;
+
+  private final long[] table;
+  private final int tableMask;
+  private final int sampleSize;
+  private int size;
+
+  FrequencySketch(int maximumSize) {
+    int maximum = Math.min(Math.max(maximumSize, 8), 1 << 30);
+    int capacity = Integer.highestOneBit(maximum - 1) << 1;
+
+    table = new long[capacity];
+    tableMask = capacity - 1;
+    sampleSize = maximum > (Integer.MAX_VALUE / 10) ? Integer.MAX_VALUE : 10 * maximum;
+  }
+
+  private static int spread(int x) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+
+  /**
+   * Gets the estimated number of occurrences of the key with {@code hashCode}, up to {@link #MAX_FREQUENCY}.
+   */
+  int frequency(int hashCode) {
+    int hash = spread(hashCode);
+    int start = (hash & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      int index = indexOf(hash, i);
+      int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+
+    return frequency;
+  }
+
+  /**
+   * Increments the occurrences of the key with {@code hashCode} and ages all counters when the sample size is reached.
+   */
+  void increment(int hashCode) {
+    int hash = spread(hashCode);
+    int start = (hash & 3) << 2;
+
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+
+    if (added && ++size == sampleSize) {
+      reset();
+    }
+  }
+
+  private boolean incrementAt(int i, int j) {
+    int offset = j << 2;
+    long mask = 0xfL << offset;
+    if ((table[i] & mask) != mask) {
+      table[i] += 1L << offset;
+      return true;
+    }
+
+    return false;
+  }
+
+  private void reset() {
+    int count = 0;
+    for (int i = 0; i < table.length; i++) {
+      count += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+
+    size = (size >>> 1) - (count >>> 2);
+  }
+
+  private int indexOf(int item, int i) {
+    long hash = (item + SEED[i]) * SEED[i];
+    hash += hash >>> 32;
+    return ((int) hash) & tableMask;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * The request with headers replaced over the original request. Replacing headers does not copy the request, the
+ * headers are merged once when they are first asked for, so the request passing several interceptors is not rebuilt by
+ * each of them.
+ */
+final class HeaderOverlayRequest extends HttpRequest {
+  private final HttpRequest original;
+  /**
+   * The headers replacing the headers of original request with the same name.
+   */
+  private final Map<String, List<String>> overlay;
+  private volatile HttpHeaders headers;
+
+  private HeaderOverlayRequest(HttpRequest original, Map<String, List<String>> overlay) {
+    this.original = original;
+    this.overlay = overlay;
+  }
+
+  /**
+   * Creates the request with header {@code name} set to {@code value}.
+   */
+  static HttpRequest setHeader(HttpRequest request, String name, String value) {
+    return setHeaders(request, Map.of(name, List.of(value)));
+  }
+
+  /**
+   * Creates the request with the headers set to {@code headers}, other headers are left as is.
+   */
+  static HttpRequest setHeaders(HttpRequest request, Map<String, List<String>> headers) {
+    if (headers.isEmpty()) {
+      return request;
+    }
+
+    HttpRequest original = request;
+    var overlay = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+    if (request instanceof HeaderOverlayRequest) {
+      var r = (HeaderOverlayRequest) request;
+      original = r.original;
+      overlay.putAll(r.overlay);
+    }
+    overlay.putAll(headers);
+
+    return new HeaderOverlayRequest(original, overlay);
+  }
+
+  /**
+   * Gets the values of header {@code name} of the {@code request} without merging the headers of overlay request.
+   */
+  static List<String> allValues(HttpRequest request, String name) {
+    if (request instanceof HeaderOverlayRequest) {
+      var r = (HeaderOverlayRequest) request;
+      if (r.headers == null) {
+        var values = r.overlay.get(name);
+        return values != null ? values : r.original.headers().allValues(name);
+      }
+    }
+
+    return request.headers().allValues(name);
+  }
+
+  @Override
+  public HttpHeaders headers() {
+    var h = headers;
+    if (h == null) {
+      var builder = new HttpHeadersBuilder(original.headers());
+      overlay.forEach(builder::setTrusted);
+      headers = h = builder.build();
+    }
+
+    return h;
+  }
+
+  /**
+   * The body publisher of original request or empty body publisher, as the rebuilt request would have.
+   */
+  @Override
+  public Optional<BodyPublisher> bodyPublisher() {
+    return original.bodyPublisher().or(() -> Optional.of(BodyPublishers.noBody()));
+  }
+
+  @Override
+  public String method() {
+    return original.method();
+  }
+
+  @Override
+  public Optional<Duration> timeout() {
+    return original.timeout();
+  }
+
+  @Override
+  public boolean expectContinue() {
+    return original.expectContinue();
+  }
+
+  @Override
+  public URI uri() {
+    return original.uri();
+  }
+
+  @Override
+  public Optional<HttpClient.Version> version() {
+    return original.version();
+  }
+}
@@ -33,6 +33,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.function.BiPredicate;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import static java.util.function.Predicate.not;
@@ -50,6 +51,8 @@ class Headers {
   static final String HEADER_ETAG = "ETag";
   static final String HEADER_LAST_MODIFIED = "Last-Modified";
   static final String HEADER_WARNING = "Warning";
+  static final String HEADER_SURROGATE_KEY = "Surrogate-Key";
+  static final String HEADER_CACHE_TAG = "Cache-Tag";
   static final BiPredicate<String, String> ALLOW_ALL = (s, s2) -> true;
   static final HttpHeaders EMPTY_HEADERS = HttpHeaders.of(Map.of(), ALLOW_ALL);
   private static final DateTimeFormatter ASCTIME_DATE_TIME = new DateTimeFormatterBuilder()
@@ -78,6 +81,7 @@ class Headers {
       .toFormatter()
       .withLocale(Locale.ENGLISH)
       .withZone(ZoneOffset.UTC);
+  private static final Pattern TAG_SEPARATOR = Pattern.compile("[\\s,]+");
   private static final List<DateTimeFormatter> FORMATTERS = List.of(
       IMFFIXDATE_DATE_TIME,
       RFC_830_DATE_TIME,
@@ -111,8 +115,37 @@ class Headers {
     return parts != null ? parts : List.of();
   }
 
+  /**
+   * Collects the tags listed by space separated {@code Surrogate-Key} and comma separated {@code Cache-Tag} headers.
+   */
+  static List<String> tags(HttpHeaders headers) {
+    List<String> tags = null;
+    for (String name : List.of(HEADER_SURROGATE_KEY, HEADER_CACHE_TAG)) {
+      for (String value : headers.allValues(name)) {
+        for (String tag : TAG_SEPARATOR.split(value)) {
+          if (!tag.isEmpty()) {
+            if (tags == null) {
+              tags = new ArrayList<>();
+            }
+
+            tags.add(tag);
+          }
+        }
+      }
+    }
+
+    return tags != null ? tags : List.of();
+  }
+
   static Optional<String> firstValue(HttpHeaders headers, String name) {
-    return headers.firstValue(name).filter(not(String::isBlank));
+    // HttpHeaders#firstValue streams the values
+    var values = headers.allValues(name);
+    String value;
+    if (values.isEmpty() || (value = values.get(0)).isBlank()) {
+      return Optional.empty();
+    }
+
+    return Optional.of(value);
   }
 
   static Instant parseInstant(String date) {
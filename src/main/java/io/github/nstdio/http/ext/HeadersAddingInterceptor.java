@@ -16,53 +16,85 @@
 
 package io.github.nstdio.http.ext;
 
-import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.function.Supplier;
 
 class HeadersAddingInterceptor implements Interceptor {
-  private final Map<String, String> headers;
-  private final Map<String, Supplier<String>> resolvableHeaders;
+  /**
+   * The names of headers to add, the names of resolvable headers follow the names of plain ones.
+   */
+  private final String[] names;
+  private final String[] values;
+  private final Supplier<?>[] suppliers;
 
   HeadersAddingInterceptor(Map<String, String> headers, Map<String, Supplier<String>> resolvableHeaders) {
-    this.headers = headers;
-    this.resolvableHeaders = resolvableHeaders;
+    int size = headers.size() + resolvableHeaders.size();
+    this.names = new String[size];
+    this.values = new String[headers.size()];
+    this.suppliers = new Supplier<?>[resolvableHeaders.size()];
+
+    int i = 0;
+    for (var e : headers.entrySet()) {
+      names[i] = e.getKey();
+      values[i++] = e.getValue();
+    }
+    for (var e : resolvableHeaders.entrySet()) {
+      names[i] = e.getKey();
+      suppliers[i++ - values.length] = e.getValue();
+    }
   }
-  
+
   HeadersAddingInterceptor(Map<String, String> headers) {
     this(headers, Map.of());
   }
 
   @Override
   public <T> Chain<T> intercept(Chain<T> in) {
-    if (in.response().isPresent() || !hasHeaders()) {
+    if (in.response() != null || !hasHeaders()) {
       return in;
     }
 
-    return in.withRequest(apply(in.request()));
+    return in.setRequest(apply(in.request()));
   }
 
   private HttpRequest apply(HttpRequest request) {
-    var headers = addHeaders(request.headers());
-
-    var builder = HttpRequests.toBuilderOmitHeaders(request);
-    headers.forEach((name, values) -> values.forEach(v -> builder.header(name, v)));
+    Map<String, List<String>> added = null;
+    for (int i = 0; i < names.length; i++) {
+      String value = i < values.length ? values[i] : (String) suppliers[i - values.length].get();
+      added = addIfNotExist(request, added, names[i], value);
+    }
 
-    return builder.build();
+    return added != null ? HeaderOverlayRequest.setHeaders(request, added) : request;
   }
 
-  private Map<String, List<String>> addHeaders(HttpHeaders h) {
-    var headersBuilder = new HttpHeadersBuilder(h);
-
-    headers.forEach(headersBuilder::addIfNotExist);
-    resolvableHeaders.forEach((name, valueSupplier) -> headersBuilder.addIfNotExist(name, valueSupplier.get()));
+  /**
+   * Puts the values of header {@code name} with {@code value} added to {@code added} unless the value is already there.
+   *
+   * @return The {@code added} headers, created if {@code null} and the value is added.
+   */
+  private static Map<String, List<String>> addIfNotExist(HttpRequest request, Map<String, List<String>> added,
+                                                         String name, String value) {
+    List<String> values = added != null && added.containsKey(name)
+        ? added.get(name)
+        : HeaderOverlayRequest.allValues(request, name);
+    if (!values.contains(value)) {
+      var newValues = new ArrayList<String>(values.size() + 1);
+      newValues.addAll(values);
+      newValues.add(value);
+      if (added == null) {
+        added = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+      }
+      added.put(name, newValues);
+    }
 
-    return headersBuilder.map();
+    return added;
   }
 
   private boolean hasHeaders() {
-    return !headers.isEmpty() || !resolvableHeaders.isEmpty();
+    return names.length > 0;
   }
 }
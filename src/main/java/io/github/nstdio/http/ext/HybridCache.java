@@ -0,0 +1,560 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import io.github.nstdio.http.ext.InMemoryCache.InMemoryCacheEntry;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static io.github.nstdio.http.ext.Headers.HEADER_CONTENT_LENGTH;
+
+/**
+ * The {@code Cache} keeping hot entries in memory in front of the persistent cache. The memory tier is looked up first.
+ * Entries evicted from memory to make room are written to disk, and disk entries served often enough are read back to
+ * memory. Both transfers are made by background thread, so the callers never wait for disk while holding memory tier
+ * lock. A transfer is dropped if the entry is evicted, or replaced by a newer one, before it completes.
+ */
+class HybridCache implements Cache, KeyedCache {
+  private final Cache memory;
+  private final Cache disk;
+  private final CacheKeyStrategy keyStrategy;
+  private final long maxMemoryBodySize;
+  private final long minDiskBodySize;
+  private final int promotionFrequency;
+  private final FrequencySketch sketch;
+  private final ExecutorService executor;
+  /**
+   * The transfers scheduled but not completed by the variant they move, only the latest one for each variant.
+   */
+  private final Map<Map.Entry<CacheKey, VaryKey>, Transfer> pending = new ConcurrentHashMap<>();
+  /**
+   * Guards completing transfers against evictions, so the transfer is either completed before the entry is evicted or
+   * dropped. Never acquired while holding the tier locks, while the tiers are locked under it.
+   */
+  private final Object transferLock = new Object();
+
+  private final TrackableCacheStats memoryStats;
+  private final TrackableCacheStats diskStats;
+  private final CacheStats stats;
+
+  /**
+   * @param memory The factory of memory tier given the listener to be notified about the entries evicted to make room.
+   */
+  HybridCache(Function<Consumer<CacheEntry>, Cache> memory, Cache disk, CacheKeyStrategy keyStrategy,
+              long maxMemoryBodySize, long minDiskBodySize, int promotionFrequency, int memoryMaxItems) {
+    this.memory = memory.apply(this::demote);
+    this.disk = disk;
+    this.keyStrategy = keyStrategy;
+    this.maxMemoryBodySize = maxMemoryBodySize;
+    this.minDiskBodySize = minDiskBodySize;
+    this.promotionFrequency = promotionFrequency;
+    this.sketch = new FrequencySketch(memoryMaxItems);
+    this.executor = Executors.newFixedThreadPool(1, r -> {
+      var t = new Thread(r, "hybrid-cache-io");
+      t.setDaemon(true);
+      return t;
+    });
+
+    this.memoryStats = new DefaultCacheStats(null, null, List.of(), Map.of(), List.of(this.memory.stats()));
+    this.diskStats = new DefaultCacheStats(null, null, List.of(), Map.of(), List.of(disk.stats()));
+    this.stats = new DefaultCacheStats(null, null, List.of(memoryStats, diskStats), Map.of(),
+        List.of(this.memory.stats(), disk.stats()));
+  }
+
+  @Override
+  public CacheKey key(URI uri) {
+    return CacheKey.of(keyStrategy.key(uri));
+  }
+
+  @Override
+  public CacheEntry get(HttpRequest request) {
+    return get(key(request.uri()), request);
+  }
+
+  @Override
+  public CacheEntry get(CacheKey key, HttpRequest request) {
+    CacheEntry e = KeyedCache.get(memory, key, request);
+    if (e != null) {
+      memoryStats.trackHit();
+      return e;
+    }
+    memoryStats.trackMiss();
+
+    e = KeyedCache.get(disk, key, request);
+    if (e == null) {
+      diskStats.trackMiss();
+      return null;
+    }
+    diskStats.trackHit();
+
+    if (e.bodySize() <= maxMemoryBodySize && isFrequent(key)) {
+      promote(key, request, e);
+    }
+
+    return e;
+  }
+
+  @Override
+  public boolean contains(CacheKey key, HttpRequest request) {
+    return KeyedCache.contains(memory, key, request) || KeyedCache.contains(disk, key, request);
+  }
+
+  @Override
+  public void put(HttpRequest request, CacheEntry entry) {
+    put(key(request.uri()), request, entry);
+  }
+
+  @Override
+  public void put(CacheKey key, HttpRequest request, CacheEntry entry) {
+    supersede(key, entry.metadata());
+    if (entry.bodySize() > maxMemoryBodySize) {
+      writeToDisk(key, request, entry);
+    } else {
+      KeyedCache.put(memory, key, request, entry);
+      KeyedCache.evict(disk, key, request);
+    }
+  }
+
+  @Override
+  public void evict(HttpRequest request) {
+    evict(key(request.uri()), request);
+  }
+
+  @Override
+  public void evict(CacheKey key, HttpRequest request) {
+    synchronized (transferLock) {
+      cancel(t -> t.key.getKey().equals(key));
+      KeyedCache.evict(memory, key, request);
+      KeyedCache.evict(disk, key, request);
+    }
+  }
+
+  @Override
+  public void evictAll(HttpRequest request) {
+    evictAll(key(request.uri()), request);
+  }
+
+  @Override
+  public void evictAll(CacheKey key, HttpRequest request) {
+    synchronized (transferLock) {
+      cancel(t -> t.key.getKey().equals(key));
+      KeyedCache.evictAll(memory, key, request);
+      KeyedCache.evictAll(disk, key, request);
+    }
+  }
+
+  @Override
+  public void evictAll() {
+    synchronized (transferLock) {
+      pending.clear();
+      memory.evictAll();
+      disk.evictAll();
+    }
+  }
+
+  @Override
+  public void evictByPrefix(URI prefix) {
+    String p = keyStrategy.key(prefix);
+    synchronized (transferLock) {
+      cancel(t -> t.key.getKey().toString().startsWith(p));
+      memory.evictByPrefix(prefix);
+      disk.evictByPrefix(prefix);
+    }
+  }
+
+  @Override
+  public void evictByHost(String host) {
+    synchronized (transferLock) {
+      cancel(t -> host.equalsIgnoreCase(t.request.uri().getHost()));
+      memory.evictByHost(host);
+      disk.evictByHost(host);
+    }
+  }
+
+  @Override
+  public void evictByTag(String... tags) {
+    var evicted = List.of(tags);
+    synchronized (transferLock) {
+      cancel(t -> !Collections.disjoint(Headers.tags(t.entry.metadata().response().headers()), evicted));
+      memory.evictByTag(tags);
+      disk.evictByTag(tags);
+    }
+  }
+
+  /**
+   * Drops the pending transfer of the variant which is being replaced.
+   */
+  private void supersede(CacheKey key, CacheEntryMetadata metadata) {
+    synchronized (transferLock) {
+      pending.remove(Map.entry(key, metadata.varyKey()));
+    }
+  }
+
+  private void cancel(Predicate<Transfer> p) {
+    pending.values().removeIf(p);
+  }
+
+  @Override
+  public CacheStats stats() {
+    return stats;
+  }
+
+  @Override
+  public <T> Writer<T> writer(CacheEntryMetadata metadata) {
+    var request = metadata.request();
+    var key = key(request.uri());
+    long length = metadata.response().headers().firstValueAsLong(HEADER_CONTENT_LENGTH).orElse(-1);
+    if (length > maxMemoryBodySize) {
+      Writer<T> writer = disk.writer(metadata);
+      return new Writer<>() {
+        @Override
+        public BodySubscriber<T> subscriber() {
+          return writer.subscriber();
+        }
+
+        @Override
+        public Consumer<T> finisher() {
+          return t -> {
+            supersede(key, metadata);
+            writer.finisher().accept(t);
+            KeyedCache.evict(memory, key, request);
+          };
+        }
+      };
+    }
+
+    @SuppressWarnings("unchecked")
+    Writer<T> writer = (Writer<T>) heapWriter(key, metadata);
+    return writer;
+  }
+
+  /**
+   * Creates the writer keeping the body on heap until it exceeds {@code maxMemoryBodySize}, then streaming it to disk.
+   * The body is completed with either {@code byte[]} or {@link SpilledBody}.
+   */
+  private Writer<Object> heapWriter(CacheKey key, CacheEntryMetadata metadata) {
+    var request = metadata.request();
+    return new Writer<>() {
+      @Override
+      public BodySubscriber<Object> subscriber() {
+        return new SpillingSubscriber(metadata);
+      }
+
+      @Override
+      public Consumer<Object> finisher() {
+        return body -> {
+          if (body instanceof SpilledBody) {
+            supersede(key, metadata);
+            ((SpilledBody) body).finish();
+            KeyedCache.evict(memory, key, request);
+          } else {
+            put(key, request, new InMemoryCacheEntry((byte[]) body, metadata));
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public void close() throws IOException {
+    executor.shutdown();
+    try {
+      //noinspection ResultOfMethodCallIgnored
+      executor.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException ignored) {
+    }
+
+    try {
+      memory.close();
+    } finally {
+      disk.close();
+    }
+  }
+
+  private boolean isFrequent(CacheKey key) {
+    int hash = key.hashCode();
+    synchronized (sketch) {
+      sketch.increment(hash);
+      return sketch.frequency(hash) >= promotionFrequency;
+    }
+  }
+
+  /**
+   * Invoked under the memory tier lock when {@code entry} is evicted from memory to make room.
+   */
+  private void demote(CacheEntry entry) {
+    if (entry.bodySize() >= minDiskBodySize) {
+      copyToDisk(key(entry.metadata().request().uri()), entry);
+    }
+  }
+
+  private void promote(CacheKey key, HttpRequest request, CacheEntry entry) {
+    var t = schedule(key, entry);
+    execute(() -> {
+      if (t.isPending()) {
+        transfer(entry, BodySubscribers.ofByteArray())
+            .thenAccept(body -> t.complete(() -> {
+              KeyedCache.put(memory, key, request, new InMemoryCacheEntry(body, entry.metadata()));
+              KeyedCache.evict(disk, key, request);
+            }, () -> {
+            }));
+      }
+    });
+  }
+
+  private void copyToDisk(CacheKey key, CacheEntry entry) {
+    var t = schedule(key, entry);
+    execute(() -> {
+      if (t.isPending()) {
+        Writer<Object> writer = disk.writer(entry.metadata());
+        transfer(entry, writer.subscriber())
+            .thenAccept(body -> t.complete(() -> writer.finisher().accept(body), () -> discard(body)));
+      }
+    });
+  }
+
+  /**
+   * Writes the entry too large for memory to disk on the caller thread, so it is readable once {@code put} returns
+   * and its body is not retained by the pending transfer.
+   */
+  private void writeToDisk(CacheKey key, HttpRequest request, CacheEntry entry) {
+    Writer<Object> writer = disk.writer(entry.metadata());
+    try {
+      writer.finisher().accept(transfer(entry, writer.subscriber()).toCompletableFuture().join());
+    } catch (CompletionException ignored) {
+      // the body cannot be written, so the entry is not stored
+    } finally {
+      KeyedCache.evict(memory, key, request);
+    }
+  }
+
+  /**
+   * Deletes the file written for the transfer that is dropped.
+   */
+  private static void discard(Object body) {
+    if (body instanceof Path) {
+      IOUtils.delete((Path) body);
+    }
+  }
+
+  private Transfer schedule(CacheKey key, CacheEntry entry) {
+    var t = new Transfer(key, entry);
+    pending.put(t.key, t);
+    return t;
+  }
+
+  private void execute(Runnable task) {
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException ignored) {
+      // closed
+    }
+  }
+
+  /**
+   * Feeds the body of {@code entry} to {@code subscriber} requesting all of it.
+   */
+  private static <T> CompletionStage<T> transfer(CacheEntry entry, BodySubscriber<T> subscriber) {
+    entry.subscribeTo(new Flow.Subscriber<>() {
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        subscriber.onSubscribe(subscription);
+        subscription.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(List<ByteBuffer> item) {
+        subscriber.onNext(item);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        subscriber.onError(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        subscriber.onComplete();
+      }
+    });
+
+    return subscriber.getBody();
+  }
+
+  /**
+   * The transfer of entry between tiers.
+   */
+  private final class Transfer {
+    private final Map.Entry<CacheKey, VaryKey> key;
+    private final HttpRequest request;
+    private final CacheEntry entry;
+
+    Transfer(CacheKey key, CacheEntry entry) {
+      this.key = Map.entry(key, entry.metadata().varyKey());
+      this.request = entry.metadata().request();
+      this.entry = entry;
+    }
+
+    boolean isPending() {
+      return pending.get(key) == this;
+    }
+
+    /**
+     * Runs {@code action} if the transfer is still pending and the memory tier has no newer entry of the same variant,
+     * otherwise runs {@code discard}.
+     */
+    void complete(Runnable action, Runnable discard) {
+      synchronized (transferLock) {
+        if (pending.remove(key, this) && !KeyedCache.contains(memory, key.getKey(), request)) {
+          action.run();
+          return;
+        }
+      }
+
+      discard.run();
+    }
+  }
+
+  /**
+   * The body spilled to disk by {@link SpillingSubscriber}.
+   */
+  private static final class SpilledBody {
+    private final Writer<Object> writer;
+    private final Object body;
+
+    SpilledBody(Writer<Object> writer, Object body) {
+      this.writer = writer;
+      this.body = body;
+    }
+
+    void finish() {
+      writer.finisher().accept(body);
+    }
+  }
+
+  /**
+   * Collects the body of unknown length on heap and switches to the disk writer once it exceeds
+   * {@code maxMemoryBodySize}, so large chunked bodies never reach the memory tier.
+   */
+  private final class SpillingSubscriber implements BodySubscriber<Object> {
+    private final CacheEntryMetadata metadata;
+    private final CompletableFuture<Object> result = new CompletableFuture<>();
+    private List<ByteBuffer> buffers = new ArrayList<>();
+    private long length;
+    private Flow.Subscription subscription;
+    private Writer<Object> diskWriter;
+    private BodySubscriber<Object> diskSubscriber;
+
+    SpillingSubscriber(CacheEntryMetadata metadata) {
+      this.metadata = metadata;
+    }
+
+    @Override
+    public CompletionStage<Object> getBody() {
+      return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> item) {
+      if (diskSubscriber != null) {
+        diskSubscriber.onNext(item);
+        return;
+      }
+
+      for (ByteBuffer b : item) {
+        length += b.remaining();
+        buffers.add(ByteBuffer.allocate(b.remaining()).put(b.duplicate()).flip());
+      }
+
+      if (length > maxMemoryBodySize) {
+        spill();
+      }
+    }
+
+    private void spill() {
+      diskWriter = disk.writer(metadata);
+      diskSubscriber = diskWriter.subscriber();
+      diskSubscriber.onSubscribe(subscription);
+
+      var b = buffers;
+      buffers = null;
+      diskSubscriber.onNext(b);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      buffers = null;
+      if (diskSubscriber != null) {
+        diskSubscriber.onError(throwable);
+      }
+      result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      if (diskSubscriber != null) {
+        diskSubscriber.onComplete();
+        diskSubscriber.getBody().whenComplete((body, th) -> {
+          if (th != null) {
+            result.completeExceptionally(th);
+          } else {
+            result.complete(new SpilledBody(diskWriter, body));
+          }
+        });
+        return;
+      }
+
+      byte[] body = new byte[(int) length];
+      int offset = 0;
+      for (ByteBuffer b : buffers) {
+        int n = b.remaining();
+        b.get(body, offset, n);
+        offset += n;
+      }
+      buffers = null;
+      result.complete(body);
+    }
+  }
+}
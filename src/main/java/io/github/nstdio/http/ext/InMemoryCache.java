@@ -21,6 +21,8 @@ import java.net.http.HttpResponse.BodySubscriber;
 import java.net.http.HttpResponse.BodySubscribers;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.Flow;
 import java.util.function.Consumer;
 
@@ -29,34 +31,81 @@ class InMemoryCache extends SizeConstrainedCache {
   private static final Consumer<CacheEntry> EMPTY_CONSUMER = entry -> {
   };
 
+  private final SlabArena arena;
+  private final int compressionThreshold;
+  private final DefaultCacheStats stats;
+
   InMemoryCache(int maxItems, long maxBytes) {
-    super(maxItems, maxBytes, EMPTY_CONSUMER);
+    this(maxItems, maxBytes, EvictionPolicy.LRU, CacheKeyStrategy.exact(), Weigher.bodySize(), null, -1, null);
   }
 
-  static int indexOf(HttpRequest r, List<? extends CacheEntry> es) {
-    //TODO: Check if es is RandomAccess
-    var headers = r.headers();
+  /**
+   * @param arena                The arena to store bodies off-heap, {@code null} to store them on heap.
+   * @param compressionThreshold The minimum length of heap body to be compressed, negative to never compress.
+   * @param memoryPressure       The monitor shrinking the cache under heap pressure, {@code null} to keep the size fixed.
+   */
+  InMemoryCache(int maxItems, long maxBytes, EvictionPolicy evictionPolicy, CacheKeyStrategy keyStrategy,
+                Weigher weigher, SlabArena arena, int compressionThreshold, MemoryPressure memoryPressure) {
+    super(maxItems, maxBytes, evictionPolicy, keyStrategy, weigher,
+        arena == null ? EMPTY_CONSUMER : InMemoryCache::release);
+    this.arena = arena;
+    this.compressionThreshold = compressionThreshold;
+    this.stats = arena == null && memoryPressure == null
+        ? super.stats()
+        : new DefaultCacheStats(arena, memoryPressure, List.of(), Map.of(), List.of(super.stats()));
+    setMemoryPressure(memoryPressure);
+  }
 
-    outer:
-    for (int i = 0; i < es.size(); i++) {
-      var cacheEntry = es.get(i);
-      var varyHeaders = cacheEntry.metadata().varyHeaders().map();
+  private static void release(CacheEntry entry) {
+    if (entry instanceof OffHeapCacheEntry) {
+      ((OffHeapCacheEntry) entry).body.release();
+    }
+  }
 
-      for (var entry : varyHeaders.entrySet()) {
-        if (!entry.getValue().equals(headers.allValues(entry.getKey()))) {
-          continue outer;
-        }
-      }
+  /**
+   * Off-heap entries are handed out as separate references, so the body stays in the arena while it is used even if
+   * the entry gets evicted.
+   */
+  private static CacheEntry reference(CacheEntry entry) {
+    return entry instanceof OffHeapCacheEntry ? ((OffHeapCacheEntry) entry).duplicate() : entry;
+  }
+
+  @Override
+  public CacheEntry get(CacheKey key, HttpRequest request) {
+    return reference(super.get(key, request));
+  }
+
+  @Override
+  CacheEntry peek(CacheKey key, HttpRequest request) {
+    return reference(super.peek(key, request));
+  }
 
-      return i;
+  @Override
+  public DefaultCacheStats stats() {
+    return stats;
+  }
+
+  @Override
+  public List<CacheEntry> entries() {
+    var entries = super.entries();
+    if (arena != null) {
+      entries.replaceAll(InMemoryCache::reference);
+      entries.removeIf(Objects::isNull);
     }
 
-    return -1;
+    return entries;
   }
 
   @Override
   @SuppressWarnings("unchecked")
-  public Writer<byte[]> writer(CacheEntryMetadata metadata) {
+  public <T> Writer<T> writer(CacheEntryMetadata metadata) {
+    if (arena != null) {
+      return (Writer<T>) offHeapWriter(metadata);
+    }
+    return (Writer<T>) (compressionThreshold < 0 ? heapWriter(metadata) : compressingWriter(metadata));
+  }
+
+  private Writer<byte[]> heapWriter(CacheEntryMetadata metadata) {
     return new Writer<>() {
       @Override
       public BodySubscriber<byte[]> subscriber() {
@@ -73,6 +122,57 @@ class InMemoryCache extends SizeConstrainedCache {
     };
   }
 
+  private Writer<CacheEntry> compressingWriter(CacheEntryMetadata metadata) {
+    return new Writer<>() {
+      @Override
+      public BodySubscriber<CacheEntry> subscriber() {
+        // compress when the body is received rather than in finisher which may run under the cache lock
+        return BodySubscribers.mapping(BodySubscribers.ofByteArray(), body -> heapEntry(body, metadata));
+      }
+
+      @Override
+      public Consumer<CacheEntry> finisher() {
+        return e -> put(metadata.request(), e);
+      }
+    };
+  }
+
+  private CacheEntry heapEntry(byte[] body, CacheEntryMetadata metadata) {
+    if (body.length >= compressionThreshold) {
+      byte[] compressed = Deflation.deflate(body);
+      if (compressed != null) {
+        return new CompressedCacheEntry(compressed, body.length, metadata);
+      }
+    }
+
+    return new InMemoryCacheEntry(body, metadata);
+  }
+
+  private Writer<OffHeapBody.Builder> offHeapWriter(CacheEntryMetadata metadata) {
+    return new Writer<>() {
+      @Override
+      public BodySubscriber<OffHeapBody.Builder> subscriber() {
+        return OffHeapBody.subscriber(arena);
+      }
+
+      @Override
+      public Consumer<OffHeapBody.Builder> finisher() {
+        return builder -> {
+          // make room in the arena for the part of body that did not fit while it was received
+          boolean flushed;
+          while (!(flushed = builder.flush()) && evictEldest()) {
+          }
+
+          if (flushed && canStore(builder.allocated())) {
+            put(metadata.request(), new OffHeapCacheEntry(builder.build(), metadata));
+          } else {
+            builder.discard();
+          }
+        };
+      }
+    };
+  }
+
   static class InMemoryCacheEntry implements CacheEntry {
     private final byte[] body;
     private final CacheEntryMetadata metadata;
@@ -98,4 +198,88 @@ class InMemoryCache extends SizeConstrainedCache {
       return metadata;
     }
   }
+
+  static class CompressedCacheEntry implements CacheEntry {
+    private final byte[] body;
+    private final int length;
+    private final CacheEntryMetadata metadata;
+
+    CompressedCacheEntry(byte[] body, int length, CacheEntryMetadata metadata) {
+      this.body = body;
+      this.length = length;
+      this.metadata = metadata;
+    }
+
+    /**
+     * The compressed size of the body.
+     */
+    @Override
+    public long bodySize() {
+      return body.length;
+    }
+
+    @Override
+    public void subscribeTo(Flow.Subscriber<List<ByteBuffer>> sub) {
+      Flow.Subscription subscription = ByteArraySubscription.ofByteBufferList(sub, () -> Deflation.inflate(body, length));
+      sub.onSubscribe(subscription);
+    }
+
+    @Override
+    public CacheEntryMetadata metadata() {
+      return metadata;
+    }
+  }
+
+  static class OffHeapCacheEntry implements CacheEntry {
+    private final OffHeapBody body;
+    private final CacheEntryMetadata metadata;
+    /**
+     * Whether the reference to the body is handed out to be read once, so it is released as soon as the body is
+     * subscribed to.
+     */
+    private final boolean readOnce;
+
+    OffHeapCacheEntry(OffHeapBody body, CacheEntryMetadata metadata) {
+      this(body, metadata, false);
+    }
+
+    private OffHeapCacheEntry(OffHeapBody body, CacheEntryMetadata metadata, boolean readOnce) {
+      this.body = body;
+      this.metadata = metadata;
+      this.readOnce = readOnce;
+    }
+
+    /**
+     * Creates the entry holding the new reference to the body. The reference is released once the body is subscribed
+     * to, the subscription keeps the body in the arena until it ends. The reference that is never subscribed to is
+     * released once it becomes unreachable.
+     *
+     * @return The entry or {@code null} if body is already released.
+     */
+    OffHeapCacheEntry duplicate() {
+      var b = body.duplicate();
+      return b != null ? new OffHeapCacheEntry(b, metadata, true) : null;
+    }
+
+    /**
+     * The number of arena bytes taken by the body, that is, the body length rounded up to the block size.
+     */
+    @Override
+    public long bodySize() {
+      return body.allocated();
+    }
+
+    @Override
+    public void subscribeTo(Flow.Subscriber<List<ByteBuffer>> sub) {
+      body.subscribeTo(sub);
+      if (readOnce) {
+        body.release();
+      }
+    }
+
+    @Override
+    public CacheEntryMetadata metadata() {
+      return metadata;
+    }
+  }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import io.github.nstdio.http.ext.ExtendedHttpClient.Sender;
+import io.github.nstdio.http.ext.RequestInterceptor.Exchange;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Adapts {@link RequestInterceptor} to the pipeline. Unlike {@link Interceptor} it sends the request through the rest
+ * of the pipeline itself, so the client splits the pipeline by these stages.
+ */
+final class InterceptorStage {
+  private final RequestInterceptor interceptor;
+  /**
+   * The time spent in the interceptor on the sending thread, {@code null} if it is not recorded.
+   */
+  private final LatencyHistogram latency;
+
+  InterceptorStage(RequestInterceptor interceptor, LatencyHistogram latency) {
+    this.interceptor = interceptor;
+    this.latency = latency;
+  }
+
+  /**
+   * Creates the sender passing the request through the interceptor to {@code next}.
+   */
+  <T> Sender<T> sender(Sender<T> next) {
+    return ctx -> {
+      var exchange = new DefaultExchange<T>(ctx, next);
+      long start = latency != null ? System.nanoTime() : 0;
+      try {
+        return Objects.requireNonNull(interceptor.intercept(exchange), "interceptor returned null");
+      } catch (Throwable th) {
+        return CompletableFuture.failedFuture(th);
+      } finally {
+        if (latency != null) {
+          latency.record(System.nanoTime() - start - exchange.nextNanos);
+        }
+      }
+    };
+  }
+
+  private final class DefaultExchange<T> implements Exchange<T> {
+    private final RequestContext ctx;
+    private final Sender<T> next;
+    /**
+     * The time spent by the next stages on the sending thread, which is not counted as interceptor's one.
+     */
+    private long nextNanos;
+
+    DefaultExchange(RequestContext ctx, Sender<T> next) {
+      this.ctx = ctx;
+      this.next = next;
+    }
+
+    @Override
+    public HttpRequest request() {
+      return ctx.request();
+    }
+
+    @Override
+    public BodyHandler<T> bodyHandler() {
+      return ctx.bodyHandler();
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse<T>> proceed(HttpRequest request) {
+      Objects.requireNonNull(request);
+      // the next stages update the context in place, while the request can be sent more than once
+      var nextCtx = ctx.forkRewritten(request);
+      if (latency == null) {
+        return next.apply(nextCtx);
+      }
+
+      long start = System.nanoTime();
+      try {
+        return next.apply(nextCtx);
+      } finally {
+        nextNanos += System.nanoTime() - start;
+      }
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse<T>> respond(int statusCode, HttpHeaders headers, byte[] body) {
+      Objects.requireNonNull(headers);
+      Objects.requireNonNull(body);
+      var info = ImmutableResponseInfo.builder()
+          .statusCode(statusCode)
+          .headers(headers)
+          .version(HttpClient.Version.HTTP_1_1)
+          .build();
+
+      var sub = bodyHandler().apply(info);
+      sub.onSubscribe(ByteArraySubscription.ofByteBufferList(sub, body));
+
+      return sub.getBody()
+          .<HttpResponse<T>>thenApply(b -> StaticHttpResponse.<T>builder()
+              .statusCode(statusCode)
+              .request(request())
+              .headers(headers)
+              .uri(request().uri())
+              .version(info.version())
+              .body(b)
+              .build())
+          .toCompletableFuture();
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import io.github.nstdio.http.ext.Cache.CacheEntry;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+
+/**
+ * The cache accepting the key computed by its caller, so the URI is normalized and hashed once per operation however
+ * many layers the operation passes through. The key passed should be the one returned by {@link #key(URI)}.
+ */
+interface KeyedCache {
+  /**
+   * Computes the key the entries of {@code uri} are stored by.
+   */
+  CacheKey key(URI uri);
+
+  CacheEntry get(CacheKey key, HttpRequest request);
+
+  void put(CacheKey key, HttpRequest request, CacheEntry entry);
+
+  void evict(CacheKey key, HttpRequest request);
+
+  void evictAll(CacheKey key, HttpRequest request);
+
+  /**
+   * Whether the entry for {@code request} is stored. Unlike {@link #get(CacheKey, HttpRequest)} it is not counted by
+   * the stats, nor as access of the entry by the eviction policy. The LRU policy still counts it as access of the key.
+   */
+  boolean contains(CacheKey key, HttpRequest request);
+
+  /**
+   * Computes the key {@code cache} stores the entries of {@code uri} by, the URI itself if the cache does not expose
+   * its keys.
+   */
+  static CacheKey keyOf(Cache cache, URI uri) {
+    return cache instanceof KeyedCache ? ((KeyedCache) cache).key(uri) : CacheKey.of(uri.toString());
+  }
+
+  static CacheEntry get(Cache cache, CacheKey key, HttpRequest request) {
+    return cache instanceof KeyedCache ? ((KeyedCache) cache).get(key, request) : cache.get(request);
+  }
+
+  static boolean contains(Cache cache, CacheKey key, HttpRequest request) {
+    return cache instanceof KeyedCache ? ((KeyedCache) cache).contains(key, request) : cache.get(request) != null;
+  }
+
+  static void put(Cache cache, CacheKey key, HttpRequest request, CacheEntry entry) {
+    if (cache instanceof KeyedCache) {
+      ((KeyedCache) cache).put(key, request, entry);
+    } else {
+      cache.put(request, entry);
+    }
+  }
+
+  static void evict(Cache cache, CacheKey key, HttpRequest request) {
+    if (cache instanceof KeyedCache) {
+      ((KeyedCache) cache).evict(key, request);
+    } else {
+      cache.evict(request);
+    }
+  }
+
+  static void evictAll(Cache cache, CacheKey key, HttpRequest request) {
+    if (cache instanceof KeyedCache) {
+      ((KeyedCache) cache).evictAll(key, request);
+    } else {
+      cache.evictAll(request);
+    }
+  }
+}
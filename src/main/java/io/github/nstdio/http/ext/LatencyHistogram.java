@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code LatencyStats} recording durations into power of two buckets, so recording is a couple of uncontended
+ * additions and the percentiles are precise to a factor of two.
+ */
+class LatencyHistogram implements LatencyStats {
+  private static final int BUCKETS = Long.SIZE;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+  private final LongAdder totalNanos = new LongAdder();
+
+  LatencyHistogram() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Creates the histogram holding the sum of {@code histograms} at the moment of the call.
+   */
+  static LatencyHistogram sum(List<LatencyHistogram> histograms) {
+    var sum = new LatencyHistogram();
+    for (LatencyHistogram h : histograms) {
+      for (int i = 0; i < BUCKETS; i++) {
+        sum.buckets[i].add(h.buckets[i].sum());
+      }
+      sum.totalNanos.add(h.totalNanos.sum());
+    }
+
+    return sum;
+  }
+
+  private static int bucket(long nanos) {
+    return nanos <= 0 ? 0 : BUCKETS - 1 - Long.numberOfLeadingZeros(nanos);
+  }
+
+  void record(long nanos) {
+    buckets[bucket(nanos)].increment();
+    totalNanos.add(Math.max(0, nanos));
+  }
+
+  @Override
+  public long count() {
+    long count = 0;
+    for (LongAdder b : buckets) {
+      count += b.sum();
+    }
+
+    return count;
+  }
+
+  @Override
+  public long totalNanos() {
+    return totalNanos.sum();
+  }
+
+  @Override
+  public long percentile(double p) {
+    Preconditions.checkArgument(p >= 0 && p <= 1, "The percentile must be in [0, 1] range.");
+
+    var counts = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets[i].sum();
+      count += counts[i];
+    }
+    if (count == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(p * count));
+    long seen = 0;
+    int i = 0;
+    while ((seen += counts[i]) < rank) {
+      i++;
+    }
+
+    return i == BUCKETS - 1 ? Long.MAX_VALUE : (2L << i) - 1;
+  }
+}
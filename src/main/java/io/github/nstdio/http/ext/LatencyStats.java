@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+/**
+ * The distribution of the durations of some operation. The durations are kept in power of two buckets of nanoseconds,
+ * so the percentiles are approximate.
+ */
+public interface LatencyStats {
+  /**
+   * The number of recorded durations.
+   *
+   * @return The number of recorded durations.
+   */
+  long count();
+
+  /**
+   * The sum of recorded durations.
+   *
+   * @return The sum of recorded durations in nanoseconds.
+   */
+  long totalNanos();
+
+  /**
+   * The duration that {@code p} share of recorded durations does not exceed, rounded up to the bucket bound.
+   *
+   * @param p The share between {@code 0} and {@code 1} inclusive, i.e. {@code 0.99} for the 99th percentile.
+   *
+   * @return The duration in nanoseconds or {@code 0} if nothing is recorded.
+   */
+  long percentile(double p);
+
+  /**
+   * The mean of recorded durations.
+   *
+   * @return The mean in nanoseconds or {@code 0} if nothing is recorded.
+   */
+  default double meanNanos() {
+    long count = count();
+    return count == 0 ? 0 : (double) totalNanos() / count;
+  }
+}
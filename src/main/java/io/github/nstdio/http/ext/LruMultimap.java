@@ -17,104 +17,278 @@
 package io.github.nstdio.http.ext;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
-import java.util.function.ToIntFunction;
+import java.util.function.Function;
 
 class LruMultimap<K, V> {
-  private final Map<K, List<V>> m;
+  private final Map<K, Variants<V>> m;
   private final int maxSize;
   private Consumer<V> evictListener;
+  /**
+   * Notified after {@link #evictListener} about the values evicted to keep the map within its limits only.
+   */
+  private Consumer<V> overflowListener;
+  /**
+   * Notified about keys getting their first value and losing the last one.
+   */
+  private Consumer<K> keyAddListener;
+  private Consumer<K> keyRemoveListener;
   private int size;
+  /**
+   * The copies of the values that can be safely read without holding the lock guarding this map.
+   */
+  private Map<K, Variants<V>> readView;
+  /**
+   * The eviction order of keys when W-TinyLFU is used instead of plain LRU.
+   */
+  private final WTinyLfu<K> tinyLfu;
+  /**
+   * Computes the variant key of the value, so values under the same key can be found by
+   * {@link #getVariant(Object, Function)} without scanning.
+   */
+  private final Function<? super V, ?> variantKey;
+  /**
+   * Computes the group of the value. The selector passed to {@link #getVariant(Object, Function)} computes the same
+   * variant key for the values of the same group.
+   */
+  private final Function<? super V, ?> variantGroup;
 
   LruMultimap(int maxSize, Consumer<V> evictListener) {
-    m = new LinkedHashMap<>(maxSize + 1, 1.0f, true);
+    this(maxSize, evictListener, false);
+  }
+
+  LruMultimap(int maxSize, Consumer<V> evictListener, boolean tinyLfu) {
+    this(maxSize, evictListener, tinyLfu, null, null);
+  }
+
+  LruMultimap(int maxSize, Consumer<V> evictListener, boolean tinyLfu, Function<? super V, ?> variantKey,
+              Function<? super V, ?> variantGroup) {
+    if (tinyLfu) {
+      m = new HashMap<>(maxSize + 1, 1.0f);
+      this.tinyLfu = new WTinyLfu<>(maxSize);
+    } else {
+      m = new LinkedHashMap<>(maxSize + 1, 1.0f, true);
+      this.tinyLfu = null;
+    }
     this.maxSize = maxSize;
     this.evictListener = evictListener;
+    this.variantKey = variantKey;
+    this.variantGroup = variantGroup;
   }
 
   int size() {
     return size;
   }
 
+  /**
+   * Collects the values from the least to the most recently used. The order is arbitrary when W-TinyLFU is used.
+   */
+  List<V> toList() {
+    var values = new ArrayList<V>(size);
+    for (var vs : m.values()) {
+      for (int i = vs.size() - 1; i >= 0; i--) {
+        values.add(vs.get(i));
+      }
+    }
+
+    return values;
+  }
+
   int mapSize() {
     return m.size();
   }
 
-  V getSingle(K k, ToIntFunction<List<V>> idxFn) {
-    List<V> vs = m.get(k);
+  /**
+   * Enables the read view of this map so {@link #peekVariant(Object, Function)} can be used concurrently with mutations.
+   * Should be invoked before this map gets shared between threads.
+   */
+  void enableReadView() {
+    if (readView == null) {
+      var view = new ConcurrentHashMap<K, Variants<V>>(Math.max(16, m.size()));
+      m.forEach((k, vs) -> view.put(k, vs.copy()));
+      readView = view;
+    }
+  }
 
-    V v = null;
-    int i;
-    if (vs != null && (i = idxFn.applyAsInt(vs)) >= 0 && i < vs.size()) {
-      v = vs.get(i);
+  /**
+   * Gets the value by variant key without affecting the access order. Unlike the other methods this one can be invoked
+   * without external synchronization once {@link #enableReadView()} is called.
+   */
+  V peekVariant(K k, Function<? super V, ?> selector) {
+    var node = find(readView.get(k), selector);
+    return node != null ? node.value() : null;
+  }
 
-      // Bring element to the front
-      // if it already isn't there
-      if (i != 0) {
-        vs.remove(i);
-        vs.add(0, v);
-      }
+  /**
+   * Whether the value with variant key is present. Does not affect the order of variants nor the frequency of the key,
+   * but moves the key to the front in LRU order, since the map of keys cannot be read otherwise.
+   */
+  boolean containsVariant(K k, Function<? super V, ?> selector) {
+    return find(m.get(k), selector) != null;
+  }
+
+  /**
+   * Gets the value by variant key.
+   *
+   * @param k        The key.
+   * @param selector Computes the variant key to look up given the value stored under {@code k}. Applied once for
+   *                 every group of values.
+   *
+   * @return The value or {@code null} if not found.
+   */
+  V getVariant(K k, Function<? super V, ?> selector) {
+    var vs = m.get(k);
+    return access(k, vs, find(vs, selector));
+  }
+
+  /**
+   * Records the access to the key as {@link #getVariant(Object, Function)} does, but leaves the order of its variants.
+   */
+  void touch(K k) {
+    var vs = m.get(k);
+    if (vs != null && tinyLfu != null) {
+      tinyLfu.onAccess(k);
     }
+  }
 
-    return v;
+  private V access(K k, Variants<V> vs, Variants.Node<V> node) {
+    if (tinyLfu != null) {
+      tinyLfu.onAccess(k);
+    }
+
+    if (node == null) {
+      return null;
+    }
+
+    // Bring element to the front
+    // if it already isn't there
+    vs.moveToFront(node);
+
+    return node.value();
   }
 
-  List<V> putSingle(K key, V value, ToIntFunction<List<V>> idxFn) {
-    List<V> vs = m.computeIfAbsent(key, k -> new ArrayList<>(1));
+  private Variants.Node<V> find(Variants<V> vs, Function<? super V, ?> selector) {
+    return vs != null ? vs.find(selector) : null;
+  }
 
-    int i;
-    if (!vs.isEmpty() && (i = idxFn.applyAsInt(vs)) != -1) {
-      notifyEvicted(vs.set(i, value));
+  /**
+   * Puts the value replacing the one with the same variant key.
+   */
+  List<V> putVariant(K key, V value) {
+    var vs = values(key);
+    return put(key, vs, vs.find(variantKeyOf(value)), value);
+  }
+
+  private Variants<V> values(K key) {
+    var vs = m.get(key);
+    if (vs == null) {
+      vs = new Variants<>();
+      m.put(key, vs);
+      if (tinyLfu != null) {
+        tinyLfu.onAdd(key);
+      }
+      if (keyAddListener != null) {
+        keyAddListener.accept(key);
+      }
+    } else if (tinyLfu != null) {
+      tinyLfu.onAccess(key);
+    }
+
+    return vs;
+  }
+
+  private List<V> put(K key, Variants<V> vs, Variants.Node<V> node, V value) {
+    if (node != null) {
+      notifyEvicted(vs.set(node, variantKeyOf(value), variantGroupOf(value), value));
+      publish(key, vs);
     } else {
-      vs.add(0, value);
+      vs.addFirst(variantKeyOf(value), variantGroupOf(value), value);
       size++;
+      publish(key, vs);
 
       if (size > maxSize) {
         evictEldest();
       }
     }
 
-    return Collections.unmodifiableList(vs);
+    return vs;
+  }
+
+  private Object variantKeyOf(V value) {
+    return variantKey != null ? variantKey.apply(value) : null;
+  }
+
+  private Object variantGroupOf(V value) {
+    return variantGroup != null ? variantGroup.apply(value) : null;
   }
 
   boolean evictEldest() {
-    return size != 0 && evictEldest(m.entrySet().iterator(), false);
+    if (size == 0) {
+      return false;
+    }
+
+    return tinyLfu == null ? evictEldest(m.entrySet().iterator(), false) : evictVictim();
+  }
+
+  private boolean evictVictim() {
+    K k = tinyLfu.victim();
+    var vs = k != null ? m.get(k) : null;
+    if (vs == null) {
+      return false;
+    }
+
+    notifyOverflow(vs.removeLast());
+    size--;
+    if (vs.isEmpty()) {
+      m.remove(k);
+      tinyLfu.onRemove(k);
+      notifyKeyRemoved(k);
+    }
+    publish(k, vs);
+
+    return true;
   }
 
-  private boolean evictEldest(Iterator<Map.Entry<K, List<V>>> it, boolean batch) {
+  private boolean evictEldest(Iterator<Map.Entry<K, Variants<V>>> it, boolean batch) {
     boolean evicted = false;
     if (it.hasNext()) {
       var eldest = it.next();
       var ev = eldest.getValue();
       do {
-        notifyEvicted(removeEldest(ev));
+        V v = ev.removeLast();
+        if (batch) notifyEvicted(v);
+        else notifyOverflow(v);
         size--;
       } while (batch && !ev.isEmpty());
 
       if (ev.isEmpty()) {
         it.remove();
+        notifyKeyRemoved(eldest.getKey());
       }
+      publish(eldest.getKey(), ev);
       evicted = true;
     }
 
     return evicted;
   }
 
-  private V removeEldest(List<V> vs) {
-    return vs.remove(vs.size() - 1);
-  }
-
   void evictAll(K k) {
-    List<V> old = m.remove(k);
+    var old = m.remove(k);
     if (old != null) {
+      unpublish(k);
+      if (tinyLfu != null) {
+        tinyLfu.onRemove(k);
+      }
+      notifyKeyRemoved(k);
       int len = old.size();
-      for (int i = len - 1; i >= 0; i--) {
-        notifyEvicted(old.get(i));
+      while (!old.isEmpty()) {
+        notifyEvicted(old.removeLast());
       }
 
       this.size -= len;
@@ -129,33 +303,110 @@ class LruMultimap<K, V> {
     }
   }
 
-  V remove(K k, ToIntFunction<List<V>> idxFn) {
-    List<V> vs = m.get(k);
+  /**
+   * Adds the listener notified about the values evicted by {@link #evictEldest()} or because the map is full, but not
+   * about the values removed, replaced or cleared.
+   */
+  void addOverflowListener(Consumer<V> l) {
+    if (overflowListener == null) {
+      overflowListener = l;
+    } else {
+      overflowListener = overflowListener.andThen(l);
+    }
+  }
 
-    V v = null;
-    int i;
-    if (vs != null && (i = idxFn.applyAsInt(vs)) >= 0 && i < vs.size()) {
-      v = vs.remove(i);
-      notifyEvicted(v);
-      size--;
-      if (vs.isEmpty()) {
-        m.remove(k);
+  /**
+   * Sets the listeners notified about the keys added to the map along with their first value and the keys removed from
+   * the map along with their last value.
+   */
+  void setKeyListeners(Consumer<K> added, Consumer<K> removed) {
+    this.keyAddListener = added;
+    this.keyRemoveListener = removed;
+  }
+
+  /**
+   * Removes the value by variant key.
+   */
+  V removeVariant(K k, Function<? super V, ?> selector) {
+    var vs = m.get(k);
+    return remove(k, vs, find(vs, selector));
+  }
+
+  /**
+   * Removes the {@code value} if it is still stored under {@code k}.
+   *
+   * @return Whether the value was removed.
+   */
+  boolean removeValue(K k, V value) {
+    var vs = m.get(k);
+    var node = vs != null ? vs.find(variantKeyOf(value)) : null;
+
+    return node != null && node.value() == value && remove(k, vs, node) != null;
+  }
+
+  private V remove(K k, Variants<V> vs, Variants.Node<V> node) {
+    if (node == null) {
+      return null;
+    }
+
+    V v = vs.remove(node);
+    notifyEvicted(v);
+    size--;
+    if (vs.isEmpty()) {
+      m.remove(k);
+      if (tinyLfu != null) {
+        tinyLfu.onRemove(k);
       }
+      notifyKeyRemoved(k);
     }
+    publish(k, vs);
 
     return v;
   }
 
+  private void publish(K k, Variants<V> vs) {
+    var view = readView;
+    if (view != null) {
+      if (vs.isEmpty()) {
+        view.remove(k);
+      } else {
+        view.put(k, vs.copy());
+      }
+    }
+  }
+
+  private void unpublish(K k) {
+    var view = readView;
+    if (view != null) {
+      view.remove(k);
+    }
+  }
+
   private void notifyEvicted(V v) {
     if (evictListener != null)
       evictListener.accept(v);
   }
 
+  private void notifyKeyRemoved(K k) {
+    if (keyRemoveListener != null)
+      keyRemoveListener.accept(k);
+  }
+
+  private void notifyOverflow(V v) {
+    notifyEvicted(v);
+    if (overflowListener != null)
+      overflowListener.accept(v);
+  }
+
   void clear() {
     if (size != 0) {
       var it = m.entrySet().iterator();
       while (evictEldest(it, true)) {
       }
+
+      if (tinyLfu != null) {
+        tinyLfu.clear();
+      }
     }
   }
 }
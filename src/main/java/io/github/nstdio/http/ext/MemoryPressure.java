@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import io.github.nstdio.http.ext.Cache.CapacityStats;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.ref.WeakReference;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Adjusts the size of in-memory caches to the heap occupancy. After each garbage collection of the old generation its
+ * occupancy left by the collection is checked: the size is halved while it stays above the high watermark, and grows
+ * back by a quarter up to the configured size while it stays below the low watermark. The young collections are
+ * ignored, since the old generation usage between its collections includes the garbage not collected yet. The caches are trimmed to the new size right away, so the
+ * next collection can reclaim the evicted bodies.
+ *
+ * <p>The registered caches are weakly referenced, and the monitor stops listening to the collections once all of them
+ * become unreachable.
+ */
+final class MemoryPressure implements CapacityStats {
+  /**
+   * The minimum share of the configured size the caches are shrunk to.
+   */
+  static final double MIN_RATIO = 1.0 / 16;
+  private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+  private final long ceiling;
+  private final double highWatermark;
+  private final double lowWatermark;
+  private final DoubleSupplier occupancy;
+  private final List<WeakReference<Trimmable>> caches = new CopyOnWriteArrayList<>();
+  private volatile double ratio = 1;
+  private volatile long shrinks;
+  private volatile long grows;
+  private Runnable unsubscribe;
+
+  /**
+   * @param ceiling       The configured cache size.
+   * @param highWatermark The occupancy share to shrink caches above.
+   * @param occupancy     Provides the occupancy share of the old generation after its last collection.
+   */
+  MemoryPressure(long ceiling, double highWatermark, DoubleSupplier occupancy) {
+    this.ceiling = ceiling;
+    this.highWatermark = highWatermark;
+    this.lowWatermark = highWatermark * 0.8;
+    this.occupancy = occupancy;
+  }
+
+  /**
+   * Creates the instance checking the occupancy on each garbage collection of the old generation.
+   */
+  static MemoryPressure monitor(long ceiling, double highWatermark) {
+    var pool = oldGeneration();
+    long max = pool.getUsage().getMax() > 0 ? pool.getUsage().getMax() : Runtime.getRuntime().maxMemory();
+    var pressure = new MemoryPressure(ceiling, highWatermark, () -> (double) pool.getCollectionUsage().getUsed() / max);
+    pressure.subscribe(pool.getName());
+
+    return pressure;
+  }
+
+  /**
+   * Finds the heap pool keeping long-lived objects, falling back to the largest collected heap pool for collectors not
+   * naming their generations.
+   */
+  private static MemoryPoolMXBean oldGeneration() {
+    var pools = ManagementFactory.getMemoryPoolMXBeans();
+    return pools.stream()
+        .filter(p -> p.getType() == MemoryType.HEAP && p.isCollectionUsageThresholdSupported())
+        .max(Comparator.<MemoryPoolMXBean>comparingInt(p -> isOld(p.getName()) ? 1 : 0)
+            .thenComparingLong(p -> p.getUsage().getMax()))
+        .orElseThrow(() -> new IllegalStateException("No heap memory pool to monitor."));
+  }
+
+  private static boolean isOld(String poolName) {
+    return poolName.contains("Old") || poolName.contains("Tenured");
+  }
+
+  /**
+   * Whether the collection reported by {@code notification} collected the pool named {@code poolName}, that is, it is a
+   * major collection or it reclaimed some of the pool. The minor collections only promote objects to the old generation.
+   */
+  private static boolean collects(Notification notification, String poolName) {
+    var data = (CompositeData) notification.getUserData();
+    if (String.valueOf(data.get("gcAction")).contains("major")) {
+      return true;
+    }
+
+    var gcInfo = (CompositeData) data.get("gcInfo");
+    long after = used(gcInfo, "memoryUsageAfterGc", poolName);
+    return after != -1 && after < used(gcInfo, "memoryUsageBeforeGc", poolName);
+  }
+
+  private static long used(CompositeData gcInfo, String key, String poolName) {
+    var row = ((TabularData) gcInfo.get(key)).get(new Object[]{poolName});
+    return row != null ? MemoryUsage.from((CompositeData) row.get("value")).getUsed() : -1;
+  }
+
+  private void subscribe(String poolName) {
+    NotificationListener listener = (notification, handback) -> onCollection();
+    NotificationFilter filter = notification -> GC_NOTIFICATION.equals(notification.getType())
+        && collects(notification, poolName);
+
+    var emitters = new CopyOnWriteArrayList<NotificationEmitter>();
+    for (var collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (collector instanceof NotificationEmitter) {
+        var emitter = (NotificationEmitter) collector;
+        emitter.addNotificationListener(listener, filter, null);
+        emitters.add(emitter);
+      }
+    }
+
+    unsubscribe = () -> {
+      for (var emitter : emitters) {
+        try {
+          emitter.removeNotificationListener(listener, filter, null);
+        } catch (Exception ignored) {
+          // already removed
+        }
+      }
+    };
+  }
+
+  void register(Trimmable cache) {
+    caches.add(new WeakReference<>(cache));
+  }
+
+  /**
+   * The share of configured size the caches may take now.
+   */
+  double ratio() {
+    return ratio;
+  }
+
+  /**
+   * Adjusts the size to the current occupancy.
+   */
+  synchronized void onCollection() {
+    double o = occupancy.getAsDouble();
+    double r = ratio;
+    if (o >= highWatermark && r > MIN_RATIO) {
+      ratio = Math.max(MIN_RATIO, r / 2);
+      shrinks++;
+      trim();
+    } else if (o < lowWatermark && r < 1) {
+      ratio = Math.min(1, r * 1.25);
+      grows++;
+    } else if (caches.isEmpty()) {
+      return;
+    }
+
+    caches.removeIf(ref -> ref.get() == null);
+    if (caches.isEmpty() && unsubscribe != null) {
+      unsubscribe.run();
+      unsubscribe = null;
+    }
+  }
+
+  private void trim() {
+    for (var ref : caches) {
+      var cache = ref.get();
+      if (cache != null) {
+        cache.trim();
+      }
+    }
+  }
+
+  @Override
+  public long ceiling() {
+    return ceiling;
+  }
+
+  @Override
+  public long current() {
+    return (long) (ceiling * ratio);
+  }
+
+  @Override
+  public long shrinks() {
+    return shrinks;
+  }
+
+  @Override
+  public long grows() {
+    return grows;
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Set;
+
+class NormalizingCacheKeyStrategy implements CacheKeyStrategy {
+  private static final Comparator<String> BY_NAME = Comparator.comparing(NormalizingCacheKeyStrategy::name);
+
+  private final Set<String> ignoredParameters;
+
+  NormalizingCacheKeyStrategy(Set<String> ignoredParameters) {
+    this.ignoredParameters = ignoredParameters;
+  }
+
+  private static String name(String parameter) {
+    int i = parameter.indexOf('=');
+    return i == -1 ? parameter : parameter.substring(0, i);
+  }
+
+  private static boolean isDefaultPort(String scheme, int port) {
+    return port == -1
+        || (port == 80 && "http".equals(scheme))
+        || (port == 443 && "https".equals(scheme));
+  }
+
+  @Override
+  public String key(URI uri) {
+    if (uri.isOpaque()) {
+      return uri.toString();
+    }
+
+    var sb = new StringBuilder(64);
+    var scheme = uri.getScheme();
+    if (scheme != null) {
+      scheme = scheme.toLowerCase(Locale.ROOT);
+      sb.append(scheme).append(':');
+    }
+
+    var host = uri.getHost();
+    if (host != null) {
+      sb.append("//");
+      if (uri.getRawUserInfo() != null) {
+        sb.append(uri.getRawUserInfo()).append('@');
+      }
+      sb.append(host.toLowerCase(Locale.ROOT));
+
+      int port = uri.getPort();
+      if (!isDefaultPort(scheme, port)) {
+        sb.append(':').append(port);
+      }
+    } else if (uri.getRawAuthority() != null) {
+      sb.append("//").append(uri.getRawAuthority());
+    }
+
+    var path = uri.getRawPath();
+    sb.append(path == null || path.isEmpty() ? "/" : path);
+
+    var query = uri.getRawQuery();
+    if (query != null) {
+      appendQuery(sb, query);
+    }
+
+    return sb.toString();
+  }
+
+  private void appendQuery(StringBuilder sb, String query) {
+    var parameters = new ArrayList<String>();
+    int i = 0;
+    int len = query.length();
+    while (i <= len) {
+      int j = query.indexOf('&', i);
+      if (j == -1) j = len;
+
+      if (j > i) {
+        var parameter = query.substring(i, j);
+        if (!ignoredParameters.contains(name(parameter))) {
+          parameters.add(parameter);
+        }
+      }
+      i = j + 1;
+    }
+
+    if (parameters.isEmpty()) {
+      return;
+    }
+
+    parameters.sort(BY_NAME);
+
+    sb.append('?');
+    for (int k = 0, size = parameters.size(); k < size; k++) {
+      if (k > 0) sb.append('&');
+      sb.append(parameters.get(k));
+    }
+  }
+}
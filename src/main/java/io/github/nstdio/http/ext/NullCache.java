@@ -17,6 +17,7 @@
 package io.github.nstdio.http.ext;
 
 import java.io.IOException;
+import java.net.URI;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodySubscribers;
@@ -72,6 +73,21 @@ class NullCache implements Cache {
     // intentional noop
   }
 
+  @Override
+  public void evictByPrefix(URI prefix) {
+    // intentional noop
+  }
+
+  @Override
+  public void evictByHost(String host) {
+    // intentional noop
+  }
+
+  @Override
+  public void evictByTag(String... tags) {
+    // intentional noop
+  }
+
   @Override
   public CacheStats stats() {
     return null;
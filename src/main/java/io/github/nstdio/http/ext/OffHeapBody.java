@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import io.github.nstdio.http.ext.SlabArena.Block;
+
+import java.lang.ref.Cleaner;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The reference to the response body stored in {@link SlabArena} blocks. The blocks are shared by all references
+ * obtained through {@link #duplicate()} and are returned to the arena when every reference is released and every
+ * subscription made by {@link #subscribeTo(Subscriber)} completes or is cancelled. The reference not released
+ * explicitly is released once it becomes unreachable.
+ */
+final class OffHeapBody {
+  private static final Cleaner CLEANER = Cleaner.create();
+
+  private final Lease lease;
+  private final Releaser releaser;
+
+  private OffHeapBody(Lease lease) {
+    this.lease = lease;
+    this.releaser = new Releaser(lease);
+    CLEANER.register(this, releaser);
+  }
+
+  static BodySubscriber<Builder> subscriber(SlabArena arena) {
+    return new OffHeapBodySubscriber(new Builder(arena));
+  }
+
+  long length() {
+    return lease.length;
+  }
+
+  /**
+   * The number of arena bytes taken by this body.
+   */
+  long allocated() {
+    return lease.allocated;
+  }
+
+  /**
+   * Creates the new reference to this body.
+   *
+   * @return The new reference or {@code null} if the body is already returned to the arena.
+   */
+  OffHeapBody duplicate() {
+    return lease.retain() ? new OffHeapBody(lease) : null;
+  }
+
+  void release() {
+    releaser.run();
+  }
+
+  /**
+   * Publishes the body block by block as it is requested. Each block is copied to heap buffer, so the buffers stay
+   * valid when they are read after the subscription ends and the blocks are reused by the arena.
+   */
+  void subscribeTo(Subscriber<List<ByteBuffer>> subscriber) {
+    if (lease.blocks.length == 0) {
+      subscriber.onSubscribe(new BlocksSubscription(subscriber, null));
+    } else if (lease.retain()) {
+      subscriber.onSubscribe(new BlocksSubscription(subscriber, lease));
+    } else {
+      var subscription = new BlocksSubscription(subscriber, null);
+      // the error is the only signal after onSubscribe
+      subscription.done = true;
+      subscriber.onSubscribe(subscription);
+      subscriber.onError(new IllegalStateException("The body is already released."));
+    }
+  }
+
+  private static final class Lease {
+    private final SlabArena arena;
+    private final Block[] blocks;
+    private final long length;
+    private final long allocated;
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    Lease(SlabArena arena, Block[] blocks, long length) {
+      this.arena = arena;
+      this.blocks = blocks;
+      this.length = length;
+
+      long allocated = 0;
+      for (Block block : blocks) {
+        allocated += block.size();
+      }
+      this.allocated = allocated;
+      arena.addStored(length);
+    }
+
+    boolean retain() {
+      for (; ; ) {
+        int r = refs.get();
+        if (r == 0) {
+          return false;
+        }
+        if (refs.compareAndSet(r, r + 1)) {
+          return true;
+        }
+      }
+    }
+
+    void release() {
+      if (refs.decrementAndGet() == 0) {
+        for (Block block : blocks) {
+          arena.free(block);
+        }
+        arena.addStored(-length);
+      }
+    }
+
+    /**
+     * Copies the body bytes stored in the block {@code i}. The lease should be retained while the block is copied.
+     */
+    ByteBuffer copy(int i) {
+      long offset = (long) i * SlabArena.MAX_BLOCK_SIZE;
+      int len = (int) Math.min(blocks[i].size(), length - offset);
+
+      ByteBuffer view = blocks[i].buffer().duplicate();
+      view.clear().limit(len);
+      return ByteBuffer.allocate(len).put(view).flip();
+    }
+  }
+
+  private static final class Releaser implements Runnable {
+    private final Lease lease;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    Releaser(Lease lease) {
+      this.lease = lease;
+    }
+
+    @Override
+    public void run() {
+      if (released.compareAndSet(false, true)) {
+        lease.release();
+      }
+    }
+  }
+
+  /**
+   * Copies the body into arena blocks while it is received. When the arena has no room the rest of the body is kept on
+   * heap until {@link #flush()} succeeds.
+   */
+  static final class Builder {
+    private final SlabArena arena;
+    private final Allocation allocation;
+    private final List<ByteBuffer> overflow = new ArrayList<>(0);
+    private long length;
+
+    private Builder(SlabArena arena) {
+      this.arena = arena;
+      this.allocation = new Allocation(arena);
+      CLEANER.register(this, allocation);
+    }
+
+    void write(ByteBuffer src) {
+      ByteBuffer b = src.duplicate();
+      length += b.remaining();
+
+      if (!overflow.isEmpty() || !copy(b)) {
+        overflow.add(ByteBuffer.allocate(b.remaining()).put(b).flip());
+      }
+    }
+
+    private boolean copy(ByteBuffer src) {
+      List<Block> blocks = allocation.blocks;
+      while (src.hasRemaining()) {
+        Block block = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+        if (block == null || !block.buffer().hasRemaining()) {
+          if ((block = arena.allocate(SlabArena.MAX_BLOCK_SHIFT)) == null) {
+            return false;
+          }
+          blocks.add(block);
+        }
+
+        ByteBuffer dst = block.buffer();
+        int n = Math.min(src.remaining(), dst.remaining());
+        int limit = src.limit();
+        dst.put(src.limit(src.position() + n));
+        src.limit(limit);
+      }
+
+      return true;
+    }
+
+    /**
+     * Moves the body bytes kept on heap to the arena.
+     *
+     * @return {@code true} if all bytes are in the arena.
+     */
+    boolean flush() {
+      while (!overflow.isEmpty()) {
+        if (!copy(overflow.get(0))) {
+          return false;
+        }
+        overflow.remove(0);
+      }
+
+      return true;
+    }
+
+    /**
+     * The number of arena bytes the body takes or will take once flushed.
+     */
+    long allocated() {
+      long full = length / SlabArena.MAX_BLOCK_SIZE * SlabArena.MAX_BLOCK_SIZE;
+      int tail = (int) (length - full);
+      return tail == 0 ? full : full + (1L << SlabArena.shiftFor(tail));
+    }
+
+    /**
+     * Creates the body. Should be invoked only after successful {@link #flush()}.
+     */
+    OffHeapBody build() {
+      List<Block> blocks = allocation.blocks;
+      if (!blocks.isEmpty()) {
+        shrinkTail(blocks);
+      }
+
+      allocation.done = true;
+      return new OffHeapBody(new Lease(arena, blocks.toArray(new Block[0]), length));
+    }
+
+    private void shrinkTail(List<Block> blocks) {
+      int last = blocks.size() - 1;
+      Block tail = blocks.get(last);
+      int used = tail.buffer().position();
+      int shift = SlabArena.shiftFor(used);
+
+      Block smaller;
+      if ((1 << shift) < tail.size() && (smaller = arena.allocate(shift)) != null) {
+        smaller.buffer().put(tail.buffer().flip());
+        arena.free(tail);
+        blocks.set(last, smaller);
+      }
+    }
+
+    void discard() {
+      allocation.run();
+      overflow.clear();
+    }
+  }
+
+  /**
+   * The blocks taken by {@link Builder}. Returned to the arena unless transferred to the body.
+   */
+  private static final class Allocation implements Runnable {
+    private final SlabArena arena;
+    private final List<Block> blocks = new ArrayList<>(1);
+    private volatile boolean done;
+
+    Allocation(SlabArena arena) {
+      this.arena = arena;
+    }
+
+    @Override
+    public void run() {
+      if (!done) {
+        done = true;
+        for (Block block : blocks) {
+          arena.free(block);
+        }
+        blocks.clear();
+      }
+    }
+  }
+
+  private static final class OffHeapBodySubscriber implements BodySubscriber<Builder> {
+    private final Builder builder;
+    private final CompletableFuture<Builder> result = new CompletableFuture<>();
+
+    OffHeapBodySubscriber(Builder builder) {
+      this.builder = builder;
+    }
+
+    @Override
+    public CompletionStage<Builder> getBody() {
+      return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> item) {
+      for (ByteBuffer buffer : item) {
+        builder.write(buffer);
+      }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      builder.discard();
+      result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      result.complete(builder);
+    }
+  }
+
+  /**
+   * Publishes one block per requested item and releases the lease once the subscriber is completed, or the subscription
+   * is cancelled.
+   */
+  private static final class BlocksSubscription implements Flow.Subscription {
+    private final Subscriber<List<ByteBuffer>> subscriber;
+    private final Lease lease;
+    private final AtomicLong demand = new AtomicLong();
+    /**
+     * The number of drain requests made while draining, so only one thread emits at a time.
+     */
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicBoolean released = new AtomicBoolean();
+    private int next;
+    volatile boolean done;
+    private volatile Throwable invalidRequest;
+
+    /**
+     * @param lease The retained lease or {@code null} if the body has no blocks or is already released.
+     */
+    BlocksSubscription(Subscriber<List<ByteBuffer>> subscriber, Lease lease) {
+      this.subscriber = subscriber;
+      this.lease = lease;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest = new IllegalArgumentException("n <= 0");
+      } else {
+        demand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      done = true;
+      release();
+    }
+
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+
+      do {
+        while (!done) {
+          if (invalidRequest != null) {
+            done = true;
+            subscriber.onError(invalidRequest);
+            release();
+          } else if (lease == null || next == lease.blocks.length) {
+            done = true;
+            subscriber.onComplete();
+            release();
+          } else if (demand.get() > 0) {
+            demand.decrementAndGet();
+            subscriber.onNext(List.of(lease.copy(next++)));
+          } else {
+            break;
+          }
+        }
+      } while (wip.decrementAndGet() != 0);
+    }
+
+    private void release() {
+      if (lease != null && released.compareAndSet(false, true)) {
+        lease.release();
+      }
+    }
+  }
+}
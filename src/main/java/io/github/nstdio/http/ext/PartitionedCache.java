@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The {@code Cache} splitting requests into partitions with separate limits, so the entries of one partition are never
+ * evicted to make room for the entries of another. Each request is routed to the partition named by the partitioner,
+ * the requests of partitions without their own limits share the common pool.
+ */
+class PartitionedCache implements Cache, EnumerableCache, KeyedCache {
+  private final Function<HttpRequest, String> partitioner;
+  private final Map<String, Partition> partitions;
+  private final Partition shared;
+  private final CacheStats stats;
+
+  /**
+   * @param partitions The caches of named partitions.
+   * @param shared     The cache for the requests of partitions not listed in {@code partitions}.
+   */
+  PartitionedCache(Function<HttpRequest, String> partitioner, Map<String, Cache> partitions, Cache shared) {
+    this.partitioner = partitioner;
+    this.partitions = new LinkedHashMap<>();
+    partitions.forEach((name, cache) -> this.partitions.put(name, new Partition(cache)));
+    this.shared = new Partition(shared);
+
+    var partitionStats = new LinkedHashMap<String, CacheStats>();
+    var parts = new ArrayList<CacheStats>();
+    this.partitions.forEach((name, partition) -> {
+      partitionStats.put(name, partition.stats);
+      parts.add(partition.cache.stats());
+    });
+    parts.add(shared.stats());
+    // partitions share the off-heap arena and the memory pressure monitor if any
+    var sharedStats = shared.stats();
+    this.stats = new DefaultCacheStats(sharedStats.offHeap().orElse(null), sharedStats.capacity().orElse(null),
+        List.of(), Collections.unmodifiableMap(partitionStats), parts);
+  }
+
+  @Override
+  public CacheEntry get(HttpRequest request) {
+    return get(key(request.uri()), request);
+  }
+
+  @Override
+  public void put(HttpRequest request, CacheEntry entry) {
+    partitionFor(request).cache.put(request, entry);
+  }
+
+  @Override
+  public void evict(HttpRequest request) {
+    partitionFor(request).cache.evict(request);
+  }
+
+  @Override
+  public void evictAll(HttpRequest request) {
+    partitionFor(request).cache.evictAll(request);
+  }
+
+  @Override
+  public CacheKey key(URI uri) {
+    // partitions are built with the same key strategy
+    return KeyedCache.keyOf(shared.cache, uri);
+  }
+
+  @Override
+  public CacheEntry get(CacheKey key, HttpRequest request) {
+    var partition = partitionFor(request);
+    CacheEntry e = KeyedCache.get(partition.cache, key, request);
+    if (e != null) {
+      partition.stats.trackHit();
+    } else {
+      partition.stats.trackMiss();
+    }
+
+    return e;
+  }
+
+  @Override
+  public boolean contains(CacheKey key, HttpRequest request) {
+    return KeyedCache.contains(partitionFor(request).cache, key, request);
+  }
+
+  @Override
+  public void put(CacheKey key, HttpRequest request, CacheEntry entry) {
+    KeyedCache.put(partitionFor(request).cache, key, request, entry);
+  }
+
+  @Override
+  public void evict(CacheKey key, HttpRequest request) {
+    KeyedCache.evict(partitionFor(request).cache, key, request);
+  }
+
+  @Override
+  public void evictAll(CacheKey key, HttpRequest request) {
+    KeyedCache.evictAll(partitionFor(request).cache, key, request);
+  }
+
+  @Override
+  public void evictAll() {
+    for (Cache cache : caches()) {
+      cache.evictAll();
+    }
+  }
+
+  @Override
+  public void evictByPrefix(URI prefix) {
+    for (Cache cache : caches()) {
+      cache.evictByPrefix(prefix);
+    }
+  }
+
+  @Override
+  public void evictByHost(String host) {
+    for (Cache cache : caches()) {
+      cache.evictByHost(host);
+    }
+  }
+
+  @Override
+  public void evictByTag(String... tags) {
+    for (Cache cache : caches()) {
+      cache.evictByTag(tags);
+    }
+  }
+
+  @Override
+  public List<CacheEntry> entries() {
+    var entries = new ArrayList<CacheEntry>();
+    for (Cache cache : caches()) {
+      entries.addAll(EnumerableCache.entriesOf(cache));
+    }
+
+    return entries;
+  }
+
+  @Override
+  public CacheStats stats() {
+    return stats;
+  }
+
+  @Override
+  public <T> Writer<T> writer(CacheEntryMetadata metadata) {
+    return partitionFor(metadata.request()).cache.writer(metadata);
+  }
+
+  @Override
+  public void close() throws IOException {
+    IOException thrown = null;
+    for (Cache cache : caches()) {
+      try {
+        cache.close();
+      } catch (IOException e) {
+        if (thrown == null) {
+          thrown = e;
+        } else {
+          thrown.addSuppressed(e);
+        }
+      }
+    }
+
+    if (thrown != null) {
+      throw thrown;
+    }
+  }
+
+  private Partition partitionFor(HttpRequest request) {
+    String name = partitioner.apply(request);
+    Partition partition = name != null ? partitions.get(name) : null;
+
+    return partition != null ? partition : shared;
+  }
+
+  private List<Cache> caches() {
+    var caches = new ArrayList<Cache>(partitions.size() + 1);
+    partitions.values().forEach(partition -> caches.add(partition.cache));
+    caches.add(shared.cache);
+
+    return caches;
+  }
+
+  /**
+   * Returns the cache of partition named {@code name} or the shared pool if there is no such partition.
+   */
+  Cache partition(String name) {
+    Partition partition = partitions.get(name);
+    return partition != null ? partition.cache : shared.cache;
+  }
+
+  private static final class Partition {
+    final Cache cache;
+    final TrackableCacheStats stats;
+
+    Partition(Cache cache) {
+      this.cache = cache;
+      this.stats = new DefaultCacheStats(null, null, List.of(), Map.of(), List.of(cache.stats()));
+    }
+  }
+}
@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.concurrent.Flow.Subscriber;
 import java.util.concurrent.Flow.Subscription;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
 
 import static io.github.nstdio.http.ext.IOUtils.closeQuietly;
 
@@ -34,12 +35,23 @@ class PathReadingSubscription implements Subscription {
   private final AtomicBoolean completed = new AtomicBoolean(false);
   private final StreamFactory streamFactory;
   private final Path path;
+  private final LongConsumer readTimer;
   private ReadableByteChannel channel;
+  private long readNanos;
 
   PathReadingSubscription(Subscriber<List<ByteBuffer>> subscriber, StreamFactory streamFactory, Path path) {
+    this(subscriber, streamFactory, path, null);
+  }
+
+  /**
+   * @param readTimer The consumer of the time spent reading the file, notified once the whole file is read.
+   */
+  PathReadingSubscription(Subscriber<List<ByteBuffer>> subscriber, StreamFactory streamFactory, Path path,
+                          LongConsumer readTimer) {
     this.subscriber = subscriber;
     this.streamFactory = streamFactory;
     this.path = path;
+    this.readTimer = readTimer;
   }
 
   @Override
@@ -54,6 +66,7 @@ class PathReadingSubscription implements Subscription {
     }
 
     try {
+      long start = System.nanoTime();
       if (channel == null) {
         channel = streamFactory.readable(path);
       }
@@ -62,11 +75,18 @@ class PathReadingSubscription implements Subscription {
       var sub = subscriber;
       while (n-- > 0) {
         ByteBuffer buff = ByteBuffer.allocate(DEFAULT_BUFF_CAPACITY);
-        if (chan.read(buff) != -1) {
+        int read = chan.read(buff);
+        long now = System.nanoTime();
+        readNanos += now - start;
+        if (read != -1) {
           buff.flip();
           sub.onNext(Collections.singletonList(buff));
+          start = System.nanoTime();
         } else {
           cancel();
+          if (readTimer != null) {
+            readTimer.accept(readNanos);
+          }
           sub.onComplete();
           break;
         }
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The map from strings to values supporting the lookup of all values with keys starting with given prefix. Keys are
+ * stored in the tree of nodes labeled by key fragments, where the node having a single child and no value is merged
+ * with that child. Hence, the prefix lookup costs the length of prefix plus the number of nodes below it, which is
+ * proportional to the number of matched values rather than the size of the map.
+ *
+ * <p>Not thread safe.
+ */
+final class RadixTree<V> {
+  private final Node<V> root = new Node<>("", null);
+  private int size;
+
+  /**
+   * Associates {@code value} with {@code key} replacing the previous value if any.
+   */
+  void put(String key, V value) {
+    var n = root;
+    int i = 0;
+    while (i < key.length()) {
+      var c = n.child(key.charAt(i));
+      if (c == null) {
+        n.addChild(new Node<>(key.substring(i), value));
+        size++;
+        return;
+      }
+
+      int common = commonPrefixLength(c.label, key, i);
+      if (common < c.label.length()) {
+        var split = new Node<V>(c.label.substring(0, common), null);
+        n.replaceChild(c, split);
+        c.label = c.label.substring(common);
+        split.addChild(c);
+        c = split;
+      }
+
+      n = c;
+      i += common;
+    }
+
+    if (n.value == null) {
+      size++;
+    }
+    n.value = value;
+  }
+
+  /**
+   * Removes the value associated with {@code key}.
+   *
+   * @return The removed value or {@code null} if there was no value.
+   */
+  V remove(String key) {
+    Node<V> parent = null;
+    var n = root;
+    int i = 0;
+    while (i < key.length()) {
+      var c = n.child(key.charAt(i));
+      if (c == null || !key.startsWith(c.label, i)) {
+        return null;
+      }
+
+      parent = n;
+      n = c;
+      i += c.label.length();
+    }
+
+    V old = n.value;
+    if (old == null) {
+      return null;
+    }
+
+    n.value = null;
+    size--;
+    if (parent == null) {
+      return old;
+    }
+
+    if (n.childCount == 0) {
+      parent.removeChild(n);
+      if (parent != root && parent.value == null && parent.childCount == 1) {
+        parent.mergeWithChild();
+      }
+    } else if (n.childCount == 1) {
+      n.mergeWithChild();
+    }
+
+    return old;
+  }
+
+  /**
+   * Collects the values of all keys starting with {@code prefix}.
+   */
+  List<V> withPrefix(String prefix) {
+    var n = root;
+    int i = 0;
+    while (i < prefix.length()) {
+      var c = n.child(prefix.charAt(i));
+      if (c == null) {
+        return List.of();
+      }
+
+      // the prefix might end in the middle of the label
+      int len = Math.min(c.label.length(), prefix.length() - i);
+      if (!prefix.regionMatches(i, c.label, 0, len)) {
+        return List.of();
+      }
+
+      n = c;
+      i += len;
+    }
+
+    var values = new ArrayList<V>();
+    var stack = new ArrayDeque<Node<V>>();
+    stack.push(n);
+    while (!stack.isEmpty()) {
+      var node = stack.pop();
+      if (node.value != null) {
+        values.add(node.value);
+      }
+      for (int k = 0; k < node.childCount; k++) {
+        stack.push(node.children[k]);
+      }
+    }
+
+    return values;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private static int commonPrefixLength(String label, String key, int from) {
+    int max = Math.min(label.length(), key.length() - from);
+    int k = 0;
+    while (k < max && label.charAt(k) == key.charAt(from + k)) {
+      k++;
+    }
+
+    return k;
+  }
+
+  private static final class Node<V> {
+    String label;
+    V value;
+    /**
+     * The children having distinct first characters of labels. Nodes usually have a few children, so the linear scan
+     * is cheaper than hashing.
+     */
+    Node<V>[] children;
+    int childCount;
+
+    Node(String label, V value) {
+      this.label = label;
+      this.value = value;
+    }
+
+    Node<V> child(char first) {
+      for (int k = 0; k < childCount; k++) {
+        if (children[k].label.charAt(0) == first) {
+          return children[k];
+        }
+      }
+
+      return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    void addChild(Node<V> child) {
+      if (children == null) {
+        children = (Node<V>[]) new Node<?>[2];
+      } else if (childCount == children.length) {
+        var grown = (Node<V>[]) new Node<?>[childCount * 2];
+        System.arraycopy(children, 0, grown, 0, childCount);
+        children = grown;
+      }
+
+      children[childCount++] = child;
+    }
+
+    void replaceChild(Node<V> old, Node<V> child) {
+      children[indexOf(old)] = child;
+    }
+
+    void removeChild(Node<V> child) {
+      int k = indexOf(child);
+      children[k] = children[--childCount];
+      children[childCount] = null;
+    }
+
+    /**
+     * Absorbs the only child of this node.
+     */
+    void mergeWithChild() {
+      var child = children[0];
+      label = label + child.label;
+      value = child.value;
+      children = child.children;
+      childCount = child.childCount;
+    }
+
+    private int indexOf(Node<V> child) {
+      int k = 0;
+      while (children[k] != child) {
+        k++;
+      }
+
+      return k;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * The lossy multiple-producer single-consumer buffer striped over a number of bounded ring buffers. Producers select
+ * the ring by the current thread, so threads rarely compete for the same ring. When the ring is full or the producer
+ * loses the race, the element is dropped. The consumer should be guarded by external lock.
+ *
+ * @param <E> The type of elements.
+ */
+class ReadBuffer<E> {
+  static final int SUCCESS = 0;
+  static final int FULL = 1;
+  static final int FAILED = 2;
+
+  private static final int MAX_STRIPES = 64;
+  private static final int RING_SIZE = 16;
+  private static final int RING_MASK = RING_SIZE - 1;
+
+  private final Ring<E>[] rings;
+  private final int mask;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  ReadBuffer() {
+    int stripes = Math.min(MAX_STRIPES, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
+
+    rings = new Ring[stripes];
+    for (int i = 0; i < stripes; i++) {
+      rings[i] = new Ring<>();
+    }
+    mask = stripes - 1;
+  }
+
+  private static int probe() {
+    long id = Thread.currentThread().getId();
+    int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Records the element.
+   *
+   * @param e The element.
+   *
+   * @return {@link #SUCCESS} if element was recorded, {@link #FULL} if buffer is full and should be drained or
+   * {@link #FAILED} if element was dropped due to contention.
+   */
+  int offer(E e) {
+    return rings[probe() & mask].offer(e);
+  }
+
+  /**
+   * Drains all recorded elements to {@code consumer}. Should not be invoked concurrently.
+   *
+   * @param consumer The consumer.
+   */
+  void drainTo(Consumer<E> consumer) {
+    for (Ring<E> ring : rings) {
+      ring.drainTo(consumer);
+    }
+  }
+
+  private static final class Ring<E> {
+    private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(RING_SIZE);
+    private final AtomicLong writeCounter = new AtomicLong();
+    private volatile long readCounter;
+
+    int offer(E e) {
+      long head = readCounter;
+      long tail = writeCounter.get();
+      if (tail - head >= RING_SIZE) {
+        return FULL;
+      }
+
+      if (writeCounter.compareAndSet(tail, tail + 1)) {
+        buffer.lazySet((int) (tail & RING_MASK), e);
+        return SUCCESS;
+      }
+
+      return FAILED;
+    }
+
+    void drainTo(Consumer<E> consumer) {
+      long head = readCounter;
+      long tail = writeCounter.get();
+
+      while (head != tail) {
+        int i = (int) (head & RING_MASK);
+        E e = buffer.get(i);
+        if (e == null) {
+          // the slot is claimed but not yet written
+          break;
+        }
+
+        buffer.lazySet(i, null);
+        consumer.accept(e);
+        head++;
+      }
+
+      readCounter = head;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Decides when the fresh entries that are frequently served should be revalidated ahead of their expiry, so they never
+ * get stale on the request path. Limits the number of refreshes in progress and the rate of refreshes sent to each
+ * host.
+ */
+final class RefreshAhead {
+  private final double lifetimeFraction;
+  private final int minHits;
+  private final Semaphore permits;
+  private final long hostIntervalMillis;
+  /**
+   * The time in milliseconds before which the next refresh cannot be sent to the host.
+   */
+  private final ConcurrentMap<String, AtomicLong> hostSchedule = new ConcurrentHashMap<>();
+
+  /**
+   * @param lifetimeFraction    The fraction of freshness lifetime after which the entry is refreshed.
+   * @param minHits             The number of hits within freshness lifetime after which the entry is refreshed.
+   * @param maxConcurrent       The maximum number of refreshes in progress.
+   * @param maxPerHostPerSecond The maximum number of refreshes sent to a single host per second.
+   */
+  RefreshAhead(double lifetimeFraction, int minHits, int maxConcurrent, int maxPerHostPerSecond) {
+    this.lifetimeFraction = lifetimeFraction;
+    this.minHits = minHits;
+    this.permits = new Semaphore(maxConcurrent);
+    this.hostIntervalMillis = 1000L / maxPerHostPerSecond;
+  }
+
+  /**
+   * Records the hit of fresh entry.
+   *
+   * @return Whether the entry is due to be refreshed.
+   */
+  boolean onHit(CacheEntryMetadata metadata) {
+    long maxAge = metadata.maxAge();
+    return metadata.recordHit() >= minHits
+        && maxAge > 0
+        && metadata.age(MILLISECONDS) >= (long) (maxAge * lifetimeFraction);
+  }
+
+  /**
+   * Acquires the permit to refresh the entry of {@code host}, which should be released once the refresh completes.
+   *
+   * @return Whether the permit is acquired.
+   */
+  boolean tryAcquire(String host, long now) {
+    if (!permits.tryAcquire()) {
+      return false;
+    }
+
+    var next = hostSchedule.computeIfAbsent(String.valueOf(host), h -> new AtomicLong());
+    long allowedAt;
+    do {
+      allowedAt = next.get();
+      if (now < allowedAt) {
+        permits.release();
+        return false;
+      }
+    } while (!next.compareAndSet(allowedAt, now + hostIntervalMillis));
+
+    return true;
+  }
+
+  void release() {
+    permits.release();
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import io.github.nstdio.http.ext.Cache.CacheEntry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps track of the requests sent to fill the cache, so the concurrent requests for the same response wait for the
+ * cache to be filled instead of being sent as well. The first request for the key leads the flight, the others follow
+ * it until it lands, that is, until the response is stored, turns out to be not cacheable, fails or the timeout
+ * elapses. While the response is being stored the followers joined before its body started to arrive may read it as it
+ * arrives.
+ */
+final class RequestCoalescer {
+  private final ConcurrentMap<Object, Flight> flights = new ConcurrentHashMap<>();
+  private final long timeoutMillis;
+
+  RequestCoalescer(long timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Joins the flight for the {@code key} or starts the new one.
+   *
+   * @param key The key of response.
+   *
+   * @return The flight led by the caller if there is no flight in progress, otherwise the flight to follow.
+   */
+  Flight join(Object key) {
+    var flight = new Flight(new CompletableFuture<>(), new CompletableFuture<>(), new AtomicBoolean(), true);
+    var existing = flights.putIfAbsent(key, flight);
+    if (existing != null) {
+      existing.followed.set(true);
+      return new Flight(existing.landing, existing.filling, existing.followed, false);
+    }
+
+    flight.landing.completeOnTimeout(null, timeoutMillis, TimeUnit.MILLISECONDS);
+    flight.landing.whenComplete((ignored, th) -> {
+      flights.remove(key, flight);
+      flight.filling.complete(null);
+    });
+
+    return flight;
+  }
+
+  int size() {
+    return flights.size();
+  }
+
+  static final class Flight {
+    private final CompletableFuture<Void> landing;
+    private final CompletableFuture<CacheEntry> filling;
+    private final AtomicBoolean followed;
+    private final boolean leader;
+    /**
+     * Whether the leader response is being written to the cache, so the flight lands once it is stored.
+     */
+    private volatile boolean writing;
+
+    private Flight(CompletableFuture<Void> landing, CompletableFuture<CacheEntry> filling, AtomicBoolean followed,
+                   boolean leader) {
+      this.landing = landing;
+      this.filling = filling;
+      this.followed = followed;
+      this.leader = leader;
+    }
+
+    boolean isLeader() {
+      return leader;
+    }
+
+    /**
+     * Whether any request joined the flight to follow it.
+     */
+    boolean isFollowed() {
+      return followed.get();
+    }
+
+    /**
+     * The future completed normally when the flight lands, never exceptionally.
+     */
+    CompletableFuture<Void> landing() {
+      return landing;
+    }
+
+    /**
+     * The future completed with the entry readable while the leader response is stored, or with {@code null} once the
+     * flight lands without such entry. Never completed exceptionally.
+     */
+    CompletableFuture<CacheEntry> filling() {
+      return filling;
+    }
+
+    /**
+     * Shares the entry readable while the leader response is stored with the followers.
+     */
+    void fill(CacheEntry entry) {
+      filling.complete(entry);
+    }
+
+    void writing() {
+      writing = true;
+    }
+
+    boolean isWriting() {
+      return writing;
+    }
+
+    void land() {
+      landing.complete(null);
+    }
+  }
+}
@@ -18,14 +18,24 @@ package io.github.nstdio.http.ext;
 
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse.BodyHandler;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
+/**
+ * The state of the request passing through the interceptors. The context is created once per request and updated in
+ * place by the interceptors on the sending thread. The interceptor that needs the request or the body handler as they
+ * are at its stage once the response arrives should keep them or {@link #fork(HttpRequest)} the context.
+ */
 final class RequestContext {
-  private final HttpRequest request;
-  private final BodyHandler<?> bodyHandler;
+  private static final AtomicLongFieldUpdater<RequestContext> REQUEST_TIME =
+      AtomicLongFieldUpdater.newUpdater(RequestContext.class, "requestTime");
+  private static final AtomicLongFieldUpdater<RequestContext> RESPONSE_TIME =
+      AtomicLongFieldUpdater.newUpdater(RequestContext.class, "responseTime");
+
+  private HttpRequest request;
+  private BodyHandler<?> bodyHandler;
   private final CacheControl cacheControl;
-  private final AtomicLong requestTime = new AtomicLong();
-  private final AtomicLong responseTime = new AtomicLong();
+  private volatile long requestTime;
+  private volatile long responseTime;
 
   private RequestContext(HttpRequest request, BodyHandler<?> bodyHandler, CacheControl cacheControl) {
     this.request = request;
@@ -48,12 +58,31 @@ final class RequestContext {
     return (BodyHandler<T>) bodyHandler;
   }
 
-  RequestContext withRequest(HttpRequest request) {
+  RequestContext setRequest(HttpRequest request) {
+    this.request = request;
+    return this;
+  }
+
+  RequestContext setBodyHandler(BodyHandler<?> bodyHandler) {
+    this.bodyHandler = bodyHandler;
+    return this;
+  }
+
+  /**
+   * Creates the new context of the {@code request} with the current body handler. The request and response times are
+   * not copied.
+   */
+  RequestContext fork(HttpRequest request) {
     return new RequestContext(request, bodyHandler, cacheControl);
   }
 
-  RequestContext withBodyHandler(BodyHandler<?> bodyHandler) {
-    return new RequestContext(request, bodyHandler, this.cacheControl);
+  /**
+   * Creates the new context of the {@code request} made by user code, which might have changed the
+   * {@code Cache-Control} header. The directives are parsed again unless it is the current request.
+   */
+  RequestContext forkRewritten(HttpRequest request) {
+    var cc = request == this.request ? cacheControl : CacheControl.of(request);
+    return new RequestContext(request, bodyHandler, cc);
   }
 
   HttpRequest request() {
@@ -64,11 +93,25 @@ final class RequestContext {
     return cacheControl;
   }
 
-  AtomicLong requestTime() {
+  long requestTime() {
     return requestTime;
   }
 
-  AtomicLong responseTime() {
+  long responseTime() {
     return responseTime;
   }
+
+  /**
+   * Sets the time the request is sent unless it is already set.
+   */
+  void initRequestTime(long millis) {
+    REQUEST_TIME.compareAndSet(this, 0, millis);
+  }
+
+  /**
+   * Sets the time the response is received unless it is already set.
+   */
+  void initResponseTime(long millis) {
+    RESPONSE_TIME.compareAndSet(this, 0, millis);
+  }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The stage of {@link ExtendedHttpClient} request processing. The interceptor is invoked on the thread sending the
+ * request and passes the request on by {@link Exchange#proceed(HttpRequest)}, or serves the response itself without
+ * sending the request any further. The interceptor may transform the response asynchronously by composing the future
+ * returned by {@code proceed}.
+ *
+ * @see ExtendedHttpClient.Builder#interceptor(Position, RequestInterceptor)
+ */
+public interface RequestInterceptor {
+  /**
+   * Handles the request of {@code exchange}.
+   *
+   * @param exchange The request being sent.
+   * @param <T>      The response body type.
+   *
+   * @return The future completed with the response.
+   */
+  <T> CompletableFuture<HttpResponse<T>> intercept(Exchange<T> exchange);
+
+  /**
+   * The position of interceptor relative to the built-in stages. The interceptors at the same position are invoked in
+   * the order they are added.
+   */
+  enum Position {
+    /**
+     * Before all built-in stages. The interceptor sees every request as it is sent by the caller.
+     */
+    BEFORE_COMPRESSION,
+    /**
+     * After the compression stage and before the caching one. The interceptor sees every request, including the ones
+     * served from the cache, and the decompressed responses.
+     */
+    BEFORE_CACHING,
+    /**
+     * After all built-in stages, right before the request is handed to the delegate client. The interceptor sees only
+     * the requests not served from the cache, with default headers added.
+     */
+    AFTER_CACHING
+  }
+
+  /**
+   * The request going through the interceptor.
+   *
+   * @param <T> The response body type.
+   */
+  interface Exchange<T> {
+    /**
+     * The request.
+     *
+     * @return The request.
+     */
+    HttpRequest request();
+
+    /**
+     * The body handler the response is read with.
+     *
+     * @return The body handler.
+     */
+    BodyHandler<T> bodyHandler();
+
+    /**
+     * Passes {@code request} to the next stage. The next stages are invoked on the current thread until the request is
+     * sent.
+     *
+     * @param request The request to send instead of {@link #request()}.
+     *
+     * @return The future completed with the response of the next stage.
+     */
+    CompletableFuture<HttpResponse<T>> proceed(HttpRequest request);
+
+    /**
+     * Passes the request to the next stage unchanged.
+     *
+     * @return The future completed with the response of the next stage.
+     */
+    default CompletableFuture<HttpResponse<T>> proceed() {
+      return proceed(request());
+    }
+
+    /**
+     * Creates the response to serve without sending the request any further. The body is read with
+     * {@link #bodyHandler()}.
+     *
+     * @param statusCode The status code.
+     * @param headers    The response headers.
+     * @param body       The response body.
+     *
+     * @return The future completed with the response once the body is read.
+     */
+    CompletableFuture<HttpResponse<T>> respond(int statusCode, HttpHeaders headers, byte[] body);
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import io.github.nstdio.http.ext.Cache.CacheEntry;
+
+import java.net.http.HttpHeaders;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link Weigher} estimating the memory retained by the entry kept in memory, which is also close to the size of
+ * metadata file of the entry kept on disk.
+ */
+final class RetainedSizeWeigher implements Weigher {
+  static final RetainedSizeWeigher INSTANCE = new RetainedSizeWeigher();
+
+  /**
+   * The entry, its metadata with parsed fields, and the nodes holding it in cache.
+   */
+  static final int ENTRY_OVERHEAD = 512;
+  /**
+   * The {@code String} object with its array and the reference to it in a list or map.
+   */
+  static final int STRING_OVERHEAD = 48;
+
+  private RetainedSizeWeigher() {
+  }
+
+  static long weigh(HttpHeaders headers) {
+    long weight = 0;
+    for (Map.Entry<String, List<String>> header : headers.map().entrySet()) {
+      weight += STRING_OVERHEAD + header.getKey().length();
+      for (String value : header.getValue()) {
+        weight += STRING_OVERHEAD + value.length();
+      }
+    }
+
+    return weight;
+  }
+
+  @Override
+  public long weigh(CacheEntry entry) {
+    var metadata = entry.metadata();
+    var request = metadata.request();
+
+    // the URI keeps both the whole string and its components
+    return Math.max(0, entry.bodySize())
+        + ENTRY_OVERHEAD
+        + 2L * (STRING_OVERHEAD + request.uri().toString().length())
+        + weigh(request.headers())
+        + weigh(metadata.response().headers());
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static io.github.nstdio.http.ext.Preconditions.checkArgument;
+
+/**
+ * The {@code Cache} that spreads keys over a fixed number of independently guarded segments. Each request is routed to
+ * the segment chosen by the hash of its cache key, so operations on different segments never contend with each other.
+ */
+class SegmentedCache implements Cache, EnumerableCache, KeyedCache {
+  private final Cache[] segments;
+  private final int mask;
+  private final CacheKeyStrategy keyStrategy;
+  private final CacheStats stats;
+
+  SegmentedCache(Cache[] segments) {
+    this(segments, CacheKeyStrategy.exact());
+  }
+
+  SegmentedCache(Cache[] segments, CacheKeyStrategy keyStrategy) {
+    checkArgument(segments.length > 0 && (segments.length & (segments.length - 1)) == 0,
+        "segments count should be a power of two");
+
+    this.segments = segments;
+    this.keyStrategy = keyStrategy;
+    // segments share the off-heap arena and the memory pressure monitor if any
+    var first = segments[0].stats();
+    var parts = new ArrayList<CacheStats>(segments.length);
+    for (Cache segment : segments) {
+      parts.add(segment.stats());
+    }
+    this.stats = new DefaultCacheStats(first.offHeap().orElse(null), first.capacity().orElse(null), List.of(), Map.of(),
+        parts);
+    this.mask = segments.length - 1;
+  }
+
+  static int spread(int h) {
+    return h ^ (h >>> 16);
+  }
+
+  @Override
+  public CacheKey key(URI uri) {
+    return CacheKey.of(keyStrategy.key(uri));
+  }
+
+  @Override
+  public CacheEntry get(HttpRequest request) {
+    return get(key(request.uri()), request);
+  }
+
+  @Override
+  public CacheEntry get(CacheKey key, HttpRequest request) {
+    return KeyedCache.get(segmentFor(key), key, request);
+  }
+
+  @Override
+  public boolean contains(CacheKey key, HttpRequest request) {
+    return KeyedCache.contains(segmentFor(key), key, request);
+  }
+
+  @Override
+  public void put(HttpRequest request, CacheEntry entry) {
+    put(key(request.uri()), request, entry);
+  }
+
+  @Override
+  public void put(CacheKey key, HttpRequest request, CacheEntry entry) {
+    KeyedCache.put(segmentFor(key), key, request, entry);
+  }
+
+  @Override
+  public void evict(HttpRequest request) {
+    evict(key(request.uri()), request);
+  }
+
+  @Override
+  public void evict(CacheKey key, HttpRequest request) {
+    KeyedCache.evict(segmentFor(key), key, request);
+  }
+
+  @Override
+  public void evictAll(HttpRequest request) {
+    evictAll(key(request.uri()), request);
+  }
+
+  @Override
+  public void evictAll(CacheKey key, HttpRequest request) {
+    KeyedCache.evictAll(segmentFor(key), key, request);
+  }
+
+  @Override
+  public void evictAll() {
+    for (Cache segment : segments) {
+      segment.evictAll();
+    }
+  }
+
+  @Override
+  public void evictByPrefix(URI prefix) {
+    for (Cache segment : segments) {
+      segment.evictByPrefix(prefix);
+    }
+  }
+
+  @Override
+  public void evictByHost(String host) {
+    for (Cache segment : segments) {
+      segment.evictByHost(host);
+    }
+  }
+
+  @Override
+  public void evictByTag(String... tags) {
+    for (Cache segment : segments) {
+      segment.evictByTag(tags);
+    }
+  }
+
+  @Override
+  public List<CacheEntry> entries() {
+    var entries = new ArrayList<CacheEntry>();
+    for (Cache segment : segments) {
+      entries.addAll(EnumerableCache.entriesOf(segment));
+    }
+
+    return entries;
+  }
+
+  @Override
+  public CacheStats stats() {
+    return stats;
+  }
+
+  @Override
+  public <T> Writer<T> writer(CacheEntryMetadata metadata) {
+    return segmentFor(key(metadata.request().uri())).writer(metadata);
+  }
+
+  @Override
+  public void close() throws IOException {
+    IOException thrown = null;
+    for (Cache segment : segments) {
+      try {
+        segment.close();
+      } catch (IOException e) {
+        if (thrown == null) {
+          thrown = e;
+        } else {
+          thrown.addSuppressed(e);
+        }
+      }
+    }
+
+    if (thrown != null) {
+      throw thrown;
+    }
+  }
+
+  private Cache segmentFor(CacheKey key) {
+    return segments[indexFor(key)];
+  }
+
+  int indexFor(URI uri) {
+    return indexFor(key(uri));
+  }
+
+  private int indexFor(CacheKey key) {
+    return spread(key.hashCode()) & mask;
+  }
+
+  Cache segment(int i) {
+    return segments[i];
+  }
+
+  int segmentsCount() {
+    return segments.length;
+  }
+}
@@ -16,90 +16,435 @@
 
 package io.github.nstdio.http.ext;
 
+import io.github.nstdio.http.ext.Cache.EvictionCause;
+
 import java.net.URI;
 import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
-import java.util.function.ToIntFunction;
-
-import static io.github.nstdio.http.ext.InMemoryCache.indexOf;
+import java.util.function.Function;
 
-abstract class SizeConstrainedCache implements Cache {
-  private final LruMultimap<URI, CacheEntry> cache;
-  private final CacheStats stats = new DefaultCacheStats();
+abstract class SizeConstrainedCache implements Cache, EnumerableCache, KeyedCache {
+  private final LruMultimap<CacheKey, CacheEntry> cache;
+  /**
+   * The entries that become useless once their freshness lifetime ends, ordered by the time it ends.
+   */
+  private final TimerWheel<CacheKey, CacheEntry> expiry;
+  /**
+   * The stored keys by their strings to evict keys by prefix.
+   */
+  private final RadixTree<CacheKey> keys = new RadixTree<>();
+  /**
+   * The stored entries by the tags of their responses, and the tags of each tagged entry to clean the former up.
+   */
+  private final Map<String, Set<CacheEntry>> tagged = new HashMap<>();
+  private final Map<CacheEntry, List<String>> entryTags = new IdentityHashMap<>();
+  private final CacheKeyStrategy keyStrategy;
+  private final Weigher weigher;
+  /**
+   * The weights of stored entries as calculated when they were put.
+   */
+  private final Map<CacheEntry, Long> weights = new IdentityHashMap<>();
+  private final DefaultCacheStats stats = new DefaultCacheStats();
   private final long maxBytes;
   private long size;
+  /**
+   * The longest staleness in milliseconds served to requests with {@code max-stale}, negative if not limited.
+   */
+  private long maxStale = -1;
+  private MemoryPressure memoryPressure;
+  /**
+   * The cause of removals made by the current operation, {@code null} if they are not counted as evictions.
+   */
+  private EvictionCause removalCause;
+  /**
+   * The cause of evictions made to make room by the current operation.
+   */
+  private EvictionCause overflowCause = EvictionCause.COUNT;
+
+  private Consumer<List<CacheEntry>> deferredListener;
+  private Executor deferredExecutor;
+  /**
+   * The entries evicted by the current operation to be passed to {@link #deferredListener} once it completes.
+   */
+  private List<CacheEntry> evicted = new ArrayList<>();
 
   SizeConstrainedCache(int maxItems, long maxBytes, Consumer<CacheEntry> evictionListener) {
-    Consumer<CacheEntry> reduceSize = entry -> size -= entry.bodySize();
+    this(maxItems, maxBytes, EvictionPolicy.LRU, CacheKeyStrategy.exact(), Weigher.bodySize(), evictionListener);
+  }
+
+  SizeConstrainedCache(int maxItems, long maxBytes, EvictionPolicy evictionPolicy, CacheKeyStrategy keyStrategy,
+                       Weigher weigher, Consumer<CacheEntry> evictionListener) {
+    this.expiry = new TimerWheel<>(e -> e.metadata().expiresAt(maxStale), System.currentTimeMillis());
+
+    Consumer<CacheEntry> reduceSize = entry -> {
+      Long weight = weights.remove(entry);
+      if (weight != null) {
+        size -= weight;
+        stats.trackRemoved(weight);
+      }
+      if (removalCause != null) {
+        stats.trackEviction(removalCause);
+      }
+      expiry.remove(entry);
+      untag(entry);
+      if (deferredListener != null) {
+        evicted.add(entry);
+      }
+    };
     var listener = evictionListener == null ? reduceSize : evictionListener.andThen(reduceSize);
 
-    this.cache = new LruMultimap<>(maxItems, listener);
+    this.cache = new LruMultimap<>(maxItems, listener, evictionPolicy == EvictionPolicy.W_TINY_LFU,
+        e -> e.metadata().varyKey(), e -> e.metadata().varyKey().names());
+    this.cache.setKeyListeners(k -> keys.put(k.toString(), k), k -> keys.remove(k.toString()));
+    this.cache.addOverflowListener(e -> stats.trackEviction(overflowCause));
+    this.keyStrategy = keyStrategy;
+    this.weigher = weigher;
     this.maxBytes = maxBytes;
   }
 
   @Override
   public CacheEntry get(HttpRequest request) {
-    return cache.getSingle(request.uri(), idxFn(request));
+    return get(key(request.uri()), request);
+  }
+
+  @Override
+  public CacheEntry get(CacheKey key, HttpRequest request) {
+    return cache.getVariant(key, variantOf(request));
+  }
+
+  @Override
+  public boolean contains(CacheKey key, HttpRequest request) {
+    return cache.containsVariant(key, variantOf(request));
+  }
+
+  /**
+   * Gets the cache entry without affecting the eviction order. Safe to call concurrently with other methods after
+   * {@link #enableConcurrentReads()} is invoked.
+   */
+  CacheEntry peek(CacheKey key, HttpRequest request) {
+    return cache.peekVariant(key, variantOf(request));
+  }
+
+  /**
+   * Records the access to the variant matching {@code request}.
+   */
+  void touch(CacheKey key, HttpRequest request) {
+    cache.getVariant(key, variantOf(request));
+  }
+
+  /**
+   * Records the access made by {@link #peek(CacheKey, HttpRequest)} to the key, leaving the order of its variants, so
+   * the request need not be kept until the access is recorded.
+   */
+  void touch(CacheKey key) {
+    cache.touch(key);
+  }
+
+  void enableConcurrentReads() {
+    cache.enableReadView();
+  }
+
+  /**
+   * Sets the longest staleness in milliseconds served to requests with {@code max-stale}, so the entries without
+   * validators are expired once it passes. Negative if not configured.
+   */
+  void setMaxStale(long maxStale) {
+    this.maxStale = maxStale;
   }
 
   @Override
   public void put(HttpRequest request, CacheEntry e) {
-    if (isUnbounded()) {
-      putInternal(request, e);
-    } else if (e.bodySize() <= maxBytes) {
-      while (needSpace(e)) cache.evictEldest();
+    put(key(request.uri()), request, e);
+  }
 
-      putInternal(request, e);
+  @Override
+  public void put(CacheKey key, HttpRequest request, CacheEntry e) {
+    expire();
+    if (weights.containsKey(e)) {
+      // already weighed and stored, putting the same entry again only counts as an access
+      touch(key, request);
+    } else {
+      long weight = weigher.weigh(e);
+      long max = maxBytes();
+      if (isUnbounded()) {
+        putInternal(key, e, weight);
+      } else if (weight <= max) {
+        while (size + weight > max) evictForSize();
+
+        putInternal(key, e, weight);
+      }
     }
+
+    flushEvictions();
   }
 
   @Override
   public void evict(HttpRequest request) {
-    cache.remove(request.uri(), idxFn(request));
+    evict(key(request.uri()), request);
+  }
+
+  @Override
+  public void evict(CacheKey key, HttpRequest request) {
+    evictExplicitly(() -> cache.removeVariant(key, variantOf(request)));
   }
 
   @Override
   public void evictAll(HttpRequest r) {
-    cache.evictAll(r.uri());
+    evictAll(key(r.uri()), r);
+  }
+
+  @Override
+  public void evictAll(CacheKey key, HttpRequest r) {
+    evictExplicitly(() -> cache.evictAll(key));
   }
 
   @Override
   public void evictAll() {
-    cache.clear();
+    evictExplicitly(cache::clear);
+  }
+
+  @Override
+  public void evictByPrefix(URI prefix) {
+    evictExplicitly(() -> {
+      for (CacheKey k : keys.withPrefix(keyStrategy.key(prefix))) {
+        cache.evictAll(k);
+      }
+    });
+  }
+
+  @Override
+  public void evictByHost(String host) {
+    evictExplicitly(() -> {
+      for (String scheme : new String[]{"http://", "https://"}) {
+        String prefix = scheme + host;
+        for (CacheKey k : keys.withPrefix(prefix)) {
+          if (isAuthorityEnd(k.toString(), prefix.length())) {
+            cache.evictAll(k);
+          }
+        }
+      }
+    });
+  }
+
+  @Override
+  public void evictByTag(String... tags) {
+    evictExplicitly(() -> {
+      for (String tag : tags) {
+        var entries = tagged.get(tag);
+        if (entries != null) {
+          for (CacheEntry e : entries.toArray(new CacheEntry[0])) {
+            cache.removeValue(key(e.metadata().request().uri()), e);
+          }
+        }
+      }
+    });
+  }
+
+  private void evictExplicitly(Runnable removal) {
+    removalCause = EvictionCause.EXPLICIT;
+    try {
+      removal.run();
+    } finally {
+      removalCause = null;
+    }
+    flushEvictions();
+  }
+
+  private static boolean isAuthorityEnd(String key, int i) {
+    if (i == key.length()) {
+      return true;
+    }
+
+    char c = key.charAt(i);
+    return c == '/' || c == ':' || c == '?' || c == '#';
   }
 
   @Override
-  public CacheStats stats() {
+  public DefaultCacheStats stats() {
     return stats;
   }
 
+  @Override
+  public List<CacheEntry> entries() {
+    return cache.toList();
+  }
+
   @Override
   public void close() {
     cache.clear();
+    flushEvictions();
+  }
+
+  /**
+   * Whether the entry with the body of {@code bytes} fits into this cache.
+   */
+  boolean canStore(long bytes) {
+    return isUnbounded() || bytes <= maxBytes();
+  }
+
+  /**
+   * Evicts the eldest entries until the cache fits into its current size.
+   */
+  void trim() {
+    if (!isUnbounded()) {
+      long max = maxBytes();
+      while (size > max && evictForSize()) {
+      }
+    }
+    flushEvictions();
+  }
+
+  boolean evictEldest() {
+    boolean evicted = evictForSize();
+    flushEvictions();
+    return evicted;
+  }
+
+  private boolean evictForSize() {
+    overflowCause = EvictionCause.SIZE;
+    try {
+      return cache.evictEldest();
+    } finally {
+      overflowCause = EvictionCause.COUNT;
+    }
+  }
+
+  private void putInternal(CacheKey key, CacheEntry e, long weight) {
+    weights.put(e, weight);
+    size += weight;
+    stats.trackStored(Math.max(0, e.bodySize()), weight);
+    cache.putVariant(key, e);
+
+    long expiresAt = e.metadata().expiresAt(maxStale);
+    // the entry might be rejected by the eviction policy right away
+    if (!weights.containsKey(e)) {
+      return;
+    }
+
+    if (expiresAt != Long.MAX_VALUE) {
+      expiry.schedule(key, e, expiresAt);
+    }
+    tag(e);
+  }
+
+  private void tag(CacheEntry e) {
+    var tags = Headers.tags(e.metadata().response().headers());
+    if (!tags.isEmpty()) {
+      entryTags.put(e, tags);
+      for (String tag : tags) {
+        tagged.computeIfAbsent(tag, t -> Collections.newSetFromMap(new IdentityHashMap<>())).add(e);
+      }
+    }
+  }
+
+  private void untag(CacheEntry e) {
+    var tags = entryTags.remove(e);
+    if (tags != null) {
+      for (String tag : tags) {
+        var entries = tagged.get(tag);
+        if (entries != null && entries.remove(e) && entries.isEmpty()) {
+          tagged.remove(tag);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the entries that can no longer be used. Invoked on writes only, so the cost is amortized over them and
+   * cache hits never pay for it.
+   */
+  void expireEntries() {
+    expire();
+    flushEvictions();
   }
 
-  private void putInternal(HttpRequest k, CacheEntry e) {
-    size += e.bodySize();
-    cache.putSingle(k.uri(), e, idxFn(k));
+  private void expire() {
+    removalCause = EvictionCause.EXPIRED;
+    try {
+      expiry.advance(System.currentTimeMillis(), cache::removeValue);
+    } finally {
+      removalCause = null;
+    }
   }
 
-  private boolean needSpace(CacheEntry e) {
-    return size + e.bodySize() > maxBytes;
+  /**
+   * Hands the entries evicted by the operation to the deferred listener as a single task.
+   */
+  private void flushEvictions() {
+    if (!evicted.isEmpty()) {
+      var batch = evicted;
+      var listener = deferredListener;
+      evicted = new ArrayList<>();
+
+      deferredExecutor.execute(() -> listener.accept(batch));
+    }
   }
 
   private boolean isUnbounded() {
     return maxBytes <= 0;
   }
 
-  private ToIntFunction<List<CacheEntry>> idxFn(HttpRequest r) {
-    return l -> indexOf(r, l);
+  /**
+   * The size the cache may take now, which is less than configured one while the heap is under pressure.
+   */
+  private long maxBytes() {
+    var pressure = memoryPressure;
+    return pressure == null ? maxBytes : (long) (maxBytes * pressure.ratio());
+  }
+
+  @Override
+  public CacheKey key(URI uri) {
+    return CacheKey.of(keyStrategy.key(uri));
+  }
+
+  /**
+   * Computes the vary key of {@code r} using the header names nominated by the stored response.
+   */
+  private static Function<CacheEntry, VaryKey> variantOf(HttpRequest r) {
+    return e -> e.metadata().varyKey().forRequest(r);
   }
 
   void addEvictionListener(Consumer<CacheEntry> l) {
     cache.addEvictionListener(l);
   }
 
+  /**
+   * Sets the listener notified about the entries evicted by each operation in a single batch once the operation
+   * completes. Unlike the eviction listeners it is invoked by {@code executor}, so the slow side effects of eviction are
+   * not made while the caller holds the cache lock.
+   */
+  void setDeferredEvictionListener(Consumer<List<CacheEntry>> l, Executor executor) {
+    this.deferredListener = l;
+    this.deferredExecutor = executor;
+  }
+
+  /**
+   * Adds the listener notified about the entries evicted to make room for the others, but not about the entries
+   * evicted explicitly or replaced. Invoked after the eviction listeners.
+   */
+  void addOverflowListener(Consumer<CacheEntry> l) {
+    cache.addOverflowListener(l);
+  }
+
+  /**
+   * Sets the monitor shrinking the cache while the heap is under pressure.
+   */
+  void setMemoryPressure(MemoryPressure memoryPressure) {
+    this.memoryPressure = memoryPressure;
+  }
+
+  MemoryPressure memoryPressure() {
+    return memoryPressure;
+  }
+
   int multimapSize() {
     return cache.size();
   }
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The arena of direct memory used to store response bodies off-heap. The memory is reserved in fixed size slabs, each
+ * slab is carved into blocks of single size class (powers of two from {@value #MIN_BLOCK_SIZE} to
+ * {@value #MAX_BLOCK_SIZE} bytes). Freed blocks are reused by the same size class, and the slab becomes available to any
+ * size class once all of its blocks are freed. The reserved memory is never returned until the arena itself is garbage
+ * collected.
+ */
+class SlabArena implements Cache.OffHeapStats {
+  static final int MIN_BLOCK_SHIFT = 8;
+  static final int MAX_BLOCK_SHIFT = 16;
+  static final int MIN_BLOCK_SIZE = 1 << MIN_BLOCK_SHIFT;
+  static final int MAX_BLOCK_SIZE = 1 << MAX_BLOCK_SHIFT;
+  private static final int SIZE_CLASSES = MAX_BLOCK_SHIFT - MIN_BLOCK_SHIFT + 1;
+  private static final int MAX_SLAB_SIZE = 1 << 20;
+
+  private final long budget;
+  private final int slabSize;
+  private final Set<Slab>[] partial;
+  private final ArrayDeque<Slab> empty = new ArrayDeque<>();
+
+  private volatile long reserved;
+  private volatile long allocated;
+  private volatile long stored;
+
+  /**
+   * Creates the arena.
+   *
+   * @param maxBytes The maximum number of body bytes to be stored, negative for no limit. The arena budget is slightly
+   *                 larger to leave room for partially used slabs of each size class.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  SlabArena(long maxBytes) {
+    if (maxBytes > 0) {
+      long size = Math.max(MAX_BLOCK_SIZE, Math.min(MAX_SLAB_SIZE, Long.highestOneBit(maxBytes / 64)));
+      slabSize = (int) size;
+      budget = maxBytes + SIZE_CLASSES * size;
+    } else {
+      slabSize = MAX_SLAB_SIZE;
+      budget = -1;
+    }
+
+    partial = new Set[SIZE_CLASSES];
+    for (int i = 0; i < SIZE_CLASSES; i++) {
+      partial[i] = new LinkedHashSet<>();
+    }
+  }
+
+  /**
+   * Gets the shift of the smallest size class fitting {@code length} bytes.
+   */
+  static int shiftFor(int length) {
+    return Math.max(MIN_BLOCK_SHIFT, 32 - Integer.numberOfLeadingZeros(length - 1));
+  }
+
+  /**
+   * Allocates the block of {@code 1 << shift} bytes.
+   *
+   * @return The block or {@code null} if arena budget is exhausted.
+   */
+  synchronized Block allocate(int shift) {
+    Set<Slab> slabs = partial[shift - MIN_BLOCK_SHIFT];
+
+    Slab slab;
+    Iterator<Slab> it = slabs.iterator();
+    if (it.hasNext()) {
+      slab = it.next();
+    } else {
+      slab = empty.poll();
+      if (slab == null) {
+        if (budget >= 0 && reserved + slabSize > budget) {
+          return null;
+        }
+
+        slab = new Slab(ByteBuffer.allocateDirect(slabSize));
+        reserved += slabSize;
+      }
+
+      slab.carve(shift);
+      slabs.add(slab);
+    }
+
+    Block block = slab.take();
+    if (slab.free == 0) {
+      slabs.remove(slab);
+    }
+    allocated += block.size();
+
+    return block;
+  }
+
+  synchronized void free(Block block) {
+    Slab slab = block.slab;
+    Set<Slab> slabs = partial[slab.shift - MIN_BLOCK_SHIFT];
+
+    slab.give(block.offset);
+    allocated -= block.size();
+
+    if (slab.free == slab.capacity) {
+      slabs.remove(slab);
+      empty.push(slab);
+    } else if (slab.free == 1) {
+      slabs.add(slab);
+    }
+  }
+
+  synchronized void addStored(long delta) {
+    stored += delta;
+  }
+
+  @Override
+  public long budget() {
+    return budget;
+  }
+
+  @Override
+  public long reserved() {
+    return reserved;
+  }
+
+  @Override
+  public long allocated() {
+    return allocated;
+  }
+
+  @Override
+  public long stored() {
+    return stored;
+  }
+
+  static final class Block {
+    private final Slab slab;
+    private final int offset;
+    private final ByteBuffer buffer;
+
+    private Block(Slab slab, int offset, ByteBuffer buffer) {
+      this.slab = slab;
+      this.offset = offset;
+      this.buffer = buffer;
+    }
+
+    /**
+     * The block memory. The position and limit are maintained by the block writer.
+     */
+    ByteBuffer buffer() {
+      return buffer;
+    }
+
+    int size() {
+      return 1 << slab.shift;
+    }
+  }
+
+  private static final class Slab {
+    private final ByteBuffer memory;
+    private int shift;
+    private int capacity;
+    private int[] offsets;
+    private int free;
+
+    private Slab(ByteBuffer memory) {
+      this.memory = memory;
+    }
+
+    void carve(int shift) {
+      this.shift = shift;
+      capacity = memory.capacity() >>> shift;
+      offsets = new int[capacity];
+      for (int i = 0; i < capacity; i++) {
+        offsets[i] = (capacity - 1 - i) << shift;
+      }
+      free = capacity;
+    }
+
+    Block take() {
+      int offset = offsets[--free];
+      ByteBuffer buffer = memory.duplicate()
+          .position(offset)
+          .limit(offset + (1 << shift))
+          .slice();
+
+      return new Block(this, offset, buffer);
+    }
+
+    void give(int offset) {
+      offsets[free++] = offset;
+    }
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import io.github.nstdio.http.ext.BinaryMetadataSerializer.ExternalizableMetadata;
+import io.github.nstdio.http.ext.Cache.CacheEntry;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+
+/**
+ * The file keeping cache entries between restarts. The file starts with the magic number and format version followed by
+ * the entries from the least to the most recently used, each one written as the length prefixed metadata and body, and
+ * ends with {@code -1}. The metadata is written in the same way as by {@link BinaryMetadataSerializer}.
+ */
+final class Snapshot {
+  private static final int MAGIC = 0x48435350;
+  private static final int VERSION = 1;
+  private static final int END = -1;
+
+  private Snapshot() {
+  }
+
+  /**
+   * Writes {@code entries} to {@code file} replacing it atomically, so the previous snapshot is kept if writing fails.
+   */
+  static void write(Path file, List<CacheEntry> entries) throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+
+      for (CacheEntry entry : entries) {
+        byte[] body = body(entry);
+        if (body == null) {
+          continue;
+        }
+
+        byte[] metadata = metadata(entry.metadata());
+        out.writeInt(metadata.length);
+        out.write(metadata);
+        out.writeInt(body.length);
+        out.write(body);
+      }
+
+      out.writeInt(END);
+    }
+
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Puts the entries read from {@code file} into {@code cache} in the order they were written. The entries that can no
+   * longer be served nor revalidated are skipped. The file that is absent, truncated, corrupted or written by another
+   * format version is loaded as far as it can be read.
+   *
+   * @param maxStale The longest staleness in milliseconds served to requests with {@code max-stale}, negative if not
+   *                 configured.
+   *
+   * @return The number of entries loaded.
+   */
+  static int load(Path file, Cache cache, long maxStale) {
+    ByteBuffer buf;
+    try (var channel = FileChannel.open(file)) {
+      long size = channel.size();
+      if (size < 8 || size > Integer.MAX_VALUE) {
+        return 0;
+      }
+      buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    } catch (IOException ignored) {
+      return 0;
+    }
+
+    if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+      return 0;
+    }
+
+    long now = System.currentTimeMillis();
+    int loaded = 0;
+    try {
+      int metadataLength;
+      while ((metadataLength = buf.getInt()) != END && canRead(buf, metadataLength)) {
+        var metadata = metadata(bytes(buf, metadataLength));
+        int bodyLength = buf.getInt();
+        if (!canRead(buf, bodyLength)) {
+          break;
+        }
+        if (metadata == null || metadata.expiresAt(maxStale) <= now) {
+          buf.position(buf.position() + bodyLength);
+          continue;
+        }
+
+        var body = buf.slice().limit(bodyLength);
+        buf.position(buf.position() + bodyLength);
+
+        put(cache, metadata, body);
+        loaded++;
+      }
+    } catch (BufferUnderflowException e) {
+      // truncated file, keep what was read
+    }
+
+    return loaded;
+  }
+
+  private static void put(Cache cache, CacheEntryMetadata metadata, ByteBuffer body) {
+    Cache.Writer<Object> writer = cache.writer(metadata);
+    var subscriber = writer.subscriber();
+    subscriber.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(long n) {
+      }
+
+      @Override
+      public void cancel() {
+      }
+    });
+    if (body.hasRemaining()) {
+      subscriber.onNext(List.of(body));
+    }
+    subscriber.onComplete();
+
+    subscriber.getBody()
+        .thenAccept(writer.finisher())
+        .toCompletableFuture()
+        .join();
+  }
+
+  /**
+   * Whether {@code length} read from {@code buf} is the length of data that follows, so the corrupted one is not used to
+   * allocate or skip.
+   */
+  private static boolean canRead(ByteBuffer buf, int length) {
+    return length >= 0 && length <= buf.remaining();
+  }
+
+  private static byte[] bytes(ByteBuffer buf, int length) {
+    byte[] bytes = new byte[length];
+    buf.get(bytes);
+    return bytes;
+  }
+
+  private static byte[] metadata(CacheEntryMetadata metadata) throws IOException {
+    var bytes = new ByteArrayOutputStream(512);
+    try (var out = new ObjectOutputStream(bytes)) {
+      out.writeObject(new ExternalizableMetadata(metadata));
+    }
+
+    return bytes.toByteArray();
+  }
+
+  private static CacheEntryMetadata metadata(byte[] bytes) {
+    try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return ((ExternalizableMetadata) in.readObject()).metadata();
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads the body of {@code entry}.
+   *
+   * @return The body or {@code null} if it cannot be read.
+   */
+  private static byte[] body(CacheEntry entry) {
+    var subscriber = BodySubscribers.ofByteArray();
+    entry.subscribeTo(subscriber);
+    try {
+      return subscriber.getBody().toCompletableFuture().join();
+    } catch (CompletionException | CancellationException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The {@code Cache} writing the {@link Snapshot} of its entries on {@link #close()} and on demand.
+ */
+class SnapshotCache implements Cache, EnumerableCache, KeyedCache {
+  private final Cache delegate;
+  private final Path file;
+
+  SnapshotCache(Cache delegate, Path file) {
+    this.delegate = delegate;
+    this.file = file;
+  }
+
+  @Override
+  public CacheKey key(URI uri) {
+    return KeyedCache.keyOf(delegate, uri);
+  }
+
+  @Override
+  public CacheEntry get(CacheKey key, HttpRequest request) {
+    return KeyedCache.get(delegate, key, request);
+  }
+
+  @Override
+  public boolean contains(CacheKey key, HttpRequest request) {
+    return KeyedCache.contains(delegate, key, request);
+  }
+
+  @Override
+  public void put(CacheKey key, HttpRequest request, CacheEntry entry) {
+    KeyedCache.put(delegate, key, request, entry);
+  }
+
+  @Override
+  public void evict(CacheKey key, HttpRequest request) {
+    KeyedCache.evict(delegate, key, request);
+  }
+
+  @Override
+  public void evictAll(CacheKey key, HttpRequest request) {
+    KeyedCache.evictAll(delegate, key, request);
+  }
+
+  @Override
+  public CacheEntry get(HttpRequest request) {
+    return delegate.get(request);
+  }
+
+  @Override
+  public void put(HttpRequest request, CacheEntry entry) {
+    delegate.put(request, entry);
+  }
+
+  @Override
+  public void evict(HttpRequest request) {
+    delegate.evict(request);
+  }
+
+  @Override
+  public void evictAll(HttpRequest request) {
+    delegate.evictAll(request);
+  }
+
+  @Override
+  public void evictAll() {
+    delegate.evictAll();
+  }
+
+  @Override
+  public void evictByPrefix(URI prefix) {
+    delegate.evictByPrefix(prefix);
+  }
+
+  @Override
+  public void evictByHost(String host) {
+    delegate.evictByHost(host);
+  }
+
+  @Override
+  public void evictByTag(String... tags) {
+    delegate.evictByTag(tags);
+  }
+
+  @Override
+  public List<CacheEntry> entries() {
+    return EnumerableCache.entriesOf(delegate);
+  }
+
+  @Override
+  public CacheStats stats() {
+    return delegate.stats();
+  }
+
+  @Override
+  public <T> Writer<T> writer(CacheEntryMetadata metadata) {
+    return delegate.writer(metadata);
+  }
+
+  @Override
+  public void snapshot() throws IOException {
+    Snapshot.write(file, entries());
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      snapshot();
+    } finally {
+      delegate.close();
+    }
+  }
+}
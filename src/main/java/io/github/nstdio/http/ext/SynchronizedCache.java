@@ -17,13 +17,15 @@
 package io.github.nstdio.http.ext;
 
 import java.io.IOException;
+import java.net.URI;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
-class SynchronizedCache implements Cache {
+class SynchronizedCache implements Cache, EnumerableCache, KeyedCache, Trimmable {
   private final Cache delegate;
   private final Lock lock = new ReentrantLock();
 
@@ -31,11 +33,31 @@ class SynchronizedCache implements Cache {
     this.delegate = delegate;
   }
 
+  @Override
+  public CacheKey key(URI uri) {
+    return KeyedCache.keyOf(delegate, uri);
+  }
+
   @Override
   public CacheEntry get(HttpRequest request) {
+    return get(key(request.uri()), request);
+  }
+
+  @Override
+  public CacheEntry get(CacheKey key, HttpRequest request) {
     lock.lock();
     try {
-      return delegate.get(request);
+      return KeyedCache.get(delegate, key, request);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean contains(CacheKey key, HttpRequest request) {
+    lock.lock();
+    try {
+      return KeyedCache.contains(delegate, key, request);
     } finally {
       lock.unlock();
     }
@@ -43,9 +65,14 @@ class SynchronizedCache implements Cache {
 
   @Override
   public void put(HttpRequest request, CacheEntry entry) {
+    put(key(request.uri()), request, entry);
+  }
+
+  @Override
+  public void put(CacheKey key, HttpRequest request, CacheEntry entry) {
     lock.lock();
     try {
-      delegate.put(request, entry);
+      KeyedCache.put(delegate, key, request, entry);
     } finally {
       lock.unlock();
     }
@@ -53,9 +80,14 @@ class SynchronizedCache implements Cache {
 
   @Override
   public void evict(HttpRequest request) {
+    evict(key(request.uri()), request);
+  }
+
+  @Override
+  public void evict(CacheKey key, HttpRequest request) {
     lock.lock();
     try {
-      delegate.evict(request);
+      KeyedCache.evict(delegate, key, request);
     } finally {
       lock.unlock();
     }
@@ -63,9 +95,14 @@ class SynchronizedCache implements Cache {
 
   @Override
   public void evictAll(HttpRequest request) {
+    evictAll(key(request.uri()), request);
+  }
+
+  @Override
+  public void evictAll(CacheKey key, HttpRequest request) {
     lock.lock();
     try {
-      delegate.evictAll(request);
+      KeyedCache.evictAll(delegate, key, request);
     } finally {
       lock.unlock();
     }
@@ -81,6 +118,58 @@ class SynchronizedCache implements Cache {
     }
   }
 
+  @Override
+  public void evictByPrefix(URI prefix) {
+    lock.lock();
+    try {
+      delegate.evictByPrefix(prefix);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void evictByHost(String host) {
+    lock.lock();
+    try {
+      delegate.evictByHost(host);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void evictByTag(String... tags) {
+    lock.lock();
+    try {
+      delegate.evictByTag(tags);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public List<CacheEntry> entries() {
+    lock.lock();
+    try {
+      return EnumerableCache.entriesOf(delegate);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void trim() {
+    if (delegate instanceof SizeConstrainedCache) {
+      lock.lock();
+      try {
+        ((SizeConstrainedCache) delegate).trim();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
   @Override
   public /* synchronized */ CacheStats stats() {
     return delegate.stats();
@@ -98,8 +187,11 @@ class SynchronizedCache implements Cache {
       @Override
       public Consumer<T> finisher() {
         return t -> {
-          synchronized (this) {
+          lock.lock();
+          try {
             writer.finisher().accept(t);
+          } finally {
+            lock.unlock();
           }
         };
       }
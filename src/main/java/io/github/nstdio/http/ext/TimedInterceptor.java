@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+/**
+ * Records the time spent by the interceptor on the sending thread.
+ */
+final class TimedInterceptor implements Interceptor {
+  private final Interceptor delegate;
+  private final LatencyHistogram latency;
+
+  TimedInterceptor(Interceptor delegate, LatencyHistogram latency) {
+    this.delegate = delegate;
+    this.latency = latency;
+  }
+
+  @Override
+  public <T> Chain<T> intercept(Chain<T> in) {
+    long start = System.nanoTime();
+    try {
+      return delegate.intercept(in);
+    } finally {
+      latency.record(System.nanoTime() - start);
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * The hierarchical timing wheel ordering values by their expiration time. Each level is a ring of buckets covering 64
+ * times longer period than the buckets of the level below, so scheduling and removal take constant time. When time
+ * advances only the buckets that passed are visited, their values either expire or are rescheduled to the lower level.
+ * The expiration time is read again before expiring, hence a value whose lifetime was extended gets rescheduled.
+ *
+ * @param <K> The type of keys.
+ * @param <V> The type of values.
+ */
+class TimerWheel<K, V> {
+  private static final int BUCKETS = 64;
+  /**
+   * The bucket span of each level is {@code 1 << SHIFT[i]} milliseconds: ~1 second, ~1 minute, ~1 hour, ~3 days and the
+   * single overflow bucket.
+   */
+  private static final int[] SHIFT = {10, 16, 22, 28, 34};
+
+  private final Node<K, V>[][] wheel;
+  private final Map<V, Node<K, V>> nodes = new IdentityHashMap<>();
+  private final ToLongFunction<V> expiresAt;
+  private long time;
+
+  /**
+   * @param expiresAt The expiration time of value in milliseconds.
+   * @param now       The current time in milliseconds.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  TimerWheel(ToLongFunction<V> expiresAt, long now) {
+    this.expiresAt = expiresAt;
+    this.time = now;
+
+    wheel = new Node[SHIFT.length][];
+    for (int i = 0; i < SHIFT.length; i++) {
+      wheel[i] = new Node[i == SHIFT.length - 1 ? 1 : BUCKETS];
+      for (int j = 0; j < wheel[i].length; j++) {
+        wheel[i][j] = Node.sentinel();
+      }
+    }
+  }
+
+  int size() {
+    return nodes.size();
+  }
+
+  /**
+   * Schedules the {@code value} to expire at the time given by {@code expiresAt} function.
+   */
+  void schedule(K key, V value, long expiresAt) {
+    var node = nodes.get(value);
+    if (node == null) {
+      node = new Node<>(key, value);
+      nodes.put(value, node);
+    } else {
+      node.unlink();
+    }
+
+    node.expiresAt = expiresAt;
+    node.linkBefore(bucketFor(expiresAt));
+  }
+
+  void remove(V value) {
+    var node = nodes.remove(value);
+    if (node != null) {
+      node.unlink();
+    }
+  }
+
+  /**
+   * Advances the time to {@code now} and passes expired values to {@code expired}.
+   */
+  void advance(long now, BiConsumer<K, V> expired) {
+    long previous = time;
+    if (now <= previous) {
+      return;
+    }
+    time = now;
+
+    for (int i = 0; i < SHIFT.length; i++) {
+      long previousTicks = previous >>> SHIFT[i];
+      long delta = (now >>> SHIFT[i]) - previousTicks;
+      if (delta <= 0) {
+        break;
+      }
+
+      expire(i, previousTicks, delta, expired);
+    }
+  }
+
+  private void expire(int level, long previousTicks, long delta, BiConsumer<K, V> expired) {
+    var buckets = wheel[level];
+    int mask = buckets.length - 1;
+    int steps = (int) Math.min(1 + delta, buckets.length);
+    int start = (int) (previousTicks & mask);
+
+    for (int i = start; i < start + steps; i++) {
+      var sentinel = buckets[i & mask];
+      var node = sentinel.next;
+      sentinel.prev = sentinel.next = sentinel;
+
+      while (node != sentinel) {
+        var next = node.next;
+        node.prev = node.next = null;
+
+        long t = expiresAt.applyAsLong(node.value);
+        if (t <= time) {
+          nodes.remove(node.value);
+          expired.accept(node.key, node.value);
+        } else {
+          node.expiresAt = t;
+          node.linkBefore(bucketFor(t));
+        }
+
+        node = next;
+      }
+    }
+  }
+
+  private Node<K, V> bucketFor(long expiresAt) {
+    // already expired values go to the current bucket to be visited on the next advance
+    long t = Math.max(expiresAt, time);
+    long duration = t - time;
+    int last = SHIFT.length - 1;
+    for (int i = 0; i < last; i++) {
+      if (duration < 1L << SHIFT[i + 1]) {
+        var buckets = wheel[i];
+        return buckets[(int) ((t >>> SHIFT[i]) & (buckets.length - 1))];
+      }
+    }
+
+    return wheel[last][0];
+  }
+
+  private static final class Node<K, V> {
+    private final K key;
+    private final V value;
+    private long expiresAt;
+    private Node<K, V> prev;
+    private Node<K, V> next;
+
+    private Node(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    static <K, V> Node<K, V> sentinel() {
+      Node<K, V> n = new Node<>(null, null);
+      n.prev = n.next = n;
+      return n;
+    }
+
+    void linkBefore(Node<K, V> sentinel) {
+      next = sentinel;
+      prev = sentinel.prev;
+      sentinel.prev.next = this;
+      sentinel.prev = this;
+    }
+
+    void unlink() {
+      if (prev != null) {
+        prev.next = next;
+        next.prev = prev;
+        prev = next = null;
+      }
+    }
+  }
+}
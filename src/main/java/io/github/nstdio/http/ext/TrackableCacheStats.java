@@ -22,4 +22,14 @@ interface TrackableCacheStats extends CacheStats {
   void trackHit();
 
   void trackMiss();
+
+  void trackBytesServed(long n);
+
+  void trackRevalidation();
+
+  void trackStaleIfErrorHit();
+
+  void trackGatewayTimeout();
+
+  void trackLookup(long nanos);
 }
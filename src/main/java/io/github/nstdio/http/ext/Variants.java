@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * The values stored under the single key of {@link LruMultimap} ordered from the most to the least recently used. When
+ * values are added with the variant key they are also indexed by it, so finding, moving and removing the value does
+ * not depend on the number of the other values. The {@code List} view is read-only.
+ * <p>
+ * Values can also belong to the group, the values of the same group compute the variant key of the request the same
+ * way. For the cache these are the responses nominating the same {@code Vary} header names.
+ *
+ * @param <V> The type of values.
+ */
+final class Variants<V> extends AbstractList<V> {
+  private final Node<V> head = Node.sentinel();
+  /**
+   * The variant key index. Created once the second keyed value is added.
+   */
+  private Map<Object, Node<V>> index;
+  /**
+   * The number of values in each group. Created once the value of the second group is added.
+   */
+  private Map<Object, Integer> groups;
+  private int size;
+
+  @Override
+  public V get(int i) {
+    return node(i).value;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Gets the most recently used value.
+   */
+  V first() {
+    return size == 0 ? null : head.next.value;
+  }
+
+  Node<V> node(int i) {
+    Objects.checkIndex(i, size);
+
+    Node<V> n = head.next;
+    while (i-- > 0) n = n.next;
+
+    return n;
+  }
+
+  /**
+   * Finds the node of the value added with the variant {@code key}.
+   *
+   * @return The node or {@code null} when there is no such value.
+   */
+  Node<V> find(Object key) {
+    if (key == null || size == 0) {
+      return null;
+    }
+    if (index != null) {
+      return index.get(key);
+    }
+
+    Node<V> n = head.next;
+    return key.equals(n.key) ? n : null;
+  }
+
+  /**
+   * Finds the node of the value added with the variant key computed by {@code selector}. The selector is applied to
+   * the most recently used value first and then to one value of every other group, if any.
+   *
+   * @param selector Computes the variant key to look up given the value of the group.
+   *
+   * @return The node or {@code null} when there is no such value.
+   */
+  Node<V> find(Function<? super V, ?> selector) {
+    if (size == 0) {
+      return null;
+    }
+
+    Node<V> first = head.next;
+    Node<V> found = find(selector.apply(first.value));
+    if (found != null || groups == null) {
+      return found;
+    }
+
+    var tried = new HashSet<>(groups.size());
+    tried.add(first.group);
+    for (Node<V> n = first.next; n != head && tried.size() < groups.size(); n = n.next) {
+      if (tried.add(n.group) && (found = find(selector.apply(n.value))) != null) {
+        return found;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Adds the value as the most recently used.
+   *
+   * @param key   The variant key of value, can be {@code null}.
+   * @param group The group of value, can be {@code null}.
+   */
+  void addFirst(Object key, Object group, V value) {
+    var n = new Node<>(key, group, value);
+    n.linkAfter(head);
+    size++;
+    indexNode(n);
+    groupNode(n);
+  }
+
+  /**
+   * Replaces the value of the node.
+   *
+   * @return The old value.
+   */
+  V set(Node<V> n, Object key, Object group, V value) {
+    unindexNode(n);
+    ungroupNode(n);
+    V old = n.value;
+    n.key = key;
+    n.group = group;
+    n.value = value;
+    indexNode(n);
+    groupNode(n);
+
+    return old;
+  }
+
+  void moveToFront(Node<V> n) {
+    if (head.next != n) {
+      n.unlink();
+      n.linkAfter(head);
+    }
+  }
+
+  V removeLast() {
+    return remove(head.prev);
+  }
+
+  V remove(Node<V> n) {
+    n.unlink();
+    size--;
+    unindexNode(n);
+    ungroupNode(n);
+
+    return n.value;
+  }
+
+  /**
+   * Creates the copy of this values to be read by other threads.
+   */
+  Variants<V> copy() {
+    var copy = new Variants<V>();
+    for (Node<V> n = head.prev; n != head; n = n.prev) {
+      copy.addFirst(n.key, n.group, n.value);
+    }
+
+    return copy;
+  }
+
+  private void indexNode(Node<V> n) {
+    if (n.key == null) {
+      return;
+    }
+
+    if (index == null) {
+      if (size == 1) {
+        return;
+      }
+
+      index = new HashMap<>();
+      for (Node<V> it = head.next; it != head; it = it.next) {
+        if (it != n && it.key != null) {
+          index.put(it.key, it);
+        }
+      }
+    }
+
+    index.put(n.key, n);
+  }
+
+  private void unindexNode(Node<V> n) {
+    if (index != null && n.key != null) {
+      index.remove(n.key, n);
+    }
+  }
+
+  private void groupNode(Node<V> n) {
+    if (groups == null) {
+      Node<V> other = n.next != head ? n.next : n.prev;
+      if (other == head || Objects.equals(other.group, n.group)) {
+        return;
+      }
+
+      // all the other values share the group of any of them
+      groups = new HashMap<>();
+      groups.put(other.group, size - 1);
+    }
+
+    groups.merge(n.group, 1, Integer::sum);
+  }
+
+  private void ungroupNode(Node<V> n) {
+    if (groups != null && groups.merge(n.group, -1, Integer::sum) == 0) {
+      groups.remove(n.group);
+      if (groups.size() == 1) {
+        groups = null;
+      }
+    }
+  }
+
+  static final class Node<V> {
+    private Object key;
+    private Object group;
+    private V value;
+    private Node<V> prev;
+    private Node<V> next;
+
+    private Node(Object key, Object group, V value) {
+      this.key = key;
+      this.group = group;
+      this.value = value;
+    }
+
+    static <V> Node<V> sentinel() {
+      Node<V> n = new Node<>(null, null, null);
+      n.prev = n.next = n;
+      return n;
+    }
+
+    V value() {
+      return value;
+    }
+
+    void linkAfter(Node<V> node) {
+      prev = node;
+      next = node.next;
+      node.next.prev = this;
+      node.next = this;
+    }
+
+    void unlink() {
+      prev.next = next;
+      next.prev = prev;
+      prev = next = null;
+    }
+  }
+}
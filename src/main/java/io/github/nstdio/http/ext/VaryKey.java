@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+import static io.github.nstdio.http.ext.Headers.HEADER_VARY;
+import static io.github.nstdio.http.ext.Headers.splitComma;
+
+/**
+ * The values of request headers nominated by the {@code Vary} response header. Header names are lower-cased and
+ * sorted, so two requests select the same response variant if and only if their keys are equal. A header absent from
+ * the request matches only the request without that header as well.
+ */
+final class VaryKey {
+  static final VaryKey EMPTY = new VaryKey(List.of(), List.of());
+
+  private final List<String> names;
+  private final List<List<String>> values;
+  private final int hash;
+
+  private VaryKey(List<String> names, List<List<String>> values) {
+    this.names = names;
+    this.values = values;
+    this.hash = 31 * names.hashCode() + values.hashCode();
+  }
+
+  /**
+   * Creates the key of the {@code request} that received {@code response}.
+   *
+   * @param request  The request headers.
+   * @param response The response headers.
+   *
+   * @return The vary key.
+   */
+  static VaryKey of(HttpHeaders request, HttpHeaders response) {
+    var varyValues = response.allValues(HEADER_VARY);
+    if (varyValues.isEmpty()) {
+      return EMPTY;
+    }
+
+    var names = new TreeSet<String>();
+    for (String varyValue : varyValues) {
+      for (String name : splitComma(varyValue)) {
+        names.add(name.toLowerCase(Locale.ROOT));
+      }
+    }
+
+    return names.isEmpty() ? EMPTY : of(List.copyOf(names), request);
+  }
+
+  private static VaryKey of(List<String> names, HttpHeaders request) {
+    var values = new ArrayList<List<String>>(names.size());
+    for (String name : names) {
+      values.add(request.allValues(name));
+    }
+
+    return new VaryKey(names, values);
+  }
+
+  /**
+   * Creates the key of the {@code request} nominated by the same header names as this key.
+   *
+   * @param request The request.
+   *
+   * @return The vary key.
+   */
+  VaryKey forRequest(HttpRequest request) {
+    if (names.isEmpty()) {
+      return this;
+    }
+
+    var values = new ArrayList<List<String>>(names.size());
+    for (String name : names) {
+      values.add(HeaderOverlayRequest.allValues(request, name));
+    }
+
+    return new VaryKey(names, values);
+  }
+
+  /**
+   * Gets the header names nominated by the {@code Vary} response header.
+   */
+  List<String> names() {
+    return names;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof VaryKey)) return false;
+    VaryKey other = (VaryKey) o;
+    return hash == other.hash && names.equals(other.names) && values.equals(other.values);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+}
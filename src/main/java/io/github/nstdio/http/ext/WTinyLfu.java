@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Window TinyLFU eviction order of keys. New keys enter the small LRU admission window, keys leaving the window are
+ * placed to the probation segment of the main region. Keys accessed while on probation are promoted to the protected
+ * segment. When eviction is needed the newest key on probation (the candidate) competes with the eldest one (the
+ * victim) and the one accessed less often according to {@link FrequencySketch} is evicted.
+ *
+ * @param <K> The type of keys.
+ */
+class WTinyLfu<K> {
+  private static final int WINDOW = 0;
+  private static final int PROBATION = 1;
+  private static final int PROTECTED = 2;
+
+  private final FrequencySketch sketch;
+  private final Map<K, Node<K>> nodes = new HashMap<>();
+  private final Node<K> window = Node.sentinel();
+  private final Node<K> probation = Node.sentinel();
+  private final Node<K> protectedSegment = Node.sentinel();
+
+  private final int maxWindow;
+  private final int maxProtected;
+  private int windowSize;
+  private int protectedSize;
+
+  WTinyLfu(int maximumSize) {
+    int maximum = Math.max(1, maximumSize);
+    maxWindow = Math.max(1, maximum / 100);
+    maxProtected = Math.max(1, (int) ((maximum - maxWindow) * 0.8));
+    sketch = new FrequencySketch(maximum);
+  }
+
+  /**
+   * Records the access to {@code k} regardless of whether it is present or not.
+   */
+  void onAccess(K k) {
+    sketch.increment(k.hashCode());
+
+    Node<K> node = nodes.get(k);
+    if (node == null) {
+      return;
+    }
+
+    switch (node.region) {
+      case WINDOW:
+        node.moveToTail(window);
+        break;
+      case PROBATION:
+        node.unlink();
+        node.region = PROTECTED;
+        node.linkLast(protectedSegment);
+        protectedSize++;
+
+        if (protectedSize > maxProtected) {
+          Node<K> demoted = protectedSegment.next;
+          demoted.unlink();
+          demoted.region = PROBATION;
+          demoted.linkLast(probation);
+          protectedSize--;
+        }
+        break;
+      default:
+        node.moveToTail(protectedSegment);
+        break;
+    }
+  }
+
+  /**
+   * Records newly added {@code k}.
+   */
+  void onAdd(K k) {
+    sketch.increment(k.hashCode());
+
+    var node = new Node<>(k);
+    nodes.put(k, node);
+    node.linkLast(window);
+    windowSize++;
+
+    while (windowSize > maxWindow) {
+      Node<K> eldest = window.next;
+      eldest.unlink();
+      eldest.region = PROBATION;
+      eldest.linkLast(probation);
+      windowSize--;
+    }
+  }
+
+  /**
+   * Forgets {@code k}, the frequency history is kept.
+   */
+  void onRemove(K k) {
+    Node<K> node = nodes.remove(k);
+    if (node != null) {
+      node.unlink();
+      if (node.region == WINDOW) {
+        windowSize--;
+      } else if (node.region == PROTECTED) {
+        protectedSize--;
+      }
+    }
+  }
+
+  /**
+   * Selects the key to evict.
+   *
+   * @return The key to evict or {@code null} if there are no keys.
+   */
+  K victim() {
+    Node<K> victim = first(probation);
+    if (victim == null && (victim = first(protectedSegment)) == null && (victim = first(window)) == null) {
+      return null;
+    }
+
+    Node<K> candidate = probation.prev;
+    if (victim.region == PROBATION && candidate != victim) {
+      return admit(candidate.key, victim.key) ? victim.key : candidate.key;
+    }
+
+    return victim.key;
+  }
+
+  private boolean admit(K candidate, K victim) {
+    return sketch.frequency(candidate.hashCode()) > sketch.frequency(victim.hashCode());
+  }
+
+  int frequency(K k) {
+    return sketch.frequency(k.hashCode());
+  }
+
+  void clear() {
+    nodes.clear();
+    window.next = window.prev = window;
+    probation.next = probation.prev = probation;
+    protectedSegment.next = protectedSegment.prev = protectedSegment;
+    windowSize = 0;
+    protectedSize = 0;
+  }
+
+  private static <K> Node<K> first(Node<K> sentinel) {
+    return sentinel.next != sentinel ? sentinel.next : null;
+  }
+
+  private static final class Node<K> {
+    private final K key;
+    private int region;
+    private Node<K> prev;
+    private Node<K> next;
+
+    private Node(K key) {
+      this.key = key;
+    }
+
+    static <K> Node<K> sentinel() {
+      Node<K> node = new Node<>(null);
+      node.prev = node.next = node;
+      return node;
+    }
+
+    void linkLast(Node<K> sentinel) {
+      prev = sentinel.prev;
+      next = sentinel;
+      sentinel.prev.next = this;
+      sentinel.prev = this;
+    }
+
+    void unlink() {
+      prev.next = next;
+      next.prev = prev;
+      prev = next = null;
+    }
+
+    void moveToTail(Node<K> sentinel) {
+      unlink();
+      linkLast(sentinel);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext;
+
+import io.github.nstdio.http.ext.Cache.CacheEntry;
+
+/**
+ * The strategy to calculate the weight of cache entry, that is, the number of bytes it takes from the cache size.
+ * The weight is calculated once when the entry is stored.
+ *
+ * @see ConstrainedCacheBuilder#size(long)
+ */
+@FunctionalInterface
+public interface Weigher {
+  /**
+   * The weigher counting response body bytes only.
+   *
+   * @return The weigher counting response body bytes only.
+   */
+  static Weigher bodySize() {
+    return entry -> Math.max(0, entry.bodySize());
+  }
+
+  /**
+   * The weigher estimating the whole footprint of the entry: the response body along with the request URI, the request
+   * and response headers and the fixed overhead of the entry metadata. This is the default one.
+   *
+   * @return The weigher estimating the whole footprint of the entry.
+   */
+  static Weigher retainedSize() {
+    return RetainedSizeWeigher.INSTANCE;
+  }
+
+  /**
+   * Calculates the weight of {@code entry}.
+   *
+   * @param entry The cache entry.
+   *
+   * @return The non-negative weight in bytes.
+   */
+  long weigh(CacheEntry entry);
+}
@@ -26,6 +26,7 @@ module http.client.ext {
   uses JsonMappingProvider;
 
   requires transitive java.net.http;
+  requires java.management;
 
   requires static com.aayushatharva.brotli4j;
   requires static org.brotli.dec;
@@ -80,8 +80,8 @@ object Assertions {
       return this
     }
 
-    fun hasOnlyValue(k: K, v: V, index: Int): LruMultimapAssertion<K, V> {
-      assertThat(actual!!.getSingle(k) { index })
+    fun hasValue(k: K, variant: Any, v: V): LruMultimapAssertion<K, V> {
+      assertThat(actual!!.getVariant(k) { variant })
         .isEqualTo(v)
       return this
     }
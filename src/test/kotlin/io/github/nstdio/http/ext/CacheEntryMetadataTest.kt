@@ -23,6 +23,7 @@ import io.kotest.matchers.booleans.shouldBeTrue
 import io.kotest.matchers.collections.shouldContainOnly
 import io.kotest.matchers.longs.shouldBeNegative
 import io.kotest.matchers.should
+import io.kotest.matchers.shouldBe
 import org.junit.jupiter.api.Assertions.assertFalse
 import org.junit.jupiter.api.Disabled
 import org.junit.jupiter.api.Nested
@@ -158,6 +159,23 @@ internal class CacheEntryMetadataTest {
     assertFalse(metadata.isFresh(CacheControl.parse("max-stale=1")))
   }
 
+  @Test
+  fun `Should expire response without validators once stale directives and max stale pass`() {
+    //given
+    val request = HttpRequest.newBuilder(URI.create("https://example.com")).build()
+    val clock = Clock.systemUTC()
+    fun metadata(cacheControl: String) =
+      CacheEntryMetadata(1000, 1000, responseInfo(mapOf("Cache-Control" to cacheControl)), request, clock)
+
+    //when + then
+    metadata("max-age=1").expiresAt(-1) shouldBe 2000
+    metadata("max-age=1, stale-while-revalidate=3, stale-if-error=2").expiresAt(-1) shouldBe 5000
+    metadata("max-age=1").expiresAt(5000) shouldBe 7000
+    metadata("max-age=1, stale-if-error=10").expiresAt(5000) shouldBe 12000
+    metadata("max-age=1, must-revalidate").expiresAt(-1) shouldBe 2000
+    metadata("max-age=1, must-revalidate").expiresAt(5000) shouldBe 2000
+  }
+
   @Test
   @Disabled("https://httpwg.org/specs/rfc7234.html#rfc.section.4.2.4")
   fun shouldAddStaleResponseWarning() {
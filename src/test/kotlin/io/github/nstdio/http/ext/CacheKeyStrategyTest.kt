@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.nstdio.http.ext
+
+import io.github.nstdio.http.ext.InMemoryCacheTest.Companion.cacheEntry
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.CsvSource
+import java.net.http.HttpRequest
+
+internal class CacheKeyStrategyTest {
+  @ParameterizedTest
+  @CsvSource(
+    "https://example.com/a?b=1&a=2, https://example.com/a?a=2&b=1",
+    "HTTPS://Example.COM:443/a, https://example.com/a",
+    "http://example.com:80, http://example.com/",
+    "http://example.com:8080/a#frag, http://example.com:8080/a",
+    "https://example.com/a?utm_source=x&q=1&utm_medium=y, https://example.com/a?q=1",
+    "https://example.com/a?utm_source=x, https://example.com/a",
+    "https://example.com/a?b=2&a=1&b=1&&, https://example.com/a?a=1&b=2&b=1",
+    "https://example.com/A?q=A%20B, https://example.com/A?q=A%20B",
+  )
+  fun `Should normalize URI`(uri: String, expected: String) {
+    //given
+    val strategy = CacheKeyStrategy.normalized("utm_source", "utm_medium")
+
+    //when
+    val actual = strategy.key(uri.toUri())
+
+    //then
+    actual shouldBe expected
+  }
+
+  @Test
+  fun `Should use URI as is by default`() {
+    CacheKeyStrategy.exact().key("https://Example.com/a?b=1&a=2".toUri()) shouldBe "https://Example.com/a?b=1&a=2"
+  }
+
+  @Test
+  fun `Should share entry between requests with equal keys`() {
+    //given
+    val cache = Cache.newInMemoryCacheBuilder()
+      .keyStrategy(CacheKeyStrategy.normalized("utm_source"))
+      .concurrencyLevel(4)
+      .build()
+    val r1 = HttpRequest.newBuilder("https://example.com/search?q=a&page=2".toUri()).build()
+    val r2 = HttpRequest.newBuilder("https://EXAMPLE.com/search?page=2&q=a&utm_source=mail".toUri()).build()
+    val entry = cacheEntry(mapOf(), r1)
+
+    //when
+    cache.put(r1, entry)
+
+    //then
+    cache.get(r2).shouldBeSameInstanceAs(entry)
+  }
+}
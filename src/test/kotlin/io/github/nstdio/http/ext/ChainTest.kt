@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.nstdio.http.ext
+
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import org.assertj.core.api.Assertions.assertThatIOException
+import org.junit.jupiter.api.Test
+import java.io.IOException
+import java.io.UncheckedIOException
+import java.net.URI
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse.BodyHandlers
+
+internal class ChainTest {
+  private val request = HttpRequest.newBuilder(URI.create("https://example.com")).build()
+  private val response = StaticHttpResponse.builder<Any>().request(request).statusCode(200).build()
+  private val other = StaticHttpResponse.builder<Any>().request(request).statusCode(304).build()
+
+  @Test
+  fun `Should apply handlers in order`() {
+    //given
+    val seen = mutableListOf<Int>()
+    val chain = Chain.of<Any>(RequestContext.of(request, BodyHandlers.discarding()), 1)
+      .addHandler { r, _ -> seen.add(r.statusCode()); other }
+      .addHandler { r, _ -> seen.add(r.statusCode()); r }
+
+    //when
+    val actual = chain.futureHandler().apply(response, null)
+
+    //then
+    actual.shouldBeSameInstanceAs(other)
+    seen shouldBe listOf(200, 304)
+  }
+
+  @Test
+  fun `Should pass exception thrown by handler to the next one`() {
+    //given
+    var received: Throwable? = null
+    val chain = Chain.of<Any>(RequestContext.of(request, BodyHandlers.discarding()))
+      .addHandler { _, _ -> throw UncheckedIOException(IOException()) }
+      .addHandler { r, th -> received = th; r ?: response }
+
+    //when
+    val actual = chain.futureHandler().apply(response, null)
+
+    //then
+    actual.shouldBeSameInstanceAs(response)
+    (received is UncheckedIOException) shouldBe true
+  }
+
+  @Test
+  fun `Should rethrow when there are no handlers`() {
+    //given
+    val chain = Chain.of<Any>(RequestContext.of(request, BodyHandlers.discarding()))
+
+    //when + then
+    chain.futureHandler().apply(response, null).shouldBeSameInstanceAs(response)
+    assertThatIOException()
+      .isThrownBy { chain.futureHandler().apply(null, IOException()) }
+  }
+
+  @Test
+  fun `Should update request in place`() {
+    //given
+    val ctx = RequestContext.of(request, BodyHandlers.discarding())
+    val chain = Chain.of<Any>(ctx)
+    val newRequest = HttpRequest.newBuilder(request.uri()).header("a", "1").build()
+
+    //when
+    val actual = chain.setRequest(newRequest)
+
+    //then
+    actual.shouldBeSameInstanceAs(chain)
+    ctx.request().shouldBeSameInstanceAs(newRequest)
+    ctx.fork(request).request().shouldBeSameInstanceAs(request)
+  }
+}
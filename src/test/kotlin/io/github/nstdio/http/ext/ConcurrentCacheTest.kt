@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.nstdio.http.ext
+
+import io.github.nstdio.http.ext.InMemoryCacheTest.Companion.cacheEntry
+import io.github.nstdio.http.ext.InMemoryCacheTest.Companion.uris
+import io.kotest.matchers.ints.shouldBeLessThanOrEqual
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.nulls.shouldNotBeNull
+import io.kotest.matchers.types.shouldBeInstanceOf
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import org.junit.jupiter.api.Test
+import java.net.http.HttpRequest
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+internal class ConcurrentCacheTest {
+  @Test
+  fun `Should be created when concurrent reads enabled`() {
+    //when
+    val cache = Cache.newInMemoryCacheBuilder()
+      .concurrentReads(true)
+      .build()
+
+    //then
+    cache.shouldBeInstanceOf<ConcurrentCache>()
+  }
+
+  @Test
+  fun `Should apply buffered reads before eviction`() {
+    //given
+    val cache = ConcurrentCache(InMemoryCache(2, -1))
+    val (r1, r2, r3) = uris(3).map { HttpRequest.newBuilder(it).build() }
+    val e1 = cacheEntry(mapOf(), r1)
+    cache.put(r1, e1)
+    cache.put(r2, cacheEntry(mapOf(), r2))
+
+    //when
+    cache.get(r1).shouldBeSameInstanceAs(e1)
+    cache.put(r3, cacheEntry(mapOf(), r3))
+
+    //then
+    cache.get(r1).shouldBeSameInstanceAs(e1)
+    cache.get(r2).shouldBeNull()
+    cache.get(r3).shouldNotBeNull()
+  }
+
+  @Test
+  fun `Should serve reads concurrently with writes`() {
+    //given
+    val cache = ConcurrentCache(InMemoryCache(64, -1))
+    val requests = uris(128).map { HttpRequest.newBuilder(it).build() }
+    val executor = Executors.newFixedThreadPool(8)
+
+    //when
+    repeat(8) { t ->
+      executor.execute {
+        repeat(10_000) {
+          val r = requests[(it + t) % requests.size]
+          if (it % 8 == 0) cache.put(r, cacheEntry(mapOf(), r)) else cache.get(r)
+        }
+      }
+    }
+    executor.shutdown()
+
+    //then
+    executor.awaitTermination(30, TimeUnit.SECONDS)
+    cache.delegate().multimapSize() shouldBeLessThanOrEqual 64
+  }
+}
@@ -15,12 +15,17 @@
  */
 package io.github.nstdio.http.ext
 
+import io.github.nstdio.http.ext.InMemoryCacheTest.Companion.cacheEntry
+import io.kotest.inspectors.forAll
+import io.kotest.matchers.shouldBe
 import org.assertj.core.api.Assertions.assertThatIllegalArgumentException
 import org.assertj.core.api.Assertions.assertThatIllegalStateException
 import org.assertj.core.api.Assertions.assertThatNullPointerException
 import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
 import org.junit.jupiter.params.ParameterizedTest
 import org.junit.jupiter.params.provider.ValueSource
+import java.net.http.HttpRequest
 import java.nio.file.Path
 
 internal class DiskCacheBuilderTest {
@@ -56,6 +61,24 @@ internal class DiskCacheBuilderTest {
       .isThrownBy { builder.build() }
   }
 
+  @Test
+  fun `Should share single daemon thread between segments`(@TempDir dir: Path) {
+    //given
+    val cache = Cache.newDiskCacheBuilder()
+      .dir(dir)
+      .concurrencyLevel(4)
+      .build()
+    val requests = InMemoryCacheTest.uris(16).map { HttpRequest.newBuilder(it).build() }
+
+    //when
+    requests.forEach { Helpers.write(cache, cacheEntry(mapOf(), it).metadata(), ByteArray(8)) }
+
+    //then
+    val threads = Thread.getAllStackTraces().keys.filter { it.name == "disk-cache-io" }
+    threads.forAll { it.isDaemon shouldBe true }
+    cache.close()
+  }
+
   @Test
   fun shouldThrowWhenDirIsNull() {
     //given
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.nstdio.http.ext
+
+import io.github.nstdio.http.ext.InMemoryCacheTest.Companion.cacheEntry
+import io.kotest.matchers.collections.shouldHaveSize
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.nulls.shouldNotBeNull
+import io.kotest.matchers.shouldBe
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.net.http.HttpRequest
+import java.nio.file.Files
+import java.nio.file.Path
+import kotlin.random.Random
+
+internal class DiskCacheTest {
+  @TempDir
+  private lateinit var dir: Path
+  private lateinit var cache: Cache
+  private val tasks = ArrayDeque<Runnable>()
+
+  @AfterEach
+  fun tearDown() {
+    if (::cache.isInitialized) cache.close()
+  }
+
+  @Test
+  fun `Should delete files of evicted entries in single task`() {
+    //given
+    cache = Cache.newDiskCacheBuilder()
+      .dir(dir)
+      .executor { tasks.add(it) }
+      .build()
+    val requests = InMemoryCacheTest.uris(4).map { HttpRequest.newBuilder(it).build() }
+    requests.forEach { Helpers.write(cache, cacheEntry(mapOf(), it).metadata(), Random.nextBytes(64)) }
+    runTasks()
+    filesCount() shouldBe 8
+
+    //when
+    cache.evictAll()
+
+    //then
+    tasks shouldHaveSize 1
+    filesCount() shouldBe 8
+    runTasks()
+    filesCount() shouldBe 0
+  }
+
+  @Test
+  fun `Should delete files of entries evicted by prefix`() {
+    //given
+    cache = Cache.newDiskCacheBuilder()
+      .dir(dir)
+      .executor { tasks.add(it) }
+      .build()
+    val requests = listOf("https://example.com/v1/a", "https://example.com/v2/a", "https://example.com/v2/b")
+      .map { HttpRequest.newBuilder(it.toUri()).build() }
+    requests.forEach { Helpers.write(cache, cacheEntry(mapOf(), it).metadata(), Random.nextBytes(64)) }
+    runTasks()
+
+    //when
+    cache.evictByPrefix("https://example.com/v2/".toUri())
+    runTasks()
+
+    //then
+    filesCount() shouldBe 2
+    cache[requests[0]].shouldNotBeNull()
+    cache[requests[1]].shouldBeNull()
+    cache[requests[2]].shouldBeNull()
+  }
+
+  private fun runTasks() {
+    while (tasks.isNotEmpty()) tasks.removeFirst().run()
+  }
+
+  private fun filesCount() = Files.list(dir).use { it.count() }
+}
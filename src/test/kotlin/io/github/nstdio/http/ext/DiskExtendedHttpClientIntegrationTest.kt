@@ -16,6 +16,7 @@
 package io.github.nstdio.http.ext
 
 import io.github.nstdio.http.ext.Assertions.assertThat
+import io.kotest.matchers.collections.shouldContainExactly
 import mockwebserver3.MockResponse
 import mockwebserver3.MockWebServer
 import org.awaitility.kotlin.await
@@ -25,8 +26,11 @@ import org.junit.jupiter.api.Test
 import java.io.File
 import java.net.http.HttpClient
 import java.net.http.HttpRequest
+import java.net.http.HttpResponse.BodyHandler
 import java.net.http.HttpResponse.BodyHandlers.discarding
 import java.net.http.HttpResponse.BodyHandlers.ofByteArray
+import java.net.http.HttpResponse.BodyHandlers.ofString
+import java.net.http.HttpResponse.BodySubscribers
 import java.nio.file.Files
 import java.time.Clock
 import java.util.concurrent.TimeUnit.SECONDS
@@ -92,6 +96,28 @@ internal class DiskExtendedHttpClientIntegrationTest(private val mockWebServer:
     await.atMost(1, SECONDS).until { cacheDir.listFiles()?.isEmpty() }
   }
 
+  @Test
+  fun `Should read cached body before completing async response`() {
+    //given
+    stubNumericCached(0..0)
+    val request = httpRequests(0..0).first()
+    client.send(request, discarding())
+    await.atMost(1, SECONDS).until { cache[request] != null }
+
+    val readers = mutableListOf<String>()
+    val bodyHandler = BodyHandler { info ->
+      BodySubscribers.mapping(ofString().apply(info)) { readers.add(Thread.currentThread().name); it }
+    }
+
+    //when
+    val future = client.sendAsync(request, bodyHandler)
+    val response = future.join()
+
+    //then
+    assertThat(response).isCached.hasBody("abc")
+    readers.shouldContainExactly("cached-body-io")
+  }
+
   private fun stubNumericCached(range: IntRange) {
     range.forEach { _ ->
       mockWebServer.enqueue(
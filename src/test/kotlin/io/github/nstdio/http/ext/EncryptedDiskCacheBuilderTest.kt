@@ -29,6 +29,7 @@ import java.nio.file.Path
 import java.security.NoSuchAlgorithmException
 import java.security.PrivateKey
 import java.security.PublicKey
+import java.time.Duration
 import javax.crypto.SecretKey
 
 internal class EncryptedDiskCacheBuilderTest {
@@ -125,6 +126,25 @@ internal class EncryptedDiskCacheBuilderTest {
     assertThat(actual).isSameAs(builder)
   }
 
+  @Test
+  fun `Should keep settings of disk cache builder`() {
+    //given
+    val builder = Cache.newDiskCacheBuilder()
+      .dir(Path.of("abc"))
+      .maxItems(16)
+      .size(1024)
+      .maxStale(Duration.ofSeconds(30))
+
+    //when
+    val actual = builder.encrypted()
+
+    //then
+    assertThat(actual.dir).isEqualTo(Path.of("abc"))
+    assertThat(actual.maxItems).isEqualTo(16)
+    assertThat(actual.size).isEqualTo(1024)
+    assertThat(actual.maxStale).isEqualTo(30_000)
+  }
+
   @Test
   fun `Should throw when algo is null`() {
     //given
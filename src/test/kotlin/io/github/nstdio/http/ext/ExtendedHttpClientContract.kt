@@ -20,6 +20,7 @@ import io.github.nstdio.http.ext.Assertions.await
 import io.github.nstdio.http.ext.Assertions.awaitFor
 import io.github.nstdio.http.ext.FixedRateTickClock.Companion.of
 import io.github.nstdio.http.ext.Matchers.isCached
+import io.kotest.matchers.longs.shouldBeGreaterThanOrEqual
 import io.kotest.matchers.shouldBe
 import io.kotest.property.Arb
 import io.kotest.property.arbitrary.next
@@ -28,7 +29,6 @@ import mockwebserver3.MockResponse
 import mockwebserver3.MockWebServer
 import org.assertj.core.api.Assertions.assertThat
 import org.awaitility.core.ThrowingRunnable
-import org.junit.jupiter.api.Disabled
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.io.TempDir
 import org.junit.jupiter.params.ParameterizedTest
@@ -97,6 +97,9 @@ interface ExtendedHttpClientContract {
         .hasBody("abc")
     })
     assertThat(cache).hasHits(1).hasMiss(1)
+    cache.stats().revalidations() shouldBe 1
+    // bodies are counted as stored, encrypted ones are larger
+    cache.stats().bytesServed() shouldBeGreaterThanOrEqual 3
   }
 
   @Test
@@ -181,6 +184,7 @@ interface ExtendedHttpClientContract {
 
     //then
     assertThat(r1).hasStatusCode(504)
+    cache().stats().gatewayTimeouts() shouldBe 1
   }
 
   @Test
@@ -502,6 +506,31 @@ interface ExtendedHttpClientContract {
     }
   }
 
+  @Test
+  fun shouldInvalidateTaggedWhenUnsafe() {
+    //given
+    mockWebServer().enqueue(
+      ok().setHeader(Headers.HEADER_CACHE_CONTROL, "max-age=512").setHeader("Surrogate-Key", "user-1 users")
+        .setBody("abc-1")
+    )
+    mockWebServer().enqueue(
+      ok().setHeader(Headers.HEADER_CACHE_CONTROL, "max-age=512").setHeader("Cache-Tag", "user-2,users")
+        .setBody("abc-2")
+    )
+    mockWebServer().enqueue(ok().setHeader("Surrogate-Key", "user-1").setBody("abc"), 3)
+
+    val (tagged, other) = listOf(path() + "/1", path() + "/2")
+      .map { HttpRequest.newBuilder(mockWebServer().url(it).toUri()).build() }
+    listOf(tagged, other).forEach { await().until({ send(it) }, isCached()) }
+
+    //when
+    send(requestBuilder().method("PUT", noBody()).build())
+
+    //then
+    assertThat(send(tagged)).isNetwork.isNotCached
+    assertThat(send(other)).isCached
+  }
+
   @Test
   fun shouldWorkWithPathSubscriber(@TempDir tempDir: Path) {
     //given
@@ -567,9 +596,39 @@ interface ExtendedHttpClientContract {
     assertThat(r4).isNotCached.hasStatusCode(500)
   }
 
+  /**
+   * https://datatracker.ietf.org/doc/html/rfc5861#section-3
+   */
   @Test
-  @Disabled("https://datatracker.ietf.org/doc/html/rfc5861#section-3")
   fun shouldRespectStaleWhileRevalidate() {
+    //given
+    val clock = of(clock(), Duration.ofSeconds(1))
+    val client = client(clock)
+    val bodyHandler = ofString()
+    mockWebServer().enqueue(
+      ok()
+        .setHeader(Headers.HEADER_CACHE_CONTROL, "max-age=1,stale-while-revalidate=100")
+        .setHeader(Headers.HEADER_ETAG, "v1")
+        .setBody("abc")
+    )
+    mockWebServer().enqueue(
+      MockResponse()
+        .setResponseCode(304)
+        .setHeader(Headers.HEADER_CACHE_CONTROL, "max-age=1,stale-while-revalidate=100")
+        .setHeader(Headers.HEADER_ETAG, "v1")
+    )
+
+    //when
+    val r1 = client.send(requestBuilder().build(), bodyHandler)
+    val r2 = await().until({ client.send(requestBuilder().build(), bodyHandler) }, isCached())
+    await().until { mockWebServer().requestCount == 2 }
+
+    //then
+    assertThat(r1).isNotCached.hasBody("abc")
+    assertThat(r2).isCached.hasBody("abc")
+    mockWebServer().takeRequest()
+    assertThat(mockWebServer().takeRequest().headers[Headers.HEADER_IF_NONE_MATCH]).isEqualTo("v1")
+    assertThat(client.send(requestBuilder().build(), bodyHandler)).isCached.hasBody("abc")
   }
 
   fun ok(): MockResponse {
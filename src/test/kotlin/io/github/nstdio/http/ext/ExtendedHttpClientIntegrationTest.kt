@@ -19,9 +19,14 @@ import io.github.nstdio.http.ext.Assertions.assertThat
 import io.github.nstdio.http.ext.Assertions.awaitFor
 import io.github.nstdio.http.ext.Compression.deflate
 import io.github.nstdio.http.ext.Compression.gzip
+import io.github.nstdio.http.ext.RequestInterceptor.Exchange
+import io.github.nstdio.http.ext.RequestInterceptor.Position
 import io.kotest.matchers.collections.shouldContainExactly
+import io.kotest.matchers.ints.shouldBeGreaterThan
+import io.kotest.matchers.maps.shouldBeEmpty
 import io.kotest.matchers.maps.shouldContainAll
 import io.kotest.matchers.should
+import io.kotest.matchers.shouldBe
 import io.kotest.property.Arb
 import io.kotest.property.arbitrary.next
 import io.kotest.property.arbitrary.string
@@ -30,10 +35,14 @@ import mockwebserver3.MockWebServer
 import org.junit.jupiter.api.Nested
 import org.junit.jupiter.api.Test
 import java.net.http.HttpClient
+import java.net.http.HttpHeaders
 import java.net.http.HttpRequest
+import java.net.http.HttpResponse
 import java.net.http.HttpResponse.BodyHandlers
 import java.net.http.HttpResponse.BodyHandlers.discarding
 import java.util.*
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.LinkedBlockingDeque
 import java.util.function.Supplier
 
@@ -185,6 +194,245 @@ internal class ExtendedHttpClientIntegrationTest(private val mockWebServer: Mock
     }
   }
 
+  @Nested
+  internal inner class InterceptorsTest {
+    @Test
+    fun `Should serve response without sending request`() {
+      //given
+      val headers = HttpHeaders.of(mapOf("X-Mock" to listOf("1"))) { _, _ -> true }
+      val client: HttpClient = ExtendedHttpClient.newBuilder()
+        .interceptor(Position.BEFORE_COMPRESSION, object : RequestInterceptor {
+          override fun <T> intercept(exchange: Exchange<T>): CompletableFuture<HttpResponse<T>> =
+            exchange.respond(200, headers, "mocked".toByteArray())
+        })
+        .build()
+      val request = HttpRequest.newBuilder(mockWebServer.url("/test").toUri()).build()
+
+      //when
+      val response = client.send(request, BodyHandlers.ofString())
+
+      //then
+      assertThat(response)
+        .hasStatusCode(200)
+        .hasBody("mocked")
+        .hasHeader("X-Mock", "1")
+      mockWebServer.requestCount shouldBe 0
+    }
+
+    @Test
+    fun `Should invoke interceptors at their positions`() {
+      //given
+      val beforeCaching = CountingInterceptor()
+      val afterCaching = CountingInterceptor()
+      val client: HttpClient = ExtendedHttpClient.newBuilder()
+        .cache(Cache.newInMemoryCacheBuilder().build())
+        .defaultHeader("X-Default", "1")
+        .interceptor(Position.BEFORE_CACHING, beforeCaching)
+        .interceptor(afterCaching)
+        .build()
+      val request = HttpRequest.newBuilder(mockWebServer.url("/test").toUri()).build()
+      mockWebServer.enqueue(MockResponse().ok().addHeader("Cache-Control", "max-age=86400").setBody("abc"), 2)
+
+      //when
+      client.send(request, BodyHandlers.ofString())
+      awaitFor { assertThat(client.send(request, BodyHandlers.ofString())).isCached }
+
+      //then
+      beforeCaching.requests.forEach { it.headers().firstValue("X-Default").isEmpty shouldBe true }
+      afterCaching.requests.forEach { it.headers().firstValue("X-Default").orElseThrow() shouldBe "1" }
+      beforeCaching.requests.size shouldBeGreaterThan afterCaching.requests.size
+    }
+
+    @Test
+    fun `Should apply cache directives added by interceptor`() {
+      //given
+      val cache = Cache.newInMemoryCacheBuilder().build()
+      val client: HttpClient = ExtendedHttpClient.newBuilder()
+        .cache(cache)
+        .interceptor(Position.BEFORE_CACHING, object : RequestInterceptor {
+          override fun <T> intercept(exchange: Exchange<T>): CompletableFuture<HttpResponse<T>> =
+            exchange.proceed(HttpRequest.newBuilder(exchange.request().uri()).header("Cache-Control", "no-store").build())
+        })
+        .build()
+      val request = HttpRequest.newBuilder(mockWebServer.url("/test").toUri()).build()
+      mockWebServer.enqueue(MockResponse().ok().addHeader("Cache-Control", "max-age=86400").setBody("abc"), 2)
+
+      //when
+      client.send(request, BodyHandlers.ofString())
+      val response = client.send(request, BodyHandlers.ofString())
+
+      //then
+      assertThat(response).isNotCached
+      mockWebServer.requestCount shouldBe 2
+      cache.stats().entryCount() shouldBe 0
+    }
+
+    @Test
+    fun `Should transform response asynchronously`() {
+      //given
+      val client: HttpClient = ExtendedHttpClient.newBuilder()
+        .interceptor(object : RequestInterceptor {
+          override fun <T> intercept(exchange: Exchange<T>): CompletableFuture<HttpResponse<T>> =
+            exchange.proceed().thenCompose {
+              if (it.statusCode() == 503) exchange.proceed() else CompletableFuture.completedFuture(it)
+            }
+        })
+        .build()
+      val request = HttpRequest.newBuilder(mockWebServer.url("/test").toUri()).build()
+      mockWebServer.enqueue(MockResponse().setResponseCode(503))
+      mockWebServer.enqueue(MockResponse().ok().setBody("abc"))
+
+      //when
+      val response = client.sendAsync(request, BodyHandlers.ofString()).join()
+
+      //then
+      assertThat(response)
+        .hasStatusCode(200)
+        .hasBody("abc")
+      mockWebServer.requestCount shouldBe 2
+    }
+
+    @Test
+    fun `Should revalidate in background through stages after caching`() {
+      //given
+      val beforeCaching = CountingInterceptor()
+      val afterCaching = CountingInterceptor()
+      val client: HttpClient = ExtendedHttpClient.newBuilder()
+        .cache(Cache.newInMemoryCacheBuilder().build())
+        .defaultHeader("X-Default", "1")
+        .interceptor(Position.BEFORE_CACHING, beforeCaching)
+        .interceptor(afterCaching)
+        .build()
+      val request = HttpRequest.newBuilder(mockWebServer.url("/test").toUri()).build()
+      mockWebServer.enqueue(
+        MockResponse().ok()
+          .addHeader("Cache-Control", "max-age=0,stale-while-revalidate=100")
+          .addHeader("ETag", "v1")
+          .setBody("abc")
+      )
+      mockWebServer.enqueue(MockResponse().setResponseCode(304).addHeader("ETag", "v1"))
+
+      //when
+      client.send(request, BodyHandlers.ofString())
+      awaitFor { assertThat(client.send(request, BodyHandlers.ofString())).isCached }
+      awaitFor { afterCaching.requests.size shouldBe 2 }
+
+      //then
+      mockWebServer.takeRequest()
+      val revalidation = mockWebServer.takeRequest()
+      revalidation.headers["If-None-Match"] shouldBe "v1"
+      revalidation.headers["X-Default"] shouldBe "1"
+      revalidation.headers["Cache-Control"] shouldBe null
+      beforeCaching.requests.size shouldBe 2
+    }
+
+    @Test
+    fun `Should serve stale response when revalidation cannot be sent`() {
+      //given
+      var failing = false
+      val client: HttpClient = ExtendedHttpClient.newBuilder()
+        .cache(Cache.newInMemoryCacheBuilder().build())
+        .defaultHeader("X-Token") { if (failing) throw IllegalStateException("no token") else "1" }
+        .build()
+      val request = HttpRequest.newBuilder(mockWebServer.url("/test").toUri()).build()
+      mockWebServer.enqueue(
+        MockResponse().ok()
+          .addHeader("Cache-Control", "max-age=0,stale-while-revalidate=100")
+          .addHeader("ETag", "v1")
+          .setBody("abc")
+      )
+      mockWebServer.enqueue(MockResponse().setResponseCode(304).addHeader("ETag", "v1"))
+      client.send(request, BodyHandlers.ofString())
+
+      //when
+      failing = true
+      val stale = client.send(request, BodyHandlers.ofString())
+      failing = false
+      client.send(request, BodyHandlers.ofString())
+
+      //then
+      assertThat(stale).isCached.hasBody("abc")
+      awaitFor { mockWebServer.requestCount shouldBe 2 }
+      mockWebServer.takeRequest()
+      mockWebServer.takeRequest().headers["If-None-Match"] shouldBe "v1"
+    }
+
+    @Test
+    fun `Should refresh ahead after refresh cannot be sent`() {
+      //given
+      var failing = false
+      val client: HttpClient = ExtendedHttpClient.newBuilder()
+        .cache(Cache.newInMemoryCacheBuilder().build())
+        .defaultHeader("X-Token") { if (failing) throw IllegalStateException("no token") else "1" }
+        .refreshAhead(0.01, 1, 1, 1000)
+        .build()
+      val request = HttpRequest.newBuilder(mockWebServer.url("/test").toUri()).build()
+      mockWebServer.enqueue(
+        MockResponse().ok()
+          .addHeader("Cache-Control", "max-age=60")
+          .addHeader("ETag", "v1")
+          .setBody("abc")
+      )
+      mockWebServer.enqueue(MockResponse().setResponseCode(304).addHeader("ETag", "v1"))
+      client.send(request, BodyHandlers.ofString())
+      Thread.sleep(700)
+
+      //when
+      failing = true
+      client.send(request, BodyHandlers.ofString())
+      failing = false
+      Thread.sleep(10)
+      client.send(request, BodyHandlers.ofString())
+
+      //then
+      awaitFor { mockWebServer.requestCount shouldBe 2 }
+      mockWebServer.takeRequest()
+      mockWebServer.takeRequest().headers["If-None-Match"] shouldBe "v1"
+    }
+
+    @Test
+    fun `Should record latency of each stage`() {
+      //given
+      val client = ExtendedHttpClient.newBuilder()
+        .transparentEncoding(true)
+        .interceptor(Position.BEFORE_CACHING, CountingInterceptor())
+        .interceptor(CountingInterceptor())
+        .recordInterceptorLatency()
+        .build()
+      val request = HttpRequest.newBuilder(mockWebServer.url("/test").toUri()).build()
+      mockWebServer.enqueue(MockResponse().ok())
+
+      //when
+      client.send(request, discarding())
+
+      //then
+      val name = CountingInterceptor::class.java.name
+      client.interceptorLatencies().keys
+        .shouldContainExactly("compression", name, "headers", "contentType", "$name#2")
+      client.interceptorLatencies().values.forEach { it.count() shouldBe 1 }
+    }
+
+    @Test
+    fun `Should not record latency by default`() {
+      //given
+      val client = ExtendedHttpClient.newBuilder()
+        .interceptor(CountingInterceptor())
+        .build()
+
+      //when + then
+      client.interceptorLatencies().shouldBeEmpty()
+    }
+  }
+
+  internal class CountingInterceptor : RequestInterceptor {
+    val requests = CopyOnWriteArrayList<HttpRequest>()
+
+    override fun <T> intercept(exchange: Exchange<T>): CompletableFuture<HttpResponse<T>> {
+      requests.add(exchange.request())
+      return exchange.proceed()
+    }
+  }
+
   private fun <K, V> Map<K, V>.toMultimap(): Map<K, List<V>> =
     asSequence().map { e -> e.key to listOf(e.value) }.toMap()
 
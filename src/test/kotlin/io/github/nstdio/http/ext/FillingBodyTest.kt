@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.nstdio.http.ext
+
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.extension.ExtendWith
+import org.mockito.ArgumentCaptor
+import org.mockito.Mock
+import org.mockito.Mockito.argThat
+import org.mockito.Mockito.atLeastOnce
+import org.mockito.Mockito.inOrder
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.verifyNoMoreInteractions
+import org.mockito.junit.jupiter.MockitoExtension
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.util.concurrent.Flow.Subscriber
+import java.util.concurrent.Flow.Subscription
+
+@ExtendWith(MockitoExtension::class)
+internal class FillingBodyTest {
+  @Mock
+  lateinit var mockSub: Subscriber<List<ByteBuffer>>
+
+  @Test
+  fun `Should serve received parts and follow the tail`() {
+    //given
+    val body = FillingBody()
+    body.append(listOf("ab".toByteBuffer()))
+    val subscription = subscribe(body)
+
+    //when
+    subscription.request(2)
+    body.append(listOf("cd".toByteBuffer()))
+    body.append(listOf("ef".toByteBuffer()))
+    body.complete()
+
+    //then
+    val inOrder = inOrder(mockSub)
+    inOrder.verify(mockSub).onNext(listOf("ab".toByteBuffer()))
+    inOrder.verify(mockSub).onNext(listOf("cd".toByteBuffer()))
+    verifyNoMoreInteractions(mockSub)
+  }
+
+  @Test
+  fun `Should not publish more than requested`() {
+    //given
+    val body = FillingBody()
+    body.append(listOf("ab".toByteBuffer()))
+    body.append(listOf("cd".toByteBuffer()))
+    body.complete()
+    val subscription = subscribe(body)
+
+    //when
+    subscription.request(1)
+
+    //then
+    verify(mockSub).onNext(listOf("ab".toByteBuffer()))
+    verifyNoMoreInteractions(mockSub)
+
+    //when
+    subscription.request(1)
+
+    //then
+    verify(mockSub).onNext(listOf("cd".toByteBuffer()))
+    verify(mockSub).onComplete()
+  }
+
+  @Test
+  fun `Should serve each subscriber from the beginning`() {
+    //given
+    val body = FillingBody()
+    body.append(listOf("ab".toByteBuffer()))
+    subscribe(body).request(Long.MAX_VALUE)
+
+    //when
+    body.complete()
+    subscribe(body).request(Long.MAX_VALUE)
+
+    //then
+    verify(mockSub, times(2)).onNext(listOf("ab".toByteBuffer()))
+    verify(mockSub, times(2)).onComplete()
+  }
+
+  @Test
+  fun `Should report error of filling`() {
+    //given
+    val body = FillingBody()
+    val subscription = subscribe(body)
+    subscription.request(1)
+
+    //when
+    body.fail(IOException("closed"))
+
+    //then
+    verify(mockSub).onError(argThat { it is IOException })
+  }
+
+  @Test
+  fun `Should not invoke sub when canceled`() {
+    //given
+    val body = FillingBody()
+    val subscription = subscribe(body)
+
+    //when
+    subscription.cancel()
+    body.append(listOf("ab".toByteBuffer()))
+    body.complete()
+    subscription.request(1)
+
+    //then
+    verifyNoMoreInteractions(mockSub)
+  }
+
+  @Test
+  fun `Should signal arrived parts on executor`() {
+    //given
+    val tasks = mutableListOf<Runnable>()
+    val body = FillingBody { tasks.add(it) }
+    subscribe(body).request(Long.MAX_VALUE)
+
+    //when
+    body.append(listOf("ab".toByteBuffer()))
+
+    //then
+    verifyNoMoreInteractions(mockSub)
+
+    //when
+    tasks.forEach { it.run() }
+
+    //then
+    verify(mockSub).onNext(listOf("ab".toByteBuffer()))
+  }
+
+  private fun subscribe(body: FillingBody): Subscription {
+    val captor = ArgumentCaptor.forClass(Subscription::class.java)
+    body.subscribeTo(mockSub)
+    verify(mockSub, atLeastOnce()).onSubscribe(captor.capture())
+
+    return captor.value
+  }
+}
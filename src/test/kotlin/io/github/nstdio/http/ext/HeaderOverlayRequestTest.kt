@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.nstdio.http.ext
+
+import io.kotest.matchers.maps.shouldContain
+import io.kotest.matchers.maps.shouldNotContainKey
+import io.kotest.matchers.should
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import org.junit.jupiter.api.Test
+import java.net.http.HttpRequest
+import java.net.http.HttpRequest.BodyPublishers
+import java.time.Duration
+
+internal class HeaderOverlayRequestTest {
+  private val request = HttpRequest.newBuilder("https://example.com".toUri())
+    .POST(BodyPublishers.ofString("abc"))
+    .timeout(Duration.ofSeconds(5))
+    .header("a", "1")
+    .header("b", "2")
+    .build()
+
+  @Test
+  fun `Should replace headers over original request`() {
+    //when
+    val actual = HeaderOverlayRequest.setHeader(request, "A", "3")
+
+    //then
+    actual.headers().map().should {
+      it.shouldContain("a", listOf("3"))
+      it.shouldContain("b", listOf("2"))
+    }
+    actual.uri().shouldBe(request.uri())
+    actual.method().shouldBe("POST")
+    actual.timeout().shouldBe(request.timeout())
+    actual.bodyPublisher().get().shouldBeSameInstanceAs(request.bodyPublisher().get())
+    request.headers().map().shouldContain("a", listOf("1"))
+  }
+
+  @Test
+  fun `Should overlay the original request once`() {
+    //given
+    val first = HeaderOverlayRequest.setHeader(request, "c", "3")
+
+    //when
+    val actual = HeaderOverlayRequest.setHeaders(first, mapOf("d" to listOf("4", "5")))
+
+    //then
+    actual.headers().map().should {
+      it.shouldContain("a", listOf("1"))
+      it.shouldContain("c", listOf("3"))
+      it.shouldContain("d", listOf("4", "5"))
+    }
+    first.headers().map().shouldNotContainKey("d")
+    actual.shouldBe(HttpRequests.toBuilder(request).header("c", "3").header("d", "4").header("d", "5").build())
+  }
+
+  @Test
+  fun `Should not overlay when no headers given`() {
+    //when
+    val actual = HeaderOverlayRequest.setHeaders(request, mapOf())
+
+    //then
+    actual.shouldBeSameInstanceAs(request)
+  }
+}
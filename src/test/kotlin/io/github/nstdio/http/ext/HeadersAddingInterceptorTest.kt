@@ -95,7 +95,7 @@ class HeadersAddingInterceptorTest {
     val response = StaticHttpResponse.builder<Any>()
       .request(request)
       .build()
-    val chain = Chain.of(RequestContext.of(request, bodyHandler), { t, _ -> t }, Optional.of(response))
+    val chain = Chain.of<Any>(RequestContext.of(request, bodyHandler)).setResponse(response)
 
     //when
     val actual = interceptor.intercept(chain)
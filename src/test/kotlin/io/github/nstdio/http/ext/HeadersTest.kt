@@ -110,6 +110,23 @@ internal class HeadersTest {
     assertThat(actual).isEqualTo(expected)
   }
 
+  @Test
+  fun tags() {
+    //given
+    val headers = HttpHeadersBuilder()
+      .add("Surrogate-Key", " user-1  users ")
+      .add("Cache-Tag", "post-1,post-2, posts")
+      .add("Cache-Tag", ",")
+      .build()
+
+    //when
+    val actual = Headers.tags(headers)
+
+    //then
+    assertThat(actual).containsExactly("user-1", "users", "post-1", "post-2", "posts")
+    assertThat(Headers.tags(HttpHeadersBuilder().build())).isEmpty()
+  }
+
   @ParameterizedTest
   @MethodSource("hasConditionsData")
   fun hasConditions(headers: HttpHeaders, expected: Boolean) {
@@ -15,9 +15,12 @@
  */
 package io.github.nstdio.http.ext
 
+import org.mockito.Mockito.mock
 import java.net.http.HttpClient
 import java.net.http.HttpHeaders
+import java.net.http.HttpResponse.BodySubscribers
 import java.net.http.HttpResponse.ResponseInfo
+import java.util.concurrent.Flow
 
 internal object Helpers {
   fun responseInfo(headers: Map<String, String>) = responseInfo0(headers.mapValues { listOf(it.value) }.toMutableMap())
@@ -29,4 +32,26 @@ internal object Helpers {
 
     override fun version() = HttpClient.Version.HTTP_1_1
   }
-}
\ No newline at end of file
+
+  /**
+   * Stores [body] through the [Cache.Writer] the way response body is cached.
+   */
+  fun write(cache: Cache, metadata: CacheEntryMetadata, body: ByteArray) {
+    val writer = cache.writer<Any>(metadata)
+    val subscriber = writer.subscriber()
+
+    subscriber.onSubscribe(mock(Flow.Subscription::class.java))
+    if (body.isNotEmpty()) {
+      body.toChunkedBuffers().forEach { subscriber.onNext(listOf(it)) }
+    }
+    subscriber.onComplete()
+
+    writer.finisher().accept(subscriber.body.toCompletableFuture().join())
+  }
+
+  fun read(entry: Cache.CacheEntry): ByteArray {
+    val subscriber = BodySubscribers.ofByteArray()
+    entry.subscribeTo(subscriber)
+    return subscriber.body.toCompletableFuture().join()
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext
+
+import io.github.nstdio.http.ext.InMemoryCache.InMemoryCacheEntry
+import io.github.nstdio.http.ext.InMemoryCacheTest.Companion.cacheEntry
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.nulls.shouldNotBeNull
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.string.shouldNotContain
+import io.kotest.matchers.types.shouldBeInstanceOf
+import io.kotest.matchers.types.shouldNotBeInstanceOf
+import org.assertj.core.api.Assertions.assertThatIllegalArgumentException
+import org.assertj.core.api.Assertions.assertThatIllegalStateException
+import org.awaitility.kotlin.await
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.ValueSource
+import java.net.http.HttpRequest
+import java.nio.file.Path
+import java.util.concurrent.TimeUnit.MILLISECONDS
+import java.util.concurrent.TimeUnit.SECONDS
+import kotlin.random.Random
+
+internal class HybridCacheTest {
+  @TempDir
+  private lateinit var dir: Path
+  private lateinit var cache: Cache
+
+  @AfterEach
+  fun tearDown() {
+    if (::cache.isInitialized) cache.close()
+  }
+
+  @Test
+  fun `Should move entries evicted from memory to disk`() {
+    //given
+    cache = Cache.newHybridCacheBuilder()
+      .dir(dir)
+      .memoryMaxItems(1)
+      .promotionFrequency(FrequencySketch.MAX_FREQUENCY)
+      .build()
+    val (r1, r2) = requests(2)
+    val body = Random.nextBytes(2048)
+
+    //when
+    write(r1, body)
+    write(r2, body)
+
+    //then
+    await.atMost(1, SECONDS).until { cache.get(r1) != null }
+    val entry = cache.get(r1)!!
+    entry.shouldNotBeInstanceOf<InMemoryCacheEntry>()
+    Helpers.read(entry) shouldBe body
+    cache.get(r2).shouldBeInstanceOf<InMemoryCacheEntry>()
+
+    val (memory, disk) = cache.stats().tiers()
+    memory.hit() shouldBe 1
+    disk.hit() shouldBe 2
+  }
+
+  @Test
+  fun `Should not move small bodies to disk`() {
+    //given
+    cache = Cache.newHybridCacheBuilder()
+      .dir(dir)
+      .memoryMaxItems(1)
+      .minDiskBodySize(1024)
+      .build()
+    val (r1, r2) = requests(2)
+
+    //when
+    write(r1, Random.nextBytes(1023))
+    write(r2, Random.nextBytes(1023))
+
+    //then
+    cache.close()
+    dir.toFile().list()!!.toList() shouldBe emptyList()
+  }
+
+  @Test
+  fun `Should store large bodies on disk only`() {
+    //given
+    cache = Cache.newHybridCacheBuilder()
+      .dir(dir)
+      .maxMemoryBodySize(1024)
+      .build()
+    val (r1) = requests(1)
+    val body = Random.nextBytes(1025)
+
+    //when
+    write(r1, body)
+
+    //then
+    await.atMost(1, SECONDS).until { cache.get(r1) != null }
+    cache.stats().tiers()[0].hit() shouldBe 0
+    Helpers.read(cache.get(r1)!!) shouldBe body
+  }
+
+  @Test
+  fun `Should serve large entry put to cache right away`() {
+    //given
+    cache = Cache.newHybridCacheBuilder()
+      .dir(dir)
+      .maxMemoryBodySize(1024)
+      .build()
+    val (r1) = requests(1)
+    val body = Random.nextBytes(2048)
+
+    //when
+    cache.put(r1, InMemoryCacheEntry(body, cacheEntry(mapOf(), r1).metadata()))
+
+    //then
+    val entry = cache.get(r1)
+    entry.shouldNotBeNull().shouldNotBeInstanceOf<InMemoryCacheEntry>()
+    Helpers.read(entry) shouldBe body
+  }
+
+  @Test
+  fun `Should encrypt disk tier`() {
+    //given
+    cache = Cache.newHybridCacheBuilder()
+      .disk(Cache.newDiskCacheBuilder().dir(dir).encrypted().key(Crypto.pbe()).cipherAlgorithm("AES"))
+      .maxMemoryBodySize(1024)
+      .build()
+    val (r1) = requests(1)
+    val body = "abcdefgh".repeat(256).toByteArray()
+
+    //when
+    cache.put(r1, InMemoryCacheEntry(body, cacheEntry(mapOf(), r1).metadata()))
+
+    //then
+    Helpers.read(cache.get(r1).shouldNotBeNull()) shouldBe body
+    dir.toFile().listFiles()!!.forEach { it.readBytes().toString(Charsets.ISO_8859_1) shouldNotContain "abcdefgh" }
+  }
+
+  @Test
+  fun `Should move frequently used entries back to memory`() {
+    //given
+    cache = Cache.newHybridCacheBuilder()
+      .dir(dir)
+      .memoryMaxItems(1)
+      .minDiskBodySize(0)
+      .promotionFrequency(2)
+      .build()
+    val (r1, r2) = requests(2)
+    val body = Random.nextBytes(256)
+    write(r1, body)
+    write(r2, body)
+    await.atMost(1, SECONDS).until { cache.get(r1) != null }
+
+    //when
+    cache.get(r1)
+
+    //then
+    await.atMost(1, SECONDS).until { cache.get(r1) is InMemoryCacheEntry }
+    Helpers.read(cache.get(r1)!!) shouldBe body
+  }
+
+  @Test
+  fun `Should evict from both tiers`() {
+    //given
+    cache = Cache.newHybridCacheBuilder()
+      .dir(dir)
+      .memoryMaxItems(1)
+      .minDiskBodySize(0)
+      .build()
+    val (r1, r2) = requests(2)
+    write(r1, Random.nextBytes(16))
+    write(r2, Random.nextBytes(16))
+    await.atMost(1, SECONDS).until { cache.get(r1) != null }
+
+    //when
+    cache.evictAll()
+
+    //then
+    cache.get(r1).shouldBeNull()
+    cache.get(r2).shouldBeNull()
+  }
+
+  @Test
+  fun `Should stream large body of unknown length to disk`() {
+    //given
+    cache = Cache.newHybridCacheBuilder()
+      .dir(dir)
+      .maxMemoryBodySize(1024)
+      .build()
+    val (r1) = requests(1)
+    val body = Random.nextBytes(16384)
+
+    //when
+    write(r1, body)
+
+    //then
+    val entry = cache.get(r1)
+    entry.shouldNotBeNull().shouldNotBeInstanceOf<InMemoryCacheEntry>()
+    Helpers.read(entry) shouldBe body
+  }
+
+  @Test
+  fun `Should not move entry to disk once it is evicted`() {
+    //given
+    cache = Cache.newHybridCacheBuilder()
+      .dir(dir)
+      .memoryMaxItems(1)
+      .minDiskBodySize(0)
+      .build()
+    val (r1, r2) = requests(2)
+    write(r1, Random.nextBytes(64))
+    write(r2, Random.nextBytes(64))
+
+    //when
+    cache.evictAll(r1)
+
+    //then
+    await.during(200, MILLISECONDS).atMost(1, SECONDS).until { cache.get(r1) == null }
+  }
+
+  @Test
+  fun `Should throw when build without dir`() {
+    assertThatIllegalStateException()
+      .isThrownBy { Cache.newHybridCacheBuilder().build() }
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = [0, 16])
+  fun `Should throw when promotion frequency cannot be estimated`(promotionFrequency: Int) {
+    assertThatIllegalArgumentException()
+      .isThrownBy { Cache.newHybridCacheBuilder().promotionFrequency(promotionFrequency) }
+  }
+
+  private fun write(request: HttpRequest, body: ByteArray) =
+    Helpers.write(cache, cacheEntry(mapOf(), request).metadata(), body)
+
+  private fun requests(n: Int) = InMemoryCacheTest.uris(n).map { HttpRequest.newBuilder(it).build() }
+}
@@ -17,6 +17,8 @@ package io.github.nstdio.http.ext
 
 import io.github.nstdio.http.ext.InMemoryCache.InMemoryCacheEntry
 import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatIllegalStateException
+import org.awaitility.kotlin.await
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.DisplayName
 import org.junit.jupiter.api.Test
@@ -24,7 +26,9 @@ import java.net.URI
 import java.net.http.HttpRequest
 import java.net.http.HttpResponse.ResponseInfo
 import java.time.Clock
+import java.util.concurrent.TimeUnit.SECONDS
 import java.util.stream.Collectors.toList
+import kotlin.random.Random
 
 internal class InMemoryCacheTest {
   private lateinit var cache: InMemoryCache
@@ -88,6 +92,25 @@ internal class InMemoryCacheTest {
     }
   }
 
+  @Test
+  fun shouldRefreshRecencyWhenSameEntryIsPutAgain() {
+    //given
+    cache = InMemoryCache(2, -1)
+    val (r1, r2, r3) = uris(3).map { HttpRequest.newBuilder(it).build() }
+    val e1 = cacheEntry(mapOf(), r1)
+    cache.put(r1, e1)
+    cache.put(r2, cacheEntry(mapOf(), r2))
+
+    //when
+    cache.put(r1, e1)
+    cache.put(r3, cacheEntry(mapOf(), r3))
+
+    //then
+    assertThat(cache[r1]).isSameAs(e1)
+    assertThat(cache[r2]).isNull()
+    assertThat(cache.multimapSize()).isEqualTo(2)
+  }
+
   @Test
   fun shouldRespectSizeConstraints() {
     //given
@@ -173,6 +196,293 @@ internal class InMemoryCacheTest {
     assertThat(cache.mapSize()).isZero
   }
 
+  @Test
+  fun shouldSelectVariantAmongMany() {
+    //given
+    val uri = "https://example.com".toUri()
+    val languages = (0 until 100).map { "lang-$it" }
+    val requests = languages.map { HttpRequest.newBuilder(uri).header("Accept-Language", it).build() }
+    val entries = requests.map { cacheEntry(mapOf("Vary" to "accept-language"), it) }
+
+    //when
+    requests.zip(entries).forEach { (r, e) -> cache.put(r, e) }
+
+    //then
+    languages.zip(entries).forEach { (lang, e) ->
+      assertThat(cache[HttpRequest.newBuilder(uri).header("Accept-Language", lang).build()]).isSameAs(e)
+    }
+    assertThat(cache[HttpRequest.newBuilder(uri).build()]).isNull()
+    assertThat(cache[HttpRequest.newBuilder(uri).header("Accept-Language", "lang-100").build()]).isNull()
+
+    cache.evict(requests[42])
+    assertThat(cache[requests[42]]).isNull()
+    assertThat(cache.multimapSize()).isEqualTo(99)
+  }
+
+  @Test
+  fun shouldSelectVariantsWithDifferentVaryHeaders() {
+    //given
+    val uri = "https://example.com".toUri()
+    val byLanguage = HttpRequest.newBuilder(uri).header("Accept-Language", "en").build()
+    val byEncoding = HttpRequest.newBuilder(uri).header("Accept-Encoding", "gzip").build()
+    val e1 = cacheEntry(mapOf("Vary" to "Accept-Language"), byLanguage)
+    val e2 = cacheEntry(mapOf("Vary" to "Accept-Encoding"), byEncoding)
+
+    //when
+    cache.put(byLanguage, e1)
+    cache.put(byEncoding, e2)
+
+    //then
+    assertThat(cache[byLanguage]).isSameAs(e1)
+    assertThat(cache[byEncoding]).isSameAs(e2)
+    assertThat(cache[byLanguage]).isSameAs(e1)
+    assertThat(cache.multimapSize()).isEqualTo(2)
+
+    cache.evict(byLanguage)
+    assertThat(cache[byLanguage]).isNull()
+    assertThat(cache[byEncoding]).isSameAs(e2)
+  }
+
+  @Test
+  fun shouldReplaceVariantWithSameVaryValues() {
+    //given
+    val uri = "https://example.com".toUri()
+    val request = HttpRequest.newBuilder(uri).header("Accept", "text/plain").header("X-Custom", "a").build()
+    val e1 = cacheEntry(mapOf("Vary" to "Accept, X-Other"), request)
+    val e2 = cacheEntry(mapOf("Vary" to "x-other, accept"), request)
+
+    //when
+    cache.put(request, e1)
+    cache.put(request, e2)
+
+    //then
+    assertThat(cache.multimapSize()).isEqualTo(1)
+    assertThat(cache[HttpRequest.newBuilder(uri).header("Accept", "text/plain").build()]).isSameAs(e2)
+    assertThat(cache[HttpRequest.newBuilder(uri).header("Accept", "text/plain").header("X-Other", "b").build()]).isNull()
+  }
+
+  @Test
+  fun shouldRemoveExpiredEntriesWithoutValidators() {
+    //given
+    val (r1, r2, r3) = uris(3).map { HttpRequest.newBuilder(it).build() }
+    val longAgo = System.currentTimeMillis() - 10_000
+    val expired =
+      InMemoryCacheEntry(ByteArray(8), metadata(longAgo, mapOf("Cache-Control" to "max-age=1, must-revalidate"), r1))
+    val validated = InMemoryCacheEntry(
+      ByteArray(8), metadata(longAgo, mapOf("Cache-Control" to "max-age=1", "ETag" to "\"v1\""), r2)
+    )
+    val fresh = InMemoryCacheEntry(ByteArray(8), metadata(longAgo, mapOf("Cache-Control" to "max-age=60"), r3))
+
+    //when
+    cache.put(r1, expired)
+    cache.put(r2, validated)
+    cache.put(r3, fresh)
+    await.atMost(2, SECONDS).until {
+      cache.expireEntries()
+      cache[r1] == null
+    }
+
+    //then
+    assertThat(cache[r2]).isSameAs(validated)
+    assertThat(cache[r3]).isSameAs(fresh)
+    assertThat(cache.bytes()).isEqualTo(16)
+    assertThat(cache.stats().evictions(Cache.EvictionCause.EXPIRED)).isEqualTo(1)
+  }
+
+  @Test
+  fun shouldKeepStaleEntriesServableWithMaxStale() {
+    //given
+    val (r1, r2) = uris(2).map { HttpRequest.newBuilder(it).build() }
+    val longAgo = System.currentTimeMillis() - 10_000
+    val servable = InMemoryCacheEntry(ByteArray(8), metadata(longAgo, mapOf("Cache-Control" to "max-age=1"), r1))
+
+    //when
+    cache.setMaxStale(60_000)
+    cache.put(r1, servable)
+    cache.expireEntries()
+
+    //then
+    assertThat(cache[r1]).isSameAs(servable)
+    assertThat(servable.metadata().isFresh(CacheControl.parse("max-stale=60"))).isTrue
+
+    //when
+    cache.setMaxStale(1000)
+    cache.put(r2, InMemoryCacheEntry(ByteArray(8), metadata(longAgo, mapOf("Cache-Control" to "max-age=1"), r2)))
+    await.atMost(2, SECONDS).until {
+      cache.expireEntries()
+      cache[r2] == null
+    }
+
+    //then
+    assertThat(cache.stats().evictions(Cache.EvictionCause.EXPIRED)).isEqualTo(1)
+  }
+
+  @Test
+  fun shouldRemoveStaleEntriesOnceStaleDirectivesPassWithoutMaxStale() {
+    //given
+    val (r1, r2) = uris(2).map { HttpRequest.newBuilder(it).build() }
+    val longAgo = System.currentTimeMillis() - 10_000
+    val servable = InMemoryCacheEntry(
+      ByteArray(8), metadata(longAgo, mapOf("Cache-Control" to "max-age=1, stale-while-revalidate=60"), r1)
+    )
+    val stale = InMemoryCacheEntry(ByteArray(8), metadata(longAgo, mapOf("Cache-Control" to "max-age=1"), r2))
+
+    //when
+    cache.put(r1, servable)
+    cache.put(r2, stale)
+    await.atMost(2, SECONDS).until {
+      cache.expireEntries()
+      cache[r2] == null
+    }
+
+    //then
+    assertThat(cache[r1]).isSameAs(servable)
+    assertThat(cache.stats().evictions(Cache.EvictionCause.EXPIRED)).isEqualTo(1)
+  }
+
+  @Test
+  fun shouldCountEvictionsByCause() {
+    //given
+    cache = InMemoryCache(2, 24)
+    val requests = uris(4).map { HttpRequest.newBuilder(it).build() }
+    val entries = requests.mapIndexed { i, r -> InMemoryCacheEntry(ByteArray(if (i == 3) 16 else 8), metadata(r)) }
+    val stats = cache.stats()
+
+    //when
+    requests.zip(entries).forEach { (r, e) -> cache.put(r, e) }
+
+    //then
+    assertThat(stats.evictions(Cache.EvictionCause.COUNT)).isEqualTo(1)
+    assertThat(stats.evictions(Cache.EvictionCause.SIZE)).isEqualTo(1)
+    assertThat(stats.entryCount()).isEqualTo(2)
+    assertThat(stats.bytes()).isEqualTo(24)
+    assertThat(stats.bytesWritten()).isEqualTo(40)
+
+    //when
+    cache.evict(requests[3])
+    cache.evictAll()
+
+    //then
+    assertThat(stats.evictions(Cache.EvictionCause.EXPLICIT)).isEqualTo(2)
+    assertThat(stats.evictions(Cache.EvictionCause.EXPIRED)).isZero
+    assertThat(stats.entryCount()).isZero
+    assertThat(stats.bytes()).isZero
+  }
+
+  @Test
+  fun shouldEvictByPrefixAndHost() {
+    //given
+    val uris = listOf(
+      "https://api.example.com/v2/users", "https://api.example.com/v2/users?page=2", "https://api.example.com/v20",
+      "https://api.example.com/v1/users", "http://api.example.com:8080/", "https://api.example.com.cdn.net/",
+      "https://other.example.com/"
+    ).map { it.toUri() }
+    val requests = uris.map { HttpRequest.newBuilder(it).build() }
+    requests.forEach { cache.put(it, cacheEntry(mapOf(), it)) }
+
+    //when
+    cache.evictByPrefix("https://api.example.com/v2/".toUri())
+
+    //then
+    assertThat(requests.map { cache[it] != null }).containsExactly(false, false, true, true, true, true, true)
+    assertThat(cache.multimapSize()).isEqualTo(5)
+
+    //when
+    cache.evictByHost("api.example.com")
+
+    //then
+    assertThat(requests.map { cache[it] != null }).containsExactly(false, false, false, false, false, true, true)
+    assertThat(cache.mapSize()).isEqualTo(2)
+  }
+
+  @Test
+  fun shouldEvictByTag() {
+    //given
+    val (r1, r2, r3) = uris(3).map { HttpRequest.newBuilder(it).build() }
+    val e1 = cacheEntry(mapOf("Surrogate-Key" to "user-1 users"), r1)
+    val e2 = cacheEntry(mapOf("Cache-Tag" to "user-2, users"), r2)
+    val e3 = cacheEntry(mapOf(), r3)
+    cache.put(r1, e1)
+    cache.put(r2, e2)
+    cache.put(r3, e3)
+
+    //when
+    cache.evictByTag("user-1")
+
+    //then
+    assertThat(cache[r1]).isNull()
+    assertThat(cache[r2]).isSameAs(e2)
+
+    //when
+    cache.evict(r2)
+    cache.put(r2, e2)
+    cache.evictByTag("users", "unknown")
+
+    //then
+    assertThat(cache[r2]).isNull()
+    assertThat(cache[r3]).isSameAs(e3)
+    assertThat(cache.multimapSize()).isEqualTo(1)
+  }
+
+  @Test
+  fun shouldCountHeadersAgainstSizeWithRetainedSizeWeigher() {
+    //given
+    val headers = (0 until 20).associate { "X-Header-$it" to "value".repeat(10) }
+    val requests = uris(4).map { HttpRequest.newBuilder(it).build() }
+    val entries = requests.map { InMemoryCacheEntry(ByteArray(16), metadata(it, Helpers.responseInfo(headers))) }
+    val weight = Weigher.retainedSize().weigh(entries[0])
+    cache = InMemoryCache(512, 2 * weight, Cache.EvictionPolicy.LRU, CacheKeyStrategy.exact(),
+      Weigher.retainedSize(), null, -1, null)
+
+    //when
+    requests.zip(entries).forEach { (r, e) -> cache.put(r, e) }
+
+    //then
+    assertThat(weight).isGreaterThan(16 + 20 * 60L)
+    assertThat(cache.multimapSize()).isEqualTo(2)
+    assertThat(cache.bytes()).isEqualTo(2 * weight)
+    assertThat(requests.take(2)).allMatch { cache[it] == null }
+    assertThat(requests.drop(2)).allMatch { cache[it] != null }
+
+    cache.evictAll()
+    assertThat(cache.bytes()).isZero
+  }
+
+  @Test
+  fun shouldCompressBodiesAboveThreshold() {
+    //given
+    cache = InMemoryCache(512, -1, Cache.EvictionPolicy.LRU, CacheKeyStrategy.exact(), Weigher.bodySize(), null, 1024,
+      null)
+    val small = "{\"id\":1}".toByteArray()
+    val large = "{\"id\":1,\"name\":\"value\"},".repeat(1000).toByteArray()
+    val random = Random.nextBytes(4096)
+    val requests = uris(3).map { HttpRequest.newBuilder(it).build() }
+
+    //when
+    requests.zip(listOf(small, large, random)).forEach { (r, body) -> Helpers.write(cache, metadata(r), body) }
+
+    //then
+    val (smallEntry, largeEntry, randomEntry) = requests.map { cache[it]!! }
+    assertThat(smallEntry).isInstanceOf(InMemoryCacheEntry::class.java)
+    assertThat(randomEntry).isInstanceOf(InMemoryCacheEntry::class.java)
+    assertThat(largeEntry).isInstanceOf(InMemoryCache.CompressedCacheEntry::class.java)
+    assertThat(largeEntry.bodySize()).isLessThan(large.size / 5L)
+    assertThat(cache.bytes()).isEqualTo(small.size + random.size + largeEntry.bodySize())
+    assertThat(Helpers.read(smallEntry)).isEqualTo(small)
+    assertThat(Helpers.read(largeEntry)).isEqualTo(large)
+    assertThat(Helpers.read(randomEntry)).isEqualTo(random)
+  }
+
+  @Test
+  fun shouldNotAllowCompressionOffHeap() {
+    assertThatIllegalStateException().isThrownBy {
+      Cache.newInMemoryCacheBuilder().offHeap(true).compressionThreshold(0).build()
+    }
+  }
+
+  private fun metadata(responseTimeMs: Long, headers: Map<String, String>, request: HttpRequest) =
+    CacheEntryMetadata(responseTimeMs, responseTimeMs, Helpers.responseInfo(headers), request, SYSTEM_CLOCK)
+
   private fun metadata(
     request: HttpRequest,
     info: ResponseInfo = Helpers.responseInfo(java.util.Map.of())
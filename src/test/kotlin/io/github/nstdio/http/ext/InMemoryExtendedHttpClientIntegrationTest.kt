@@ -19,7 +19,9 @@ import io.github.nstdio.http.ext.Assertions.assertThat
 import io.github.nstdio.http.ext.Assertions.await
 import io.github.nstdio.http.ext.FixedRateTickClock.Companion.of
 import io.github.nstdio.http.ext.Matchers.isCached
+import io.kotest.matchers.collections.shouldNotContain
 import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.shouldBe
 import mockwebserver3.MockResponse
 import mockwebserver3.MockWebServer
 import mockwebserver3.SocketPolicy
@@ -29,8 +31,12 @@ import org.junit.jupiter.api.DisplayName
 import org.junit.jupiter.api.Test
 import java.net.http.HttpClient
 import java.net.http.HttpRequest
+import java.net.http.HttpResponse.BodyHandler
+import java.net.http.HttpResponse.BodyHandlers.ofString
+import java.net.http.HttpResponse.BodySubscribers
 import java.time.Clock
 import java.time.Duration
+import java.util.concurrent.TimeUnit.MILLISECONDS
 
 @MockWebServerTest
 internal class InMemoryExtendedHttpClientIntegrationTest(private val mockWebServer: MockWebServer) :
@@ -59,6 +65,160 @@ internal class InMemoryExtendedHttpClientIntegrationTest(private val mockWebServ
 
   override fun mockWebServer() = mockWebServer
 
+  @Test
+  fun shouldCoalesceConcurrentMisses() {
+    //given
+    client = ExtendedHttpClient.newBuilder()
+      .cache(cache)
+      .coalesceRequests(Duration.ofSeconds(5))
+      .build()
+    mockWebServer.enqueue(
+      MockResponse().ok()
+        .addHeader(Headers.HEADER_CACHE_CONTROL, "max-age=60")
+        .setBody("abc")
+        .setHeadersDelay(200, MILLISECONDS), 5
+    )
+    val request = requestBuilder().build()
+
+    //when
+    val responses = (1..5).map { client.sendAsync(request, ofString()) }.map { it.join() }
+
+    //then
+    responses.forEach { assertThat(it).hasStatusCode(200).hasBody("abc") }
+    mockWebServer.requestCount shouldBe 1
+    assertThat(cache).hasHits(4).hasMiss(1)
+  }
+
+  @Test
+  fun shouldCoalesceMissesOfSameCacheKey() {
+    //given
+    cache = Cache.newInMemoryCacheBuilder()
+      .keyStrategy(CacheKeyStrategy.normalized("utm_source"))
+      .build()
+    client = ExtendedHttpClient.newBuilder()
+      .cache(cache)
+      .coalesceRequests(Duration.ofSeconds(5))
+      .build()
+    mockWebServer.enqueue(
+      MockResponse().ok()
+        .addHeader(Headers.HEADER_CACHE_CONTROL, "max-age=60")
+        .setBody("abc")
+        .setHeadersDelay(200, MILLISECONDS), 3
+    )
+    val requests = (1..3).map { HttpRequest.newBuilder(mockWebServer.url("/coalesce?utm_source=$it").toUri()).build() }
+
+    //when
+    val responses = requests.map { client.sendAsync(it, ofString()) }.map { it.join() }
+
+    //then
+    responses.forEach { assertThat(it).hasStatusCode(200).hasBody("abc") }
+    mockWebServer.requestCount shouldBe 1
+  }
+
+  @Test
+  fun shouldStreamResponseToFollowersWhileItIsStored() {
+    //given
+    client = ExtendedHttpClient.newBuilder()
+      .cache(cache)
+      .coalesceRequests(Duration.ofSeconds(5))
+      .build()
+    val body = "abcdefgh".repeat(4096)
+    mockWebServer.enqueue(
+      MockResponse().ok()
+        .addHeader(Headers.HEADER_CACHE_CONTROL, "max-age=60")
+        .setBody(body)
+        .throttleBody(4096, 50, MILLISECONDS)
+    )
+    val request = requestBuilder().build()
+
+    //when
+    val leader = client.sendAsync(request, ofString())
+    val followers = (1..3).map { client.sendAsync(request, ofString()) }
+
+    //then
+    assertThat(leader.join()).isNetwork.hasBody(body)
+    followers.map { it.join() }.forEach { assertThat(it).isCached.hasBody(body) }
+    mockWebServer.requestCount shouldBe 1
+    await().until { cache[request] != null }
+  }
+
+  @Test
+  fun shouldNotStreamResponseToFollowersOfOtherVariant() {
+    //given
+    client = ExtendedHttpClient.newBuilder()
+      .cache(cache)
+      .coalesceRequests(Duration.ofSeconds(5))
+      .build()
+    listOf("english", "deutsch").forEach {
+      mockWebServer.enqueue(
+        MockResponse().ok()
+          .addHeader(Headers.HEADER_CACHE_CONTROL, "max-age=60")
+          .addHeader(Headers.HEADER_VARY, "Accept-Language")
+          .setBody(it)
+          .setHeadersDelay(100, MILLISECONDS)
+      )
+    }
+    val english = requestBuilder().header("Accept-Language", "en").build()
+    val deutsch = requestBuilder().header("Accept-Language", "de").build()
+
+    //when
+    val leader = client.sendAsync(english, ofString())
+    val follower = client.sendAsync(deutsch, ofString())
+
+    //then
+    assertThat(leader.join()).isNetwork.hasBody("english")
+    assertThat(follower.join()).isNetwork.hasBody("deutsch")
+    mockWebServer.requestCount shouldBe 2
+  }
+
+  @Test
+  fun shouldSendFollowersWhenLeaderResponseIsNotStored() {
+    //given
+    client = ExtendedHttpClient.newBuilder()
+      .cache(cache)
+      .coalesceRequests(Duration.ofSeconds(5))
+      .build()
+    mockWebServer.enqueue(
+      MockResponse().ok()
+        .addHeader(Headers.HEADER_CACHE_CONTROL, "no-store")
+        .setBody("abc")
+        .setHeadersDelay(200, MILLISECONDS), 3
+    )
+    val request = requestBuilder().build()
+
+    //when
+    val responses = (1..3).map { client.sendAsync(request, ofString()) }.map { it.join() }
+
+    //then
+    responses.forEach { assertThat(it).isNetwork.hasBody("abc") }
+    mockWebServer.requestCount shouldBe 3
+  }
+
+  @Test
+  fun shouldReadInMemoryBodyWithoutExecutor() {
+    //given
+    mockWebServer.enqueue(
+      MockResponse().ok()
+        .addHeader(Headers.HEADER_CACHE_CONTROL, "max-age=60")
+        .setBody("abc")
+    )
+    val request = requestBuilder().build()
+    send(request)
+    await().until { cache[request] != null }
+
+    val readers = mutableListOf<String>()
+    val bodyHandler = BodyHandler { info ->
+      BodySubscribers.mapping(ofString().apply(info)) { readers.add(Thread.currentThread().name); it }
+    }
+
+    //when
+    val response = client.sendAsync(request, bodyHandler).join()
+
+    //then
+    assertThat(response).isCached.hasBody("abc")
+    readers.shouldNotContain("cached-body-io")
+  }
+
   @Test
   fun shouldRespondWithCachedWhenNotModified() {
     //given
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.nstdio.http.ext
+
+import io.kotest.matchers.shouldBe
+import org.assertj.core.api.Assertions.assertThatIllegalArgumentException
+import org.junit.jupiter.api.Test
+
+internal class LatencyHistogramTest {
+  @Test
+  fun shouldCalculatePercentilesByBucketBounds() {
+    //given
+    val histogram = LatencyHistogram()
+
+    //when
+    repeat(90) { histogram.record(100) }
+    repeat(9) { histogram.record(5_000) }
+    histogram.record(1_000_000)
+
+    //then
+    histogram.count() shouldBe 100
+    histogram.totalNanos() shouldBe 90 * 100 + 9 * 5_000 + 1_000_000L
+    histogram.percentile(0.5) shouldBe 127
+    histogram.percentile(0.9) shouldBe 127
+    histogram.percentile(0.95) shouldBe 8191
+    histogram.percentile(1.0) shouldBe 1_048_575
+    histogram.meanNanos() shouldBe 10_540.0
+  }
+
+  @Test
+  fun shouldSumHistograms() {
+    //given
+    val first = LatencyHistogram()
+    val second = LatencyHistogram()
+    first.record(0)
+    second.record(3)
+    second.record(-1)
+
+    //when
+    val sum = LatencyHistogram.sum(listOf(first, second))
+
+    //then
+    sum.count() shouldBe 3
+    sum.totalNanos() shouldBe 3
+    sum.percentile(1.0) shouldBe 3
+    LatencyHistogram().percentile(0.99) shouldBe 0
+  }
+
+  @Test
+  fun shouldRejectInvalidPercentile() {
+    assertThatIllegalArgumentException().isThrownBy { LatencyHistogram().percentile(1.5) }
+  }
+}
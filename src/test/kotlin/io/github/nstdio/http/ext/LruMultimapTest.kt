@@ -29,11 +29,10 @@ import org.mockito.Mockito.verify
 import org.mockito.Mockito.verifyNoInteractions
 import org.mockito.Mockito.verifyNoMoreInteractions
 import java.util.function.Consumer
-import java.util.function.ToIntFunction
+import java.util.function.Function
 
 class LruMultimapTest {
-  private val addFn = ToIntFunction { _: List<String?>? -> -1 }
-  private val throwingFn = ToIntFunction { _: List<String?>? ->
+  private val throwingSelector = Function<String?, Any> {
     throw IllegalStateException(
       "Should not be invoked!"
     )
@@ -43,19 +42,19 @@ class LruMultimapTest {
   fun shouldReplaceAndNotify() {
     //given
     val mockEvictionListener: Consumer<String?> = mockConsumer()
-    val map = LruMultimap<String, String>(512, mockEvictionListener)
+    val map = single(512, mockEvictionListener)
 
     //when
     @Suppress("UNUSED_VARIABLE")
-    val putResult1 = map.putSingle("a", "1") { 0 }
-    val putResult2 = map.putSingle("a", "2") { 0 }
-    val getResult = map.getSingle("a") { 0 }
+    val putResult1 = map.putVariant("a", "1")
+    val putResult2 = map.putVariant("a", "2")
+    val getResult = map.getVariant("a") { SINGLE }
 
     //then
     assertThat(map)
       .hasMapSize(1)
       .hasSize(1)
-      .hasOnlyValue("a", "2", 0)
+      .hasValue("a", SINGLE, "2")
     assertThat(putResult2).containsOnly("2")
     assertThat(getResult).isEqualTo("2")
     verify(mockEvictionListener).accept("1")
@@ -65,14 +64,14 @@ class LruMultimapTest {
   @Test
   fun shouldMaintainLruForLists() {
     //given
-    val map = LruMultimap<String, String?>(512, null)
+    val map = multimap(512, null)
 
     //when + then
-    map.putSingle("a", "1", addFn)
-    val putResult = map.putSingle("a", "2", addFn)
-    map.getSingle("a") { 0 }
+    map.putVariant("a", "1")
+    val putResult = map.putVariant("a", "2")
+    map.getVariant("a") { "2" }
     assertThat(putResult).containsExactly("2", "1")
-    map.getSingle("a") { 1 }
+    map.getVariant("a") { "1" }
     assertThat(putResult).containsExactly("1", "2")
     assertThat(map).hasMapSize(1).hasSize(2)
   }
@@ -92,19 +91,19 @@ class LruMultimapTest {
   fun shouldEvictEldest() {
     //given
     val mockEvictionListener: Consumer<String?> = mockConsumer()
-    val map = LruMultimap<String, String?>(512, mockEvictionListener)
+    val map = multimap(512, mockEvictionListener)
 
     //when
-    map.putSingle("a", "1", addFn)
-    map.putSingle("a", "2", addFn)
-    map.putSingle("b", "1", addFn)
-    map.putSingle("b", "2", addFn)
+    map.putVariant("a", "1")
+    map.putVariant("a", "2")
+    map.putVariant("b", "1")
+    map.putVariant("b", "2")
     val evictionResult = map.evictEldest()
 
     //then
     assertTrue(evictionResult)
     assertThat(map).hasMapSize(2).hasSize(3)
-      .hasOnlyValue("a", "2", 0)
+      .hasValue("a", "2", "2")
     verify(mockEvictionListener).accept("1")
     verifyNoMoreInteractions(mockEvictionListener)
   }
@@ -117,9 +116,9 @@ class LruMultimapTest {
     map.addEvictionListener(mockEvictionListener)
 
     //when
-    map.putSingle("a", "1", addFn)
-    map.putSingle("b", "1", addFn)
-    map.putSingle("b", "2", addFn)
+    map.putVariant("a", "1")
+    map.putVariant("b", "1")
+    map.putVariant("b", "2")
     val evictionResult = map.evictEldest()
 
     //then
@@ -133,19 +132,19 @@ class LruMultimapTest {
   fun shouldRespectMaxSize() {
     //given
     val mockEvictionListener: Consumer<String?> = mockConsumer()
-    val map = LruMultimap<String, String?>(2, mockEvictionListener)
+    val map = multimap(2, mockEvictionListener)
 
     //when
-    map.putSingle("b", "2", addFn)
-    map.putSingle("b", "1", addFn)
-    map.putSingle("a", "1", addFn)
+    map.putVariant("b", "2")
+    map.putVariant("b", "1")
+    map.putVariant("a", "1")
 
     //then
     assertThat(map)
       .hasMapSize(2)
       .hasSize(2)
-      .hasOnlyValue("a", "1", 0)
-      .hasOnlyValue("b", "1", 0)
+      .hasValue("a", "1", "1")
+      .hasValue("b", "1", "1")
     verify(mockEvictionListener).accept("2")
     verifyNoMoreInteractions(mockEvictionListener)
   }
@@ -157,10 +156,10 @@ class LruMultimapTest {
     val map = LruMultimap<String, String?>(23, mockEl)
 
     //when
-    map.putSingle("b", "1", addFn)
-    map.putSingle("b", "2", addFn)
-    map.putSingle("b", "3", addFn)
-    map.putSingle("a", "4", addFn)
+    map.putVariant("b", "1")
+    map.putVariant("b", "2")
+    map.putVariant("b", "3")
+    map.putVariant("a", "4")
     map.clear()
 
     //then
@@ -188,17 +187,17 @@ class LruMultimapTest {
   }
 
   @Test
-  fun shouldNotGetWhenIndexIncorrect() {
-    val map = LruMultimap<String, String?>(23, null)
+  fun shouldNotGetWhenVariantIncorrect() {
+    val map = multimap(23, null)
 
     //when
-    map.putSingle("a", "2", addFn)
-    map.putSingle("a", "1", addFn)
+    map.putVariant("a", "2")
+    map.putVariant("a", "1")
 
     //then
-    assertThat(map.getSingle("b", throwingFn)).isNull()
-    assertThat(map.getSingle("a") { 5 }).isNull()
-    assertThat(map.getSingle("a") { -1 }).isNull()
+    assertThat(map.getVariant("b", throwingSelector)).isNull()
+    assertThat(map.getVariant("a") { "5" }).isNull()
+    assertThat(map.getVariant("a") { null }).isNull()
   }
 
   @Test
@@ -208,8 +207,8 @@ class LruMultimapTest {
     val map = LruMultimap<String, String?>(23, mockEl)
 
     //when
-    map.putSingle("a", "1", addFn)
-    map.putSingle("a", "2", addFn)
+    map.putVariant("a", "1")
+    map.putVariant("a", "2")
     map.evictAll("a")
 
     //then
@@ -220,6 +219,157 @@ class LruMultimapTest {
     inOrder.verifyNoMoreInteractions()
   }
 
+  @Test
+  fun shouldPeekFromReadViewWithoutReordering() {
+    //given
+    val map = multimap(2, null)
+    map.putVariant("a", "1")
+    map.enableReadView()
+    map.putVariant("b", "1")
+
+    //when
+    val peeked = map.peekVariant("a") { "1" }
+    map.putVariant("c", "1")
+
+    //then
+    peeked shouldBe "1"
+    map.peekVariant("a") { "1" }.shouldBeNull()
+    map.peekVariant("b") { "1" } shouldBe "1"
+    map.peekVariant("c") { "1" } shouldBe "1"
+  }
+
+  @Test
+  fun shouldKeepHotKeysWithTinyLfuWhenScanned() {
+    //given
+    val maxSize = 100
+    val hotKeys = (0 until 50).map { "hot-$it" }
+    val lru = multimap(maxSize, null)
+    val tinyLfu = multimap(maxSize, null, true)
+
+    //when
+    val lruHits = replayScanTrace(lru, hotKeys)
+    val tinyLfuHits = replayScanTrace(tinyLfu, hotKeys)
+
+    //then
+    assertThat(tinyLfu).hasSize(maxSize)
+    assertThat(tinyLfuHits).isGreaterThan(lruHits * 2)
+  }
+
+  @Test
+  fun shouldEvictAndClearWithTinyLfu() {
+    //given
+    val mockEl: Consumer<String?> = mockConsumer()
+    val map = LruMultimap<String, String?>(2, mockEl, true)
+
+    //when
+    map.putVariant("a", "1")
+    map.putVariant("b", "1")
+    map.putVariant("c", "1")
+
+    //then
+    assertThat(map).hasMapSize(2).hasSize(2)
+    map.clear()
+    assertThat(map).hasMapSize(0).hasSize(0)
+    verify(mockEl, Mockito.times(3)).accept("1")
+  }
+
+  @Test
+  fun shouldFindByVariantKey() {
+    //given
+    val mockEl: Consumer<String?> = mockConsumer()
+    val map = LruMultimap<String, String?>(512, mockEl, false, { it!!.substringBefore(':') }, null)
+
+    //when
+    map.putVariant("a", "x:1")
+    map.putVariant("a", "y:1")
+    val putResult = map.putVariant("a", "x:2")
+
+    //then
+    assertThat(putResult).containsExactly("y:1", "x:2")
+    map.getVariant("a") { "x" } shouldBe "x:2"
+    assertThat(putResult).containsExactly("x:2", "y:1")
+    map.getVariant("a") { "z" }.shouldBeNull()
+    map.removeVariant("a") { "y" } shouldBe "y:1"
+    assertThat(map).hasMapSize(1).hasSize(1)
+    verify(mockEl).accept("x:1")
+    verify(mockEl).accept("y:1")
+  }
+
+  @Test
+  fun shouldFindByVariantKeyOfEveryGroup() {
+    //given
+    val map = LruMultimap<String, String>(512, null, false, { it.substringBeforeLast(':') }, { it.substringBefore(':') })
+    val selector = { request: String -> { v: String -> "${v.substringBefore(':')}:$request" } }
+
+    //when
+    map.putVariant("a", "lang:en:1")
+    map.putVariant("a", "enc:gzip:1")
+    map.putVariant("a", "lang:de:1")
+
+    //then
+    map.getVariant("a", selector("gzip")) shouldBe "enc:gzip:1"
+    map.getVariant("a", selector("en")) shouldBe "lang:en:1"
+    map.getVariant("a", selector("br")).shouldBeNull()
+    map.removeVariant("a", selector("gzip")) shouldBe "enc:gzip:1"
+    map.getVariant("a", selector("de")) shouldBe "lang:de:1"
+    map.putVariant("a", "lang:en:2")
+    map.getVariant("a", selector("en")) shouldBe "lang:en:2"
+    assertThat(map).hasMapSize(1).hasSize(2)
+  }
+
+  @Test
+  fun shouldNotifyOverflowOnlyWhenEvictedForRoom() {
+    //given
+    val mockEl: Consumer<String?> = mockConsumer()
+    val map = single(2, null)
+    map.addOverflowListener(mockEl)
+
+    //when
+    map.putVariant("a", "1")
+    map.putVariant("b", "1")
+    map.putVariant("b", "2")
+    map.removeVariant("b") { SINGLE }
+    map.putVariant("c", "1")
+    map.putVariant("d", "1")
+    map.clear()
+
+    //then
+    verify(mockEl).accept("1")
+    verifyNoMoreInteractions(mockEl)
+  }
+
+  /**
+   * Accesses each of [hotKeys] between the one-off keys and caches missing ones.
+   */
+  private fun replayScanTrace(map: LruMultimap<String, String?>, hotKeys: List<String>): Int {
+    var hits = 0
+    var scan = 0
+    repeat(20) {
+      for (hot in hotKeys) {
+        if (map.getVariant(hot) { hot } != null) hits++ else map.putVariant(hot, hot)
+
+        repeat(3) {
+          val oneOff = "scan-${scan++}"
+          if (map.getVariant(oneOff) { oneOff } == null) map.putVariant(oneOff, oneOff)
+        }
+      }
+    }
+
+    return hits
+  }
+
+  /**
+   * Creates the map keeping a value per variant, the variant key of the value is the value itself.
+   */
+  private fun multimap(maxSize: Int, evictListener: Consumer<String?>?, tinyLfu: Boolean = false) =
+    LruMultimap<String, String?>(maxSize, evictListener, tinyLfu, { it }, null)
+
+  /**
+   * Creates the map keeping a single value per key, since all values are of the same variant.
+   */
+  private fun single(maxSize: Int, evictListener: Consumer<String?>?) =
+    LruMultimap<String, String?>(maxSize, evictListener, false, { SINGLE }, null)
+
   @Suppress("UNCHECKED_CAST")
   private fun mockConsumer() = mock(Consumer::class.java) as Consumer<String?>
 
@@ -230,8 +380,8 @@ class LruMultimapTest {
     val map = LruMultimap<String, String?>(23, mockEl)
 
     //when
-    map.putSingle("a", "1", addFn)
-    map.putSingle("a", "2", addFn)
+    map.putVariant("a", "1")
+    map.putVariant("a", "2")
     map.evictAll("b")
 
     //then
@@ -242,21 +392,58 @@ class LruMultimapTest {
   @Test
   fun `Should remove`() {
     //given
-    val map = LruMultimap<String, String>(8, null)
-    val nonExistingKeyFn = mock(ToIntFunction::class.java) as ToIntFunction<List<String>>
+    val map = multimap(8, null)
+    @Suppress("UNCHECKED_CAST")
+    val nonExistingKeySelector = mock(Function::class.java) as Function<String?, Any>
 
     //when
-    map.putSingle("a", "1", addFn)
-    map.putSingle("a", "2", addFn)
-    map.putSingle("b", "2", addFn)
+    map.putVariant("a", "1")
+    map.putVariant("a", "2")
+    map.putVariant("b", "2")
+
+
+    //then
+    map.removeVariant("a") { "3" }.shouldBeNull()
+    map.removeVariant("a") { null }.shouldBeNull()
+    map.removeVariant("a") { "2" }.shouldBe("2")
+    map.removeVariant("b") { "2" }.shouldBe("2")
+    map.removeVariant("c", nonExistingKeySelector).shouldBeNull()
+    verifyNoInteractions(nonExistingKeySelector)
+  }
+
+  @Test
+  fun shouldCheckVariantWithoutReorderingVariants() {
+    //given
+    val map = multimap(8, null)
+    map.putVariant("a", "1")
+    val putResult = map.putVariant("a", "2")
+
+    //when + then
+    map.containsVariant("a") { "1" } shouldBe true
+    map.containsVariant("a") { "3" } shouldBe false
+    map.containsVariant("b") { "1" } shouldBe false
+    assertThat(putResult).containsExactly("2", "1")
+  }
+
+  @Test
+  fun shouldTouchKeyWithoutReorderingVariants() {
+    //given
+    val map = multimap(3, null)
+    map.putVariant("a", "1")
+    val putResult = map.putVariant("a", "2")
+    map.putVariant("b", "1")
 
+    //when
+    map.touch("a")
+    map.putVariant("c", "1")
 
     //then
-    map.remove("a") { 2 }.shouldBeNull()
-    map.remove("a") { -1 }.shouldBeNull()
-    map.remove("a") { 0 }.shouldBe("2")
-    map.remove("b") { 0 }.shouldBe("2")
-    map.remove("c", nonExistingKeyFn).shouldBeNull()
-    verifyNoInteractions(nonExistingKeyFn)
+    assertThat(putResult).containsExactly("2", "1")
+    map.getVariant("b") { "1" }.shouldBeNull()
+    assertThat(map).hasMapSize(2).hasSize(3)
+  }
+
+  private companion object {
+    const val SINGLE = "single"
   }
 }
\ No newline at end of file
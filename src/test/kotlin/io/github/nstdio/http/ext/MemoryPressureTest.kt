@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.nstdio.http.ext
+
+import io.github.nstdio.http.ext.InMemoryCache.InMemoryCacheEntry
+import io.github.nstdio.http.ext.InMemoryCacheTest.Companion.uris
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatIllegalArgumentException
+import org.assertj.core.api.Assertions.assertThatIllegalStateException
+import org.junit.jupiter.api.Test
+import java.net.http.HttpRequest
+import java.time.Clock
+
+internal class MemoryPressureTest {
+  private var occupancy = 0.0
+  private val pressure = MemoryPressure(1024, 0.75) { occupancy }
+
+  @Test
+  fun shouldShrinkAndTrimUnderPressure() {
+    //given
+    val cache = InMemoryCache(512, 1024, Cache.EvictionPolicy.LRU, CacheKeyStrategy.exact(), Weigher.bodySize(),
+      null, -1, pressure)
+    val guarded = SynchronizedCache(cache)
+    pressure.register(guarded)
+    val requests = uris(8).map { HttpRequest.newBuilder(it).build() }
+    requests.forEach { cache.put(it, entry(it, 128)) }
+
+    //when
+    occupancy = 0.8
+    pressure.onCollection()
+
+    //then
+    assertThat(pressure.ratio()).isEqualTo(0.5)
+    assertThat(cache.bytes()).isEqualTo(512)
+    assertThat(requests.take(4)).allMatch { cache[it] == null }
+    assertThat(requests.drop(4)).allMatch { cache[it] != null }
+
+    val capacity = guarded.stats().capacity().orElseThrow()
+    assertThat(capacity.ceiling()).isEqualTo(1024)
+    assertThat(capacity.current()).isEqualTo(512)
+    assertThat(capacity.shrinks()).isEqualTo(1)
+    assertThat(capacity.grows()).isZero
+  }
+
+  @Test
+  fun shouldNotShrinkBelowMinimum() {
+    //given
+    occupancy = 0.9
+
+    //when
+    repeat(10) { pressure.onCollection() }
+
+    //then
+    assertThat(pressure.ratio()).isEqualTo(MemoryPressure.MIN_RATIO)
+    assertThat(pressure.current()).isEqualTo(64)
+    assertThat(pressure.shrinks()).isEqualTo(4)
+  }
+
+  @Test
+  fun shouldGrowBackBelowLowWatermark() {
+    //given
+    occupancy = 0.9
+    repeat(2) { pressure.onCollection() }
+
+    //when
+    occupancy = 0.7
+    pressure.onCollection()
+    val between = pressure.ratio()
+    occupancy = 0.5
+    repeat(10) { pressure.onCollection() }
+
+    //then
+    assertThat(between).isEqualTo(0.25)
+    assertThat(pressure.ratio()).isEqualTo(1.0)
+    assertThat(pressure.current()).isEqualTo(1024)
+    assertThat(pressure.grows()).isEqualTo(7)
+  }
+
+  @Test
+  fun shouldRejectEntriesAboveCurrentSize() {
+    //given
+    val cache = InMemoryCache(512, 1024, Cache.EvictionPolicy.LRU, CacheKeyStrategy.exact(), Weigher.bodySize(),
+      null, -1, pressure)
+    occupancy = 0.8
+    pressure.onCollection()
+    val request = HttpRequest.newBuilder(uris(1)[0]).build()
+
+    //when
+    cache.put(request, entry(request, 600))
+
+    //then
+    assertThat(cache[request]).isNull()
+    assertThat(cache.bytes()).isZero
+  }
+
+  @Test
+  fun shouldRequireSizeForAdaptiveSize() {
+    assertThatIllegalArgumentException().isThrownBy { Cache.newInMemoryCacheBuilder().adaptiveSize(1.5) }
+    assertThatIllegalStateException().isThrownBy { Cache.newInMemoryCacheBuilder().adaptiveSize(0.8).build() }
+  }
+
+  @Test
+  fun shouldExposeCapacityOfSegmentedCache() {
+    //given
+    val cache = Cache.newInMemoryCacheBuilder()
+      .size(4096)
+      .concurrencyLevel(4)
+      .adaptiveSize(0.8)
+      .build()
+
+    //when
+    val capacity = cache.stats().capacity()
+
+    //then
+    assertThat(capacity).hasValueSatisfying {
+      assertThat(it.ceiling()).isEqualTo(4096)
+      assertThat(it.current()).isLessThanOrEqualTo(4096)
+    }
+  }
+
+  private fun entry(request: HttpRequest, length: Int) =
+    InMemoryCacheEntry(ByteArray(length), CacheEntryMetadata(0, 0, Helpers.responseInfo(mapOf()), request, CLOCK))
+
+  companion object {
+    private val CLOCK = Clock.systemDefaultZone()
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.nstdio.http.ext
+
+import io.github.nstdio.http.ext.InMemoryCacheTest.Companion.cacheEntry
+import io.kotest.matchers.longs.shouldBeGreaterThanOrEqual
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.nulls.shouldNotBeNull
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.ValueSource
+import org.mockito.Mockito.mock
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse.BodySubscribers
+import java.nio.ByteBuffer
+import java.util.concurrent.Flow
+import kotlin.random.Random
+
+internal class OffHeapCacheTest {
+  @ParameterizedTest
+  @ValueSource(ints = [0, 1, 255, 256, 4096, 65536, 65537, 300_000])
+  fun `Should store body off-heap`(length: Int) {
+    //given
+    val cache = Cache.newInMemoryCacheBuilder()
+      .offHeap(true)
+      .build()
+    val request = HttpRequest.newBuilder("https://example.com".toUri()).build()
+    val body = Random.nextBytes(length)
+
+    //when
+    Helpers.write(cache, cacheEntry(mapOf(), request).metadata(), body)
+    val entry = cache.get(request)
+
+    //then
+    entry.shouldNotBeNull()
+    Helpers.read(entry) shouldBe body
+    val stats = cache.stats().offHeap().get()
+    stats.stored() shouldBe length.toLong()
+    stats.allocated() shouldBeGreaterThanOrEqual length.toLong()
+    stats.reserved() shouldBeGreaterThanOrEqual stats.allocated()
+  }
+
+  @Test
+  fun `Should keep on-heap entries put directly`() {
+    //given
+    val cache = Cache.newInMemoryCacheBuilder().offHeap(true).build()
+    val request = HttpRequest.newBuilder("https://example.com".toUri()).build()
+    val entry = cacheEntry(mapOf(), request)
+
+    //when
+    cache.put(request, entry)
+
+    //then
+    cache.get(request).shouldBeSameInstanceAs(entry)
+  }
+
+  @Test
+  fun `Should not expose off-heap stats for on-heap cache`() {
+    Cache.newInMemoryCacheBuilder().build().stats().offHeap().isPresent shouldBe false
+  }
+
+  @Test
+  fun `Should return blocks to arena once body is read`() {
+    //given
+    val arena = SlabArena(1L shl 22)
+    val bytes = Random.nextBytes(300_000)
+    val body = offHeapBody(arena, bytes)
+    val subscriber = BodySubscribers.ofInputStream()
+
+    //when
+    body.subscribeTo(subscriber)
+    body.release()
+    val actual = subscriber.body.toCompletableFuture().join().use { it.readAllBytes() }
+
+    //then
+    actual shouldBe bytes
+    arena.allocated() shouldBe 0L
+  }
+
+  @Test
+  fun `Should return blocks to arena once subscription is cancelled`() {
+    //given
+    val arena = SlabArena(1L shl 22)
+    val body = offHeapBody(arena, Random.nextBytes(300_000))
+    val subscriber = object : Flow.Subscriber<List<ByteBuffer>> {
+      override fun onSubscribe(subscription: Flow.Subscription) {
+        subscription.request(1)
+        subscription.cancel()
+      }
+
+      override fun onNext(item: List<ByteBuffer>) {}
+      override fun onError(throwable: Throwable) {}
+      override fun onComplete() {}
+    }
+
+    //when
+    body.subscribeTo(subscriber)
+    body.release()
+
+    //then
+    arena.allocated() shouldBe 0L
+  }
+
+  @Test
+  fun `Should keep published buffers valid once blocks are reused`() {
+    //given
+    val arena = SlabArena(1L shl 22)
+    val bytes = Random.nextBytes(300_000)
+    val body = offHeapBody(arena, bytes)
+    val items = mutableListOf<ByteBuffer>()
+    val subscriber = object : Flow.Subscriber<List<ByteBuffer>> {
+      override fun onSubscribe(subscription: Flow.Subscription) = subscription.request(Long.MAX_VALUE)
+      override fun onNext(item: List<ByteBuffer>) {
+        items.addAll(item)
+      }
+
+      override fun onError(throwable: Throwable) {}
+      override fun onComplete() {}
+    }
+
+    //when
+    body.subscribeTo(subscriber)
+    body.release()
+    offHeapBody(arena, ByteArray(bytes.size))
+    val actual = ByteArray(bytes.size)
+    var offset = 0
+    items.forEach {
+      val n = it.remaining()
+      it.get(actual, offset, n)
+      offset += n
+    }
+
+    //then
+    arena.allocated() shouldBeGreaterThanOrEqual bytes.size.toLong()
+    actual shouldBe bytes
+  }
+
+  @Test
+  fun `Should release read references once body is read`() {
+    //given
+    val cache = Cache.newInMemoryCacheBuilder().offHeap(true).build()
+    val request = HttpRequest.newBuilder("https://example.com".toUri()).build()
+    val body = Random.nextBytes(4096)
+    Helpers.write(cache, cacheEntry(mapOf(), request).metadata(), body)
+
+    //when
+    repeat(3) { Helpers.read(cache.get(request)!!) shouldBe body }
+    cache.evictAll()
+
+    //then
+    cache.stats().offHeap().get().allocated() shouldBe 0L
+  }
+
+  @Test
+  fun `Should only signal error when body is released`() {
+    //given
+    val arena = SlabArena(1L shl 22)
+    val body = offHeapBody(arena, Random.nextBytes(1024))
+    val signals = mutableListOf<String>()
+    val subscriber = object : Flow.Subscriber<List<ByteBuffer>> {
+      override fun onSubscribe(subscription: Flow.Subscription) = subscription.request(1)
+      override fun onNext(item: List<ByteBuffer>) {
+        signals.add("onNext")
+      }
+
+      override fun onError(throwable: Throwable) {
+        signals.add("onError")
+      }
+
+      override fun onComplete() {
+        signals.add("onComplete")
+      }
+    }
+
+    //when
+    body.release()
+    body.subscribeTo(subscriber)
+
+    //then
+    signals shouldBe listOf("onError")
+  }
+
+  @Test
+  fun `Should reuse freed blocks`() {
+    //given
+    val arena = SlabArena(1L shl 20)
+
+    //when
+    val b1 = arena.allocate(SlabArena.MIN_BLOCK_SHIFT)
+    arena.free(b1)
+    val b2 = arena.allocate(SlabArena.MIN_BLOCK_SHIFT)
+
+    //then
+    b2.shouldNotBeNull()
+    b2.buffer().capacity() shouldBe SlabArena.MIN_BLOCK_SIZE
+    arena.allocated() shouldBe SlabArena.MIN_BLOCK_SIZE.toLong()
+    arena.reserved() shouldBe SlabArena.MAX_BLOCK_SIZE.toLong()
+  }
+
+  @Test
+  fun `Should not allocate over budget`() {
+    //given
+    val arena = SlabArena(SlabArena.MAX_BLOCK_SIZE.toLong())
+    val blocks = generateSequence { arena.allocate(SlabArena.MAX_BLOCK_SHIFT) }.toList()
+
+    //when
+    arena.free(blocks.first())
+
+    //then
+    arena.reserved() shouldBe arena.budget()
+    arena.allocate(SlabArena.MAX_BLOCK_SHIFT).shouldNotBeNull()
+    arena.allocate(SlabArena.MAX_BLOCK_SHIFT).shouldBeNull()
+  }
+
+  private fun offHeapBody(arena: SlabArena, bytes: ByteArray): OffHeapBody {
+    val subscriber = OffHeapBody.subscriber(arena)
+    subscriber.onSubscribe(mock(Flow.Subscription::class.java))
+    subscriber.onNext(listOf(ByteBuffer.wrap(bytes)))
+    subscriber.onComplete()
+
+    val builder = subscriber.body.toCompletableFuture().join()
+    builder.flush()
+    return builder.build()
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.nstdio.http.ext
+
+import io.github.nstdio.http.ext.InMemoryCacheTest.Companion.cacheEntry
+import io.kotest.matchers.maps.shouldBeEmpty
+import io.kotest.matchers.maps.shouldContainKeys
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.nulls.shouldNotBeNull
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeInstanceOf
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import org.assertj.core.api.Assertions.assertThatIllegalStateException
+import org.junit.jupiter.api.Test
+import java.net.http.HttpRequest
+
+internal class PartitionedCacheTest {
+  @Test
+  fun `Should keep partition entries when other partition overflows`() {
+    //given
+    val cache = Cache.newInMemoryCacheBuilder()
+      .maxItems(4)
+      .partitionBy { it.uri().host }
+      .partition("api.example.com", 2, -1)
+      .build()
+    val api = requests("api.example.com", 2)
+    val bulk = requests("bulk.example.com", 100)
+    val apiEntries = api.map { cacheEntry(mapOf(), it) }
+
+    //when
+    api.zip(apiEntries).forEach { (r, e) -> cache.put(r, e) }
+    bulk.forEach { cache.put(it, cacheEntry(mapOf(), it)) }
+
+    //then
+    api.zip(apiEntries).forEach { (r, e) -> cache[r].shouldBeSameInstanceAs(e) }
+    bulk.dropLast(4).forEach { cache[it].shouldBeNull() }
+    bulk.takeLast(4).forEach { cache[it].shouldNotBeNull() }
+  }
+
+  @Test
+  fun `Should track stats per partition`() {
+    //given
+    val cache = Cache.newInMemoryCacheBuilder()
+      .partitionBy { it.uri().host }
+      .partition("a.example.com", 8, -1)
+      .partition("b.example.com", 8, -1)
+      .build()
+    val (a1, a2) = requests("a.example.com", 2)
+    val b1 = requests("b.example.com", 1)[0]
+    val other = requests("c.example.com", 1)[0]
+    cache.put(a1, cacheEntry(mapOf(), a1))
+
+    //when
+    cache[a1]
+    cache[a2]
+    cache[b1]
+    cache[other]
+
+    //then
+    val partitions = cache.stats().partitions()
+    partitions.shouldContainKeys("a.example.com", "b.example.com")
+    partitions.size shouldBe 2
+    partitions.getValue("a.example.com").hit() shouldBe 1
+    partitions.getValue("a.example.com").miss() shouldBe 1
+    partitions.getValue("b.example.com").hit() shouldBe 0
+    partitions.getValue("b.example.com").miss() shouldBe 1
+  }
+
+  @Test
+  fun `Should route unknown partitions to shared pool`() {
+    //given
+    val cache = Cache.newInMemoryCacheBuilder()
+      .partitionBy { it.headers().firstValue("X-Tenant").orElse(null) }
+      .partition("gold", 8, -1)
+      .build()
+      .shouldBeInstanceOf<PartitionedCache>()
+    val gold = HttpRequest.newBuilder("https://example.com/1".toUri()).header("X-Tenant", "gold").build()
+    val silver = HttpRequest.newBuilder("https://example.com/2".toUri()).header("X-Tenant", "silver").build()
+    val none = HttpRequest.newBuilder("https://example.com/3".toUri()).build()
+
+    //when
+    listOf(gold, silver, none).forEach { cache.put(it, cacheEntry(mapOf(), it)) }
+
+    //then
+    cache.partition("gold")[gold].shouldNotBeNull()
+    cache.partition("gold")[silver].shouldBeNull()
+    cache.partition("silver")[silver].shouldNotBeNull()
+    cache.partition("silver")[none].shouldNotBeNull()
+  }
+
+  @Test
+  fun `Should not partition by default`() {
+    //when
+    val cache = Cache.newInMemoryCacheBuilder().build()
+
+    //then
+    cache.shouldBeInstanceOf<SynchronizedCache>()
+    cache.stats().partitions().shouldBeEmpty()
+  }
+
+  @Test
+  fun `Should throw when partition limits set without partitioner`() {
+    assertThatIllegalStateException()
+      .isThrownBy { Cache.newInMemoryCacheBuilder().partition("a", 1, -1).build() }
+  }
+
+  private fun requests(host: String, count: Int): List<HttpRequest> =
+    (1..count).map { HttpRequest.newBuilder("https://$host/$it".toUri()).build() }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.nstdio.http.ext
+
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.collections.shouldContainExactlyInAnyOrder
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.shouldBe
+import org.junit.jupiter.api.Test
+import kotlin.random.Random
+
+internal class RadixTreeTest {
+  @Test
+  fun `Should find values by prefix`() {
+    //given
+    val tree = RadixTree<String>()
+    listOf("https://a.com/v2/x", "https://a.com/v2/y", "https://a.com/v20", "https://a.com/v1", "https://b.com/")
+      .forEach { tree.put(it, it) }
+
+    //when + then
+    tree.withPrefix("https://a.com/v2/").shouldContainExactlyInAnyOrder("https://a.com/v2/x", "https://a.com/v2/y")
+    tree.withPrefix("https://a.com/v2")
+      .shouldContainExactlyInAnyOrder("https://a.com/v2/x", "https://a.com/v2/y", "https://a.com/v20")
+    tree.withPrefix("https://a.com/v3").shouldBeEmpty()
+    tree.withPrefix("https://b.com/").shouldContainExactlyInAnyOrder("https://b.com/")
+    tree.withPrefix("").size shouldBe 5
+  }
+
+  @Test
+  fun `Should merge nodes on remove`() {
+    //given
+    val tree = RadixTree<String>()
+    listOf("abc", "abd", "ab").forEach { tree.put(it, it) }
+
+    //when
+    tree.remove("abc") shouldBe "abc"
+    tree.remove("ab") shouldBe "ab"
+    tree.remove("ab").shouldBeNull()
+    tree.remove("a").shouldBeNull()
+
+    //then
+    tree.size() shouldBe 1
+    tree.withPrefix("a").shouldContainExactlyInAnyOrder("abd")
+    tree.withPrefix("abd").shouldContainExactlyInAnyOrder("abd")
+    tree.withPrefix("abc").shouldBeEmpty()
+  }
+
+  @Test
+  fun `Should behave like sorted map`() {
+    //given
+    val random = Random(42)
+    val tree = RadixTree<String>()
+    val map = sortedMapOf<String, String>()
+    fun key() = (0 until random.nextInt(6)).map { "abc"[random.nextInt(3)] }.joinToString("")
+
+    repeat(10_000) {
+      val key = key()
+      when (random.nextInt(10)) {
+        in 0..4 -> {
+          tree.put(key, key)
+          map[key] = key
+        }
+
+        in 5..7 -> tree.remove(key) shouldBe map.remove(key)
+        else -> tree.withPrefix(key).shouldContainExactlyInAnyOrder(map.keys.filter { it.startsWith(key) })
+      }
+
+      tree.size() shouldBe map.size
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.nstdio.http.ext
+
+import io.github.nstdio.http.ext.Helpers.responseInfo
+import io.kotest.matchers.booleans.shouldBeFalse
+import io.kotest.matchers.booleans.shouldBeTrue
+import org.junit.jupiter.api.Test
+import java.net.URI
+import java.net.http.HttpHeaders
+import java.net.http.HttpRequest
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneOffset
+
+internal class RefreshAheadTest {
+  private val now = Instant.parse("2022-01-01T00:00:00Z")
+  private val clock = Clock.fixed(now, ZoneOffset.UTC)
+
+  @Test
+  fun shouldRefreshHotEntryPastLifetimeFraction() {
+    //given
+    val refreshAhead = RefreshAhead(0.8, 2, 4, 10)
+    val old = metadata(ageSeconds = 9)
+    val young = metadata(ageSeconds = 1)
+
+    //when + then
+    refreshAhead.onHit(old).shouldBeFalse()
+    refreshAhead.onHit(old).shouldBeTrue()
+    refreshAhead.onHit(young).shouldBeFalse()
+    refreshAhead.onHit(young).shouldBeFalse()
+  }
+
+  @Test
+  fun shouldCountHitsSinceRevalidation() {
+    //given
+    val refreshAhead = RefreshAhead(0.5, 2, 4, 10)
+    val metadata = metadata(ageSeconds = 9)
+    refreshAhead.onHit(metadata)
+    refreshAhead.onHit(metadata)
+
+    //when
+    metadata.update(HttpHeaders.of(mapOf()) { _, _ -> true }, 0, 0)
+
+    //then
+    refreshAhead.onHit(metadata).shouldBeFalse()
+  }
+
+  @Test
+  fun shouldLimitConcurrentRefreshes() {
+    //given
+    val refreshAhead = RefreshAhead(0.5, 1, 2, 1000)
+
+    //when + then
+    refreshAhead.tryAcquire("a.com", 0).shouldBeTrue()
+    refreshAhead.tryAcquire("b.com", 0).shouldBeTrue()
+    refreshAhead.tryAcquire("c.com", 0).shouldBeFalse()
+
+    refreshAhead.release()
+    refreshAhead.tryAcquire("c.com", 0).shouldBeTrue()
+  }
+
+  @Test
+  fun shouldLimitRefreshesPerHost() {
+    //given
+    val refreshAhead = RefreshAhead(0.5, 1, 10, 2)
+
+    //when + then
+    refreshAhead.tryAcquire("a.com", 0).shouldBeTrue()
+    refreshAhead.tryAcquire("a.com", 100).shouldBeFalse()
+    refreshAhead.tryAcquire("b.com", 100).shouldBeTrue()
+    refreshAhead.tryAcquire("a.com", 500).shouldBeTrue()
+  }
+
+  private fun metadata(ageSeconds: Long): CacheEntryMetadata {
+    val responseTime = now.minusSeconds(ageSeconds)
+    val info = responseInfo(
+      mapOf(
+        "Cache-Control" to "max-age=10",
+        "Date" to Headers.toRFC1123(responseTime)
+      )
+    )
+    val request = HttpRequest.newBuilder(URI.create("https://example.com")).build()
+
+    return CacheEntryMetadata(responseTime.toEpochMilli(), responseTime.toEpochMilli(), info, request, clock)
+  }
+}
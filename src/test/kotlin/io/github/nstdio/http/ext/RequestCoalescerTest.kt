@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.nstdio.http.ext
+
+import io.kotest.matchers.booleans.shouldBeFalse
+import io.kotest.matchers.booleans.shouldBeTrue
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import org.awaitility.kotlin.await
+import org.junit.jupiter.api.Test
+import java.util.concurrent.TimeUnit.SECONDS
+
+internal class RequestCoalescerTest {
+  @Test
+  fun shouldLeadFirstAndFollowOthers() {
+    //given
+    val coalescer = RequestCoalescer(10_000)
+
+    //when
+    val leader = coalescer.join("a")
+    val follower = coalescer.join("a")
+    val other = coalescer.join("b")
+
+    //then
+    leader.isLeader.shouldBeTrue()
+    follower.isLeader.shouldBeFalse()
+    other.isLeader.shouldBeTrue()
+    follower.landing().shouldBeSameInstanceAs(leader.landing())
+    coalescer.size() shouldBe 2
+  }
+
+  @Test
+  fun shouldTrackFollowers() {
+    //given
+    val coalescer = RequestCoalescer(10_000)
+    val leader = coalescer.join("a")
+    val alone = coalescer.join("b")
+
+    //when
+    coalescer.join("a")
+
+    //then
+    leader.isFollowed.shouldBeTrue()
+    alone.isFollowed.shouldBeFalse()
+  }
+
+  @Test
+  fun shouldStartNewFlightAfterLanding() {
+    //given
+    val coalescer = RequestCoalescer(10_000)
+    val leader = coalescer.join("a")
+
+    //when
+    leader.land()
+    val next = coalescer.join("a")
+
+    //then
+    leader.landing().isDone.shouldBeTrue()
+    next.isLeader.shouldBeTrue()
+    coalescer.size() shouldBe 1
+  }
+
+  @Test
+  fun shouldLandOnTimeout() {
+    //given
+    val coalescer = RequestCoalescer(50)
+
+    //when
+    val leader = coalescer.join("a")
+
+    //then
+    await.atMost(2, SECONDS).until { coalescer.size() == 0 }
+    leader.landing().isDone.shouldBeTrue()
+    leader.landing().isCompletedExceptionally.shouldBeFalse()
+  }
+}
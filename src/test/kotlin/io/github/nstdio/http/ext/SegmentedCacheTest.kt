@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.nstdio.http.ext
+
+import io.github.nstdio.http.ext.InMemoryCacheTest.Companion.cacheEntry
+import io.github.nstdio.http.ext.InMemoryCacheTest.Companion.uris
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.nulls.shouldNotBeNull
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeInstanceOf
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import org.assertj.core.api.Assertions.assertThatIllegalArgumentException
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.CsvSource
+import java.net.http.HttpRequest
+
+internal class SegmentedCacheTest {
+  @ParameterizedTest
+  @CsvSource("2,2", "3,4", "16,16", "17,32")
+  fun `Should round concurrency level to power of two`(concurrencyLevel: Int, expected: Int) {
+    //when
+    val cache = Cache.newInMemoryCacheBuilder()
+      .concurrencyLevel(concurrencyLevel)
+      .build()
+
+    //then
+    cache.shouldBeInstanceOf<SegmentedCache>().segmentsCount() shouldBe expected
+  }
+
+  @Test
+  fun `Should not segment by default`() {
+    //when
+    val cache = Cache.newInMemoryCacheBuilder().build()
+
+    //then
+    cache.shouldBeInstanceOf<SynchronizedCache>()
+  }
+
+  @Test
+  fun `Should throw when concurrency level is not positive`() {
+    assertThatIllegalArgumentException()
+      .isThrownBy { Cache.newInMemoryCacheBuilder().concurrencyLevel(0) }
+  }
+
+  @Test
+  fun `Should split limits between segments`() {
+    //given
+    val cache = Cache.newInMemoryCacheBuilder()
+      .maxItems(64)
+      .size(1024)
+      .weigher(Weigher.bodySize())
+      .concurrencyLevel(4)
+      .build() as SegmentedCache
+    val segment = (cache.segment(0) as SynchronizedCache).delegate() as InMemoryCache
+    val fits = HttpRequest.newBuilder("https://example.com/fits".toUri()).build()
+    val exceeds = HttpRequest.newBuilder("https://example.com/exceeds".toUri()).build()
+
+    //when
+    segment.put(fits, InMemoryCache.InMemoryCacheEntry(ByteArray(256), cacheEntry(mapOf(), fits).metadata()))
+    segment.put(exceeds, InMemoryCache.InMemoryCacheEntry(ByteArray(257), cacheEntry(mapOf(), exceeds).metadata()))
+
+    //then
+    segment.get(fits).shouldNotBeNull()
+    segment.get(exceeds).shouldBeNull()
+  }
+
+  @Test
+  fun `Should route requests to the same segment`() {
+    //given
+    val cache = Cache.newInMemoryCacheBuilder()
+      .concurrencyLevel(8)
+      .build() as SegmentedCache
+    val requests = uris(64).map { HttpRequest.newBuilder(it).build() }
+    val entries = requests.map { cacheEntry(mapOf(), it) }
+
+    //when
+    requests.zip(entries).forEach { (r, e) -> cache.put(r, e) }
+
+    //then
+    requests.zip(entries).forEach { (r, e) ->
+      cache.get(r).shouldBeSameInstanceAs(e)
+      val segment = cache.segment(cache.indexFor(r.uri()))
+      segment.get(r).shouldBeSameInstanceAs(e)
+    }
+
+    cache.evictAll()
+    requests.forEach { cache.get(it).shouldBeNull() }
+  }
+}
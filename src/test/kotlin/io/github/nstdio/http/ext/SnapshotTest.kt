@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.nstdio.http.ext
+
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.nulls.shouldNotBeNull
+import io.kotest.matchers.shouldBe
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.ValueSource
+import java.net.http.HttpRequest
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Clock
+
+internal class SnapshotTest {
+  @TempDir
+  private lateinit var dir: Path
+
+  @Test
+  fun `Should restore entries written on close`() {
+    //given
+    val file = dir.resolve("cache.snapshot")
+    val now = System.currentTimeMillis()
+    val (fresh, expired, validated) = requests(3)
+    val body = "abc".repeat(100).toByteArray()
+    val cache = builder(file).compressionThreshold(16).build()
+    write(cache, fresh, now, mapOf("Cache-Control" to "max-age=600"), body)
+    write(cache, expired, now - 100_000, mapOf("Cache-Control" to "max-age=1, must-revalidate"), body)
+    write(cache, validated, now - 100_000, mapOf("Cache-Control" to "max-age=1", "ETag" to "\"v1\""), body)
+
+    //when
+    cache.close()
+    val restored = builder(file).build()
+
+    //then
+    Helpers.read(restored[fresh]!!) shouldBe body
+    Helpers.read(restored[validated]!!) shouldBe body
+    restored[validated]!!.metadata().response().headers().firstValue("ETag").get() shouldBe "\"v1\""
+    restored[expired].shouldBeNull()
+  }
+
+  @Test
+  fun `Should keep recency order`() {
+    //given
+    val file = dir.resolve("cache.snapshot")
+    val (r1, r2, r3) = requests(3)
+    val cache = builder(file).maxItems(2).build()
+    listOf(r1, r2).forEach { write(cache, it, System.currentTimeMillis(), mapOf("ETag" to "\"v1\""), ByteArray(8)) }
+    cache[r1]
+
+    //when
+    cache.snapshot()
+    val restored = builder(file).maxItems(2).build()
+    write(restored, r3, System.currentTimeMillis(), mapOf("ETag" to "\"v1\""), ByteArray(8))
+
+    //then
+    restored[r1].shouldNotBeNull()
+    restored[r2].shouldBeNull()
+    restored[r3].shouldNotBeNull()
+  }
+
+  @Test
+  fun `Should load truncated snapshot partially`() {
+    //given
+    val file = dir.resolve("cache.snapshot")
+    val (r1, r2) = requests(2)
+    val cache = builder(file).build()
+    listOf(r1, r2).forEach { write(cache, it, System.currentTimeMillis(), mapOf("ETag" to "\"v1\""), ByteArray(64)) }
+    cache.snapshot()
+    val bytes = Files.readAllBytes(file)
+    Files.write(file, bytes.copyOf(bytes.size - 32))
+
+    //when
+    val restored = builder(file).build()
+
+    //then
+    restored[r1].shouldNotBeNull()
+    restored[r2].shouldBeNull()
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = [-2, Int.MAX_VALUE])
+  fun `Should load snapshot partially when metadata length is corrupted`(length: Int) {
+    //given
+    val file = dir.resolve("cache.snapshot")
+    val (r1, r2) = requests(2)
+    writeSnapshot(file, r1, r2)
+    val bytes = Files.readAllBytes(file)
+    val buf = ByteBuffer.wrap(bytes)
+    buf.putInt(secondEntryOffset(buf), length)
+    Files.write(file, bytes)
+
+    //when
+    val restored = builder(file).build()
+
+    //then
+    restored[r1].shouldNotBeNull()
+    restored[r2].shouldBeNull()
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = [-2, Int.MAX_VALUE])
+  fun `Should load snapshot partially when body length is corrupted`(length: Int) {
+    //given
+    val file = dir.resolve("cache.snapshot")
+    val (r1, r2) = requests(2)
+    writeSnapshot(file, r1, r2)
+    val bytes = Files.readAllBytes(file)
+    val buf = ByteBuffer.wrap(bytes)
+    val offset = secondEntryOffset(buf)
+    buf.putInt(offset + 4 + buf.getInt(offset), length)
+    Files.write(file, bytes)
+
+    //when
+    val restored = builder(file).build()
+
+    //then
+    restored[r1].shouldNotBeNull()
+    restored[r2].shouldBeNull()
+  }
+
+  @Test
+  fun `Should ignore corrupted snapshot`() {
+    //given
+    val file = dir.resolve("cache.snapshot")
+    Files.write(file, "not a snapshot".toByteArray())
+
+    //when
+    val restored = builder(file).build()
+
+    //then
+    restored[requests(1)[0]].shouldBeNull()
+  }
+
+  private fun builder(file: Path) = Cache.newInMemoryCacheBuilder().snapshot(file)
+
+  private fun writeSnapshot(file: Path, vararg requests: HttpRequest) {
+    val cache = builder(file).build()
+    requests.forEach { write(cache, it, System.currentTimeMillis(), mapOf("ETag" to "\"v1\""), ByteArray(64)) }
+    cache.snapshot()
+  }
+
+  /**
+   * Skips the magic number, the version and the first entry.
+   */
+  private fun secondEntryOffset(buf: ByteBuffer): Int {
+    val metadataLength = buf.getInt(8)
+    return 8 + 4 + metadataLength + 4 + buf.getInt(8 + 4 + metadataLength)
+  }
+
+  private fun write(cache: Cache, r: HttpRequest, responseTime: Long, headers: Map<String, String>, body: ByteArray) {
+    val metadata = CacheEntryMetadata(responseTime, responseTime, Helpers.responseInfo(headers), r, Clock.systemUTC())
+    Helpers.write(cache, metadata, body)
+  }
+
+  private fun requests(n: Int) = InMemoryCacheTest.uris(n).map { HttpRequest.newBuilder(it).build() }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2022-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.nstdio.http.ext
+
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.collections.shouldContainExactly
+import io.kotest.matchers.shouldBe
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.ValueSource
+
+internal class TimerWheelTest {
+  private val now = 1_600_000_000_000L
+  private val expired = mutableListOf<String>()
+
+  @ParameterizedTest
+  @ValueSource(longs = [1, 1_000, 60_000, 3_600_000, 86_400_000, 30L * 86_400_000, 365L * 86_400_000])
+  fun `Should expire value after its time`(ttl: Long) {
+    //given
+    val wheel = TimerWheel<String, LongArray>({ it[0] }, now)
+    wheel.schedule("a", longArrayOf(now + ttl), now + ttl)
+
+    //when
+    wheel.advance(now + ttl - 1) { k, _ -> expired.add(k) }
+
+    //then
+    expired.shouldBeEmpty()
+
+    //when
+    wheel.advance(now + ttl + 2048) { k, _ -> expired.add(k) }
+
+    //then
+    expired.shouldContainExactly("a")
+    wheel.size() shouldBe 0
+  }
+
+  @Test
+  fun `Should reschedule value when its time is extended`() {
+    //given
+    val value = longArrayOf(now + 5_000)
+    val wheel = TimerWheel<String, LongArray>({ it[0] }, now)
+    wheel.schedule("a", value, value[0])
+
+    //when
+    value[0] = now + 120_000
+    wheel.advance(now + 10_000) { k, _ -> expired.add(k) }
+
+    //then
+    expired.shouldBeEmpty()
+    wheel.size() shouldBe 1
+
+    //when
+    wheel.advance(now + 122_048) { k, _ -> expired.add(k) }
+
+    //then
+    expired.shouldContainExactly("a")
+  }
+
+  @Test
+  fun `Should not expire removed value`() {
+    //given
+    val value = longArrayOf(now + 5_000)
+    val wheel = TimerWheel<String, LongArray>({ it[0] }, now)
+    wheel.schedule("a", value, value[0])
+
+    //when
+    wheel.remove(value)
+    wheel.advance(now + 10_000) { k, _ -> expired.add(k) }
+
+    //then
+    expired.shouldBeEmpty()
+    wheel.size() shouldBe 0
+  }
+
+  @Test
+  fun `Should expire values in order of their time`() {
+    //given
+    val wheel = TimerWheel<String, LongArray>({ it[0] }, now)
+    listOf(3L, 1L, 2L).forEach { wheel.schedule("$it", longArrayOf(now + it * 60_000), now + it * 60_000) }
+
+    //when + then
+    (1L..3L).forEach { i ->
+      wheel.advance(now + i * 60_000 + 1024) { k, _ -> expired.add(k) }
+      expired.last() shouldBe "$i"
+    }
+    expired.shouldContainExactly("1", "2", "3")
+  }
+}
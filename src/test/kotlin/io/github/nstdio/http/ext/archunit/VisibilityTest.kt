@@ -36,8 +36,11 @@ import io.github.nstdio.http.ext.Cache.InMemoryCacheBuilder
 import io.github.nstdio.http.ext.CacheControl
 import io.github.nstdio.http.ext.CacheControl.CacheControlBuilder
 import io.github.nstdio.http.ext.CacheEntryMetadata
+import io.github.nstdio.http.ext.CacheKeyStrategy
 import io.github.nstdio.http.ext.ExtendedHttpClient
 import io.github.nstdio.http.ext.Predicates
+import io.github.nstdio.http.ext.RequestInterceptor
+import io.github.nstdio.http.ext.Weigher
 import io.github.nstdio.http.ext.spi.Classpath
 import io.github.nstdio.http.ext.spi.CompressionFactory
 import io.github.nstdio.http.ext.spi.GsonJsonMapping
@@ -67,14 +70,25 @@ internal object VisibilityTest {
         .and(not(Cache.CacheEntry::class.java))
         .and(not(InMemoryCacheBuilder::class.java))
         .and(not(DiskCacheBuilder::class.java))
+        .and(not(Cache.HybridCacheBuilder::class.java))
         .and(not(EncryptedDiskCacheBuilder::class.java))
         .and(not(Cache.Writer::class.java))
         .and(not(CacheEntryMetadata::class.java))
         .and(not(Cache::class.java))
         .and(not(Cache.CacheStats::class.java))
+        .and(not(Cache.EvictionPolicy::class.java))
+        .and(not(Cache.OffHeapStats::class.java))
+        .and(not(Cache.CapacityStats::class.java))
+        .and(not(Cache.EvictionCause::class.java))
+        .and(not(LatencyStats::class.java))
+        .and(not(CacheKeyStrategy::class.java))
+        .and(not(Weigher::class.java))
         .and(not(CacheControlBuilder::class.java))
         .and(not(CacheControl::class.java))
         .and(not(Predicates::class.java))
+        .and(not(RequestInterceptor::class.java))
+        .and(not(RequestInterceptor.Exchange::class.java))
+        .and(not(RequestInterceptor.Position::class.java))
         .and(not(CompressionFactory::class.java))
         .and(not(JdkCompressionFactory::class.java))
         .and(not(IdentityCompressionFactory::class.java))